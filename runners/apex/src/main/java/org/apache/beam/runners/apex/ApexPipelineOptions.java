@@ -67,4 +67,12 @@ public interface ApexPipelineOptions extends PipelineOptions {
 
   @Default.Boolean(true)
   boolean isParDoFusionEnabled();
+
+  @Description("the maximum total size in bytes of the encoded side input contents that each "
+      + "container keeps materialized. The least recently used side input windows are evicted "
+      + "first.")
+  void setSideInputCacheMaxBytes(long maxBytes);
+
+  @Default.Long(128L << 20)
+  long getSideInputCacheMaxBytes();
 }
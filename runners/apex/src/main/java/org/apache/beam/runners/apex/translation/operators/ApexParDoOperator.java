@@ -51,6 +51,7 @@ import org.apache.beam.runners.core.NullSideInputReader;
 import org.apache.beam.runners.core.OutputAndTimeBoundedSplittableProcessElementInvoker;
 import org.apache.beam.runners.core.OutputWindowedValue;
 import org.apache.beam.runners.core.PushbackSideInputDoFnRunner;
+import org.apache.beam.runners.core.SideInputCache;
 import org.apache.beam.runners.core.SideInputHandler;
 import org.apache.beam.runners.core.SideInputReader;
 import org.apache.beam.runners.core.SimplePushbackSideInputDoFnRunner;
@@ -404,7 +405,12 @@ public class ApexParDoOperator<InputT, OutputT> extends BaseOperator implements
             pipelineOptions.get().as(ApexPipelineOptions.class), this);
     SideInputReader sideInputReader = NullSideInputReader.of(sideInputs);
     if (!sideInputs.isEmpty()) {
-      sideInputHandler = new SideInputHandler(sideInputs, sideInputStateInternals);
+      sideInputHandler =
+          new SideInputHandler(
+              sideInputs,
+              sideInputStateInternals,
+              SideInputCache.shared(
+                  pipelineOptions.get().as(ApexPipelineOptions.class).getSideInputCacheMaxBytes()));
       sideInputReader = sideInputHandler;
     }
 
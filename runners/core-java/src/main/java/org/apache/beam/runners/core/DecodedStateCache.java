@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.core;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import org.apache.beam.sdk.annotations.Experimental;
+import org.apache.beam.sdk.annotations.Experimental.Kind;
+
+/**
+ * A bounded cache of the objects decoded from encoded state, used by {@link
+ * EncodedInMemoryStateInternals}. Each entry is weighed by the size of its encoding, and the least
+ * recently used entries are evicted first.
+ *
+ * <p>Entries are keyed by the identity of the encoded bytes, which must not be modified after they
+ * are cached. An entry is dropped as soon as its encoded bytes are no longer referenced by any
+ * state. A single cache can be shared between the state of many keys and steps.
+ */
+@Experimental(Kind.STATE)
+public class DecodedStateCache {
+  private final Cache<byte[], Object> decoded;
+
+  /**
+   * Creates a cache that holds the objects decoded from at most {@code maximumBytes} bytes of
+   * encoded state.
+   */
+  public static DecodedStateCache withMaximumWeight(long maximumBytes) {
+    checkArgument(maximumBytes >= 0, "Maximum weight must be non-negative, got %s", maximumBytes);
+    return new DecodedStateCache(maximumBytes);
+  }
+
+  private DecodedStateCache(long maximumBytes) {
+    // weakKeys() compares keys by identity, which is what we want for byte arrays.
+    this.decoded =
+        CacheBuilder.newBuilder()
+            .weakKeys()
+            .maximumWeight(maximumBytes)
+            .weigher((byte[] encoded, Object value) -> encoded.length)
+            .build();
+  }
+
+  /**
+   * Returns the object decoded from {@code encoded}, decoding it with the provided function if it
+   * is not cached.
+   */
+  @Nullable
+  <T> T get(byte[] encoded, Function<byte[], T> decoder) {
+    @SuppressWarnings("unchecked")
+    T value = (T) decoded.getIfPresent(encoded);
+    if (value == null) {
+      value = decoder.apply(encoded);
+      put(encoded, value);
+    }
+    return value;
+  }
+
+  /** Caches {@code value} as the object decoded from {@code encoded}. */
+  void put(byte[] encoded, @Nullable Object value) {
+    if (value != null) {
+      decoded.put(encoded, value);
+    }
+  }
+
+  /** Returns the number of cached objects. */
+  public long size() {
+    return decoded.size();
+  }
+}
@@ -0,0 +1,444 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.core;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.apache.beam.runners.core.StateTag.StateBinder;
+import org.apache.beam.sdk.annotations.Experimental;
+import org.apache.beam.sdk.annotations.Experimental.Kind;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.state.BagState;
+import org.apache.beam.sdk.state.CombiningState;
+import org.apache.beam.sdk.state.MapState;
+import org.apache.beam.sdk.state.ReadableState;
+import org.apache.beam.sdk.state.SetState;
+import org.apache.beam.sdk.state.StateContext;
+import org.apache.beam.sdk.state.ValueState;
+import org.apache.beam.sdk.state.WatermarkHoldState;
+import org.apache.beam.sdk.transforms.Combine.CombineFn;
+import org.apache.beam.sdk.transforms.CombineWithContext.CombineFnWithContext;
+import org.apache.beam.sdk.transforms.windowing.TimestampCombiner;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.util.CombineFnUtil;
+
+/**
+ * In-memory implementation of {@link StateInternals} that stores values, bags and combining state
+ * as bytes encoded with the coder of the state, rather than as live objects. Bags are appended to
+ * in encoded chunks. This keeps much more state in a given heap than {@link
+ * InMemoryStateInternals}, at the cost of encoding and decoding state when it is accessed.
+ *
+ * <p>Recently read values and bag chunks are kept in a {@link DecodedStateCache}, so objects read
+ * from state must not be modified unless they are written back. Accumulators are decoded whenever
+ * they are accessed. Sets, maps and watermark holds are stored as in {@link
+ * InMemoryStateInternals}.
+ */
+@Experimental(Kind.STATE)
+public class EncodedInMemoryStateInternals<K> extends InMemoryStateInternals<K> {
+
+  /** The size at which the encoded elements appended to a bag are sealed into a chunk. */
+  private static final int BAG_CHUNK_BYTES = 64 * 1024;
+
+  public static <K> EncodedInMemoryStateInternals<K> forKey(
+      @Nullable K key, DecodedStateCache cache) {
+    return new EncodedInMemoryStateInternals<>(key, cache);
+  }
+
+  /**
+   * Returns a {@link StateInternalsFactory} whose {@link StateInternals} share a {@link
+   * DecodedStateCache} that holds the objects decoded from at most {@code cacheBytes} bytes.
+   */
+  public static <K> StateInternalsFactory<K> factory(long cacheBytes) {
+    return new EncodedInMemoryStateInternalsFactory<>(cacheBytes);
+  }
+
+  private final DecodedStateCache cache;
+
+  protected EncodedInMemoryStateInternals(@Nullable K key, DecodedStateCache cache) {
+    super(key);
+    this.cache = cache;
+  }
+
+  @Override
+  protected StateBinder createBinder(StateContext<?> c) {
+    return new EncodedStateBinder(c, cache);
+  }
+
+  private static class EncodedInMemoryStateInternalsFactory<K>
+      implements StateInternalsFactory<K>, Serializable {
+    private final long cacheBytes;
+    @Nullable private transient DecodedStateCache cache;
+
+    private EncodedInMemoryStateInternalsFactory(long cacheBytes) {
+      this.cacheBytes = cacheBytes;
+    }
+
+    @Override
+    public StateInternals stateInternalsForKey(K key) {
+      if (cache == null) {
+        cache = DecodedStateCache.withMaximumWeight(cacheBytes);
+      }
+      return forKey(key, cache);
+    }
+  }
+
+  private static <T> byte[] encode(Coder<T> coder, T value) {
+    try {
+      return CoderUtils.encodeToByteArray(coder, value);
+    } catch (CoderException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static <T> T decode(Coder<T> coder, byte[] encoded) {
+    try {
+      return CoderUtils.decodeFromByteArray(coder, encoded);
+    } catch (CoderException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * A {@link StateBinder} that returns encoded state where possible, and In Memory state otherwise.
+   */
+  public static class EncodedStateBinder implements StateBinder {
+    private final StateContext<?> c;
+    private final DecodedStateCache cache;
+
+    public EncodedStateBinder(StateContext<?> c, DecodedStateCache cache) {
+      this.c = c;
+      this.cache = cache;
+    }
+
+    @Override
+    public <T> ValueState<T> bindValue(StateTag<ValueState<T>> address, Coder<T> coder) {
+      return new EncodedValue<>(coder, cache);
+    }
+
+    @Override
+    public <T> BagState<T> bindBag(StateTag<BagState<T>> address, Coder<T> elemCoder) {
+      return new EncodedBag<>(elemCoder, cache);
+    }
+
+    @Override
+    public <T> SetState<T> bindSet(StateTag<SetState<T>> spec, Coder<T> elemCoder) {
+      return new InMemorySet<>();
+    }
+
+    @Override
+    public <KeyT, ValueT> MapState<KeyT, ValueT> bindMap(
+        StateTag<MapState<KeyT, ValueT>> spec,
+        Coder<KeyT> mapKeyCoder,
+        Coder<ValueT> mapValueCoder) {
+      return new InMemoryMap<>();
+    }
+
+    @Override
+    public <InputT, AccumT, OutputT> CombiningState<InputT, AccumT, OutputT> bindCombiningValue(
+        StateTag<CombiningState<InputT, AccumT, OutputT>> address,
+        Coder<AccumT> accumCoder,
+        CombineFn<InputT, AccumT, OutputT> combineFn) {
+      return new EncodedCombiningState<>(accumCoder, combineFn);
+    }
+
+    @Override
+    public WatermarkHoldState bindWatermark(
+        StateTag<WatermarkHoldState> address, TimestampCombiner timestampCombiner) {
+      return new InMemoryWatermarkHold<>(timestampCombiner);
+    }
+
+    @Override
+    public <InputT, AccumT, OutputT>
+        CombiningState<InputT, AccumT, OutputT> bindCombiningValueWithContext(
+            StateTag<CombiningState<InputT, AccumT, OutputT>> address,
+            Coder<AccumT> accumCoder,
+            CombineFnWithContext<InputT, AccumT, OutputT> combineFn) {
+      return bindCombiningValue(address, accumCoder, CombineFnUtil.bindContext(combineFn, c));
+    }
+  }
+
+  /**
+   * An {@link InMemoryState} implementation of {@link ValueState} that stores the encoded value.
+   */
+  public static final class EncodedValue<T>
+      implements ValueState<T>, InMemoryState<EncodedValue<T>> {
+    private final Coder<T> coder;
+    private final DecodedStateCache cache;
+    private boolean isCleared = true;
+    // Null if the value is null, which is not necessarily encodable.
+    private @Nullable byte[] encoded = null;
+
+    private EncodedValue(Coder<T> coder, DecodedStateCache cache) {
+      this.coder = coder;
+      this.cache = cache;
+    }
+
+    @Override
+    public void clear() {
+      encoded = null;
+      isCleared = true;
+    }
+
+    @Override
+    public EncodedValue<T> readLater() {
+      return this;
+    }
+
+    @Override
+    public T read() {
+      return encoded == null ? null : cache.get(encoded, bytes -> decode(coder, bytes));
+    }
+
+    @Override
+    public void write(T input) {
+      isCleared = false;
+      encoded = input == null ? null : encode(coder, input);
+      if (encoded != null) {
+        cache.put(encoded, input);
+      }
+    }
+
+    @Override
+    public EncodedValue<T> copy() {
+      // The encoded value is never modified, so it can be shared.
+      EncodedValue<T> that = new EncodedValue<>(coder, cache);
+      that.isCleared = this.isCleared;
+      that.encoded = this.encoded;
+      return that;
+    }
+
+    @Override
+    public boolean isCleared() {
+      return isCleared;
+    }
+  }
+
+  /**
+   * An {@link InMemoryState} implementation of {@link CombiningState} that stores the encoded
+   * accumulator. The accumulator is decoded whenever it is accessed, as combine functions may
+   * modify the accumulators they are given.
+   */
+  public static final class EncodedCombiningState<InputT, AccumT, OutputT>
+      implements CombiningState<InputT, AccumT, OutputT>,
+          InMemoryState<EncodedCombiningState<InputT, AccumT, OutputT>> {
+    private final Coder<AccumT> accumCoder;
+    private final CombineFn<InputT, AccumT, OutputT> combineFn;
+    // Null if the state is cleared.
+    private @Nullable byte[] encodedAccum = null;
+
+    private EncodedCombiningState(
+        Coder<AccumT> accumCoder, CombineFn<InputT, AccumT, OutputT> combineFn) {
+      this.accumCoder = accumCoder;
+      this.combineFn = combineFn;
+    }
+
+    @Override
+    public EncodedCombiningState<InputT, AccumT, OutputT> readLater() {
+      return this;
+    }
+
+    @Override
+    public void clear() {
+      encodedAccum = null;
+    }
+
+    @Override
+    public OutputT read() {
+      return combineFn.extractOutput(
+          combineFn.mergeAccumulators(Arrays.asList(combineFn.createAccumulator(), getAccum())));
+    }
+
+    @Override
+    public void add(InputT input) {
+      encodedAccum = encode(accumCoder, combineFn.addInput(getAccum(), input));
+    }
+
+    @Override
+    public AccumT getAccum() {
+      return encodedAccum == null
+          ? combineFn.createAccumulator()
+          : decode(accumCoder, encodedAccum);
+    }
+
+    @Override
+    public ReadableState<Boolean> isEmpty() {
+      return new ReadableState<Boolean>() {
+        @Override
+        public ReadableState<Boolean> readLater() {
+          return this;
+        }
+
+        @Override
+        public Boolean read() {
+          return encodedAccum == null;
+        }
+      };
+    }
+
+    @Override
+    public void addAccum(AccumT accum) {
+      encodedAccum =
+          encode(accumCoder, combineFn.mergeAccumulators(Arrays.asList(getAccum(), accum)));
+    }
+
+    @Override
+    public AccumT mergeAccumulators(Iterable<AccumT> accumulators) {
+      return combineFn.mergeAccumulators(accumulators);
+    }
+
+    @Override
+    public boolean isCleared() {
+      return encodedAccum == null;
+    }
+
+    @Override
+    public EncodedCombiningState<InputT, AccumT, OutputT> copy() {
+      EncodedCombiningState<InputT, AccumT, OutputT> that =
+          new EncodedCombiningState<>(accumCoder, combineFn);
+      that.encodedAccum = this.encodedAccum;
+      return that;
+    }
+  }
+
+  /**
+   * An {@link InMemoryState} implementation of {@link BagState} that appends the encoded elements
+   * to an open chunk of bytes, which is sealed once it reaches {@link #BAG_CHUNK_BYTES}. Sealed
+   * chunks are decoded as a whole and cached when the bag is read. The open chunk is decoded on
+   * every read.
+   */
+  public static final class EncodedBag<T> implements BagState<T>, InMemoryState<EncodedBag<T>> {
+    private final Coder<T> elemCoder;
+    private final DecodedStateCache cache;
+    // Sealed chunks are never modified, so they can be shared with copies of this bag.
+    private List<byte[]> chunks = new ArrayList<>();
+    private @Nullable OpenChunk openChunk = null;
+
+    private EncodedBag(Coder<T> elemCoder, DecodedStateCache cache) {
+      this.elemCoder = elemCoder;
+      this.cache = cache;
+    }
+
+    @Override
+    public void clear() {
+      // Like InMemoryBag, swap the chunks rather than clearing them, so that the result of an
+      // earlier read is not affected.
+      chunks = new ArrayList<>();
+      openChunk = null;
+    }
+
+    @Override
+    public EncodedBag<T> readLater() {
+      return this;
+    }
+
+    @Override
+    public Iterable<T> read() {
+      // The open chunk is decoded now, as later additions modify it in place.
+      List<T> open =
+          openChunk == null ? Collections.<T>emptyList() : decodeElements(openChunk.read());
+      return Iterables.concat(
+          Iterables.concat(
+              Iterables.transform(
+                  ImmutableList.copyOf(chunks),
+                  chunk -> cache.get(chunk, c -> decodeElements(new ByteArrayInputStream(c))))),
+          open);
+    }
+
+    @Override
+    public void add(T input) {
+      if (openChunk == null) {
+        openChunk = new OpenChunk();
+      }
+      try {
+        elemCoder.encode(input, openChunk);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      if (openChunk.size() >= BAG_CHUNK_BYTES) {
+        chunks.add(openChunk.toByteArray());
+        openChunk = null;
+      }
+    }
+
+    private List<T> decodeElements(ByteArrayInputStream in) {
+      List<T> elements = new ArrayList<>();
+      try {
+        while (in.available() > 0) {
+          elements.add(elemCoder.decode(in));
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      return Collections.unmodifiableList(elements);
+    }
+
+    @Override
+    public boolean isCleared() {
+      return chunks.isEmpty() && openChunk == null;
+    }
+
+    @Override
+    public ReadableState<Boolean> isEmpty() {
+      return new ReadableState<Boolean>() {
+        @Override
+        public ReadableState<Boolean> readLater() {
+          return this;
+        }
+
+        @Override
+        public Boolean read() {
+          return isCleared();
+        }
+      };
+    }
+
+    @Override
+    public EncodedBag<T> copy() {
+      EncodedBag<T> that = new EncodedBag<>(elemCoder, cache);
+      that.chunks.addAll(this.chunks);
+      if (openChunk != null) {
+        that.openChunk = openChunk.copy();
+      }
+      return that;
+    }
+  }
+
+  /** The chunk of a bag that encoded elements are appended to. */
+  private static class OpenChunk extends ByteArrayOutputStream {
+    /** Returns a stream of the bytes appended so far, without copying them. */
+    private ByteArrayInputStream read() {
+      return new ByteArrayInputStream(buf, 0, count);
+    }
+
+    private OpenChunk copy() {
+      OpenChunk that = new OpenChunk();
+      that.write(buf, 0, count);
+      return that;
+    }
+  }
+}
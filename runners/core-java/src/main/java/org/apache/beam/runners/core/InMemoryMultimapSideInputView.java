@@ -20,9 +20,15 @@ package org.apache.beam.runners.core;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.transforms.Materializations;
 import org.apache.beam.sdk.transforms.Materializations.MultimapView;
+import org.apache.beam.sdk.util.CoderUtils;
 import org.apache.beam.sdk.values.KV;
 
 /**
@@ -47,6 +53,21 @@ public class InMemoryMultimapSideInputView<K, V> implements Materializations.Mul
     return new InMemoryMultimapSideInputView(keyCoder, Multimaps.unmodifiableMultimap(multimap));
   }
 
+  /**
+   * Creates a {@link MultimapView} from the provided keys and values encoded with {@link
+   * CoderUtils#encodeToByteArray}. Keys are compared by their structural value, as in {@link
+   * #fromIterable}, and the values of a key are only decoded, with the provided value {@link
+   * Coder}, when that key is looked up.
+   */
+  public static <K, V> MultimapView<K, V> fromEncodedValues(
+      Coder<K> keyCoder, Coder<V> valueCoder, Iterable<KV<K, byte[]>> values) {
+    Multimap<Object, byte[]> multimap = ArrayListMultimap.create();
+    for (KV<K, byte[]> value : values) {
+      multimap.put(keyCoder.structuralValue(value.getKey()), value.getValue());
+    }
+    return new EncodedValuesView<>(keyCoder, valueCoder, multimap);
+  }
+
   private final Coder<K> keyCoder;
   private final Multimap<Object, V> structuralKeyToValuesMap;
 
@@ -59,4 +80,33 @@ public class InMemoryMultimapSideInputView<K, V> implements Materializations.Mul
   public Iterable<V> get(K k) {
     return structuralKeyToValuesMap.get(keyCoder.structuralValue(k));
   }
+
+  /** A {@link MultimapView} that decodes the values of a key when it is looked up. */
+  private static class EncodedValuesView<K, V> implements MultimapView<K, V> {
+    private final Coder<K> keyCoder;
+    private final Coder<V> valueCoder;
+    private final Multimap<Object, byte[]> structuralKeyToEncodedValuesMap;
+
+    private EncodedValuesView(
+        Coder<K> keyCoder, Coder<V> valueCoder, Multimap<Object, byte[]> data) {
+      this.keyCoder = keyCoder;
+      this.valueCoder = valueCoder;
+      this.structuralKeyToEncodedValuesMap = data;
+    }
+
+    @Override
+    public Iterable<V> get(K k) {
+      Collection<byte[]> encodedValues =
+          structuralKeyToEncodedValuesMap.get(keyCoder.structuralValue(k));
+      List<V> values = new ArrayList<>(encodedValues.size());
+      try {
+        for (byte[] encodedValue : encodedValues) {
+          values.add(CoderUtils.decodeFromByteArray(valueCoder, encodedValue));
+        }
+      } catch (CoderException e) {
+        throw new RuntimeException(e);
+      }
+      return Collections.unmodifiableList(values);
+    }
+  }
 }
@@ -86,10 +86,15 @@ public class InMemoryStateInternals<K> implements StateInternals {
   protected final StateTable inMemoryState = new StateTable() {
     @Override
     protected StateBinder binderForNamespace(StateNamespace namespace, StateContext<?> c) {
-      return new InMemoryStateBinder(c);
+      return createBinder(c);
     }
   };
 
+  /** Returns the {@link StateBinder} that creates the state cells of this {@link StateInternals}. */
+  protected StateBinder createBinder(StateContext<?> c) {
+    return new InMemoryStateBinder(c);
+  }
+
   public void clear() {
     inMemoryState.clear();
   }
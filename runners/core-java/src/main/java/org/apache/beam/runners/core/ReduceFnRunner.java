@@ -28,6 +28,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -40,8 +41,11 @@ import org.apache.beam.runners.core.triggers.ExecutableTriggerStateMachine;
 import org.apache.beam.runners.core.triggers.TriggerStateMachineContextFactory;
 import org.apache.beam.runners.core.triggers.TriggerStateMachineRunner;
 import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Distribution;
 import org.apache.beam.sdk.metrics.Metrics;
 import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.state.State;
+import org.apache.beam.sdk.state.StateContext;
 import org.apache.beam.sdk.state.TimeDomain;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.transforms.windowing.PaneInfo;
@@ -103,12 +107,21 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
 
   private final OutputWindowedValue<KV<K, OutputT>> outputter;
 
-  private final StateInternals stateInternals;
+  private final CountingStateInternals stateInternals;
 
   private final Counter droppedDueToClosedWindow;
 
   public static final String DROPPED_DUE_TO_CLOSED_WINDOW = "droppedDueToClosedWindow";
 
+  /**
+   * The number of state cells accessed per pane fired. Updated once for each call to {@link
+   * #processElements} or {@link #onTimers} that fires any panes, with the average over the panes
+   * fired by that call, since state for all of those panes is prefetched together.
+   */
+  private final Distribution stateAccessesPerFiredPane;
+
+  public static final String STATE_ACCESSES_PER_FIRED_PANE = "stateAccessesPerFiredPane";
+
   private final K key;
 
   /**
@@ -218,11 +231,13 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
     this.key = key;
     this.timerInternals = timerInternals;
     this.paneInfoTracker = new PaneInfoTracker(timerInternals);
-    this.stateInternals = stateInternals;
+    this.stateInternals = new CountingStateInternals(stateInternals);
     this.outputter = outputter;
     this.reduceFn = reduceFn;
     this.droppedDueToClosedWindow = Metrics.counter(ReduceFnRunner.class,
         DROPPED_DUE_TO_CLOSED_WINDOW);
+    this.stateAccessesPerFiredPane = Metrics.distribution(ReduceFnRunner.class,
+        STATE_ACCESSES_PER_FIRED_PANE);
 
     @SuppressWarnings("unchecked")
     WindowingStrategy<Object, W> objectWindowingStrategy =
@@ -236,14 +251,14 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
 
     this.contextFactory =
         new ReduceFnContextFactory<>(key, reduceFn, this.windowingStrategy,
-            stateInternals, this.activeWindows, timerInternals, sideInputReader, options);
+            this.stateInternals, this.activeWindows, timerInternals, sideInputReader, options);
 
     this.watermarkHold = new WatermarkHold<>(timerInternals, windowingStrategy);
     this.triggerRunner =
         new TriggerStateMachineRunner<>(
             triggerStateMachine,
             new TriggerStateMachineContextFactory<>(
-                windowingStrategy.getWindowFn(), stateInternals, activeWindows));
+                windowingStrategy.getWindowFn(), this.stateInternals, activeWindows));
   }
 
   private ActiveWindowSet<W> createActiveWindowSet() {
@@ -316,6 +331,7 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
     if (!values.iterator().hasNext()) {
       return;
     }
+    long initialStateAccesses = stateInternals.getAccesses();
 
     // Determine all the windows for elements.
     Set<W> windows = collectWindows(values);
@@ -340,8 +356,18 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
     Set<W> windowsToConsider = windowsThatAreOpen(windows);
 
     // Process each element, using the updated activeWindows determined by mergeWindows.
+    Map<W, TriggerElements> triggerElements = new LinkedHashMap<>();
     for (WindowedValue<InputT> value : values) {
-      processElement(windowToMergeResult, value);
+      processElement(windowToMergeResult, value, triggerElements);
+    }
+    // Run the triggers once per window for all of the elements that window received.
+    for (TriggerElements elements : triggerElements.values()) {
+      triggerRunner.processValues(
+          elements.directContext.window(),
+          elements.directContext.timestamp(),
+          elements.count,
+          elements.directContext.timers(),
+          elements.directContext.state());
     }
 
     // Now that we've processed the elements, see if any of the windows need to fire.
@@ -362,6 +388,7 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
       emit(contextFactory.base(window, StateStyle.DIRECT),
           contextFactory.base(window, StateStyle.RENAMED));
     }
+    reportStateAccesses(initialStateAccesses, windowsToFire.size());
 
     // We're all done with merging and emitting elements so can compress the activeWindow state.
     // Any windows which are still NEW must have come in on a new element which was then discarded
@@ -559,14 +586,33 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
     }
   }
 
+  /**
+   * The elements that a window has received within a call to {@link #processElements}, which
+   * are passed to the trigger together once all of the elements have been processed.
+   */
+  private class TriggerElements {
+    /** The context of the first element the window received. */
+    private final ReduceFn<K, InputT, OutputT, W>.ProcessValueContext directContext;
+    private long count = 0L;
+
+    private TriggerElements(ReduceFn<K, InputT, OutputT, W>.ProcessValueContext directContext) {
+      this.directContext = directContext;
+    }
+  }
+
   /**
    * Process an element.
    *
    * @param windowToMergeResult map of windows to merged windows. If a window is
    * not present it is unmerged.
    * @param value the value being processed
+   * @param triggerElements the elements each window has received so far, to which this element
+   * is added for each window it is incorporated into
    */
-  private void processElement(Map<W, W> windowToMergeResult, WindowedValue<InputT> value)
+  private void processElement(
+      Map<W, W> windowToMergeResult,
+      WindowedValue<InputT> value,
+      Map<W, TriggerElements> triggerElements)
       throws Exception {
     ImmutableSet<W> windows = toMergedWindows(windowToMergeResult, value.getWindows());
 
@@ -600,15 +646,18 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
       // Execute the reduceFn, which will buffer the value as appropriate
       reduceFn.processValue(renamedContext);
 
-      // Run the trigger to update its state
-      triggerRunner.processValue(
-          directContext.window(),
-          directContext.timestamp(),
-          directContext.timers(),
-          directContext.state());
+      // Defer running the trigger until all of the elements have been processed. Triggers do not
+      // change whether they are finished on elements, so this does not affect the isClosed check
+      // above.
+      TriggerElements elements = triggerElements.get(window);
+      if (elements == null) {
+        elements = new TriggerElements(directContext);
+        triggerElements.put(window, elements);
+      }
+      elements.count++;
 
-      // At this point, if triggerRunner.shouldFire before the processValue then
-      // triggerRunner.shouldFire after the processValue. In other words adding values
+      // Once the trigger has run, if triggerRunner.shouldFire before the processValues then
+      // triggerRunner.shouldFire after the processValues. In other words adding values
       // cannot take a trigger state from firing to non-firing.
       // (We don't actually assert this since it is too slow.)
     }
@@ -627,6 +676,11 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
     // garbage collect the window.  We'll consider any timer at or after the
     // end-of-window time to be a signal to garbage collect.
     public final boolean isGarbageCollection;
+    // Whether the window is active and open, and whether its trigger should fire, as of before
+    // any of the windows activated by the same timers are processed. These are determined once
+    // all the state needed for every window has been prefetched.
+    private boolean isActiveAndOpen;
+    private boolean shouldFire;
 
     WindowActivation(
         ReduceFn<K, InputT, OutputT, W>.Context directContext,
@@ -673,6 +727,7 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
     if (!timers.iterator().hasNext()) {
       return;
     }
+    long initialStateAccesses = stateInternals.getAccesses();
 
     // Create a reusable context for each window and begin prefetching necessary
     // state.
@@ -721,16 +776,28 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
       }
     }
 
+    // Decide what to do with each window using the state prefetched above, before issuing any
+    // further reads, so that the reads for all of the windows are batched together.
+    int firedPanes = 0;
+    for (WindowActivation timer : windowActivations.values()) {
+      ReduceFn<K, InputT, OutputT, W>.Context directContext = timer.directContext;
+      timer.isActiveAndOpen = timer.windowIsActiveAndOpen();
+      timer.shouldFire =
+          timer.isActiveAndOpen
+              && !timer.isGarbageCollection
+              && triggerRunner.shouldFire(
+                  directContext.window(), directContext.timers(), directContext.state());
+      if ((timer.isActiveAndOpen && timer.isGarbageCollection) || timer.shouldFire) {
+        firedPanes++;
+      }
+    }
+
     // For those windows that are active and open, prefetch the triggering or emitting state.
     for (WindowActivation timer : windowActivations.values()) {
-      if (timer.windowIsActiveAndOpen()) {
-        ReduceFn<K, InputT, OutputT, W>.Context directContext = timer.directContext;
-        if (timer.isGarbageCollection) {
-          prefetchOnTrigger(directContext, timer.renamedContext);
-        } else if (triggerRunner.shouldFire(
-            directContext.window(), directContext.timers(), directContext.state())) {
-          prefetchEmit(directContext, timer.renamedContext);
-        }
+      if (timer.isActiveAndOpen && timer.isGarbageCollection) {
+        prefetchOnTrigger(timer.directContext, timer.renamedContext);
+      } else if (timer.shouldFire) {
+        prefetchEmit(timer.directContext, timer.renamedContext);
       }
     }
 
@@ -748,7 +815,7 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
             timerInternals.currentInputWatermarkTime(),
             timerInternals.currentOutputWatermarkTime());
 
-        boolean windowIsActiveAndOpen = windowActivation.windowIsActiveAndOpen();
+        boolean windowIsActiveAndOpen = windowActivation.isActiveAndOpen;
         if (windowIsActiveAndOpen) {
           // We need to call onTrigger to emit the final pane if required.
           // The final pane *may* be ON_TIME if no prior ON_TIME pane has been emitted,
@@ -770,9 +837,7 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
             directContext.window(),
             timerInternals.currentInputWatermarkTime(),
             timerInternals.currentOutputWatermarkTime());
-        if (windowActivation.windowIsActiveAndOpen()
-            && triggerRunner.shouldFire(
-                   directContext.window(), directContext.timers(), directContext.state())) {
+        if (windowActivation.shouldFire) {
           emit(directContext, renamedContext);
         }
 
@@ -803,6 +868,18 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
         }
       }
     }
+    reportStateAccesses(initialStateAccesses, firedPanes);
+  }
+
+  /**
+   * Reports the average number of state cells accessed per pane, if any panes were fired since
+   * the provided number of state accesses.
+   */
+  private void reportStateAccesses(long initialStateAccesses, int firedPanes) {
+    if (firedPanes > 0) {
+      stateAccessesPerFiredPane.update(
+          (stateInternals.getAccesses() - initialStateAccesses) / firedPanes);
+    }
   }
 
   /**
@@ -1096,4 +1173,38 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
         .currentInputWatermarkTime()
         .isAfter(w.maxTimestamp().plus(windowingStrategy.getAllowedLateness()));
   }
+
+  /**
+   * A {@link StateInternals} that counts the state cells accessed through it.
+   */
+  private static class CountingStateInternals implements StateInternals {
+    private final StateInternals delegate;
+    private long accesses = 0L;
+
+    private CountingStateInternals(StateInternals delegate) {
+      this.delegate = delegate;
+    }
+
+    long getAccesses() {
+      return accesses;
+    }
+
+    @Override
+    public Object getKey() {
+      return delegate.getKey();
+    }
+
+    @Override
+    public <T extends State> T state(StateNamespace namespace, StateTag<T> address) {
+      accesses++;
+      return delegate.state(namespace, address);
+    }
+
+    @Override
+    public <T extends State> T state(
+        StateNamespace namespace, StateTag<T> address, StateContext<?> c) {
+      accesses++;
+      return delegate.state(namespace, address, c);
+    }
+  }
 }
@@ -0,0 +1,326 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.core;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Iterables;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import javax.annotation.Nullable;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Metrics;
+import org.apache.beam.sdk.transforms.Materializations.MultimapView;
+import org.apache.beam.sdk.transforms.ViewFn;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.util.Weighted;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollectionView;
+
+/**
+ * A cache of materialized side inputs, keyed by {@link PCollectionView}, window and an identifier
+ * of the contents they were built from, that holds materialized views up to a maximum total
+ * weight. The weight of a materialized view is the encoded size in bytes of the elements it was
+ * built from. Unless the caller knows it, the weight is estimated by encoding a sample of at most
+ * 100 elements. The least recently used views are evicted first.
+ *
+ * <p>A read with a different contents identifier builds a new view, so a runner whose side inputs
+ * change over time, for example with later panes or a new broadcast, never observes stale
+ * contents. Views built from contents that are no longer read are evicted like any other.
+ * Contents identifiers are hashed on every read, so they should be cheap to hash and compare;
+ * {@link #identityOf(Object)} identifies contents that are never modified by their identity.
+ *
+ * <p>Hits, misses and evictions are reported as {@link Counter counters} in the step that reads
+ * the side input, and are available in total from {@link #getStats()}.
+ */
+public class SideInputCache {
+  public static final String HITS = "sideInputCacheHits";
+  public static final String MISSES = "sideInputCacheMisses";
+  public static final String EVICTIONS = "sideInputCacheEvictions";
+
+  /** The maximum weight used by runners that do not configure one, 128 MiB. */
+  public static final long DEFAULT_MAXIMUM_WEIGHT = 128L << 20;
+
+  /** The maximum number of elements encoded to estimate the weight of a materialized view. */
+  static final int WEIGHED_SAMPLE_SIZE = 100;
+
+  private static final ConcurrentMap<Long, SideInputCache> SHARED = new ConcurrentHashMap<>();
+
+  private final Cache<CacheKey, MaterializedView> materialized;
+  private final Counter hitsCounter = Metrics.counter(SideInputCache.class, HITS);
+  private final Counter missesCounter = Metrics.counter(SideInputCache.class, MISSES);
+  private final Counter evictionsCounter = Metrics.counter(SideInputCache.class, EVICTIONS);
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * Creates a cache that holds materialized views built from at most {@code maximumWeight} bytes
+   * of encoded elements.
+   */
+  public static SideInputCache withMaximumWeight(long maximumWeight) {
+    checkArgument(maximumWeight >= 0, "Maximum weight must be non-negative, got %s", maximumWeight);
+    return new SideInputCache(maximumWeight);
+  }
+
+  /**
+   * Returns the cache with the provided maximum weight that is shared by all callers in this
+   * process. Runners use this to bound the memory used by side inputs across all of the tasks
+   * executing in a worker.
+   */
+  public static SideInputCache shared(long maximumWeight) {
+    return SHARED.computeIfAbsent(maximumWeight, SideInputCache::withMaximumWeight);
+  }
+
+  private SideInputCache(long maximumWeight) {
+    this.materialized =
+        CacheBuilder.newBuilder()
+            // A single segment, so that the maximum weight bounds the whole cache rather than
+            // each segment holding an equal share of it, which would prevent caching any view
+            // heavier than that share.
+            .concurrencyLevel(1)
+            .maximumWeight(maximumWeight)
+            // Guava never evicts entries of weight zero, so views of empty contents weigh one.
+            .<CacheKey, MaterializedView>weigher(
+                (key, view) -> (int) Math.max(1L, Math.min(view.getWeight(), Integer.MAX_VALUE)))
+            .<CacheKey, MaterializedView>removalListener(
+                notification -> {
+                  if (notification.wasEvicted()) {
+                    evictions.incrementAndGet();
+                    evictionsCounter.inc();
+                  }
+                })
+            .build();
+  }
+
+  /**
+   * Returns an identifier of {@code contents} that compares them by identity, for use as the
+   * contents identifier of contents that are never modified.
+   */
+  public static Object identityOf(Object contents) {
+    return new IdentityKey(contents);
+  }
+
+  /**
+   * Returns the value of {@code view} in {@code window}, applying the {@link ViewFn} of the view to
+   * the elements supplied by {@code contents} if the cache does not hold a view built from the
+   * contents identified by {@code contentsId}.
+   *
+   * <p>The view must use the multimap materialization.
+   */
+  @Nullable
+  public <T> T get(
+      PCollectionView<T> view,
+      BoundedWindow window,
+      Object contentsId,
+      Supplier<? extends Iterable<? extends KV<?, ?>>> contents) {
+    return get(view, window, contentsId, contents, elements -> weigh(view, elements));
+  }
+
+  /**
+   * Like {@link #get(PCollectionView, BoundedWindow, Object, Supplier)}, but weighs a new
+   * materialized view with the provided function of its elements, for callers that already know
+   * their encoded size.
+   */
+  @Nullable
+  public <T> T get(
+      PCollectionView<T> view,
+      BoundedWindow window,
+      Object contentsId,
+      Supplier<? extends Iterable<? extends KV<?, ?>>> contents,
+      ToLongFunction<Iterable<? extends KV<?, ?>>> weigher) {
+    return getOrMaterialize(
+        CacheKey.of(view, window, contentsId),
+        () -> {
+          Iterable<? extends KV<?, ?>> elements = contents.get();
+          return new MaterializedView(materialize(view, elements), weigher.applyAsLong(elements));
+        });
+  }
+
+  /**
+   * Like {@link #get(PCollectionView, BoundedWindow, Object, Supplier)}, but for contents whose
+   * values are encoded with the value coder of the view by {@link
+   * org.apache.beam.sdk.util.CoderUtils#encodeToByteArray}. The view is built from a multimap
+   * that only decodes the values of a key when the {@link ViewFn} looks that key up, and is
+   * weighed by the size of the encoded values.
+   */
+  @Nullable
+  public <T> T getFromEncodedValues(
+      PCollectionView<T> view,
+      BoundedWindow window,
+      Object contentsId,
+      Supplier<? extends Iterable<? extends KV<?, byte[]>>> contents) {
+    return getOrMaterialize(
+        CacheKey.of(view, window, contentsId),
+        () -> {
+          Iterable<? extends KV<?, byte[]>> elements = contents.get();
+          long weight = 0L;
+          for (KV<?, byte[]> element : elements) {
+            weight += element.getValue().length;
+          }
+          return new MaterializedView(materializeFromEncodedValues(view, elements), weight);
+        });
+  }
+
+  @Nullable
+  private <T> T getOrMaterialize(CacheKey key, Supplier<MaterializedView> materialize) {
+    MaterializedView cached = materialized.getIfPresent(key);
+    if (cached != null) {
+      hits.incrementAndGet();
+      hitsCounter.inc();
+    } else {
+      misses.incrementAndGet();
+      missesCounter.inc();
+      cached = materialize.get();
+      materialized.put(key, cached);
+    }
+    @SuppressWarnings("unchecked")
+    T value = (T) cached.getValue();
+    return value;
+  }
+
+  /**
+   * Removes the value of {@code view} in {@code window} built from the contents identified by
+   * {@code contentsId}, if any.
+   */
+  public void invalidate(PCollectionView<?> view, BoundedWindow window, Object contentsId) {
+    materialized.invalidate(CacheKey.of(view, window, contentsId));
+  }
+
+  /** Returns the total weight of the materialized views held by this cache. */
+  public long getWeight() {
+    long weight = 0L;
+    for (MaterializedView view : materialized.asMap().values()) {
+      weight += view.getWeight();
+    }
+    return weight;
+  }
+
+  /** Returns the hits, misses and evictions of this cache since it was created. */
+  public CacheStats getStats() {
+    return new CacheStats(hits.get(), misses.get(), 0L, 0L, 0L, evictions.get());
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static <T> T materialize(
+      PCollectionView<T> view, Iterable<? extends KV<?, ?>> elements) {
+    ViewFn<MultimapView, T> viewFn = (ViewFn<MultimapView, T>) view.getViewFn();
+    Coder keyCoder = ((KvCoder<?, ?>) view.getCoderInternal()).getKeyCoder();
+    return viewFn.apply(InMemoryMultimapSideInputView.fromIterable(keyCoder, (Iterable) elements));
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static <T> T materializeFromEncodedValues(
+      PCollectionView<T> view, Iterable<? extends KV<?, byte[]>> elements) {
+    ViewFn<MultimapView, T> viewFn = (ViewFn<MultimapView, T>) view.getViewFn();
+    KvCoder<?, ?> coder = (KvCoder<?, ?>) view.getCoderInternal();
+    return viewFn.apply(
+        InMemoryMultimapSideInputView.fromEncodedValues(
+            (Coder) coder.getKeyCoder(), (Coder) coder.getValueCoder(), (Iterable) elements));
+  }
+
+  /**
+   * Estimates the encoded size of the elements by encoding at most {@link #WEIGHED_SAMPLE_SIZE}
+   * of them, evenly spaced, and scaling up by the number of elements.
+   */
+  @SuppressWarnings("unchecked")
+  private static long weigh(PCollectionView<?> view, Iterable<? extends KV<?, ?>> elements) {
+    Coder<KV<?, ?>> coder = (Coder<KV<?, ?>>) view.getCoderInternal();
+    long size = Iterables.size(elements);
+    long stride = Math.max(1L, (size + WEIGHED_SAMPLE_SIZE - 1) / WEIGHED_SAMPLE_SIZE);
+    CountingOutputStream counter = new CountingOutputStream(ByteStreams.nullOutputStream());
+    long sampled = 0L;
+    long index = 0L;
+    try {
+      for (KV<?, ?> element : elements) {
+        if (index++ % stride == 0) {
+          coder.encode(element, counter);
+          sampled++;
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return sampled == 0L ? 0L : counter.getCount() * size / sampled;
+  }
+
+  @AutoValue
+  abstract static class CacheKey {
+    static CacheKey of(PCollectionView<?> view, BoundedWindow window, Object contentsId) {
+      return new AutoValue_SideInputCache_CacheKey(view, window, contentsId);
+    }
+
+    abstract PCollectionView<?> getView();
+
+    abstract BoundedWindow getWindow();
+
+    abstract Object getContentsId();
+  }
+
+  /** Identifies an object by its identity rather than its {@code equals}. */
+  private static class IdentityKey {
+    private final Object contents;
+
+    private IdentityKey(Object contents) {
+      this.contents = contents;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof IdentityKey && ((IdentityKey) other).contents == contents;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(contents);
+    }
+  }
+
+  /** A materialized view, weighted by the encoded size of the elements it was built from. */
+  private static class MaterializedView implements Weighted {
+    @Nullable private final Object value;
+    private final long weight;
+
+    private MaterializedView(@Nullable Object value, long weight) {
+      this.value = value;
+      this.weight = weight;
+    }
+
+    @Nullable
+    Object getValue() {
+      return value;
+    }
+
+    @Override
+    public long getWeight() {
+      return weight;
+    }
+  }
+}
@@ -19,14 +19,18 @@ package org.apache.beam.runners.core;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import javax.annotation.Nullable;
+import org.apache.beam.sdk.coders.ByteArrayCoder;
 import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.coders.IterableCoder;
 import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.coders.SetCoder;
@@ -34,9 +38,9 @@ import org.apache.beam.sdk.state.CombiningState;
 import org.apache.beam.sdk.state.ValueState;
 import org.apache.beam.sdk.transforms.Combine;
 import org.apache.beam.sdk.transforms.Materializations;
-import org.apache.beam.sdk.transforms.Materializations.MultimapView;
 import org.apache.beam.sdk.transforms.ViewFn;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.util.CoderUtils;
 import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollectionView;
@@ -82,23 +86,65 @@ public class SideInputHandler implements ReadyCheckingSideInputReader {
                         Set<BoundedWindow>>>> availableWindowsTags;
 
   /**
-   * State tag for the actual contents of each side input per window.
+   * State tag for the actual contents of each side input per window. The key of each element is
+   * stored as is, and its value encoded with the value coder of the side input, so that reading
+   * the contents does not decode the values.
    */
   private final Map<
       PCollectionView<?>,
       StateTag<ValueState<Iterable<?>>>> sideInputContentsTags;
 
+  /**
+   * The result of applying the {@link ViewFn} of each side input to its contents, per window.
+   * A window's entry is created when the side input is first read in that window and removed
+   * when new contents arrive for that window, so the contents of a window are decoded and
+   * indexed once per update rather than on every read. The cache bounds the total encoded size
+   * of the views it holds, and evicts the least recently used views first.
+   *
+   * <p>The multimap a view is built from indexes the encoded values of a window by the structural
+   * value of their key, so a lookup is a hash lookup that only decodes the values of that key.
+   * The {@link ViewFn ViewFns} of the SDK put all elements under the {@code null} key, so applying
+   * them still decodes every value once per update.
+   */
+  private final SideInputCache materializedViews;
+
+  /**
+   * Identifies the contents of this handler in {@link #materializedViews}. Entries are invalidated
+   * whenever the contents change, so this handler's contents need no finer identifier. This is not
+   * the handler itself, so that a cache shared with other handlers doesn't retain its state.
+   */
+  private final Object contentsId = new Object();
+
   /**
    * Creates a new {@code SideInputHandler} for the given side inputs that uses
-   * the given {@code StateInternals} to store side input data and side-input meta data.
+   * the given {@code StateInternals} to store side input data and side-input meta data, and
+   * holds materialized side inputs in the {@link SideInputCache#shared shared} cache of the
+   * default size.
    */
   public SideInputHandler(
       Collection<PCollectionView<?>> sideInputs,
       StateInternals stateInternals) {
+    this(
+        sideInputs,
+        stateInternals,
+        SideInputCache.shared(SideInputCache.DEFAULT_MAXIMUM_WEIGHT));
+  }
+
+  /**
+   * Creates a new {@code SideInputHandler} for the given side inputs that uses the given {@code
+   * StateInternals} to store side input data and side-input meta data, and the given {@link
+   * SideInputCache} to hold materialized side inputs. A cache shared between handlers bounds
+   * their memory together, but each handler only reuses the views that it materialized itself.
+   */
+  public SideInputHandler(
+      Collection<PCollectionView<?>> sideInputs,
+      StateInternals stateInternals,
+      SideInputCache materializedViews) {
     this.sideInputs = sideInputs;
     this.stateInternals = stateInternals;
     this.availableWindowsTags = new HashMap<>();
     this.sideInputContentsTags = new HashMap<>();
+    this.materializedViews = materializedViews;
 
     for (PCollectionView<?> sideInput : sideInputs) {
       checkArgument(
@@ -130,7 +176,10 @@ public class SideInputHandler implements ReadyCheckingSideInputReader {
 
       StateTag<ValueState<Iterable<?>>> stateTag =
           StateTags.value("side-input-data-" + sideInput.getTagInternal().getId(),
-              (Coder) IterableCoder.of(sideInput.getCoderInternal()));
+              (Coder) IterableCoder.of(
+                  KvCoder.of(
+                      ((KvCoder<?, ?>) sideInput.getCoderInternal()).getKeyCoder(),
+                      ByteArrayCoder.of())));
       sideInputContentsTags.put(sideInput, stateTag);
     }
   }
@@ -152,11 +201,13 @@ public class SideInputHandler implements ReadyCheckingSideInputReader {
 
     StateTag<ValueState<Iterable<?>>> stateTag =
         sideInputContentsTags.get(sideInput);
+    List<KV<?, byte[]>> contents = encodeValues(sideInput, value.getValue());
 
     for (BoundedWindow window : value.getWindows()) {
       stateInternals
           .state(StateNamespaces.window(windowCoder, window), stateTag)
-          .write(value.getValue());
+          .write(contents);
+      materializedViews.invalidate(sideInput, window, contentsId);
 
       stateInternals
           .state(StateNamespaces.global(), availableWindowsTags.get(sideInput))
@@ -164,9 +215,33 @@ public class SideInputHandler implements ReadyCheckingSideInputReader {
     }
   }
 
+  /** Encodes the value of each of the provided elements of the side input. */
+  @SuppressWarnings("unchecked")
+  private static List<KV<?, byte[]>> encodeValues(
+      PCollectionView<?> sideInput, Iterable<?> elements) {
+    Coder<Object> valueCoder =
+        (Coder<Object>) ((KvCoder<?, ?>) sideInput.getCoderInternal()).getValueCoder();
+    List<KV<?, byte[]>> contents = new ArrayList<>();
+    try {
+      for (Object element : elements) {
+        KV<?, ?> kv = (KV<?, ?>) element;
+        contents.add(KV.of(kv.getKey(), CoderUtils.encodeToByteArray(valueCoder, kv.getValue())));
+      }
+    } catch (CoderException e) {
+      throw new RuntimeException(e);
+    }
+    return contents;
+  }
+
   @Nullable
   @Override
   public <T> T get(PCollectionView<T> view, BoundedWindow window) {
+    return materializedViews.getFromEncodedValues(
+        view, window, contentsId, () -> readContents(view, window));
+  }
+
+  /** Reads the contents of the side input in the provided window, with their values encoded. */
+  private Iterable<KV<?, byte[]>> readContents(PCollectionView<?> view, BoundedWindow window) {
     @SuppressWarnings("unchecked")
     Coder<BoundedWindow> windowCoder =
         (Coder<BoundedWindow>) view
@@ -183,16 +258,12 @@ public class SideInputHandler implements ReadyCheckingSideInputReader {
     // TODO: Add support for choosing which representation is contained based upon the
     // side input materialization. We currently can assume that we always have a multimap
     // materialization as that is the only supported type within the Java SDK.
-    @Nullable Iterable<KV<?, ?>> elements = (Iterable<KV<?, ?>>) state.read();
+    @Nullable Iterable<KV<?, byte[]>> elements = (Iterable<KV<?, byte[]>>) state.read();
 
     if (elements == null) {
       elements = Collections.emptyList();
     }
-
-    ViewFn<MultimapView, T> viewFn = (ViewFn<MultimapView, T>) view.getViewFn();
-    Coder<?> keyCoder = ((KvCoder<?, ?>) view.getCoderInternal()).getKeyCoder();
-    return (T)
-            viewFn.apply(InMemoryMultimapSideInputView.fromIterable(keyCoder, (Iterable) elements));
+    return elements;
   }
 
   @Override
@@ -0,0 +1,394 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.core;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.auto.value.AutoValue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import org.apache.beam.runners.core.InMemoryStateInternals.InMemoryStateBinder;
+import org.apache.beam.runners.core.SpillingStateInternals.SpilledState;
+import org.apache.beam.runners.core.StateTag.StateBinder;
+import org.apache.beam.sdk.annotations.Experimental;
+import org.apache.beam.sdk.annotations.Experimental.Kind;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.state.BagState;
+import org.apache.beam.sdk.state.MapState;
+import org.apache.beam.sdk.state.SetState;
+import org.apache.beam.sdk.state.State;
+import org.apache.beam.sdk.state.StateContext;
+import org.apache.beam.sdk.util.CoderUtils;
+
+/**
+ * A {@link StateInternalsFactory} that keeps a bounded amount of state in memory and spills the
+ * rest to an append-only log on local disk.
+ *
+ * <p>State is spilled and restored a namespace at a time. Each namespace held in memory is
+ * weighed by a {@link StateWeigher}, and when the total weight exceeds the configured budget the
+ * least recently accessed namespaces are encoded with the coders of their state tags and written
+ * to the log. A spilled namespace is read back, and its record released, the next time any of its
+ * state is accessed. The log is compacted once most of it consists of released records.
+ *
+ * <p>Spilling detaches state cells from their {@link StateInternals}, so it only happens in
+ * {@link #spillIfNecessary()}, which runners must call at points where no {@link State} or {@link
+ * StateInternals} obtained from this backend is still in use, such as between bundles.
+ */
+@Experimental(Kind.STATE)
+public class SpillingStateBackend<K> implements StateInternalsFactory<K>, Closeable {
+  /** The log is only compacted once it contains at least this many bytes of released records. */
+  private static final long MIN_COMPACTION_BYTES = 1L << 20;
+
+  /**
+   * The default {@link StateWeigher}, which weighs collection state by the number of elements it
+   * contains, and all other state as one element.
+   */
+  public static final StateWeigher ELEMENT_COUNT_WEIGHER = new ElementCountWeigher();
+
+  private final Coder<K> keyCoder;
+  private final File directory;
+  private final long maxResidentWeight;
+  private final StateWeigher weigher;
+  private final Function<StateContext<?>, StateBinder> stateBinders;
+
+  private final Map<ByteBuffer, SpillingStateInternals<K>> internals = new HashMap<>();
+  /** The namespaces held in memory, in the order in which they were least recently accessed. */
+  private final LinkedHashMap<SpillKey, Resident> resident = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<SpillKey, SpillLocation> spilled = new HashMap<>();
+  /** The namespaces of each key that are held in memory or spilled. */
+  private final Map<ByteBuffer, Set<String>> namespacesByKey = new HashMap<>();
+  private StateSpillLog log;
+  private long residentWeight = 0L;
+
+  /**
+   * Creates a {@link SpillingStateBackend} that holds state in memory in {@link
+   * InMemoryStateInternals} state cells, weighed with {@link #ELEMENT_COUNT_WEIGHER}.
+   */
+  public static <K> SpillingStateBackend<K> create(
+      Coder<K> keyCoder, File directory, long maxResidentWeight) throws IOException {
+    return create(
+        keyCoder, directory, maxResidentWeight, ELEMENT_COUNT_WEIGHER, InMemoryStateBinder::new);
+  }
+
+  /**
+   * Creates a {@link SpillingStateBackend} that holds state in memory in the state cells created
+   * by the provided binders, which must be {@link InMemoryStateInternals.InMemoryState}, and spills
+   * to a log in the provided directory whenever the total weight of the state held in memory
+   * exceeds {@code maxResidentWeight}.
+   */
+  public static <K> SpillingStateBackend<K> create(
+      Coder<K> keyCoder,
+      File directory,
+      long maxResidentWeight,
+      StateWeigher weigher,
+      Function<StateContext<?>, StateBinder> stateBinders)
+      throws IOException {
+    checkArgument(
+        maxResidentWeight >= 0L,
+        "%s maxResidentWeight must be nonnegative, got %s",
+        SpillingStateBackend.class.getSimpleName(),
+        maxResidentWeight);
+    return new SpillingStateBackend<>(
+        keyCoder, directory, maxResidentWeight, weigher, stateBinders);
+  }
+
+  private SpillingStateBackend(
+      Coder<K> keyCoder,
+      File directory,
+      long maxResidentWeight,
+      StateWeigher weigher,
+      Function<StateContext<?>, StateBinder> stateBinders)
+      throws IOException {
+    this.keyCoder = keyCoder;
+    this.directory = directory;
+    this.maxResidentWeight = maxResidentWeight;
+    this.weigher = weigher;
+    this.stateBinders = stateBinders;
+    this.log = StateSpillLog.create(directory);
+  }
+
+  @Override
+  public synchronized SpillingStateInternals<K> stateInternalsForKey(K key) {
+    ByteBuffer encodedKey = encodeKey(key);
+    SpillingStateInternals<K> keyInternals = internals.get(encodedKey);
+    if (keyInternals == null) {
+      keyInternals = new SpillingStateInternals<>(key, encodedKey, this, stateBinders);
+      internals.put(encodedKey, keyInternals);
+    }
+    return keyInternals;
+  }
+
+  /**
+   * Discards all of the state of the key, whether it is held in memory or spilled.
+   *
+   * <p>Like {@link #spillIfNecessary()}, must only be called when no {@link State} or {@link
+   * StateInternals} obtained from this backend for the key is in use.
+   */
+  public synchronized void clear(K key) {
+    ByteBuffer encodedKey = encodeKey(key);
+    internals.remove(encodedKey);
+    Set<String> namespaces = namespacesByKey.remove(encodedKey);
+    if (namespaces == null) {
+      return;
+    }
+    for (String namespace : namespaces) {
+      SpillKey spillKey = SpillKey.of(encodedKey, namespace);
+      Resident entry = resident.remove(spillKey);
+      if (entry != null) {
+        residentWeight -= entry.weight;
+      }
+      SpillLocation location = spilled.remove(spillKey);
+      if (location != null) {
+        log.release(location.getLength());
+      }
+    }
+  }
+
+  private ByteBuffer encodeKey(K key) {
+    try {
+      return ByteBuffer.wrap(CoderUtils.encodeToByteArray(keyCoder, key));
+    } catch (CoderException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Records an access to the namespace of the provided {@link SpillingStateInternals}, restoring
+   * its state from the log if it was spilled.
+   */
+  synchronized void access(SpillingStateInternals<K> keyInternals, StateNamespace namespace) {
+    SpillKey spillKey = SpillKey.of(keyInternals.getEncodedKey(), namespace.stringKey());
+    Resident entry = resident.get(spillKey);
+    if (entry == null) {
+      entry = new Resident(keyInternals, namespace);
+      resident.put(spillKey, entry);
+      namespacesByKey
+          .computeIfAbsent(spillKey.getEncodedKey(), encodedKey -> new HashSet<>())
+          .add(spillKey.getNamespace());
+      SpillLocation location = spilled.remove(spillKey);
+      if (location != null) {
+        try {
+          keyInternals.restore(
+              namespace, decodeRecord(log.read(location.getOffset(), location.getLength())));
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+        log.release(location.getLength());
+      }
+    }
+    // Any access may modify the state, so the namespace must be weighed again before spilling.
+    entry.dirty = true;
+  }
+
+  /**
+   * Spills the least recently accessed namespaces to disk until the weight of the state held in
+   * memory is within the budget of this backend.
+   *
+   * <p>Must only be called when no {@link State} or {@link StateInternals} obtained from this
+   * backend is in use; both must be obtained again afterwards.
+   */
+  public synchronized void spillIfNecessary() throws IOException {
+    Iterator<Resident> entries = resident.values().iterator();
+    while (entries.hasNext()) {
+      Resident entry = entries.next();
+      if (entry.dirty) {
+        residentWeight -= entry.weight;
+        if (entry.internals.isEmpty(entry.namespace)) {
+          entry.internals.clearNamespace(entry.namespace);
+          entries.remove();
+          removeFromIndex(entry.internals.getEncodedKey(), entry.namespace.stringKey());
+          continue;
+        }
+        entry.weight = entry.internals.weigh(entry.namespace, weigher);
+        residentWeight += entry.weight;
+        entry.dirty = false;
+      }
+    }
+
+    entries = resident.values().iterator();
+    while (residentWeight > maxResidentWeight && entries.hasNext()) {
+      Resident entry = entries.next();
+      byte[] record = encodeRecord(entry.internals.spill(entry.namespace, weigher));
+      long offset = log.append(record);
+      spilled.put(
+          SpillKey.of(entry.internals.getEncodedKey(), entry.namespace.stringKey()),
+          SpillLocation.of(offset, record.length));
+      residentWeight -= entry.weight;
+      entries.remove();
+    }
+
+    Iterator<SpillingStateInternals<K>> keys = internals.values().iterator();
+    while (keys.hasNext()) {
+      if (keys.next().isEmpty()) {
+        keys.remove();
+      }
+    }
+
+    long released = log.getLength() - log.getLiveBytes();
+    if (released > Math.max(MIN_COMPACTION_BYTES, log.getLiveBytes())) {
+      compact();
+    }
+  }
+
+  private void removeFromIndex(ByteBuffer encodedKey, String namespace) {
+    Set<String> namespaces = namespacesByKey.get(encodedKey);
+    if (namespaces != null && namespaces.remove(namespace) && namespaces.isEmpty()) {
+      namespacesByKey.remove(encodedKey);
+    }
+  }
+
+  /** Replaces the log with one that contains only the records that have not been released. */
+  private void compact() throws IOException {
+    StateSpillLog compacted = StateSpillLog.create(directory);
+    try {
+      for (Map.Entry<SpillKey, SpillLocation> location : spilled.entrySet()) {
+        byte[] record =
+            log.read(location.getValue().getOffset(), location.getValue().getLength());
+        location.setValue(SpillLocation.of(compacted.append(record), record.length));
+      }
+    } catch (IOException e) {
+      compacted.close();
+      throw e;
+    }
+    StateSpillLog previous = log;
+    log = compacted;
+    previous.close();
+  }
+
+  /** Returns the total weight of the state held in memory as of the last spill. */
+  synchronized long getResidentWeight() {
+    return residentWeight;
+  }
+
+  /** Returns the number of namespaces that are spilled to disk. */
+  synchronized int getSpilledNamespaceCount() {
+    return spilled.size();
+  }
+
+  /** Closes this backend and deletes its log. All of the state that it held is discarded. */
+  @Override
+  public synchronized void close() throws IOException {
+    internals.clear();
+    resident.clear();
+    spilled.clear();
+    namespacesByKey.clear();
+    log.close();
+  }
+
+  private static byte[] encodeRecord(Map<String, SpilledState> cells) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(cells.size());
+    for (Map.Entry<String, SpilledState> cell : cells.entrySet()) {
+      out.writeUTF(cell.getKey());
+      out.writeLong(cell.getValue().weight);
+      out.writeInt(cell.getValue().encoded.length);
+      out.write(cell.getValue().encoded);
+    }
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  private static Map<String, SpilledState> decodeRecord(byte[] record) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+    int count = in.readInt();
+    Map<String, SpilledState> cells = new HashMap<>(count * 2);
+    for (int i = 0; i < count; i++) {
+      String id = in.readUTF();
+      long weight = in.readLong();
+      byte[] encoded = new byte[in.readInt()];
+      in.readFully(encoded);
+      cells.put(id, new SpilledState(encoded, weight));
+    }
+    return cells;
+  }
+
+  /** A namespace of a key that is held in memory. */
+  private class Resident {
+    private final SpillingStateInternals<K> internals;
+    private final StateNamespace namespace;
+    private long weight = 0L;
+    private boolean dirty = true;
+
+    private Resident(SpillingStateInternals<K> internals, StateNamespace namespace) {
+      this.internals = internals;
+      this.namespace = namespace;
+    }
+  }
+
+  /** Identifies a namespace of a key. */
+  @AutoValue
+  abstract static class SpillKey {
+    static SpillKey of(ByteBuffer encodedKey, String namespace) {
+      return new AutoValue_SpillingStateBackend_SpillKey(encodedKey, namespace);
+    }
+
+    abstract ByteBuffer getEncodedKey();
+
+    abstract String getNamespace();
+  }
+
+  /** The position of a spilled record in the log. */
+  @AutoValue
+  abstract static class SpillLocation {
+    static SpillLocation of(long offset, int length) {
+      return new AutoValue_SpillingStateBackend_SpillLocation(offset, length);
+    }
+
+    abstract long getOffset();
+
+    abstract int getLength();
+  }
+
+  private static class ElementCountWeigher implements StateWeigher {
+    @Override
+    public long weigh(StateTag<?> tag, State state) {
+      long weight = 1L;
+      if (state instanceof BagState) {
+        weight = count(((BagState<?>) state).read());
+      } else if (state instanceof SetState) {
+        weight = count(((SetState<?>) state).read());
+      } else if (state instanceof MapState) {
+        weight = count(((MapState<?, ?>) state).keys().read());
+      }
+      return Math.max(weight, 1L);
+    }
+
+    private static long count(Iterable<?> elements) {
+      long count = 0L;
+      for (Object ignored : elements) {
+        count++;
+      }
+      return count;
+    }
+  }
+}
@@ -0,0 +1,412 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.core;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import org.apache.beam.runners.core.InMemoryStateInternals.InMemoryState;
+import org.apache.beam.runners.core.StateTag.StateBinder;
+import org.apache.beam.sdk.annotations.Experimental;
+import org.apache.beam.sdk.annotations.Experimental.Kind;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.InstantCoder;
+import org.apache.beam.sdk.coders.IterableCoder;
+import org.apache.beam.sdk.coders.MapCoder;
+import org.apache.beam.sdk.coders.NullableCoder;
+import org.apache.beam.sdk.state.BagState;
+import org.apache.beam.sdk.state.CombiningState;
+import org.apache.beam.sdk.state.MapState;
+import org.apache.beam.sdk.state.SetState;
+import org.apache.beam.sdk.state.State;
+import org.apache.beam.sdk.state.StateContext;
+import org.apache.beam.sdk.state.StateContexts;
+import org.apache.beam.sdk.state.ValueState;
+import org.apache.beam.sdk.state.WatermarkHoldState;
+import org.apache.beam.sdk.transforms.Combine.CombineFn;
+import org.apache.beam.sdk.transforms.CombineWithContext.CombineFnWithContext;
+import org.apache.beam.sdk.transforms.windowing.TimestampCombiner;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.joda.time.Instant;
+
+/**
+ * {@link StateInternals} for a single key of a {@link SpillingStateBackend}. State is held in
+ * memory, in state cells created by the binders of the backend, until the backend spills the
+ * namespace containing it. Spilled state is restored when a namespace is next accessed.
+ *
+ * <p>Instances are obtained from {@link SpillingStateBackend#stateInternalsForKey}, and neither
+ * they nor the state they return may be used after a call to {@link
+ * SpillingStateBackend#spillIfNecessary()}.
+ */
+@Experimental(Kind.STATE)
+public class SpillingStateInternals<K> implements StateInternals {
+  private final @Nullable K key;
+  private final ByteBuffer encodedKey;
+  private final SpillingStateBackend<K> backend;
+  private final Function<StateContext<?>, StateBinder> stateBinders;
+
+  /** State that has been restored from the spill log but not yet bound, by tag id. */
+  private final Map<StateNamespace, Map<String, SpilledState>> restored = new HashMap<>();
+
+  private final StateTable table = new StateTable() {
+    @Override
+    protected StateBinder binderForNamespace(StateNamespace namespace, StateContext<?> c) {
+      StateBinder binder = stateBinders.apply(c);
+      Map<String, SpilledState> spilled = restored.get(namespace);
+      return spilled == null ? binder : new RestoringBinder(binder, spilled);
+    }
+  };
+
+  SpillingStateInternals(
+      @Nullable K key,
+      ByteBuffer encodedKey,
+      SpillingStateBackend<K> backend,
+      Function<StateContext<?>, StateBinder> stateBinders) {
+    this.key = key;
+    this.encodedKey = encodedKey;
+    this.backend = backend;
+    this.stateBinders = stateBinders;
+  }
+
+  @Override
+  public @Nullable K getKey() {
+    return key;
+  }
+
+  @Override
+  public <T extends State> T state(StateNamespace namespace, StateTag<T> address) {
+    return state(namespace, address, StateContexts.nullContext());
+  }
+
+  @Override
+  public <T extends State> T state(
+      StateNamespace namespace, StateTag<T> address, StateContext<?> c) {
+    backend.access(this, namespace);
+    T state = table.get(namespace, address, c);
+    Map<String, SpilledState> spilled = restored.get(namespace);
+    if (spilled != null && spilled.isEmpty()) {
+      restored.remove(namespace);
+    }
+    return state;
+  }
+
+  ByteBuffer getEncodedKey() {
+    return encodedKey;
+  }
+
+  /** Makes the spilled state of the namespace available to be bound when it is next accessed. */
+  void restore(StateNamespace namespace, Map<String, SpilledState> spilled) {
+    restored.put(namespace, spilled);
+  }
+
+  /**
+   * Returns the encoded state of the namespace by tag id, omitting cleared state, and removes the
+   * namespace from memory. Each cell is weighed with the provided {@link StateWeigher} as it is
+   * encoded.
+   */
+  @SuppressWarnings({"unchecked", "deprecation"})
+  Map<String, SpilledState> spill(StateNamespace namespace, StateWeigher weigher) {
+    Map<String, SpilledState> spilled = new HashMap<>();
+    Map<String, SpilledState> unbound = restored.remove(namespace);
+    if (unbound != null) {
+      spilled.putAll(unbound);
+    }
+    for (Map.Entry<StateTag, State> cell : table.getTagsInUse(namespace).entrySet()) {
+      if (!isCleared(cell.getValue())) {
+        EncodingBinder encoder = new EncodingBinder(cell.getValue());
+        cell.getKey().bind(encoder);
+        spilled.put(
+            cell.getKey().getId(),
+            new SpilledState(encoder.encoded, weigher.weigh(cell.getKey(), cell.getValue())));
+      }
+    }
+    table.clearNamespace(namespace);
+    return spilled;
+  }
+
+  /** Returns whether all of the state in the namespace is cleared. */
+  boolean isEmpty(StateNamespace namespace) {
+    if (restored.containsKey(namespace)) {
+      return false;
+    }
+    for (State state : table.getTagsInUse(namespace).values()) {
+      if (!isCleared(state)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Removes all of the state in the namespace. */
+  void clearNamespace(StateNamespace namespace) {
+    restored.remove(namespace);
+    table.clearNamespace(namespace);
+  }
+
+  /** Returns whether this holds no state in memory. */
+  boolean isEmpty() {
+    return restored.isEmpty() && table.getNamespacesInUse().isEmpty();
+  }
+
+  /**
+   * Returns the weight of the state of the namespace that is held in memory. State that has been
+   * restored but not yet bound has the weight it had when it was spilled.
+   */
+  @SuppressWarnings("unchecked")
+  long weigh(StateNamespace namespace, StateWeigher weigher) {
+    long weight = 0L;
+    Map<String, SpilledState> unbound = restored.get(namespace);
+    if (unbound != null) {
+      for (SpilledState state : unbound.values()) {
+        weight += state.weight;
+      }
+    }
+    for (Map.Entry<StateTag, State> cell : table.getTagsInUse(namespace).entrySet()) {
+      weight += weigher.weigh(cell.getKey(), cell.getValue());
+    }
+    return weight;
+  }
+
+  /** The encoding of a spilled state cell, and its weight when it was spilled. */
+  static final class SpilledState {
+    final byte[] encoded;
+    final long weight;
+
+    SpilledState(byte[] encoded, long weight) {
+      this.encoded = encoded;
+      this.weight = weight;
+    }
+  }
+
+  private static boolean isCleared(State state) {
+    return state instanceof InMemoryState && ((InMemoryState<?>) state).isCleared();
+  }
+
+  private static <T> byte[] encode(Coder<T> coder, T value) {
+    try {
+      return CoderUtils.encodeToByteArray(coder, value);
+    } catch (CoderException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static <T> T decode(Coder<T> coder, byte[] encoded) {
+    try {
+      return CoderUtils.decodeFromByteArray(coder, encoded);
+    } catch (CoderException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * A {@link StateBinder} that encodes an existing state cell with the coders it is bound with,
+   * and returns the existing cell.
+   */
+  @SuppressWarnings("unchecked")
+  private static class EncodingBinder implements StateBinder {
+    private final State state;
+    private byte[] encoded;
+
+    private EncodingBinder(State state) {
+      this.state = state;
+    }
+
+    @Override
+    public <T> ValueState<T> bindValue(StateTag<ValueState<T>> spec, Coder<T> coder) {
+      ValueState<T> value = (ValueState<T>) state;
+      encoded = encode(NullableCoder.of(coder), value.read());
+      return value;
+    }
+
+    @Override
+    public <T> BagState<T> bindBag(StateTag<BagState<T>> spec, Coder<T> elemCoder) {
+      BagState<T> bag = (BagState<T>) state;
+      encoded = encode(IterableCoder.of(elemCoder), bag.read());
+      return bag;
+    }
+
+    @Override
+    public <T> SetState<T> bindSet(StateTag<SetState<T>> spec, Coder<T> elemCoder) {
+      SetState<T> set = (SetState<T>) state;
+      encoded = encode(IterableCoder.of(elemCoder), set.read());
+      return set;
+    }
+
+    @Override
+    public <KeyT, ValueT> MapState<KeyT, ValueT> bindMap(
+        StateTag<MapState<KeyT, ValueT>> spec,
+        Coder<KeyT> mapKeyCoder,
+        Coder<ValueT> mapValueCoder) {
+      MapState<KeyT, ValueT> map = (MapState<KeyT, ValueT>) state;
+      Map<KeyT, ValueT> contents = new HashMap<>();
+      for (Map.Entry<KeyT, ValueT> entry : map.entries().read()) {
+        contents.put(entry.getKey(), entry.getValue());
+      }
+      encoded = encode(MapCoder.of(mapKeyCoder, mapValueCoder), contents);
+      return map;
+    }
+
+    @Override
+    public <InputT, AccumT, OutputT> CombiningState<InputT, AccumT, OutputT> bindCombiningValue(
+        StateTag<CombiningState<InputT, AccumT, OutputT>> spec,
+        Coder<AccumT> accumCoder,
+        CombineFn<InputT, AccumT, OutputT> combineFn) {
+      CombiningState<InputT, AccumT, OutputT> combining =
+          (CombiningState<InputT, AccumT, OutputT>) state;
+      encoded = encode(accumCoder, combining.getAccum());
+      return combining;
+    }
+
+    @Override
+    public <InputT, AccumT, OutputT>
+        CombiningState<InputT, AccumT, OutputT> bindCombiningValueWithContext(
+            StateTag<CombiningState<InputT, AccumT, OutputT>> spec,
+            Coder<AccumT> accumCoder,
+            CombineFnWithContext<InputT, AccumT, OutputT> combineFn) {
+      CombiningState<InputT, AccumT, OutputT> combining =
+          (CombiningState<InputT, AccumT, OutputT>) state;
+      encoded = encode(accumCoder, combining.getAccum());
+      return combining;
+    }
+
+    @Override
+    public WatermarkHoldState bindWatermark(
+        StateTag<WatermarkHoldState> spec, TimestampCombiner timestampCombiner) {
+      WatermarkHoldState hold = (WatermarkHoldState) state;
+      encoded = encode(NullableCoder.of(InstantCoder.of()), hold.read());
+      return hold;
+    }
+  }
+
+  /**
+   * A {@link StateBinder} that binds new state cells with another binder, and fills them with the
+   * spilled state of their tag if there is any.
+   */
+  private static class RestoringBinder implements StateBinder {
+    private final StateBinder delegate;
+    private final Map<String, SpilledState> spilled;
+
+    private RestoringBinder(StateBinder delegate, Map<String, SpilledState> spilled) {
+      this.delegate = delegate;
+      this.spilled = spilled;
+    }
+
+    /** Returns the encoded spilled state of the tag, if any, which is then no longer unbound. */
+    @Nullable
+    private byte[] take(StateTag<?> spec) {
+      SpilledState state = spilled.remove(spec.getId());
+      return state == null ? null : state.encoded;
+    }
+
+    @Override
+    public <T> ValueState<T> bindValue(StateTag<ValueState<T>> spec, Coder<T> coder) {
+      ValueState<T> value = delegate.bindValue(spec, coder);
+      byte[] encoded = take(spec);
+      if (encoded != null) {
+        value.write(decode(NullableCoder.of(coder), encoded));
+      }
+      return value;
+    }
+
+    @Override
+    public <T> BagState<T> bindBag(StateTag<BagState<T>> spec, Coder<T> elemCoder) {
+      BagState<T> bag = delegate.bindBag(spec, elemCoder);
+      byte[] encoded = take(spec);
+      if (encoded != null) {
+        for (T element : decode(IterableCoder.of(elemCoder), encoded)) {
+          bag.add(element);
+        }
+      }
+      return bag;
+    }
+
+    @Override
+    public <T> SetState<T> bindSet(StateTag<SetState<T>> spec, Coder<T> elemCoder) {
+      SetState<T> set = delegate.bindSet(spec, elemCoder);
+      byte[] encoded = take(spec);
+      if (encoded != null) {
+        for (T element : decode(IterableCoder.of(elemCoder), encoded)) {
+          set.add(element);
+        }
+      }
+      return set;
+    }
+
+    @Override
+    public <KeyT, ValueT> MapState<KeyT, ValueT> bindMap(
+        StateTag<MapState<KeyT, ValueT>> spec,
+        Coder<KeyT> mapKeyCoder,
+        Coder<ValueT> mapValueCoder) {
+      MapState<KeyT, ValueT> map = delegate.bindMap(spec, mapKeyCoder, mapValueCoder);
+      byte[] encoded = take(spec);
+      if (encoded != null) {
+        for (Map.Entry<KeyT, ValueT> entry :
+            decode(MapCoder.of(mapKeyCoder, mapValueCoder), encoded).entrySet()) {
+          map.put(entry.getKey(), entry.getValue());
+        }
+      }
+      return map;
+    }
+
+    @Override
+    public <InputT, AccumT, OutputT> CombiningState<InputT, AccumT, OutputT> bindCombiningValue(
+        StateTag<CombiningState<InputT, AccumT, OutputT>> spec,
+        Coder<AccumT> accumCoder,
+        CombineFn<InputT, AccumT, OutputT> combineFn) {
+      CombiningState<InputT, AccumT, OutputT> combining =
+          delegate.bindCombiningValue(spec, accumCoder, combineFn);
+      byte[] encoded = take(spec);
+      if (encoded != null) {
+        combining.addAccum(decode(accumCoder, encoded));
+      }
+      return combining;
+    }
+
+    @Override
+    public <InputT, AccumT, OutputT>
+        CombiningState<InputT, AccumT, OutputT> bindCombiningValueWithContext(
+            StateTag<CombiningState<InputT, AccumT, OutputT>> spec,
+            Coder<AccumT> accumCoder,
+            CombineFnWithContext<InputT, AccumT, OutputT> combineFn) {
+      CombiningState<InputT, AccumT, OutputT> combining =
+          delegate.bindCombiningValueWithContext(spec, accumCoder, combineFn);
+      byte[] encoded = take(spec);
+      if (encoded != null) {
+        combining.addAccum(decode(accumCoder, encoded));
+      }
+      return combining;
+    }
+
+    @Override
+    public WatermarkHoldState bindWatermark(
+        StateTag<WatermarkHoldState> spec, TimestampCombiner timestampCombiner) {
+      WatermarkHoldState hold = delegate.bindWatermark(spec, timestampCombiner);
+      byte[] encoded = take(spec);
+      if (encoded != null) {
+        Instant spilledHold = decode(NullableCoder.of(InstantCoder.of()), encoded);
+        if (spilledHold != null) {
+          hold.add(spilledHold);
+        }
+      }
+      return hold;
+    }
+  }
+}
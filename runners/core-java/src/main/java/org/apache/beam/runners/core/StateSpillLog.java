@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * An append-only file of spilled state records. Records are never modified once written. Records
+ * that are no longer needed are released, and the log should be replaced by a compacted copy once
+ * most of it has been released.
+ */
+class StateSpillLog implements Closeable {
+  private final File file;
+  private final RandomAccessFile data;
+  private long length = 0L;
+  private long liveBytes = 0L;
+
+  /** Creates an empty log in a new file in the provided directory. */
+  static StateSpillLog create(File directory) throws IOException {
+    File file = File.createTempFile("beam-state-", ".log", directory);
+    return new StateSpillLog(file);
+  }
+
+  private StateSpillLog(File file) throws IOException {
+    this.file = file;
+    this.data = new RandomAccessFile(file, "rw");
+  }
+
+  /** Appends the record to the log, and returns the offset at which it was written. */
+  long append(byte[] record) throws IOException {
+    long offset = length;
+    data.seek(offset);
+    data.write(record);
+    length += record.length;
+    liveBytes += record.length;
+    return offset;
+  }
+
+  /** Reads the record of the provided length at the provided offset. */
+  byte[] read(long offset, int recordLength) throws IOException {
+    byte[] record = new byte[recordLength];
+    data.seek(offset);
+    data.readFully(record);
+    return record;
+  }
+
+  /** Marks a record of the provided length as no longer needed. */
+  void release(int recordLength) {
+    liveBytes -= recordLength;
+  }
+
+  /** Returns the total size of the records that have not been released. */
+  long getLiveBytes() {
+    return liveBytes;
+  }
+
+  /** Returns the size of the log, including released records. */
+  long getLength() {
+    return length;
+  }
+
+  /** Closes and deletes the log. */
+  @Override
+  public void close() throws IOException {
+    data.close();
+    if (!file.delete() && file.exists()) {
+      throw new IOException(String.format("Unable to delete state spill log %s", file));
+    }
+  }
+}
@@ -62,7 +62,11 @@ public class DirtyState implements Serializable {
    * <p>Should be called <b>after</b> modification of the value.
    */
   public void afterModification() {
-    dirty.set(State.DIRTY);
+    // Only write if needed, so that updates from several threads don't contend for the state
+    // while it stays dirty.
+    if (dirty.get() != State.DIRTY) {
+      dirty.set(State.DIRTY);
+    }
   }
 
   /**
@@ -18,7 +18,10 @@
 
 package org.apache.beam.runners.core.metrics;
 
-import java.util.concurrent.atomic.AtomicReference;
+import java.io.Serializable;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
 import org.apache.beam.sdk.annotations.Experimental;
 import org.apache.beam.sdk.annotations.Experimental.Kind;
 import org.apache.beam.sdk.annotations.Internal;
@@ -33,13 +36,21 @@ import org.apache.beam.sdk.metrics.MetricsContainer;
  * a distribution is being reported for a specific step (rather than the distribution in the current
  * context). In that case retrieving the underlying cell and reporting directly to it avoids a step
  * of indirection.
+ *
+ * <p>Updates don't allocate and don't retry under contention, as the sum, count, minimum and
+ * maximum are each accumulated in striped cells. A snapshot taken while updates are in progress
+ * may therefore include only part of an update.
  */
 @Experimental(Kind.METRICS)
 public class DistributionCell implements Distribution, MetricCell<DistributionData> {
 
   private final DirtyState dirty = new DirtyState();
-  private final AtomicReference<DistributionData> value =
-      new AtomicReference<>(DistributionData.EMPTY);
+  private final LongAdder sum = new LongAdder();
+  private final LongAdder count = new LongAdder();
+  private final LongAccumulator min =
+      new LongAccumulator((LongBinaryOperator & Serializable) Math::min, Long.MAX_VALUE);
+  private final LongAccumulator max =
+      new LongAccumulator((LongBinaryOperator & Serializable) Math::max, Long.MIN_VALUE);
   private final MetricName name;
 
   /**
@@ -55,14 +66,18 @@ public class DistributionCell implements Distribution, MetricCell<DistributionDa
   /** Increment the distribution by the given amount. */
   @Override
   public void update(long n) {
-    update(DistributionData.singleton(n));
+    min.accumulate(n);
+    max.accumulate(n);
+    sum.add(n);
+    count.increment();
+    dirty.afterModification();
   }
 
   void update(DistributionData data) {
-    DistributionData original;
-    do {
-      original = value.get();
-    } while (!value.compareAndSet(original, original.combine(data)));
+    min.accumulate(data.min());
+    max.accumulate(data.max());
+    sum.add(data.sum());
+    count.add(data.count());
     dirty.afterModification();
   }
 
@@ -73,7 +88,7 @@ public class DistributionCell implements Distribution, MetricCell<DistributionDa
 
   @Override
   public DistributionData getCumulative() {
-    return value.get();
+    return DistributionData.create(sum.sum(), count.sum(), min.get(), max.get());
   }
 
   @Override
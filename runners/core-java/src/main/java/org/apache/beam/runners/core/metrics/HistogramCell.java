@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.core.metrics;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.function.LongBinaryOperator;
+import org.apache.beam.sdk.annotations.Experimental;
+import org.apache.beam.sdk.annotations.Experimental.Kind;
+import org.apache.beam.sdk.annotations.Internal;
+import org.apache.beam.sdk.metrics.Histogram;
+import org.apache.beam.sdk.metrics.HistogramResult;
+import org.apache.beam.sdk.metrics.MetricName;
+import org.apache.beam.sdk.metrics.MetricsContainer;
+
+/**
+ * Tracks the current value (and delta) for a Histogram metric.
+ *
+ * <p>This class generally shouldn't be used directly. The only exception is within a runner where
+ * a histogram is being reported for a specific step (rather than the histogram in the current
+ * context). In that case retrieving the underlying cell and reporting directly to it avoids a step
+ * of indirection.
+ *
+ * <p>Updates don't allocate, and only contend with concurrent updates of values in the same bucket.
+ */
+@Experimental(Kind.METRICS)
+public class HistogramCell implements Histogram, MetricCell<HistogramData> {
+
+  private final DirtyState dirty = new DirtyState();
+  private final AtomicLongArray bucketCounts = new AtomicLongArray(HistogramResult.NUM_BUCKETS);
+  private final LongAccumulator min =
+      new LongAccumulator((LongBinaryOperator & Serializable) Math::min, Long.MAX_VALUE);
+  private final LongAccumulator max =
+      new LongAccumulator((LongBinaryOperator & Serializable) Math::max, Long.MIN_VALUE);
+  private final MetricName name;
+
+  /**
+   * Generally, runners should construct instances using the methods in
+   * {@link MetricsContainerImpl}, unless they need to define their own version of
+   * {@link MetricsContainer}. These constructors are *only* public so runners can instantiate.
+   */
+  @Internal
+  public HistogramCell(MetricName name) {
+    this.name = name;
+  }
+
+  /** Add an observation to the histogram. Negative values are counted as 0. */
+  @Override
+  public void update(long value) {
+    long counted = Math.max(value, 0L);
+    bucketCounts.incrementAndGet(HistogramResult.bucketIndex(counted));
+    min.accumulate(counted);
+    max.accumulate(counted);
+    dirty.afterModification();
+  }
+
+  void update(HistogramData data) {
+    for (int i = 0; i < HistogramResult.NUM_BUCKETS; i++) {
+      long count = data.bucketCount(i);
+      if (count != 0) {
+        bucketCounts.addAndGet(i, count);
+      }
+    }
+    min.accumulate(data.min());
+    max.accumulate(data.max());
+    dirty.afterModification();
+  }
+
+  @Override
+  public DirtyState getDirty() {
+    return dirty;
+  }
+
+  @Override
+  public HistogramData getCumulative() {
+    long[] counts = new long[HistogramResult.NUM_BUCKETS];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = bucketCounts.get(i);
+    }
+    return HistogramData.create(counts, min.get(), max.get());
+  }
+
+  @Override
+  public MetricName getName() {
+    return name;
+  }
+}
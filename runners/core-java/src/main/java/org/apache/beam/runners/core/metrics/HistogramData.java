@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.core.metrics;
+
+import com.google.auto.value.AutoValue;
+import java.io.Serializable;
+import java.util.Arrays;
+import org.apache.beam.sdk.metrics.HistogramResult;
+
+/**
+ * Data describing a histogram: the number of values counted in each of the buckets of {@link
+ * HistogramResult}, and the smallest and largest value. This can be combined with other {@link
+ * HistogramData}.
+ */
+@AutoValue
+public abstract class HistogramData implements Serializable {
+
+  @SuppressWarnings("mutable")
+  abstract long[] bucketCounts();
+  public abstract long min();
+  public abstract long max();
+
+  public static final HistogramData EMPTY =
+      create(new long[HistogramResult.NUM_BUCKETS], Long.MAX_VALUE, Long.MIN_VALUE);
+
+  /**
+   * Creates {@link HistogramData} from the number of values counted in each bucket, indexed by
+   * {@link HistogramResult#bucketIndex(long)}. The counts are not copied and must not be modified
+   * afterwards.
+   */
+  static HistogramData create(long[] bucketCounts, long min, long max) {
+    return new AutoValue_HistogramData(bucketCounts, min, max);
+  }
+
+  /** Returns the number of values counted in the bucket with the provided index. */
+  public long bucketCount(int index) {
+    return bucketCounts()[index];
+  }
+
+  public HistogramData combine(HistogramData value) {
+    long[] combined = Arrays.copyOf(bucketCounts(), bucketCounts().length);
+    for (int i = 0; i < combined.length; i++) {
+      combined[i] += value.bucketCounts()[i];
+    }
+    return create(combined, Math.min(value.min(), min()), Math.max(value.max(), max()));
+  }
+
+  public HistogramResult extractResult() {
+    return HistogramResult.create(bucketCounts(), min(), max());
+  }
+}
@@ -35,7 +35,10 @@ public abstract class MetricUpdates {
 
   public static final MetricUpdates EMPTY =
       MetricUpdates.create(
-          Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+          Collections.emptyList(),
+          Collections.emptyList(),
+          Collections.emptyList(),
+          Collections.emptyList());
 
   /**
    * Representation of a single metric update.
@@ -57,7 +60,8 @@ public abstract class MetricUpdates {
   /** Returns true if there are no updates in this MetricUpdates object. */
   public boolean isEmpty() {
     return Iterables.isEmpty(counterUpdates())
-        && Iterables.isEmpty(distributionUpdates());
+        && Iterables.isEmpty(distributionUpdates())
+        && Iterables.isEmpty(histogramUpdates());
   }
 
   /** All of the counter updates. */
@@ -69,11 +73,25 @@ public abstract class MetricUpdates {
   /** All of the gauges updates. */
   public abstract Iterable<MetricUpdate<GaugeData>> gaugeUpdates();
 
-  /** Create a new {@link MetricUpdates} bundle. */
+  /** All of the histogram updates. */
+  public abstract Iterable<MetricUpdate<HistogramData>> histogramUpdates();
+
+  /** Create a new {@link MetricUpdates} bundle without histogram updates. */
   public static MetricUpdates create(
       Iterable<MetricUpdate<Long>> counterUpdates,
       Iterable<MetricUpdate<DistributionData>> distributionUpdates,
       Iterable<MetricUpdate<GaugeData>> gaugeUpdates) {
-    return new AutoValue_MetricUpdates(counterUpdates, distributionUpdates, gaugeUpdates);
+    return create(
+        counterUpdates, distributionUpdates, gaugeUpdates, Collections.emptyList());
+  }
+
+  /** Create a new {@link MetricUpdates} bundle. */
+  public static MetricUpdates create(
+      Iterable<MetricUpdate<Long>> counterUpdates,
+      Iterable<MetricUpdate<DistributionData>> distributionUpdates,
+      Iterable<MetricUpdate<GaugeData>> gaugeUpdates,
+      Iterable<MetricUpdate<HistogramData>> histogramUpdates) {
+    return new AutoValue_MetricUpdates(
+        counterUpdates, distributionUpdates, gaugeUpdates, histogramUpdates);
   }
 }
@@ -57,6 +57,9 @@ public class MetricsContainerImpl implements Serializable, MetricsContainer {
 
   private MetricsMap<MetricName, GaugeCell> gauges = new MetricsMap<>(GaugeCell::new);
 
+  private MetricsMap<MetricName, HistogramCell> histograms =
+      new MetricsMap<>(HistogramCell::new);
+
   /**
    * Create a new {@link MetricsContainerImpl} associated with the given {@code stepName}.
    */
@@ -118,6 +121,24 @@ public class MetricsContainerImpl implements Serializable, MetricsContainer {
     return gauges.tryGet(metricName);
   }
 
+  /**
+   * Return a {@code HistogramCell} named {@code metricName}. If it doesn't exist, create a
+   * {@code Metric} with the specified name.
+   */
+  @Override
+  public HistogramCell getHistogram(MetricName metricName) {
+    return histograms.get(metricName);
+  }
+
+  /**
+   * Return a {@code HistogramCell} named {@code metricName}. If it doesn't exist, return
+   * {@code null}.
+   */
+  @Nullable
+  public HistogramCell tryGetHistogram(MetricName metricName) {
+    return histograms.tryGet(metricName);
+  }
+
   private <UpdateT, CellT extends MetricCell<UpdateT>>
   ImmutableList<MetricUpdate<UpdateT>> extractUpdates(MetricsMap<MetricName, CellT> cells) {
     ImmutableList.Builder<MetricUpdate<UpdateT>> updates = ImmutableList.builder();
@@ -138,7 +159,8 @@ public class MetricsContainerImpl implements Serializable, MetricsContainer {
     return MetricUpdates.create(
         extractUpdates(counters),
         extractUpdates(distributions),
-        extractUpdates(gauges));
+        extractUpdates(gauges),
+        extractUpdates(histograms));
   }
 
   private void commitUpdates(MetricsMap<MetricName, ? extends MetricCell<?>> cells) {
@@ -155,6 +177,7 @@ public class MetricsContainerImpl implements Serializable, MetricsContainer {
     commitUpdates(counters);
     commitUpdates(distributions);
     commitUpdates(gauges);
+    commitUpdates(histograms);
   }
 
   private <UserT extends Metric, UpdateT, CellT extends MetricCell<UpdateT>>
@@ -176,7 +199,8 @@ public class MetricsContainerImpl implements Serializable, MetricsContainer {
     return MetricUpdates.create(
         extractCumulatives(counters),
         extractCumulatives(distributions),
-        extractCumulatives(gauges));
+        extractCumulatives(gauges),
+        extractCumulatives(histograms));
   }
 
   /**
@@ -186,6 +210,7 @@ public class MetricsContainerImpl implements Serializable, MetricsContainer {
     updateCounters(counters, other.counters);
     updateDistributions(distributions, other.distributions);
     updateGauges(gauges, other.gauges);
+    updateHistograms(histograms, other.histograms);
   }
 
   private void updateCounters(
@@ -211,4 +236,12 @@ public class MetricsContainerImpl implements Serializable, MetricsContainer {
       current.get(counter.getKey()).update(counter.getValue().getCumulative());
     }
   }
+
+  private void updateHistograms(
+      MetricsMap<MetricName, HistogramCell> current,
+      MetricsMap<MetricName, HistogramCell> updates) {
+    for (Map.Entry<MetricName, HistogramCell> histogram : updates.entries()) {
+      current.get(histogram.getKey()).update(histogram.getValue().getCumulative());
+    }
+  }
 }
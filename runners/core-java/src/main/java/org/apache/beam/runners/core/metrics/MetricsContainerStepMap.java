@@ -31,6 +31,7 @@ import org.apache.beam.runners.core.construction.metrics.MetricKey;
 import org.apache.beam.runners.core.metrics.MetricUpdates.MetricUpdate;
 import org.apache.beam.sdk.metrics.DistributionResult;
 import org.apache.beam.sdk.metrics.GaugeResult;
+import org.apache.beam.sdk.metrics.HistogramResult;
 import org.apache.beam.sdk.metrics.MetricName;
 import org.apache.beam.sdk.metrics.MetricQueryResults;
 import org.apache.beam.sdk.metrics.MetricResult;
@@ -53,10 +54,25 @@ public class MetricsContainerStepMap implements Serializable {
    * Returns the container for the given step name.
    */
   public MetricsContainerImpl getContainer(String stepName) {
-    if (!metricsContainers.containsKey(stepName)) {
-      metricsContainers.put(stepName, new MetricsContainerImpl(stepName));
-    }
-    return metricsContainers.get(stepName);
+    return metricsContainers.computeIfAbsent(stepName, MetricsContainerImpl::new);
+  }
+
+  /**
+   * Returns the cell of the counter with the given name in the given step. Runners that report a
+   * metric on behalf of a step can hold on to the cell and update it directly, rather than looking
+   * it up for every update.
+   */
+  public CounterCell getCounterCell(String stepName, MetricName metricName) {
+    return getContainer(stepName).getCounter(metricName);
+  }
+
+  /**
+   * Returns the cell of the distribution with the given name in the given step. Runners that report
+   * a metric on behalf of a step can hold on to the cell and update it directly, rather than looking
+   * it up for every update.
+   */
+  public DistributionCell getDistributionCell(String stepName, MetricName metricName) {
+    return getContainer(stepName).getDistribution(metricName);
   }
 
   /**
@@ -133,6 +149,8 @@ public class MetricsContainerStepMap implements Serializable {
     private final Map<MetricKey, AttemptedAndCommitted<DistributionData>> distributions =
         new HashMap<>();
     private final Map<MetricKey, AttemptedAndCommitted<GaugeData>> gauges = new HashMap<>();
+    private final Map<MetricKey, AttemptedAndCommitted<HistogramData>> histograms =
+        new HashMap<>();
     private final boolean isCommittedSupported;
 
     private MetricsContainerStepMapMetricResults(
@@ -157,6 +175,8 @@ public class MetricsContainerStepMap implements Serializable {
         mergeDistributions(distributions, cumulative.distributionUpdates(),
             attemptedDistributionUpdateFn());
         mergeGauges(gauges, cumulative.gaugeUpdates(), attemptedGaugeUpdateFn());
+        mergeHistograms(histograms, cumulative.histogramUpdates(),
+            attemptedHistogramUpdateFn());
       }
       for (MetricsContainerImpl container
           : committedMetricsContainers.getMetricsContainers().values()) {
@@ -165,6 +185,8 @@ public class MetricsContainerStepMap implements Serializable {
         mergeDistributions(distributions, cumulative.distributionUpdates(),
             committedDistributionUpdateFn());
         mergeGauges(gauges, cumulative.gaugeUpdates(), committedGaugeUpdateFn());
+        mergeHistograms(histograms, cumulative.histogramUpdates(),
+            committedHistogramUpdateFn());
       }
       this.isCommittedSupported = isCommittedSupported;
     }
@@ -203,6 +225,24 @@ public class MetricsContainerStepMap implements Serializable {
       };
     }
 
+    private Function<MetricUpdate<HistogramData>, AttemptedAndCommitted<HistogramData>>
+    attemptedHistogramUpdateFn() {
+      return input -> {
+        MetricKey key = input.getKey();
+        return new AttemptedAndCommitted<>(
+            key, input, MetricUpdate.create(key, HistogramData.EMPTY));
+      };
+    }
+
+    private Function<MetricUpdate<HistogramData>, AttemptedAndCommitted<HistogramData>>
+    committedHistogramUpdateFn() {
+      return input -> {
+        MetricKey key = input.getKey();
+        return new AttemptedAndCommitted<>(
+            key, MetricUpdate.create(key, HistogramData.EMPTY), input);
+      };
+    }
+
     private Function<MetricUpdate<Long>, AttemptedAndCommitted<Long>> attemptedCounterUpdateFn() {
       return input -> {
         MetricKey key = input.getKey();
@@ -259,6 +299,16 @@ public class MetricsContainerStepMap implements Serializable {
                 .toList();
       }
 
+      @Override
+      public Iterable<MetricResult<HistogramResult>> histograms() {
+        return
+            FluentIterable
+                .from(histograms.values())
+                .filter(matchesFilter(filter))
+                .transform(histogramUpdateToResult())
+                .toList();
+      }
+
       private Predicate<AttemptedAndCommitted<?>> matchesFilter(final MetricsFilter filter) {
         return attemptedAndCommitted ->
             MetricFiltering.matches(filter, attemptedAndCommitted.getKey());
@@ -303,6 +353,19 @@ public class MetricsContainerStepMap implements Serializable {
       };
     }
 
+    private Function<AttemptedAndCommitted<HistogramData>, MetricResult<HistogramResult>>
+    histogramUpdateToResult() {
+      return metricResult -> {
+        MetricKey key = metricResult.getKey();
+        return new AccumulatedMetricResult<>(
+            key.metricName(),
+            key.stepName(),
+            metricResult.getAttempted().getUpdate().extractResult(),
+            isCommittedSupported ? metricResult.getCommitted().getUpdate().extractResult() : null,
+            isCommittedSupported);
+      };
+    }
+
     @SuppressWarnings("ConstantConditions")
     private void mergeCounters(
         Map<MetricKey, AttemptedAndCommitted<Long>> counters,
@@ -377,6 +440,31 @@ public class MetricsContainerStepMap implements Serializable {
       }
     }
 
+    @SuppressWarnings("ConstantConditions")
+    private void mergeHistograms(
+        Map<MetricKey, AttemptedAndCommitted<HistogramData>> histograms,
+        Iterable<MetricUpdate<HistogramData>> updates,
+        Function<MetricUpdate<HistogramData>, AttemptedAndCommitted<HistogramData>>
+            updateToAttemptedAndCommittedFn) {
+      for (MetricUpdate<HistogramData> metricUpdate : updates) {
+        MetricKey key = metricUpdate.getKey();
+        AttemptedAndCommitted<HistogramData> update =
+            updateToAttemptedAndCommittedFn.apply(metricUpdate);
+        if (histograms.containsKey(key)) {
+          AttemptedAndCommitted<HistogramData> current = histograms.get(key);
+          update = new AttemptedAndCommitted<>(
+              key,
+              MetricUpdate.create(
+                  key,
+                  update.getAttempted().getUpdate().combine(current.getAttempted().getUpdate())),
+              MetricUpdate.create(
+                  key,
+                  update.getCommitted().getUpdate().combine(current.getCommitted().getUpdate())));
+        }
+        histograms.put(key, update);
+      }
+    }
+
     /**
      * Accumulated implementation of {@link MetricResult}.
      */
@@ -62,7 +62,7 @@ private static final StateTag<CombiningState<Long, long[], Long>>
 
   @Override
   public void onElement(OnElementContext c) throws Exception {
-    c.state().access(ELEMENTS_IN_PANE_TAG).add(1L);
+    c.state().access(ELEMENTS_IN_PANE_TAG).add(c.elementCount());
   }
 
   @Override
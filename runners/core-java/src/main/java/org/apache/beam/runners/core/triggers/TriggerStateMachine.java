@@ -220,6 +220,13 @@ public abstract class TriggerStateMachine implements Serializable {
     /** The event timestamp of the element currently being processed. */
     public abstract Instant eventTimestamp();
 
+    /**
+     * The number of elements incorporated into the window by this call to {@link #onElement}.
+     * Elements that arrive in the same window within a bundle may be delivered together, in which
+     * case {@link #eventTimestamp} is the timestamp of the first of them.
+     */
+    public abstract long elementCount();
+
     /**
      * Sets a timer to fire when the watermark or processing time is beyond the given timestamp.
      * Timers are not guaranteed to fire immediately, but will be delivered at some time afterwards.
@@ -276,7 +283,9 @@ public abstract class TriggerStateMachine implements Serializable {
 
 
   /**
-   * Called every time an element is incorporated into a window.
+   * Called every time elements are incorporated into a window. A single call may represent
+   * several elements, as reported by {@link OnElementContext#elementCount()}; triggers that count
+   * elements must use it rather than counting calls.
    */
   public abstract void onElement(OnElementContext c) throws Exception;
 
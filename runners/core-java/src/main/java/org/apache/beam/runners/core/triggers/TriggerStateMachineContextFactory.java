@@ -68,7 +68,18 @@ public class TriggerStateMachineContextFactory<W extends BoundedWindow> {
   public TriggerStateMachine.OnElementContext createOnElementContext(
       W window, Timers timers, Instant elementTimestamp,
       ExecutableTriggerStateMachine rootTrigger, FinishedTriggers finishedSet) {
-    return new OnElementContextImpl(window, timers, rootTrigger, finishedSet, elementTimestamp);
+    return createOnElementContext(window, timers, elementTimestamp, 1L, rootTrigger, finishedSet);
+  }
+
+  /**
+   * Creates an {@link TriggerStateMachine.OnElementContext} for {@code elementCount} elements
+   * that arrived in the same window, the first of which has the provided timestamp.
+   */
+  public TriggerStateMachine.OnElementContext createOnElementContext(
+      W window, Timers timers, Instant elementTimestamp, long elementCount,
+      ExecutableTriggerStateMachine rootTrigger, FinishedTriggers finishedSet) {
+    return new OnElementContextImpl(
+        window, timers, rootTrigger, finishedSet, elementTimestamp, elementCount);
   }
 
   public TriggerStateMachine.OnMergeContext createOnMergeContext(W window, Timers timers,
@@ -358,19 +369,22 @@ public class TriggerStateMachineContextFactory<W extends BoundedWindow> {
     private final Timers timers;
     private final TriggerInfoImpl triggerInfo;
     private final Instant eventTimestamp;
+    private final long elementCount;
 
     private OnElementContextImpl(
         W window,
         Timers timers,
         ExecutableTriggerStateMachine trigger,
         FinishedTriggers finishedSet,
-        Instant eventTimestamp) {
+        Instant eventTimestamp,
+        long elementCount) {
       trigger.getSpec().super();
       this.window = window;
       this.state = new StateAccessorImpl(window, trigger);
       this.timers = new TriggerTimers(window, timers);
       this.triggerInfo = new TriggerInfoImpl(trigger, finishedSet, this);
       this.eventTimestamp = eventTimestamp;
+      this.elementCount = elementCount;
     }
 
 
@@ -379,10 +393,15 @@ public class TriggerStateMachineContextFactory<W extends BoundedWindow> {
       return eventTimestamp;
     }
 
+    @Override
+    public long elementCount() {
+      return elementCount;
+    }
+
     @Override
     public TriggerStateMachine.OnElementContext forTrigger(ExecutableTriggerStateMachine trigger) {
       return new OnElementContextImpl(
-          window, timers, trigger, triggerInfo.finishedSet, eventTimestamp);
+          window, timers, trigger, triggerInfo.finishedSet, eventTimestamp, elementCount);
     }
 
     @Override
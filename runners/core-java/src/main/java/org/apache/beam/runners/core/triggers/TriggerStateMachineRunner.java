@@ -128,11 +128,22 @@ public class TriggerStateMachineRunner<W extends BoundedWindow> {
    */
   public void processValue(W window, Instant timestamp, Timers timers, StateAccessor<?> state)
       throws Exception {
+    processValues(window, timestamp, 1L, timers, state);
+  }
+
+  /**
+   * Run the trigger logic to deal with {@code elementCount} new values in the same window, the
+   * first of which has the provided timestamp. The finished bits are read and persisted once for
+   * all of the values.
+   */
+  public void processValues(
+      W window, Instant timestamp, long elementCount, Timers timers, StateAccessor<?> state)
+      throws Exception {
     // Clone so that we can detect changes and so that changes here don't pollute merging.
     FinishedTriggersBitSet finishedSet =
         readFinishedBits(state.access(FINISHED_BITS_TAG)).copy();
     TriggerStateMachine.OnElementContext triggerContext = contextFactory.createOnElementContext(
-        window, timers, timestamp, rootTrigger, finishedSet);
+        window, timers, timestamp, elementCount, rootTrigger, finishedSet);
     rootTrigger.invokeOnElement(triggerContext);
     persistFinishedSet(state, finishedSet);
   }
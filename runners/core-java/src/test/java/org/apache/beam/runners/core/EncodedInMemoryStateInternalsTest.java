@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.core;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.emptyIterable;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.collect.Iterables;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.beam.runners.core.EncodedInMemoryStateInternals.EncodedBag;
+import org.apache.beam.runners.core.EncodedInMemoryStateInternals.EncodedCombiningState;
+import org.apache.beam.runners.core.EncodedInMemoryStateInternals.EncodedValue;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.state.BagState;
+import org.apache.beam.sdk.state.CombiningState;
+import org.apache.beam.sdk.state.ValueState;
+import org.apache.beam.sdk.transforms.Sum;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.Suite;
+
+/**
+ * Tests for {@link EncodedInMemoryStateInternals}. This is based on {@link StateInternalsTest}.
+ */
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+    EncodedInMemoryStateInternalsTest.StandardStateInternalsTests.class,
+    EncodedInMemoryStateInternalsTest.OtherTests.class
+})
+public class EncodedInMemoryStateInternalsTest {
+
+  /**
+   * A standard StateInternals test.
+   */
+  @RunWith(JUnit4.class)
+  public static class StandardStateInternalsTests extends StateInternalsTest {
+    @Override
+    protected StateInternals createStateInternals() {
+      return EncodedInMemoryStateInternals.forKey(
+          "dummyKey", DecodedStateCache.withMaximumWeight(1 << 20));
+    }
+  }
+
+  /**
+   * A specific test of EncodedInMemoryStateInternals.
+   */
+  @RunWith(JUnit4.class)
+  public static class OtherTests {
+
+    private static final StateNamespace NAMESPACE = new StateNamespaceForTest("ns");
+
+    private static final StateTag<ValueState<String>> STRING_VALUE_ADDR =
+        StateTags.value("stringValue", StringUtf8Coder.of());
+    private static final StateTag<CombiningState<Integer, int[], Integer>>
+        SUM_INTEGER_ADDR = StateTags.combiningValueFromInputInternal(
+        "sumInteger", VarIntCoder.of(), Sum.ofIntegers());
+    private static final StateTag<BagState<String>> STRING_BAG_ADDR =
+        StateTags.bag("stringBag", StringUtf8Coder.of());
+
+    private final DecodedStateCache cache = DecodedStateCache.withMaximumWeight(1 << 20);
+    private final StateInternals underTest =
+        EncodedInMemoryStateInternals.forKey("dummyKey", cache);
+
+    @Test
+    public void testBindsEncodedState() {
+      assertThat(underTest.state(NAMESPACE, STRING_VALUE_ADDR), instanceOf(EncodedValue.class));
+      assertThat(
+          underTest.state(NAMESPACE, SUM_INTEGER_ADDR), instanceOf(EncodedCombiningState.class));
+      assertThat(underTest.state(NAMESPACE, STRING_BAG_ADDR), instanceOf(EncodedBag.class));
+    }
+
+    @Test
+    public void testWrittenValueIsCached() {
+      ValueState<String> value = underTest.state(NAMESPACE, STRING_VALUE_ADDR);
+      value.write("hello");
+
+      // Decoding would create a new String.
+      assertThat(value.read(), sameInstance("hello"));
+      assertThat(cache.size(), equalTo(1L));
+    }
+
+    @Test
+    public void testCacheIsBoundedByEncodedBytes() {
+      DecodedStateCache emptyCache = DecodedStateCache.withMaximumWeight(0);
+      ValueState<String> value =
+          EncodedInMemoryStateInternals.forKey("dummyKey", emptyCache)
+              .state(NAMESPACE, STRING_VALUE_ADDR);
+      value.write("hello");
+
+      assertThat(value.read(), equalTo("hello"));
+      assertThat(value.read(), not(sameInstance("hello")));
+      assertThat(emptyCache.size(), equalTo(0L));
+    }
+
+    @Test
+    public void testBagSpanningManyChunks() {
+      BagState<String> bag = underTest.state(NAMESPACE, STRING_BAG_ADDR);
+      List<String> expected = new ArrayList<>();
+      StringBuilder element = new StringBuilder();
+      for (int i = 0; i < 1000; i++) {
+        element.append('x');
+        String value = i + element.toString();
+        expected.add(value);
+        bag.add(value);
+        if (i % 100 == 0) {
+          // Reading decodes both the sealed chunks and the open chunk.
+          assertThat(Iterables.size(bag.read()), equalTo(i + 1));
+        }
+      }
+
+      assertThat(bag.read(), contains(expected.toArray()));
+    }
+
+    @Test
+    public void testReadIsStableAfterModification() {
+      BagState<String> bag = underTest.state(NAMESPACE, STRING_BAG_ADDR);
+      bag.add("hello");
+      Iterable<String> read = bag.read();
+
+      bag.add("world");
+      assertThat(read, contains("hello"));
+      bag.clear();
+      assertThat(read, contains("hello"));
+      assertThat(bag.read(), emptyIterable());
+    }
+
+    @Test
+    public void testCopiesAreIndependent() {
+      EncodedBag<String> bag = (EncodedBag<String>) underTest.state(NAMESPACE, STRING_BAG_ADDR);
+      bag.add("hello");
+      EncodedBag<String> copy = bag.copy();
+      copy.add("world");
+      bag.add("goodbye");
+
+      assertThat(bag.read(), contains("hello", "goodbye"));
+      assertThat(copy.read(), contains("hello", "world"));
+
+      EncodedCombiningState<Integer, int[], Integer> sum =
+          (EncodedCombiningState<Integer, int[], Integer>)
+              underTest.state(NAMESPACE, SUM_INTEGER_ADDR);
+      sum.add(3);
+      EncodedCombiningState<Integer, int[], Integer> sumCopy = sum.copy();
+      sumCopy.add(4);
+      assertThat(sum.read(), equalTo(3));
+      assertThat(sumCopy.read(), equalTo(7));
+      assertThat(sumCopy.getAccum(), not(sameInstance(sum.getAccum())));
+    }
+
+    @Test
+    public void testFactorySharesCache() {
+      StateInternalsFactory<String> factory = EncodedInMemoryStateInternals.factory(1 << 20);
+      StateInternals first = factory.stateInternalsForKey("first");
+      StateInternals second = factory.stateInternalsForKey("second");
+
+      assertThat(first.getKey(), equalTo((Object) "first"));
+      first.state(NAMESPACE, STRING_VALUE_ADDR).write("hello");
+      second.state(NAMESPACE, STRING_VALUE_ADDR).write("world");
+      assertThat(first.state(NAMESPACE, STRING_VALUE_ADDR).read(), equalTo("hello"));
+      assertThat(second.state(NAMESPACE, STRING_VALUE_ADDR).read(), equalTo("world"));
+    }
+  }
+}
@@ -22,7 +22,9 @@ import static org.junit.Assert.assertEquals;
 import com.google.common.collect.ImmutableList;
 import org.apache.beam.sdk.coders.ByteArrayCoder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
 import org.apache.beam.sdk.transforms.Materializations.MultimapView;
+import org.apache.beam.sdk.util.CoderUtils;
 import org.apache.beam.sdk.values.KV;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -50,4 +52,18 @@ public class InMemoryMultimapSideInputViewTest {
     assertEquals(view.get("B"), ImmutableList.of("b1"));
     assertEquals(view.get("C"), ImmutableList.of());
   }
+
+  @Test
+  public void testEncodedValuesAreDecodedOnLookup() throws Exception {
+    MultimapView<String, Integer> view = InMemoryMultimapSideInputView.fromEncodedValues(
+        StringUtf8Coder.of(),
+        VarIntCoder.of(),
+        ImmutableList.of(
+            KV.of("A", CoderUtils.encodeToByteArray(VarIntCoder.of(), 1)),
+            KV.of("A", CoderUtils.encodeToByteArray(VarIntCoder.of(), 2)),
+            // a truncated varint, which only fails if the values of "B" are decoded.
+            KV.of("B", new byte[]{ (byte) 0x80 })));
+    assertEquals(view.get("A"), ImmutableList.of(1, 2));
+    assertEquals(view.get("C"), ImmutableList.of());
+  }
 }
@@ -39,6 +39,7 @@ import static org.mockito.Mockito.withSettings;
 
 import com.google.common.collect.Iterables;
 import java.util.List;
+import org.apache.beam.runners.core.metrics.DistributionData;
 import org.apache.beam.runners.core.metrics.MetricsContainerImpl;
 import org.apache.beam.runners.core.triggers.DefaultTriggerStateMachine;
 import org.apache.beam.runners.core.triggers.TriggerStateMachine;
@@ -1532,6 +1533,37 @@ public class ReduceFnRunnerTest {
     assertEquals(4, droppedElements);
   }
 
+  /**
+   * Tests that firing several windows from the same batch of timers reports the state accessed
+   * per fired pane once for the batch.
+   */
+  @Test
+  public void testReportsStateAccessesPerFiredPane() throws Exception {
+    MetricsContainerImpl container = new MetricsContainerImpl("any");
+    MetricsEnvironment.setCurrentContainer(container);
+    ReduceFnTester<Integer, Integer, IntervalWindow> tester = ReduceFnTester.combining(
+        WindowingStrategy.of(FixedWindows.of(Duration.millis(10)))
+            .withTrigger(AfterWatermark.pastEndOfWindow())
+            .withAllowedLateness(Duration.ZERO),
+        Sum.ofIntegers(), VarIntCoder.of());
+
+    tester.injectElements(
+        TimestampedValue.of(1, new Instant(1)),
+        TimestampedValue.of(2, new Instant(11)),
+        TimestampedValue.of(3, new Instant(21)));
+    tester.advanceInputWatermark(new Instant(100));
+
+    assertThat(tester.extractOutput().size(), equalTo(3));
+    DistributionData stateAccesses =
+        container
+            .getDistribution(
+                MetricName.named(
+                    ReduceFnRunner.class, ReduceFnRunner.STATE_ACCESSES_PER_FIRED_PANE))
+            .getCumulative();
+    assertThat(stateAccesses.count(), equalTo(1L));
+    assertThat(stateAccesses.sum(), greaterThanOrEqualTo(1L));
+  }
+
   @Test
   public void testIdempotentEmptyPanesDiscarding() throws Exception {
     MetricsContainerImpl container = new MetricsContainerImpl("any");
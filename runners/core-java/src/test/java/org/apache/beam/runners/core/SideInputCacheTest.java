@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.core;
+
+import static org.apache.beam.sdk.testing.PCollectionViewTesting.materializeValuesFor;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.View;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.Window;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollectionView;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link SideInputCache}.
+ */
+@RunWith(JUnit4.class)
+public class SideInputCacheTest {
+
+  private static final long WINDOW_MSECS = 100;
+  private static final IntervalWindow FIRST_WINDOW =
+      new IntervalWindow(new Instant(0), new Instant(WINDOW_MSECS));
+  private static final IntervalWindow SECOND_WINDOW =
+      new IntervalWindow(new Instant(WINDOW_MSECS), new Instant(2 * WINDOW_MSECS));
+
+  private PCollectionView<Iterable<String>> view;
+
+  @Before
+  public void setUp() {
+    view =
+        Pipeline.create()
+            .apply(Create.of("1"))
+            .apply(Window.into(FixedWindows.of(new Duration(WINDOW_MSECS))))
+            .apply(View.asIterable());
+  }
+
+  @Test
+  public void testReusesViewForSameContents() {
+    SideInputCache cache = SideInputCache.withMaximumWeight(SideInputCache.DEFAULT_MAXIMUM_WEIGHT);
+    List<KV<?, ?>> contents = contentsOf("Hello", "Ciao");
+
+    Iterable<String> first = cache.get(view, FIRST_WINDOW, contents, () -> contents);
+    Iterable<String> second = cache.get(view, FIRST_WINDOW, contents, () -> contents);
+
+    assertThat(first, contains("Hello", "Ciao"));
+    assertThat(second, sameInstance(first));
+    assertThat(cache.getStats().hitCount(), equalTo(1L));
+    assertThat(cache.getStats().missCount(), equalTo(1L));
+  }
+
+  @Test
+  public void testRebuildsViewForNewContents() {
+    SideInputCache cache = SideInputCache.withMaximumWeight(SideInputCache.DEFAULT_MAXIMUM_WEIGHT);
+    List<KV<?, ?>> contents = contentsOf("Hello");
+    List<KV<?, ?>> newContents = contentsOf("Arrivederci");
+
+    Iterable<String> first = cache.get(view, FIRST_WINDOW, contents, () -> contents);
+    Iterable<String> second = cache.get(view, FIRST_WINDOW, newContents, () -> newContents);
+
+    assertThat(second, not(sameInstance(first)));
+    assertThat(second, contains("Arrivederci"));
+    assertThat(cache.getStats().missCount(), equalTo(2L));
+  }
+
+  @Test
+  public void testKeepsViewsOfDifferentContents() {
+    SideInputCache cache = SideInputCache.withMaximumWeight(SideInputCache.DEFAULT_MAXIMUM_WEIGHT);
+    List<KV<?, ?>> contents = contentsOf("Hello");
+    List<KV<?, ?>> otherContents = contentsOf("Arrivederci");
+
+    Iterable<String> first = cache.get(view, FIRST_WINDOW, contents, () -> contents);
+    cache.get(view, FIRST_WINDOW, otherContents, () -> otherContents);
+
+    assertThat(cache.get(view, FIRST_WINDOW, contents, () -> contents), sameInstance(first));
+    assertThat(cache.getStats().hitCount(), equalTo(1L));
+  }
+
+  @Test
+  public void testInvalidate() {
+    SideInputCache cache = SideInputCache.withMaximumWeight(SideInputCache.DEFAULT_MAXIMUM_WEIGHT);
+    List<KV<?, ?>> contents = contentsOf("Hello");
+
+    Iterable<String> first = cache.get(view, FIRST_WINDOW, contents, () -> contents);
+    cache.invalidate(view, FIRST_WINDOW, contents);
+
+    assertThat(cache.get(view, FIRST_WINDOW, contents, () -> contents), not(sameInstance(first)));
+    assertThat(cache.getStats().evictionCount(), equalTo(0L));
+  }
+
+  @Test
+  public void testEvictsViewsOverMaximumWeight() {
+    // Both windows have contents of the same encoded size.
+    List<KV<?, ?>> firstContents = contentsOf("Hello", "Ciao");
+    List<KV<?, ?>> secondContents = contentsOf("Salut", "Hola");
+    SideInputCache sizingCache = SideInputCache.withMaximumWeight(Long.MAX_VALUE);
+    sizingCache.get(view, FIRST_WINDOW, firstContents, () -> firstContents);
+    long firstWeight = sizingCache.getWeight();
+
+    // Only one of the two windows fits.
+    SideInputCache cache = SideInputCache.withMaximumWeight(firstWeight + 1);
+    cache.get(view, FIRST_WINDOW, firstContents, () -> firstContents);
+    cache.get(view, SECOND_WINDOW, secondContents, () -> secondContents);
+
+    assertThat(cache.getWeight(), lessThanOrEqualTo(firstWeight + 1));
+    assertThat(cache.getStats().evictionCount(), equalTo(1L));
+
+    cache.get(view, FIRST_WINDOW, firstContents, () -> firstContents);
+    assertThat(cache.getStats().hitCount(), equalTo(0L));
+  }
+
+  @Test
+  public void testEvictsViewsOfEmptyContents() {
+    SideInputCache cache = SideInputCache.withMaximumWeight(2L);
+    List<KV<?, ?>> contents = contentsOf();
+
+    for (int i = 0; i < 10; i++) {
+      cache.get(view, FIRST_WINDOW, new Object(), () -> contents);
+    }
+
+    // views of empty contents still count towards the maximum weight.
+    assertThat(cache.getStats().evictionCount(), equalTo(8L));
+  }
+
+  @Test
+  public void testEstimatesWeightFromSample() {
+    String[] values = new String[10 * SideInputCache.WEIGHED_SAMPLE_SIZE];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = String.format("%04d", i);
+    }
+    List<KV<?, ?>> contents = contentsOf(values);
+    List<KV<?, ?>> singleContents = contentsOf(values[0]);
+    SideInputCache singleCache = SideInputCache.withMaximumWeight(Long.MAX_VALUE);
+    singleCache.get(view, FIRST_WINDOW, singleContents, () -> singleContents);
+
+    SideInputCache cache = SideInputCache.withMaximumWeight(Long.MAX_VALUE);
+    cache.get(view, FIRST_WINDOW, contents, () -> contents);
+
+    // All of the elements have the same encoded size.
+    assertThat(cache.getWeight(), equalTo(values.length * singleCache.getWeight()));
+  }
+
+  @Test
+  public void testUsesProvidedWeigher() {
+    SideInputCache cache = SideInputCache.withMaximumWeight(Long.MAX_VALUE);
+    List<KV<?, ?>> contents = contentsOf("Hello", "Ciao");
+
+    cache.get(view, FIRST_WINDOW, contents, () -> contents, elements -> 42L);
+
+    assertThat(cache.getWeight(), equalTo(42L));
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static List<KV<?, ?>> contentsOf(String... values) {
+    return (List) materializeValuesFor(View.asIterable(), values);
+  }
+}
@@ -19,6 +19,8 @@ package org.apache.beam.runners.core;
 
 import static org.apache.beam.sdk.testing.PCollectionViewTesting.materializeValuesFor;
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -215,6 +217,64 @@ public class SideInputHandlerTest {
     assertThat(sideInputHandler.get(view1, firstWindow), contains("Hello"));
   }
 
+  @Test
+  public void testMaterializesOncePerUpdate() {
+    SideInputHandler sideInputHandler =
+        new SideInputHandler(ImmutableList.of(view1), InMemoryStateInternals.<Void>forKey(null));
+
+    IntervalWindow firstWindow =
+        new IntervalWindow(new Instant(0), new Instant(WINDOW_MSECS_1));
+    IntervalWindow secondWindow =
+        new IntervalWindow(new Instant(1000), new Instant(1000 + WINDOW_MSECS_1));
+
+    sideInputHandler.addSideInputValue(
+        view1,
+        valuesInWindow(materializeValuesFor(View.asIterable(), "Hello"),
+            new Instant(0), firstWindow));
+    sideInputHandler.addSideInputValue(
+        view1,
+        valuesInWindow(materializeValuesFor(View.asIterable(), "Arrivederci"),
+            new Instant(1000), secondWindow));
+
+    Iterable<String> firstContents = sideInputHandler.get(view1, firstWindow);
+    Iterable<String> secondContents = sideInputHandler.get(view1, secondWindow);
+
+    // repeated reads without an update reuse the materialized view
+    assertThat(sideInputHandler.get(view1, firstWindow), sameInstance(firstContents));
+
+    // new contents only invalidate the view of the updated window
+    sideInputHandler.addSideInputValue(
+        view1,
+        valuesInWindow(materializeValuesFor(View.asIterable(), "Ciao"),
+            new Instant(0), firstWindow));
+
+    Iterable<String> updatedContents = sideInputHandler.get(view1, firstWindow);
+    assertThat(updatedContents, not(sameInstance(firstContents)));
+    assertThat(updatedContents, contains("Ciao"));
+    assertThat(sideInputHandler.get(view1, secondWindow), sameInstance(secondContents));
+  }
+
+  @Test
+  public void testMaterializedViewsAreBounded() {
+    SideInputHandler sideInputHandler =
+        new SideInputHandler(
+            ImmutableList.of(view1),
+            InMemoryStateInternals.<Void>forKey(null),
+            SideInputCache.withMaximumWeight(0L));
+
+    IntervalWindow window = new IntervalWindow(new Instant(0), new Instant(WINDOW_MSECS_1));
+    sideInputHandler.addSideInputValue(
+        view1,
+        valuesInWindow(materializeValuesFor(View.asIterable(), "Hello"), new Instant(0), window));
+
+    // a cache without room for the view does not retain it, so every read materializes it again
+    Iterable<String> contents = sideInputHandler.get(view1, window);
+    assertThat(contents, contains("Hello"));
+    Iterable<String> rereadContents = sideInputHandler.get(view1, window);
+    assertThat(rereadContents, not(sameInstance(contents)));
+    assertThat(rereadContents, contains("Hello"));
+  }
+
   @SuppressWarnings({"unchecked", "rawtypes"})
   private WindowedValue<Iterable<?>> valuesInWindow(
       List<Object> values, Instant timestamp, BoundedWindow window) {
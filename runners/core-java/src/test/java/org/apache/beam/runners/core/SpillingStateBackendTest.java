@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.core;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.base.Strings;
+import java.io.IOException;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.state.BagState;
+import org.apache.beam.sdk.state.CombiningState;
+import org.apache.beam.sdk.state.MapState;
+import org.apache.beam.sdk.state.SetState;
+import org.apache.beam.sdk.state.ValueState;
+import org.apache.beam.sdk.state.WatermarkHoldState;
+import org.apache.beam.sdk.transforms.Sum;
+import org.apache.beam.sdk.transforms.windowing.TimestampCombiner;
+import org.joda.time.Instant;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.Suite;
+
+/**
+ * Tests for {@link SpillingStateBackend}. This is based on {@link StateInternalsTest}.
+ */
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+    SpillingStateBackendTest.StandardStateInternalsTests.class,
+    SpillingStateBackendTest.OtherTests.class
+})
+public class SpillingStateBackendTest {
+
+  /**
+   * A standard StateInternals test, with a budget large enough that nothing is spilled.
+   */
+  @RunWith(JUnit4.class)
+  public static class StandardStateInternalsTests extends StateInternalsTest {
+    @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Override
+    protected StateInternals createStateInternals() {
+      try {
+        return SpillingStateBackend.create(StringUtf8Coder.of(), tmp.getRoot(), Long.MAX_VALUE)
+            .stateInternalsForKey("dummyKey");
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  /**
+   * Tests of spilling state to disk and restoring it.
+   */
+  @RunWith(JUnit4.class)
+  public static class OtherTests {
+    private static final StateNamespace NAMESPACE_1 = new StateNamespaceForTest("ns1");
+    private static final StateNamespace NAMESPACE_2 = new StateNamespaceForTest("ns2");
+
+    private static final StateTag<ValueState<String>> STRING_VALUE_ADDR =
+        StateTags.value("stringValue", StringUtf8Coder.of());
+    private static final StateTag<CombiningState<Integer, int[], Integer>>
+        SUM_INTEGER_ADDR = StateTags.combiningValueFromInputInternal(
+        "sumInteger", VarIntCoder.of(), Sum.ofIntegers());
+    private static final StateTag<BagState<String>> STRING_BAG_ADDR =
+        StateTags.bag("stringBag", StringUtf8Coder.of());
+    private static final StateTag<SetState<String>> STRING_SET_ADDR =
+        StateTags.set("stringSet", StringUtf8Coder.of());
+    private static final StateTag<MapState<String, Integer>> STRING_MAP_ADDR =
+        StateTags.map("stringMap", StringUtf8Coder.of(), VarIntCoder.of());
+    private static final StateTag<WatermarkHoldState> WATERMARK_EARLIEST_ADDR =
+        StateTags.watermarkStateInternal("watermark", TimestampCombiner.EARLIEST);
+
+    @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+    private SpillingStateBackend<String> backend;
+
+    @Before
+    public void setup() throws IOException {
+      backend = SpillingStateBackend.create(StringUtf8Coder.of(), tmp.getRoot(), 0L);
+    }
+
+    @After
+    public void teardown() throws IOException {
+      backend.close();
+    }
+
+    @Test
+    public void testSpillAndRestoreAllStateTypes() throws IOException {
+      StateInternals internals = backend.stateInternalsForKey("key");
+      internals.state(NAMESPACE_1, STRING_VALUE_ADDR).write("hello");
+      internals.state(NAMESPACE_1, SUM_INTEGER_ADDR).add(3);
+      internals.state(NAMESPACE_1, SUM_INTEGER_ADDR).add(4);
+      internals.state(NAMESPACE_1, STRING_BAG_ADDR).add("a");
+      internals.state(NAMESPACE_1, STRING_BAG_ADDR).add("a");
+      internals.state(NAMESPACE_1, STRING_SET_ADDR).add("b");
+      internals.state(NAMESPACE_1, STRING_MAP_ADDR).put("c", 5);
+      internals.state(NAMESPACE_1, WATERMARK_EARLIEST_ADDR).add(new Instant(10L));
+
+      backend.spillIfNecessary();
+      assertThat(backend.getSpilledNamespaceCount(), equalTo(1));
+      assertThat(backend.getResidentWeight(), equalTo(0L));
+
+      internals = backend.stateInternalsForKey("key");
+      assertThat(internals.state(NAMESPACE_1, STRING_VALUE_ADDR).read(), equalTo("hello"));
+      assertThat(internals.state(NAMESPACE_1, SUM_INTEGER_ADDR).read(), equalTo(7));
+      assertThat(
+          internals.state(NAMESPACE_1, STRING_BAG_ADDR).read(), containsInAnyOrder("a", "a"));
+      assertThat(internals.state(NAMESPACE_1, STRING_SET_ADDR).read(), containsInAnyOrder("b"));
+      assertThat(internals.state(NAMESPACE_1, STRING_MAP_ADDR).get("c").read(), equalTo(5));
+      assertThat(
+          internals.state(NAMESPACE_1, WATERMARK_EARLIEST_ADDR).read(), equalTo(new Instant(10L)));
+      assertThat(backend.getSpilledNamespaceCount(), equalTo(0));
+    }
+
+    @Test
+    public void testRestoresStateThatIsNotAccessedBeforeSpillingAgain() throws IOException {
+      StateInternals internals = backend.stateInternalsForKey("key");
+      internals.state(NAMESPACE_1, STRING_VALUE_ADDR).write("hello");
+      internals.state(NAMESPACE_1, STRING_BAG_ADDR).add("a");
+      backend.spillIfNecessary();
+
+      // Only one of the two tags is bound before the namespace is spilled again.
+      internals = backend.stateInternalsForKey("key");
+      internals.state(NAMESPACE_1, STRING_BAG_ADDR).add("b");
+      backend.spillIfNecessary();
+
+      internals = backend.stateInternalsForKey("key");
+      assertThat(internals.state(NAMESPACE_1, STRING_VALUE_ADDR).read(), equalTo("hello"));
+      assertThat(
+          internals.state(NAMESPACE_1, STRING_BAG_ADDR).read(), containsInAnyOrder("a", "b"));
+    }
+
+    @Test
+    public void testSpillsLeastRecentlyAccessedNamespaces() throws IOException {
+      backend.close();
+      backend = SpillingStateBackend.create(StringUtf8Coder.of(), tmp.getRoot(), 3L);
+
+      StateInternals internals = backend.stateInternalsForKey("key");
+      internals.state(NAMESPACE_1, STRING_BAG_ADDR).add("a");
+      internals.state(NAMESPACE_1, STRING_BAG_ADDR).add("b");
+      internals.state(NAMESPACE_2, STRING_BAG_ADDR).add("c");
+      internals.state(NAMESPACE_1, STRING_BAG_ADDR).add("d");
+
+      backend.spillIfNecessary();
+      assertThat(backend.getSpilledNamespaceCount(), equalTo(1));
+      assertThat(backend.getResidentWeight(), equalTo(3L));
+    }
+
+    @Test
+    public void testRestoredStateIsWeighedWithWeigher() throws IOException {
+      backend.close();
+      backend = SpillingStateBackend.create(StringUtf8Coder.of(), tmp.getRoot(), 4L);
+      String longElement = Strings.repeat("x", 100);
+
+      StateInternals internals = backend.stateInternalsForKey("key");
+      internals.state(NAMESPACE_1, STRING_BAG_ADDR).add(longElement);
+      internals.state(NAMESPACE_1, STRING_BAG_ADDR).add(longElement);
+      internals.state(NAMESPACE_1, STRING_BAG_ADDR).add(longElement);
+      internals.state(NAMESPACE_1, STRING_VALUE_ADDR).write("hello");
+      internals.state(NAMESPACE_2, STRING_VALUE_ADDR).write("world");
+      backend.spillIfNecessary();
+      assertThat(backend.getSpilledNamespaceCount(), equalTo(1));
+      assertThat(backend.getResidentWeight(), equalTo(1L));
+
+      // Restores the bag without binding it. It still weighs three elements, not its encoded size.
+      internals = backend.stateInternalsForKey("key");
+      internals.state(NAMESPACE_1, STRING_VALUE_ADDR).read();
+      backend.spillIfNecessary();
+      assertThat(backend.getSpilledNamespaceCount(), equalTo(1));
+      assertThat(backend.getResidentWeight(), equalTo(4L));
+    }
+
+    @Test
+    public void testClearDiscardsStateOfKey() throws IOException {
+      backend.stateInternalsForKey("key1").state(NAMESPACE_1, STRING_VALUE_ADDR).write("one");
+      backend.stateInternalsForKey("key1").state(NAMESPACE_2, STRING_VALUE_ADDR).write("one");
+      backend.stateInternalsForKey("key2").state(NAMESPACE_1, STRING_VALUE_ADDR).write("two");
+      backend.spillIfNecessary();
+      assertThat(backend.getSpilledNamespaceCount(), equalTo(3));
+
+      backend.stateInternalsForKey("key1").state(NAMESPACE_1, STRING_VALUE_ADDR).read();
+      backend.clear("key1");
+      assertThat(backend.getSpilledNamespaceCount(), equalTo(1));
+      assertThat(
+          backend.stateInternalsForKey("key1").state(NAMESPACE_2, STRING_VALUE_ADDR).read(),
+          nullValue());
+      assertThat(
+          backend.stateInternalsForKey("key2").state(NAMESPACE_1, STRING_VALUE_ADDR).read(),
+          equalTo("two"));
+    }
+
+    @Test
+    public void testClearDiscardsNamespaceRestoredAfterBeingEmptied() throws IOException {
+      StateInternals internals = backend.stateInternalsForKey("key");
+      internals.state(NAMESPACE_1, STRING_VALUE_ADDR).write("hello");
+      internals.state(NAMESPACE_1, STRING_VALUE_ADDR).clear();
+      backend.spillIfNecessary();
+
+      internals = backend.stateInternalsForKey("key");
+      internals.state(NAMESPACE_1, STRING_VALUE_ADDR).write("again");
+      backend.spillIfNecessary();
+      assertThat(backend.getSpilledNamespaceCount(), equalTo(1));
+
+      backend.clear("key");
+      assertThat(backend.getSpilledNamespaceCount(), equalTo(0));
+      assertThat(
+          backend.stateInternalsForKey("key").state(NAMESPACE_1, STRING_VALUE_ADDR).read(),
+          nullValue());
+    }
+
+    @Test
+    public void testClearedStateIsNotSpilled() throws IOException {
+      StateInternals internals = backend.stateInternalsForKey("key");
+      internals.state(NAMESPACE_1, STRING_VALUE_ADDR).write("hello");
+      internals.state(NAMESPACE_1, STRING_VALUE_ADDR).clear();
+
+      backend.spillIfNecessary();
+      assertThat(backend.getSpilledNamespaceCount(), equalTo(0));
+      assertThat(backend.getResidentWeight(), equalTo(0L));
+    }
+
+    @Test
+    public void testKeysAreSpilledIndependently() throws IOException {
+      backend.stateInternalsForKey("key1").state(NAMESPACE_1, STRING_VALUE_ADDR).write("one");
+      backend.stateInternalsForKey("key2").state(NAMESPACE_1, STRING_VALUE_ADDR).write("two");
+
+      backend.spillIfNecessary();
+      assertThat(backend.getSpilledNamespaceCount(), equalTo(2));
+
+      assertThat(
+          backend.stateInternalsForKey("key2").state(NAMESPACE_1, STRING_VALUE_ADDR).read(),
+          equalTo("two"));
+      assertThat(
+          backend.stateInternalsForKey("key1").state(NAMESPACE_1, STRING_VALUE_ADDR).read(),
+          equalTo("one"));
+    }
+  }
+}
@@ -51,4 +51,19 @@ public class DistributionCellTest {
     assertThat("Adding a new value made the cell dirty",
         cell.getDirty().beforeCommit(), equalTo(true));
   }
+
+  @Test
+  public void testUpdateWithDistributionData() {
+    cell.update(5);
+    cell.getDirty().afterCommit();
+
+    cell.update(DistributionData.create(20, 3, 2, 11));
+    assertThat(cell.getCumulative(), equalTo(DistributionData.create(25, 4, 2, 11)));
+    assertThat(cell.getDirty().beforeCommit(), equalTo(true));
+  }
+
+  @Test
+  public void testEmptyCell() {
+    assertThat(cell.getCumulative(), equalTo(DistributionData.EMPTY));
+  }
 }
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.core.metrics;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import org.apache.beam.sdk.metrics.HistogramResult;
+import org.apache.beam.sdk.metrics.MetricName;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link HistogramCell}.
+ */
+@RunWith(JUnit4.class)
+public class HistogramCellTest {
+  private HistogramCell cell = new HistogramCell(MetricName.named("hello", "world"));
+
+  @Test
+  public void testDeltaAndCumulative() {
+    cell.update(5);
+    cell.update(7);
+    HistogramResult result = cell.getCumulative().extractResult();
+    assertThat(result.count(), equalTo(2L));
+    assertThat(result.min(), equalTo(5L));
+    assertThat(result.max(), equalTo(7L));
+
+    assertThat(cell.getDirty().beforeCommit(), equalTo(true));
+    cell.getDirty().afterCommit();
+    assertThat(cell.getDirty().beforeCommit(), equalTo(false));
+
+    cell.update(30);
+    assertThat(cell.getCumulative().extractResult().count(), equalTo(3L));
+    assertThat("Adding a new value made the cell dirty",
+        cell.getDirty().beforeCommit(), equalTo(true));
+  }
+
+  @Test
+  public void testSmallValuesAreExact() {
+    for (long i = 0; i < 10; i++) {
+      cell.update(i);
+    }
+    HistogramResult result = cell.getCumulative().extractResult();
+    assertThat(result.p50(), equalTo(4L));
+    assertThat(result.p90(), equalTo(8L));
+  }
+
+  @Test
+  public void testPercentilesWithinBucketError() {
+    for (long i = 1; i <= 100_000; i++) {
+      cell.update(i);
+    }
+    HistogramResult result = cell.getCumulative().extractResult();
+    // Half a bucket is at most 1/32nd of the bucket's lower bound.
+    assertThat((double) result.p50(), closeTo(50_000, 50_000 / 32.0));
+    assertThat((double) result.p99(), closeTo(99_000, 99_000 / 32.0));
+    assertThat(result.max(), equalTo(100_000L));
+  }
+
+  @Test
+  public void testNegativeValuesCountedAsZero() {
+    cell.update(-4);
+    HistogramResult result = cell.getCumulative().extractResult();
+    assertThat(result.count(), equalTo(1L));
+    assertThat(result.min(), equalTo(0L));
+  }
+
+  @Test
+  public void testUpdateWithHistogramData() {
+    HistogramCell other = new HistogramCell(MetricName.named("hello", "world"));
+    other.update(3);
+    other.update(1000);
+    cell.update(42);
+
+    cell.update(other.getCumulative());
+    HistogramResult result = cell.getCumulative().extractResult();
+    assertThat(result.count(), equalTo(3L));
+    assertThat(result.min(), equalTo(3L));
+    assertThat(result.max(), equalTo(1000L));
+    assertThat(cell.getCumulative().combine(HistogramData.EMPTY).extractResult(),
+        equalTo(result));
+  }
+}
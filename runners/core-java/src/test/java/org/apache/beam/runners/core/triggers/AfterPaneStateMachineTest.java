@@ -63,6 +63,33 @@ public class AfterPaneStateMachineTest {
     assertFalse(tester.isMarkedFinished(new IntervalWindow(new Instant(10), new Instant(20))));
   }
 
+  /**
+   * Tests that elements delivered to the trigger together are all counted, so that the trigger
+   * is ready to fire when the count is reached in the middle of a batch.
+   */
+  @Test
+  public void testAfterPaneElementCountBatched() throws Exception {
+    tester = TriggerStateMachineTester.forTrigger(
+        AfterPaneStateMachine.elementCountAtLeast(2),
+        FixedWindows.of(Duration.millis(10)));
+
+    tester.injectElementsBatched(1); // [0, 10)
+    IntervalWindow window = new IntervalWindow(new Instant(0), new Instant(10));
+    assertFalse(tester.shouldFire(window));
+
+    // The count of [0, 10) reaches 2 on the first element of this batch.
+    tester.injectElementsBatched(2, 3, 11); // [0, 10) and [10, 20)
+    assertTrue(tester.shouldFire(window));
+    tester.fireIfShouldFire(window);
+    assertTrue(tester.isMarkedFinished(window));
+    assertFalse(tester.shouldFire(new IntervalWindow(new Instant(10), new Instant(20))));
+
+    // A single batch that reaches the count on its second element.
+    IntervalWindow laterWindow = new IntervalWindow(new Instant(20), new Instant(30));
+    tester.injectElementsBatched(21, 22, 23); // [20, 30)
+    assertTrue(tester.shouldFire(laterWindow));
+  }
+
   @Test
   public void testClear() throws Exception {
     SimpleTriggerStateMachineTester<IntervalWindow> tester = TriggerStateMachineTester.forTrigger(
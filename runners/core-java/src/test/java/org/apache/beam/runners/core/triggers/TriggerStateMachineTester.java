@@ -28,6 +28,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -82,12 +83,20 @@ public class TriggerStateMachineTester<InputT, W extends BoundedWindow> {
     }
 
     public void injectElements(int... values) throws Exception {
+      injectElements(timestampedValues(values));
+    }
+
+    public void injectElementsBatched(int... values) throws Exception {
+      injectElementsBatched(timestampedValues(values));
+    }
+
+    private static List<TimestampedValue<Integer>> timestampedValues(int... values) {
       List<TimestampedValue<Integer>> timestampedValues =
           Lists.newArrayListWithCapacity(values.length);
       for (int value : values) {
         timestampedValues.add(TimestampedValue.of(value, new Instant(value)));
       }
-      injectElements(timestampedValues);
+      return timestampedValues;
     }
 
     public SimpleTriggerStateMachineTester<W> withAllowedLateness(Duration allowedLateness)
@@ -254,6 +263,62 @@ public class TriggerStateMachineTester<InputT, W extends BoundedWindow> {
   }
 
   public final void injectElements(Collection<TimestampedValue<InputT>> values) throws Exception {
+    for (WindowedValue<InputT> windowedValue : assignWindows(values)) {
+      for (BoundedWindow untypedWindow : windowedValue.getWindows()) {
+        // SDK is responsible for type safety
+        @SuppressWarnings("unchecked")
+        W window = mergeResult((W) untypedWindow);
+
+        TriggerStateMachine.OnElementContext context = contextFactory.createOnElementContext(window,
+            new TestTimers(windowNamespace(window)), windowedValue.getTimestamp(),
+            executableTrigger, getFinishedSet(window));
+
+        if (!context.trigger().isFinished()) {
+          executableTrigger.invokeOnElement(context);
+        }
+      }
+    }
+  }
+
+  /**
+   * Like {@link #injectElements(TimestampedValue[])}, but delivers the elements of each window to
+   * the trigger in a single call, as the {@link org.apache.beam.runners.core.ReduceFnRunner} does.
+   */
+  @SafeVarargs
+  public final void injectElementsBatched(TimestampedValue<InputT>... values) throws Exception {
+    injectElementsBatched(Arrays.asList(values));
+  }
+
+  public final void injectElementsBatched(Collection<TimestampedValue<InputT>> values)
+      throws Exception {
+    Map<W, Instant> firstTimestamps = new LinkedHashMap<>();
+    Map<W, Long> elementCounts = new HashMap<>();
+    for (WindowedValue<InputT> windowedValue : assignWindows(values)) {
+      for (BoundedWindow untypedWindow : windowedValue.getWindows()) {
+        // SDK is responsible for type safety
+        @SuppressWarnings("unchecked")
+        W window = mergeResult((W) untypedWindow);
+        if (!firstTimestamps.containsKey(window)) {
+          firstTimestamps.put(window, windowedValue.getTimestamp());
+          elementCounts.put(window, 0L);
+        }
+        elementCounts.put(window, elementCounts.get(window) + 1L);
+      }
+    }
+
+    for (Map.Entry<W, Instant> windowTimestamp : firstTimestamps.entrySet()) {
+      W window = windowTimestamp.getKey();
+      TriggerStateMachine.OnElementContext context = contextFactory.createOnElementContext(window,
+          new TestTimers(windowNamespace(window)), windowTimestamp.getValue(),
+          elementCounts.get(window), executableTrigger, getFinishedSet(window));
+
+      if (!context.trigger().isFinished()) {
+        executableTrigger.invokeOnElement(context);
+      }
+    }
+  }
+
+  private List<WindowedValue<InputT>> assignWindows(Collection<TimestampedValue<InputT>> values) {
     for (TimestampedValue<InputT> value : values) {
       WindowTracing.trace("TriggerTester.injectElements: {}", value);
     }
@@ -277,22 +342,7 @@ public class TriggerStateMachineTester<InputT, W extends BoundedWindow> {
         throw new RuntimeException(e);
       }
     }
-
-    for (WindowedValue<InputT> windowedValue : windowedValues) {
-      for (BoundedWindow untypedWindow : windowedValue.getWindows()) {
-        // SDK is responsible for type safety
-        @SuppressWarnings("unchecked")
-        W window = mergeResult((W) untypedWindow);
-
-        TriggerStateMachine.OnElementContext context = contextFactory.createOnElementContext(window,
-            new TestTimers(windowNamespace(window)), windowedValue.getTimestamp(),
-            executableTrigger, getFinishedSet(window));
-
-        if (!context.trigger().isFinished()) {
-          executableTrigger.invokeOnElement(context);
-        }
-      }
-    }
+    return windowedValues;
   }
 
   public boolean shouldFire(W window) throws Exception {
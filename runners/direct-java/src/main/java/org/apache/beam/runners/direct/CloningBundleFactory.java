@@ -28,19 +28,28 @@ import org.apache.beam.sdk.values.PCollection;
 import org.joda.time.Instant;
 
 /**
- * A {@link BundleFactory} where a created {@link UncommittedBundle} clones all elements added to it
- * using the coder of the {@link PCollection}.
+ * A {@link BundleFactory} where a created {@link UncommittedBundle} clones the elements added to it
+ * using the coder of the {@link PCollection}. All elements are cloned unless the factory is
+ * created with an {@link EnforcementSampler}, in which case only the sampled elements are.
  */
 class CloningBundleFactory implements BundleFactory {
-  private static final CloningBundleFactory INSTANCE = new CloningBundleFactory();
+  private static final CloningBundleFactory INSTANCE =
+      new CloningBundleFactory(EnforcementSampler.<PCollection<?>>always());
 
   public static CloningBundleFactory create() {
     return INSTANCE;
   }
 
+  public static CloningBundleFactory create(EnforcementSampler<PCollection<?>> sampler) {
+    return new CloningBundleFactory(sampler);
+  }
+
   private final ImmutableListBundleFactory underlying;
-  private CloningBundleFactory() {
+  private final EnforcementSampler<PCollection<?>> sampler;
+
+  private CloningBundleFactory(EnforcementSampler<PCollection<?>> sampler) {
     this.underlying = ImmutableListBundleFactory.create();
+    this.sampler = sampler;
   }
 
   @Override
@@ -52,22 +61,25 @@ class CloningBundleFactory implements BundleFactory {
   @Override
   public <T> UncommittedBundle<T> createBundle(
       PCollection<T> output) {
-    return new CloningBundle<>(underlying.createBundle(output));
+    return new CloningBundle<>(underlying.createBundle(output), sampler);
   }
 
   @Override
   public <K, T> UncommittedBundle<T> createKeyedBundle(
       StructuralKey<K> key, PCollection<T> output) {
-    return new CloningBundle<>(underlying.createKeyedBundle(key, output));
+    return new CloningBundle<>(underlying.createKeyedBundle(key, output), sampler);
   }
 
   private static class CloningBundle<T> implements UncommittedBundle<T> {
     private final UncommittedBundle<T> underlying;
     private final Coder<T> coder;
+    private final EnforcementSampler<PCollection<?>> sampler;
 
-    private CloningBundle(UncommittedBundle<T> underlying) {
+    private CloningBundle(
+        UncommittedBundle<T> underlying, EnforcementSampler<PCollection<?>> sampler) {
       this.underlying = underlying;
       this.coder = underlying.getPCollection().getCoder();
+      this.sampler = sampler;
     }
 
     @Override
@@ -77,6 +89,10 @@ class CloningBundleFactory implements BundleFactory {
 
     @Override
     public UncommittedBundle<T> add(WindowedValue<T> element) {
+      if (!sampler.shouldCheck(getPCollection())) {
+        underlying.add(element);
+        return this;
+      }
       try {
         // Use the cloned value to ensure that if the coder behaves poorly (e.g. a NoOpCoder that
         // does not expect to be used) that is reflected in the values given to downstream
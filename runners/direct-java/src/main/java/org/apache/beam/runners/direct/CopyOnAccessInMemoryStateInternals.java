@@ -24,15 +24,11 @@ import com.google.common.collect.Iterables;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.function.Function;
 import javax.annotation.Nullable;
-import org.apache.beam.runners.core.InMemoryStateInternals.InMemoryBag;
-import org.apache.beam.runners.core.InMemoryStateInternals.InMemoryCombiningState;
-import org.apache.beam.runners.core.InMemoryStateInternals.InMemoryMap;
-import org.apache.beam.runners.core.InMemoryStateInternals.InMemorySet;
+import org.apache.beam.runners.core.EncodedInMemoryStateInternals.EncodedStateBinder;
 import org.apache.beam.runners.core.InMemoryStateInternals.InMemoryState;
 import org.apache.beam.runners.core.InMemoryStateInternals.InMemoryStateBinder;
-import org.apache.beam.runners.core.InMemoryStateInternals.InMemoryValue;
-import org.apache.beam.runners.core.InMemoryStateInternals.InMemoryWatermarkHold;
 import org.apache.beam.runners.core.StateInternals;
 import org.apache.beam.runners.core.StateNamespace;
 import org.apache.beam.runners.core.StateTable;
@@ -59,6 +55,10 @@ import org.joda.time.Instant;
  * {@link StateInternals} built on top of an underlying {@link StateTable} that contains instances
  * of {@link InMemoryState}. Whenever state that exists in the underlying {@link StateTable} is
  * accessed, an independent copy will be created within this table.
+ *
+ * <p>State that does not exist in the underlying table is created by a {@link StateBinder} for new
+ * state, such as an {@link InMemoryStateBinder} or an {@link EncodedStateBinder}, which is shared
+ * by all of the tables built on top of each other.
  */
 class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
   private final CopyOnAccessInMemoryStateTable table;
@@ -71,14 +71,32 @@ class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
    */
   public static <K> CopyOnAccessInMemoryStateInternals withUnderlying(
       K key, @Nullable CopyOnAccessInMemoryStateInternals underlying) {
-    return new CopyOnAccessInMemoryStateInternals<>(key, underlying);
+    return withUnderlying(key, underlying, InMemoryStateBinder::new);
+  }
+
+  /**
+   * Creates a new {@link CopyOnAccessInMemoryStateInternals} with the underlying (possibly null)
+   * StateInternals. If there is no underlying StateInternals, state is created with the binders
+   * returned by {@code newStateBinders}. Otherwise, it is created with the binders of the
+   * underlying StateInternals.
+   */
+  public static <K> CopyOnAccessInMemoryStateInternals withUnderlying(
+      K key,
+      @Nullable CopyOnAccessInMemoryStateInternals underlying,
+      Function<StateContext<?>, StateBinder> newStateBinders) {
+    return new CopyOnAccessInMemoryStateInternals<>(key, underlying, newStateBinders);
   }
 
   private CopyOnAccessInMemoryStateInternals(
-      K key, CopyOnAccessInMemoryStateInternals underlying) {
+      K key,
+      CopyOnAccessInMemoryStateInternals underlying,
+      Function<StateContext<?>, StateBinder> newStateBinders) {
     this.key = key;
     table =
-        new CopyOnAccessInMemoryStateTable(underlying == null ? null : underlying.table);
+        underlying == null
+            ? new CopyOnAccessInMemoryStateTable(null, newStateBinders)
+            : new CopyOnAccessInMemoryStateTable(
+                underlying.table, underlying.table.newStateBinders);
   }
 
   /**
@@ -144,6 +162,9 @@ class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
   private static class CopyOnAccessInMemoryStateTable extends StateTable {
     private Optional<StateTable> underlying;
 
+    /** Creates the {@link StateBinder} for state that is not present in the underlying table. */
+    private final Function<StateContext<?>, StateBinder> newStateBinders;
+
     /**
      * The StateBinderFactory currently in use by this {@link CopyOnAccessInMemoryStateTable}.
      *
@@ -158,7 +179,7 @@ class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
      *       {@link ReadThroughBinderFactory}, which copies the references to the existing
      *       {@link State} objects to this {@link StateTable}.</li>
      *   <li>After the execution of the {@link #commit()} method, this is an
-     *       instance of {@link InMemoryStateBinderFactory}, which constructs new instances of state
+     *       instance of {@link NewStateBinderFactory}, which constructs new instances of state
      *       when a {@link StateTag} is bound.</li>
      * </ul>
      */
@@ -169,9 +190,11 @@ class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
      */
     private Optional<Instant> earliestWatermarkHold;
 
-    public CopyOnAccessInMemoryStateTable(StateTable underlying) {
+    public CopyOnAccessInMemoryStateTable(
+        StateTable underlying, Function<StateContext<?>, StateBinder> newStateBinders) {
       this.underlying = Optional.fromNullable(underlying);
-      binderFactory = new CopyOnBindBinderFactory(this.underlying);
+      this.newStateBinders = newStateBinders;
+      binderFactory = new CopyOnBindBinderFactory(this.underlying, newStateBinders);
       earliestWatermarkHold = Optional.absent();
     }
 
@@ -184,7 +207,7 @@ class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
      * should be discarded after the call to {@link #commit()}.
      *
      * <p>After copying all of the existing values, replace the binder factory with an instance of
-     * {@link InMemoryStateBinderFactory} to construct new values, since all existing values
+     * {@link NewStateBinderFactory} to construct new values, since all existing values
      * are bound in this {@link StateTable table} and this table represents the canonical state.
      */
     private void commit() {
@@ -200,7 +223,7 @@ class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
       }
       earliestWatermarkHold = Optional.of(earliestHold);
       clearEmpty();
-      binderFactory = new InMemoryStateBinderFactory();
+      binderFactory = new NewStateBinderFactory(newStateBinders);
       underlying = Optional.absent();
     }
 
@@ -258,9 +281,13 @@ class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
      */
     private static class CopyOnBindBinderFactory implements StateBinderFactory {
       private final Optional<StateTable> underlying;
+      private final Function<StateContext<?>, StateBinder> newStateBinders;
 
-      public CopyOnBindBinderFactory(Optional<StateTable> underlying) {
+      public CopyOnBindBinderFactory(
+          Optional<StateTable> underlying,
+          Function<StateContext<?>, StateBinder> newStateBinders) {
         this.underlying = underlying;
+        this.newStateBinders = newStateBinders;
       }
 
       private boolean containedInUnderlying(StateNamespace namespace, StateTag<?> tag) {
@@ -274,6 +301,7 @@ class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
 
       @Override
       public StateBinder forNamespace(final StateNamespace namespace, final StateContext<?> c) {
+        final StateBinder newStateBinder = newStateBinders.apply(c);
         return new StateBinder() {
           @Override
           public WatermarkHoldState bindWatermark(
@@ -286,7 +314,7 @@ class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
                       underlying.get().get(namespace, address, c);
               return existingState.copy();
             } else {
-              return new InMemoryWatermarkHold<>(timestampCombiner);
+              return newStateBinder.bindWatermark(address, timestampCombiner);
             }
           }
 
@@ -300,7 +328,7 @@ class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
                       underlying.get().get(namespace, address, c);
               return existingState.copy();
             } else {
-              return new InMemoryValue<>();
+              return newStateBinder.bindValue(address, coder);
             }
           }
 
@@ -317,7 +345,7 @@ class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
                       underlying.get().get(namespace, address, c);
               return existingState.copy();
             } else {
-              return new InMemoryCombiningState<>(combineFn);
+              return newStateBinder.bindCombiningValue(address, accumCoder, combineFn);
             }
           }
 
@@ -331,7 +359,7 @@ class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
                       underlying.get().get(namespace, address, c);
               return existingState.copy();
             } else {
-              return new InMemoryBag<>();
+              return newStateBinder.bindBag(address, elemCoder);
             }
           }
 
@@ -345,7 +373,7 @@ class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
                       underlying.get().get(namespace, address, c);
               return existingState.copy();
             } else {
-              return new InMemorySet<>();
+              return newStateBinder.bindSet(address, elemCoder);
             }
           }
 
@@ -361,7 +389,7 @@ class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
                       underlying.get().get(namespace, address, c);
               return existingState.copy();
             } else {
-              return new InMemoryMap<>();
+              return newStateBinder.bindMap(address, mapKeyCoder, mapValueCoder);
             }
           }
 
@@ -468,13 +496,16 @@ class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
       }
     }
 
-    private static class InMemoryStateBinderFactory implements StateBinderFactory {
+    private static class NewStateBinderFactory implements StateBinderFactory {
+      private final Function<StateContext<?>, StateBinder> newStateBinders;
 
-      public InMemoryStateBinderFactory() {}
+      public NewStateBinderFactory(Function<StateContext<?>, StateBinder> newStateBinders) {
+        this.newStateBinders = newStateBinders;
+      }
 
       @Override
       public StateBinder forNamespace(StateNamespace namespace, StateContext<?> c) {
-        return new InMemoryStateBinder(c);
+        return newStateBinders.apply(c);
       }
     }
   }
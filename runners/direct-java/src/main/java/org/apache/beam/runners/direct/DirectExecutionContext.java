@@ -19,11 +19,14 @@ package org.apache.beam.runners.direct;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.function.Function;
+import org.apache.beam.runners.core.StateTag.StateBinder;
 import org.apache.beam.runners.core.StepContext;
 import org.apache.beam.runners.core.TimerInternals;
 import org.apache.beam.runners.direct.WatermarkManager.TimerUpdate;
 import org.apache.beam.runners.direct.WatermarkManager.TransformWatermarks;
 import org.apache.beam.runners.local.StructuralKey;
+import org.apache.beam.sdk.state.StateContext;
 
 /**
  * Execution Context for the {@link DirectRunner}.
@@ -35,6 +38,7 @@ class DirectExecutionContext {
   private final Clock clock;
   private final StructuralKey<?> key;
   private final CopyOnAccessInMemoryStateInternals existingState;
+  private final Function<StateContext<?>, StateBinder> newStateBinders;
   private final TransformWatermarks watermarks;
   private Map<String, DirectStepContext> cachedStepContexts = new LinkedHashMap<>();
 
@@ -42,10 +46,12 @@ class DirectExecutionContext {
       Clock clock,
       StructuralKey<?> key,
       CopyOnAccessInMemoryStateInternals existingState,
+      Function<StateContext<?>, StateBinder> newStateBinders,
       TransformWatermarks watermarks) {
     this.clock = clock;
     this.key = key;
     this.existingState = existingState;
+    this.newStateBinders = newStateBinders;
     this.watermarks = watermarks;
   }
 
@@ -72,7 +78,8 @@ class DirectExecutionContext {
     @Override
     public CopyOnAccessInMemoryStateInternals<?> stateInternals() {
       if (stateInternals == null) {
-        stateInternals = CopyOnAccessInMemoryStateInternals.withUnderlying(key, existingState);
+        stateInternals =
+            CopyOnAccessInMemoryStateInternals.withUnderlying(key, existingState, newStateBinders);
       }
       return stateInternals;
     }
@@ -36,11 +36,13 @@ import org.apache.beam.runners.core.construction.metrics.MetricFiltering;
 import org.apache.beam.runners.core.construction.metrics.MetricKey;
 import org.apache.beam.runners.core.metrics.DistributionData;
 import org.apache.beam.runners.core.metrics.GaugeData;
+import org.apache.beam.runners.core.metrics.HistogramData;
 import org.apache.beam.runners.core.metrics.MetricUpdates;
 import org.apache.beam.runners.core.metrics.MetricUpdates.MetricUpdate;
 import org.apache.beam.runners.core.metrics.MetricsMap;
 import org.apache.beam.sdk.metrics.DistributionResult;
 import org.apache.beam.sdk.metrics.GaugeResult;
+import org.apache.beam.sdk.metrics.HistogramResult;
 import org.apache.beam.sdk.metrics.MetricName;
 import org.apache.beam.sdk.metrics.MetricQueryResults;
 import org.apache.beam.sdk.metrics.MetricResult;
@@ -222,6 +224,28 @@ class DirectMetrics extends MetricResults {
         }
       };
 
+  private static final MetricAggregation<HistogramData, HistogramResult> HISTOGRAM =
+      new MetricAggregation<HistogramData, HistogramResult>() {
+        @Override
+        public HistogramData zero() {
+          return HistogramData.EMPTY;
+        }
+
+        @Override
+        public HistogramData combine(Iterable<HistogramData> updates) {
+          HistogramData result = HistogramData.EMPTY;
+          for (HistogramData update : updates) {
+            result = result.combine(update);
+          }
+          return result;
+        }
+
+        @Override
+        public HistogramResult extract(HistogramData data) {
+          return data.extractResult();
+        }
+      };
+
   /** The current values of counters in memory. */
   private MetricsMap<MetricKey, DirectMetric<Long, Long>> counters =
       new MetricsMap<>(unusedKey -> new DirectMetric<>(COUNTER));
@@ -230,14 +254,29 @@ class DirectMetrics extends MetricResults {
       new MetricsMap<>(unusedKey -> new DirectMetric<>(DISTRIBUTION));
   private MetricsMap<MetricKey, DirectMetric<GaugeData, GaugeResult>> gauges =
       new MetricsMap<>(unusedKey -> new DirectMetric<>(GAUGE));
+  private MetricsMap<MetricKey, DirectMetric<HistogramData, HistogramResult>> histograms =
+      new MetricsMap<>(unusedKey -> new DirectMetric<>(HISTOGRAM));
 
   @AutoValue
   abstract static class DirectMetricQueryResults implements MetricQueryResults {
+    // need to define these here so they appear in the correct order, and so histograms() is a
+    // property rather than the default method of MetricQueryResults
+    @Override
+    public abstract Iterable<MetricResult<Long>> counters();
+    @Override
+    public abstract Iterable<MetricResult<DistributionResult>> distributions();
+    @Override
+    public abstract Iterable<MetricResult<GaugeResult>> gauges();
+    @Override
+    public abstract Iterable<MetricResult<HistogramResult>> histograms();
+
     public static MetricQueryResults create(
         Iterable<MetricResult<Long>> counters,
         Iterable<MetricResult<DistributionResult>> distributions,
-        Iterable<MetricResult<GaugeResult>> gauges) {
-      return new AutoValue_DirectMetrics_DirectMetricQueryResults(counters, distributions, gauges);
+        Iterable<MetricResult<GaugeResult>> gauges,
+        Iterable<MetricResult<HistogramResult>> histograms) {
+      return new AutoValue_DirectMetrics_DirectMetricQueryResults(
+          counters, distributions, gauges, histograms);
     }
   }
 
@@ -274,9 +313,15 @@ class DirectMetrics extends MetricResults {
         : gauges.entries()) {
       maybeExtractResult(filter, gaugeResults, gauge);
     }
+    ImmutableList.Builder<MetricResult<HistogramResult>> histogramResults =
+        ImmutableList.builder();
+    for (Entry<MetricKey, DirectMetric<HistogramData, HistogramResult>> histogram
+        : histograms.entries()) {
+      maybeExtractResult(filter, histogramResults, histogram);
+    }
 
     return DirectMetricQueryResults.create(counterResults.build(), distributionResults.build(),
-        gaugeResults.build());
+        gaugeResults.build(), histogramResults.build());
   }
 
   private <ResultT> void maybeExtractResult(
@@ -305,6 +350,10 @@ class DirectMetrics extends MetricResults {
       gauges.get(gauge.getKey())
           .updatePhysical(bundle, gauge.getUpdate());
     }
+    for (MetricUpdate<HistogramData> histogram : updates.histogramUpdates()) {
+      histograms.get(histogram.getKey())
+          .updatePhysical(bundle, histogram.getUpdate());
+    }
   }
 
   public void commitPhysical(CommittedBundle<?> bundle, MetricUpdates updates) {
@@ -319,6 +368,10 @@ class DirectMetrics extends MetricResults {
       gauges.get(gauge.getKey())
           .commitPhysical(bundle, gauge.getUpdate());
     }
+    for (MetricUpdate<HistogramData> histogram : updates.histogramUpdates()) {
+      histograms.get(histogram.getKey())
+          .commitPhysical(bundle, histogram.getUpdate());
+    }
   }
 
   /** Apply metric updates that represent new logical values from a bundle being committed. */
@@ -334,5 +387,9 @@ class DirectMetrics extends MetricResults {
       gauges.get(gauge.getKey())
           .commitLogical(bundle, gauge.getUpdate());
     }
+    for (MetricUpdate<HistogramData> histogram : updates.histogramUpdates()) {
+      histograms.get(histogram.getKey())
+          .commitLogical(bundle, histogram.getUpdate());
+    }
   }
 }
@@ -53,6 +53,57 @@ public interface DirectOptions extends PipelineOptions, ApplicationNameOptions {
   boolean isEnforceEncodability();
   void setEnforceEncodability(boolean test);
 
+  @Default.Double(1.0)
+  @Description(
+      "The fraction of the elements of each PTransform that the DirectRunner checks for "
+          + "immutability and encodability once checks have backed off. Every element is "
+          + "checked until the PTransform has passed enforcementChecksBeforeBackoff checks, after "
+          + "which the fraction halves every enforcementChecksBeforeBackoff checks until it "
+          + "reaches this rate. Must be greater than 0 and at most 1, which checks every element.")
+  double getEnforcementSampleRate();
+  void setEnforcementSampleRate(double sampleRate);
+
+  @Default.Integer(1000)
+  @Description(
+      "The number of immutability and encodability checks a PTransform must pass before the "
+          + "DirectRunner checks a smaller fraction of its elements. Only used if "
+          + "enforcementSampleRate is less than 1.")
+  int getEnforcementChecksBeforeBackoff();
+  void setEnforcementChecksBeforeBackoff(int checks);
+
+  @Default.Boolean(false)
+  @Description(
+      "Controls whether the DirectRunner should execute chains of consecutive ParDos that don't "
+          + "use state, timers or side inputs as single steps, without materializing the "
+          + "PCollections between them. The elements of those PCollections are not checked for "
+          + "encodability or immutability.")
+  boolean isFuseParDos();
+  void setFuseParDos(boolean fuseParDos);
+
+  @Default.Boolean(false)
+  @Description(
+      "Controls whether the DirectRunner should store the values, bags and combining state of "
+          + "stateful steps as bytes encoded with the Coder of the state rather than as objects. "
+          + "This allows much more state to be held in memory, at the cost of encoding and "
+          + "decoding state when it is accessed.")
+  boolean isEncodeState();
+  void setEncodeState(boolean encodeState);
+
+  @Default.Long(64L << 20)
+  @Description(
+      "The maximum total size in bytes of the encoded state whose decoded values and bag chunks "
+          + "the DirectRunner caches when encodeState is set. The least recently used are evicted "
+          + "first.")
+  long getDecodedStateCacheMaxBytes();
+  void setDecodedStateCacheMaxBytes(long maxBytes);
+
+  @Default.Long(128L << 20)
+  @Description(
+      "The maximum total size in bytes of the encoded side input contents that the DirectRunner "
+          + "keeps materialized. The least recently used side input windows are evicted first.")
+  long getSideInputCacheMaxBytes();
+  void setSideInputCacheMaxBytes(long maxBytes);
+
   @Default.InstanceFactory(AvailableParallelismFactory.class)
   @Description(
       "Controls the amount of target parallelism the DirectRunner will use. Defaults to"
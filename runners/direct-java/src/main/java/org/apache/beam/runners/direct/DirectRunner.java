@@ -44,6 +44,7 @@ import org.apache.beam.sdk.PipelineRunner;
 import org.apache.beam.sdk.metrics.MetricResults;
 import org.apache.beam.sdk.metrics.MetricsEnvironment;
 import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.runners.AppliedPTransform;
 import org.apache.beam.sdk.runners.PTransformOverride;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.util.UserCodeException;
@@ -82,7 +83,9 @@ public class DirectRunner extends PipelineRunner<DirectPipelineResult> {
      */
     private static final Set<String> CONTAINS_UDF =
         ImmutableSet.of(
-            PTransformTranslation.READ_TRANSFORM_URN, PTransformTranslation.PAR_DO_TRANSFORM_URN);
+            PTransformTranslation.READ_TRANSFORM_URN,
+            PTransformTranslation.PAR_DO_TRANSFORM_URN,
+            ParDoFusion.DIRECT_FUSED_PAR_DO_URN);
 
     public abstract boolean appliesTo(PCollection<?> collection, DirectGraph graph);
 
@@ -100,28 +103,33 @@ public class DirectRunner extends PipelineRunner<DirectPipelineResult> {
     }
 
     static BundleFactory bundleFactoryFor(
-        Set<Enforcement> enforcements, DirectGraph graph) {
+        Set<Enforcement> enforcements, DirectGraph graph, DirectOptions options) {
       BundleFactory bundleFactory =
           enforcements.contains(Enforcement.ENCODABILITY)
-              ? CloningBundleFactory.create()
+              ? CloningBundleFactory.create(EnforcementSampler.<PCollection<?>>create(options))
               : ImmutableListBundleFactory.create();
       if (enforcements.contains(Enforcement.IMMUTABILITY)) {
-        bundleFactory = ImmutabilityCheckingBundleFactory.create(bundleFactory, graph);
+        bundleFactory =
+            ImmutabilityCheckingBundleFactory.create(
+                bundleFactory, graph, EnforcementSampler.<PCollection<?>>create(options));
       }
       return bundleFactory;
     }
 
     private static Map<String, Collection<ModelEnforcementFactory>>
-        defaultModelEnforcements(Set<Enforcement> enabledEnforcements) {
+        defaultModelEnforcements(Set<Enforcement> enabledEnforcements, DirectOptions options) {
       ImmutableMap.Builder<String, Collection<ModelEnforcementFactory>> enforcements =
           ImmutableMap.builder();
       ImmutableList.Builder<ModelEnforcementFactory> enabledParDoEnforcements =
           ImmutableList.builder();
       if (enabledEnforcements.contains(Enforcement.IMMUTABILITY)) {
-        enabledParDoEnforcements.add(ImmutabilityEnforcementFactory.create());
+        enabledParDoEnforcements.add(
+            ImmutabilityEnforcementFactory.create(
+                EnforcementSampler.<AppliedPTransform<?, ?, ?>>create(options)));
       }
       Collection<ModelEnforcementFactory> parDoEnforcements = enabledParDoEnforcements.build();
       enforcements.put(PTransformTranslation.PAR_DO_TRANSFORM_URN, parDoEnforcements);
+      enforcements.put(ParDoFusion.DIRECT_FUSED_PAR_DO_URN, parDoEnforcements);
       return enforcements.build();
     }
   }
@@ -180,11 +188,14 @@ public class DirectRunner extends PipelineRunner<DirectPipelineResult> {
     DisplayDataValidator.validateOptions(getPipelineOptions());
 
     DirectGraph graph = graphVisitor.getGraph();
+    if (options.isFuseParDos()) {
+      graph = ParDoFusion.fuse(graph, keyedPValueVisitor.getKeyedPValues());
+    }
     EvaluationContext context =
         EvaluationContext.create(
             getPipelineOptions(),
             clockSupplier.get(),
-            Enforcement.bundleFactoryFor(enabledEnforcements, graph),
+            Enforcement.bundleFactoryFor(enabledEnforcements, graph, options),
             graph,
             keyedPValueVisitor.getKeyedPValues());
 
@@ -193,7 +204,7 @@ public class DirectRunner extends PipelineRunner<DirectPipelineResult> {
         ExecutorServiceParallelExecutor.create(
             options.getTargetParallelism(),
             registry,
-            Enforcement.defaultModelEnforcements(enabledEnforcements),
+            Enforcement.defaultModelEnforcements(enabledEnforcements, options),
             context);
     executor.start(graph, RootProviderRegistry.defaultRegistry(context));
 
@@ -237,6 +248,9 @@ public class DirectRunner extends PipelineRunner<DirectPipelineResult> {
             .add(
                 PTransformOverride.of(
                     MultiStepCombine.matcher(), MultiStepCombine.Factory.create()))
+            .add(
+                PTransformOverride.of(
+                    MergingWindowsCombine.matcher(), MergingWindowsCombine.Factory.create()))
             .add(
                 PTransformOverride.of(
                     PTransformMatchers.urnEqualTo(PTransformTranslation.CREATE_VIEW_TRANSFORM_URN),
@@ -185,8 +185,12 @@ class DirectTransformExecutor<T> implements TransformExecutor {
       TransformEvaluator<T> evaluator, MetricsContainerImpl metricsContainer,
       Collection<ModelEnforcement<T>> enforcements)
       throws Exception {
-    TransformResult<T> result =
-        evaluator.finishBundle().withLogicalMetricUpdates(metricsContainer.getCumulative());
+    TransformResult<T> result = evaluator.finishBundle();
+    // Evaluators which run several steps, such as those of fused ParDos, report the metrics of each
+    // step themselves.
+    if (MetricUpdates.EMPTY.equals(result.getLogicalMetricUpdates())) {
+      result = result.withLogicalMetricUpdates(metricsContainer.getCumulative());
+    }
     CommittedResult outputs = onComplete.handleResult(inputBundle, result);
     for (ModelEnforcement<T> enforcement : enforcements) {
       enforcement.afterFinish(inputBundle, result, outputs.getOutputs());
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Decides which elements the immutability and encodability enforcements of the {@link
+ * DirectRunner} check.
+ *
+ * <p>Every element of a step is checked until the step has passed a number of checks. The sampler
+ * then backs off, halving the fraction of the elements of the step that it checks each time the
+ * step passes that many more checks, until the fraction reaches the configured sample rate.
+ * Elements are sampled at a fixed stride rather than at random, so runs are reproducible.
+ *
+ * @param <K> the type of the steps that elements are sampled for
+ */
+class EnforcementSampler<K> {
+  /** Returns an {@link EnforcementSampler} that checks every element. */
+  public static <K> EnforcementSampler<K> always() {
+    return new EnforcementSampler<>(1L, Long.MAX_VALUE);
+  }
+
+  /**
+   * Returns an {@link EnforcementSampler} that uses the sample rate and backoff of the provided
+   * {@link DirectOptions}.
+   */
+  public static <K> EnforcementSampler<K> create(DirectOptions options) {
+    double sampleRate = options.getEnforcementSampleRate();
+    checkArgument(
+        sampleRate > 0 && sampleRate <= 1,
+        "Enforcement sample rate must be greater than 0 and at most 1, got %s",
+        sampleRate);
+    int checksBeforeBackoff = options.getEnforcementChecksBeforeBackoff();
+    checkArgument(
+        checksBeforeBackoff > 0,
+        "Enforcement checks before backoff must be greater than 0, got %s",
+        checksBeforeBackoff);
+    // Rounded up, so any rate below 1 samples at least every second element.
+    long maxStride = Math.max(1L, (long) Math.ceil(1 / sampleRate));
+    return new EnforcementSampler<>(maxStride, checksBeforeBackoff);
+  }
+
+  private final long maxStride;
+  private final long checksBeforeBackoff;
+  private final ConcurrentMap<K, StepSamples> samples;
+
+  private EnforcementSampler(long maxStride, long checksBeforeBackoff) {
+    this.maxStride = maxStride;
+    this.checksBeforeBackoff = checksBeforeBackoff;
+    this.samples = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Returns whether the next element of the provided step should be checked. A failed check fails
+   * the pipeline, so every element this returns true for is counted as a passed check.
+   */
+  public boolean shouldCheck(K step) {
+    if (maxStride == 1L) {
+      return true;
+    }
+    return samples.computeIfAbsent(step, unused -> new StepSamples()).next();
+  }
+
+  private class StepSamples {
+    private long elements;
+    private long checks;
+
+    private synchronized boolean next() {
+      long backoffs = checks / checksBeforeBackoff;
+      long stride = backoffs >= 62 ? maxStride : Math.min(maxStride, 1L << backoffs);
+      boolean check = elements % stride == 0;
+      elements++;
+      if (check) {
+        checks++;
+      }
+      return check;
+    }
+  }
+}
@@ -31,9 +31,15 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 import javax.annotation.Nullable;
+import org.apache.beam.runners.core.DecodedStateCache;
+import org.apache.beam.runners.core.EncodedInMemoryStateInternals.EncodedStateBinder;
+import org.apache.beam.runners.core.InMemoryStateInternals.InMemoryStateBinder;
 import org.apache.beam.runners.core.ReadyCheckingSideInputReader;
+import org.apache.beam.runners.core.SideInputCache;
 import org.apache.beam.runners.core.SideInputReader;
+import org.apache.beam.runners.core.StateTag.StateBinder;
 import org.apache.beam.runners.core.TimerInternals.TimerData;
 import org.apache.beam.runners.direct.CommittedResult.OutputType;
 import org.apache.beam.runners.direct.DirectGroupByKey.DirectGroupByKeyOnly;
@@ -42,6 +48,7 @@ import org.apache.beam.runners.direct.WatermarkManager.TransformWatermarks;
 import org.apache.beam.runners.local.StructuralKey;
 import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.runners.AppliedPTransform;
+import org.apache.beam.sdk.state.StateContext;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.transforms.windowing.Trigger;
@@ -87,6 +94,7 @@ class EvaluationContext {
   /** The stateInternals of the world, by applied PTransform and key. */
   private final ConcurrentMap<StepAndKey, CopyOnAccessInMemoryStateInternals>
       applicationStateInternals;
+  private final Function<StateContext<?>, StateBinder> newStateBinders;
 
   private final SideInputContainer sideInputContainer;
 
@@ -116,9 +124,20 @@ class EvaluationContext {
     this.keyedPValues = keyedPValues;
 
     this.watermarkManager = WatermarkManager.create(clock, graph);
-    this.sideInputContainer = SideInputContainer.create(this, graph.getViews());
+    this.sideInputContainer =
+        SideInputContainer.create(
+            this,
+            graph.getViews(),
+            SideInputCache.withMaximumWeight(options.getSideInputCacheMaxBytes()));
 
     this.applicationStateInternals = new ConcurrentHashMap<>();
+    if (options.isEncodeState()) {
+      DecodedStateCache cache =
+          DecodedStateCache.withMaximumWeight(options.getDecodedStateCacheMaxBytes());
+      this.newStateBinders = c -> new EncodedStateBinder(c, cache);
+    } else {
+      this.newStateBinders = InMemoryStateBinder::new;
+    }
     this.metrics = new DirectMetrics();
 
     this.callbackExecutor = WatermarkCallbackExecutor.create(MoreExecutors.directExecutor());
@@ -342,6 +361,7 @@ class EvaluationContext {
         clock,
         key,
         (CopyOnAccessInMemoryStateInternals) applicationStateInternals.get(stepAndKey),
+        newStateBinders,
         watermarkManager.getWatermarks(application));
   }
 
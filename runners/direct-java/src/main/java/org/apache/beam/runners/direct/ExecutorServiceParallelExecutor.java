@@ -18,19 +18,17 @@
 package org.apache.beam.runners.direct;
 
 import com.google.common.base.Optional;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-import com.google.common.cache.RemovalListener;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.util.concurrent.MoreExecutors;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -65,7 +63,7 @@ final class ExecutorServiceParallelExecutor
 
   private final TransformExecutorFactory executorFactory;
   private final TransformExecutorService parallelExecutorService;
-  private final LoadingCache<StepAndKey, TransformExecutorService> serialExecutorServices;
+  private final ConcurrentMap<StepAndKey, KeyedTransformExecutorService> serialExecutorServices;
 
   private final QueueMessageReceiver visibleUpdates;
 
@@ -86,26 +84,19 @@ final class ExecutorServiceParallelExecutor
       Map<String, Collection<ModelEnforcementFactory>> transformEnforcements,
       EvaluationContext context) {
     this.targetParallelism = targetParallelism;
-    // Don't use Daemon threads for workers. The Pipeline should continue to execute even if there
-    // are no other active threads (for example, because waitUntilFinish was not called)
+    // A work-stealing pool: work scheduled from a worker, such as the next bundle for a key once
+    // the previous one completes, is queued on that worker's local deque and often runs there,
+    // while idle workers steal from busy ones instead of contending on a single shared queue.
+    // This affinity of keys to workers is a side effect of the local deques, not a guarantee.
+    // Async mode processes local work in FIFO order, as none of the submitted tasks is ever joined.
     this.executorService =
-        Executors.newFixedThreadPool(
-            targetParallelism,
-            new ThreadFactoryBuilder()
-                .setThreadFactory(MoreExecutors.platformThreadFactory())
-                .setNameFormat("direct-runner-worker")
-                .build());
+        new ForkJoinPool(targetParallelism, workerThreadFactory(), null, true);
     this.registry = registry;
     this.evaluationContext = context;
 
-    // Weak Values allows TransformExecutorServices that are no longer in use to be reclaimed.
-    // Executing TransformExecutorServices have a strong reference to their TransformExecutorService
-    // which stops the TransformExecutorServices from being prematurely garbage collected
-    serialExecutorServices =
-        CacheBuilder.newBuilder()
-            .weakValues()
-            .removalListener(shutdownExecutorServiceListener())
-            .build(serialTransformExecutorServiceCacheLoader());
+    // Entries are removed as soon as all work scheduled for a (step, key) completed, so the map
+    // only holds the keys that currently have work in flight.
+    serialExecutorServices = new ConcurrentHashMap<>();
 
     this.visibleUpdates = new QueueMessageReceiver();
 
@@ -113,22 +104,15 @@ final class ExecutorServiceParallelExecutor
     executorFactory = new DirectTransformExecutor.Factory(context, registry, transformEnforcements);
   }
 
-  private CacheLoader<StepAndKey, TransformExecutorService>
-      serialTransformExecutorServiceCacheLoader() {
-    return new CacheLoader<StepAndKey, TransformExecutorService>() {
-      @Override
-      public TransformExecutorService load(StepAndKey stepAndKey) throws Exception {
-        return TransformExecutorServices.serial(executorService);
-      }
-    };
-  }
-
-  private RemovalListener<StepAndKey, TransformExecutorService> shutdownExecutorServiceListener() {
-    return notification -> {
-      TransformExecutorService service = notification.getValue();
-      if (service != null) {
-        service.shutdown();
-      }
+  private static ForkJoinWorkerThreadFactory workerThreadFactory() {
+    return pool -> {
+      ForkJoinWorkerThread thread =
+          ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+      // Don't use Daemon threads for workers. The Pipeline should continue to execute even if
+      // there are no other active threads (for example, because waitUntilFinish was not called)
+      thread.setDaemon(false);
+      thread.setName("direct-runner-worker");
+      return thread;
     };
   }
 
@@ -194,24 +178,29 @@ final class ExecutorServiceParallelExecutor
       final AppliedPTransform<?, ?, ?> transform,
       final CommittedBundle<T> bundle,
       final CompletionCallback onComplete) {
-    TransformExecutorService transformExecutor;
-
+    if (pipelineState.get().isTerminal()) {
+      return;
+    }
     if (isKeyed(bundle.getPCollection())) {
       final StepAndKey stepAndKey = StepAndKey.of(transform, bundle.getKey());
-      // This executor will remain reachable until it has executed all scheduled transforms.
-      // The TransformExecutors keep a strong reference to the Executor, the ExecutorService keeps
-      // a reference to the scheduled DirectTransformExecutor callable. Follow-up TransformExecutors
-      // (scheduled due to the completion of another DirectTransformExecutor) are provided to the
-      // ExecutorService before the Earlier DirectTransformExecutor callable completes.
-      transformExecutor = serialExecutorServices.getUnchecked(stepAndKey);
+      // The executor stays in the map until the work scheduled here completes, so all work for
+      // the key is scheduled on the same serial executor. The work only counts as outstanding
+      // once it was scheduled, as otherwise it never completes and the entry is never removed.
+      serialExecutorServices.compute(
+          stepAndKey,
+          (key, existing) -> {
+            KeyedTransformExecutorService service =
+                existing == null ? new KeyedTransformExecutorService(key) : existing;
+            if (pipelineState.get().isTerminal()) {
+              return existing;
+            }
+            service.schedule(executorFactory.create(bundle, transform, onComplete, service));
+            service.outstanding++;
+            return service;
+          });
     } else {
-      transformExecutor = parallelExecutorService;
-    }
-
-    TransformExecutor callable =
-        executorFactory.create(bundle, transform, onComplete, transformExecutor);
-    if (!pipelineState.get().isTerminal()) {
-      transformExecutor.schedule(callable);
+      parallelExecutorService.schedule(
+          executorFactory.create(bundle, transform, onComplete, parallelExecutorService));
     }
   }
 
@@ -275,8 +264,10 @@ final class ExecutorServiceParallelExecutor
     pipelineState.compareAndSet(State.RUNNING, newState);
     // Stop accepting new work before shutting down the executor. This ensures that thread don't try
     // to add work to the shutdown executor.
-    serialExecutorServices.invalidateAll();
-    serialExecutorServices.cleanUp();
+    for (TransformExecutorService serialExecutorService : serialExecutorServices.values()) {
+      serialExecutorService.shutdown();
+    }
+    serialExecutorServices.clear();
     parallelExecutorService.shutdown();
     executorService.shutdown();
     try {
@@ -286,6 +277,43 @@ final class ExecutorServiceParallelExecutor
     }
   }
 
+  /**
+   * A serial {@link TransformExecutorService} for a single {@link StepAndKey}, which removes
+   * itself from {@link #serialExecutorServices} once all work scheduled on it completed.
+   */
+  private class KeyedTransformExecutorService implements TransformExecutorService {
+    private final StepAndKey stepAndKey;
+    private final TransformExecutorService delegate;
+
+    /**
+     * The amount of work scheduled but not yet completed. Only accessed while computing the entry
+     * for {@link #stepAndKey} in {@link #serialExecutorServices}.
+     */
+    private int outstanding;
+
+    private KeyedTransformExecutorService(StepAndKey stepAndKey) {
+      this.stepAndKey = stepAndKey;
+      this.delegate = TransformExecutorServices.serial(executorService);
+    }
+
+    @Override
+    public void schedule(TransformExecutor work) {
+      delegate.schedule(work);
+    }
+
+    @Override
+    public void complete(TransformExecutor completed) {
+      delegate.complete(completed);
+      serialExecutorServices.computeIfPresent(
+          stepAndKey, (key, service) -> --service.outstanding == 0 ? null : service);
+    }
+
+    @Override
+    public void shutdown() {
+      delegate.shutdown();
+    }
+  }
+
   /**
    * An update of interest to the user. Used in {@link #waitUntilFinish} to decide whether to return
    * normally or throw an exception.
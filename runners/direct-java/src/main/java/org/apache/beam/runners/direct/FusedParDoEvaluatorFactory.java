@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.beam.runners.core.metrics.DistributionData;
+import org.apache.beam.runners.core.metrics.GaugeData;
+import org.apache.beam.runners.core.metrics.HistogramData;
+import org.apache.beam.runners.core.metrics.MetricUpdates;
+import org.apache.beam.runners.core.metrics.MetricUpdates.MetricUpdate;
+import org.apache.beam.runners.core.metrics.MetricsContainerImpl;
+import org.apache.beam.runners.direct.DirectExecutionContext.DirectStepContext;
+import org.apache.beam.runners.direct.ParDoEvaluator.BundleOutputManager;
+import org.apache.beam.runners.direct.ParDoFusion.FusedParDo;
+import org.apache.beam.runners.local.StructuralKey;
+import org.apache.beam.sdk.metrics.MetricsEnvironment;
+import org.apache.beam.sdk.runners.AppliedPTransform;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TupleTag;
+import org.joda.time.Instant;
+
+/**
+ * A {@link TransformEvaluatorFactory} for {@link FusedParDo}. The produced {@link
+ * TransformEvaluator} passes each element through the {@link DoFn DoFns} of all of the fused
+ * steps, handing the outputs of each step to the next one as they are produced.
+ *
+ * <p>User metrics are reported under the fused step that reported them rather than the {@link
+ * FusedParDo}.
+ */
+class FusedParDoEvaluatorFactory implements TransformEvaluatorFactory {
+  private final EvaluationContext evaluationContext;
+  private final ParDoEvaluatorFactory<Object, Object> parDoEvaluatorFactory;
+
+  FusedParDoEvaluatorFactory(EvaluationContext evaluationContext) {
+    this.evaluationContext = evaluationContext;
+    this.parDoEvaluatorFactory =
+        new ParDoEvaluatorFactory<>(
+            evaluationContext,
+            ParDoEvaluator.defaultRunnerFactory(),
+            ParDoEvaluatorFactory.basicDoFnCacheLoader());
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <InputT> TransformEvaluator<InputT> forApplication(
+      AppliedPTransform<?, ?, ?> application, CommittedBundle<?> inputBundle) throws Exception {
+    FusedParDo fusedParDo = (FusedParDo) application.getTransform();
+    StructuralKey<?> key = inputBundle.getKey();
+    DirectExecutionContext executionContext =
+        evaluationContext.getExecutionContext(application, key);
+
+    // Each step outputs to the evaluator of the next, so the evaluators are created last to first.
+    List<AppliedPTransform<?, ?, ?>> steps = fusedParDo.getSteps();
+    List<FusedStep> fusedSteps = new ArrayList<>();
+    FusedStep downstream = null;
+    for (int i = steps.size() - 1; i >= 0; i--) {
+      AppliedPTransform<?, ?, ?> step = steps.get(i);
+      BundleOutputManager outputManager;
+      if (downstream == null) {
+        outputManager =
+            ParDoEvaluator.createOutputManager(
+                evaluationContext, key, ParDoEvaluatorFactory.pcollections(step.getOutputs()));
+      } else {
+        TupleTag<?> mainOutputTag = Iterables.getOnlyElement(step.getOutputs().keySet());
+        outputManager =
+            BundleOutputManager.create(
+                Collections.<TupleTag<?>, UncommittedBundle<?>>singletonMap(
+                    mainOutputTag,
+                    new ForwardingBundle<>(
+                        (PCollection<Object>) step.getOutputs().get(mainOutputTag),
+                        downstream)));
+      }
+      DirectStepContext stepContext =
+          executionContext.getStepContext(fusedParDo.getStepNames().get(i));
+      downstream =
+          new FusedStep(
+              step,
+              parDoEvaluatorFactory.createFusedEvaluator(step, stepContext, outputManager));
+      fusedSteps.add(downstream);
+    }
+    Collections.reverse(fusedSteps);
+
+    return new FusedParDoEvaluator<>(application, inputBundle, fusedSteps);
+  }
+
+  @Override
+  public void cleanup() throws Exception {
+    parDoEvaluatorFactory.cleanup();
+  }
+
+  private class FusedParDoEvaluator<InputT> implements TransformEvaluator<InputT> {
+    private final AppliedPTransform<?, ?, ?> application;
+    private final CommittedBundle<?> inputBundle;
+    private final List<FusedStep> steps;
+
+    private FusedParDoEvaluator(
+        AppliedPTransform<?, ?, ?> application,
+        CommittedBundle<?> inputBundle,
+        List<FusedStep> steps) {
+      this.application = application;
+      this.inputBundle = inputBundle;
+      this.steps = steps;
+    }
+
+    @Override
+    public void processElement(WindowedValue<InputT> element) throws Exception {
+      steps.get(0).processElement(element);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public TransformResult<InputT> finishBundle() throws Exception {
+      // Upstream steps may output from finishBundle, so the steps are finished first to last.
+      List<TransformResult<?>> results = new ArrayList<>();
+      List<MetricUpdates> metricUpdates = new ArrayList<>();
+      for (FusedStep step : steps) {
+        results.add(step.finishBundle());
+        MetricUpdates stepUpdates = step.metricsContainer.getCumulative();
+        evaluationContext.getMetrics().commitPhysical(inputBundle, stepUpdates);
+        metricUpdates.add(stepUpdates);
+      }
+
+      TransformResult<InputT> first = (TransformResult<InputT>) results.get(0);
+      TransformResult<?> last = results.get(results.size() - 1);
+      return StepTransformResult.<InputT>withoutHold(application)
+          .addOutput(ImmutableList.<UncommittedBundle<?>>copyOf(last.getOutputBundles()))
+          .addUnprocessedElements(first.getUnprocessedElements())
+          .withMetricUpdates(concat(metricUpdates))
+          .build();
+    }
+  }
+
+  private static MetricUpdates concat(List<MetricUpdates> metricUpdates) {
+    List<MetricUpdate<Long>> counters = new ArrayList<>();
+    List<MetricUpdate<DistributionData>> distributions = new ArrayList<>();
+    List<MetricUpdate<GaugeData>> gauges = new ArrayList<>();
+    List<MetricUpdate<HistogramData>> histograms = new ArrayList<>();
+    for (MetricUpdates updates : metricUpdates) {
+      Iterables.addAll(counters, updates.counterUpdates());
+      Iterables.addAll(distributions, updates.distributionUpdates());
+      Iterables.addAll(gauges, updates.gaugeUpdates());
+      Iterables.addAll(histograms, updates.histogramUpdates());
+    }
+    return MetricUpdates.create(counters, distributions, gauges, histograms);
+  }
+
+  /**
+   * One of the steps of a {@link FusedParDo}, which evaluates its {@link DoFn} with its own {@link
+   * MetricsContainerImpl}.
+   */
+  private static class FusedStep {
+    private final TransformEvaluator<Object> evaluator;
+    private final MetricsContainerImpl metricsContainer;
+
+    @SuppressWarnings("unchecked")
+    private FusedStep(AppliedPTransform<?, ?, ?> step, TransformEvaluator<?> evaluator) {
+      this.evaluator = (TransformEvaluator<Object>) evaluator;
+      this.metricsContainer = new MetricsContainerImpl(step.getFullName());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void processElement(WindowedValue<?> element) throws Exception {
+      try (Closeable metricsScope = MetricsEnvironment.scopedMetricsContainer(metricsContainer)) {
+        evaluator.processElement((WindowedValue<Object>) element);
+      }
+    }
+
+    private TransformResult<?> finishBundle() throws Exception {
+      try (Closeable metricsScope = MetricsEnvironment.scopedMetricsContainer(metricsContainer)) {
+        return evaluator.finishBundle();
+      }
+    }
+  }
+
+  /**
+   * An {@link UncommittedBundle} for the output of a fused step which immediately processes each
+   * element with the next fused step instead of buffering it.
+   */
+  private static class ForwardingBundle<T> implements UncommittedBundle<T> {
+    private final PCollection<T> pcollection;
+    private final FusedStep downstream;
+
+    private ForwardingBundle(PCollection<T> pcollection, FusedStep downstream) {
+      this.pcollection = pcollection;
+      this.downstream = downstream;
+    }
+
+    @Override
+    public PCollection<T> getPCollection() {
+      return pcollection;
+    }
+
+    @Override
+    public UncommittedBundle<T> add(WindowedValue<T> element) {
+      try {
+        downstream.processElement(element);
+      } catch (Exception e) {
+        if (e instanceof RuntimeException) {
+          throw (RuntimeException) e;
+        }
+        throw new RuntimeException(e);
+      }
+      return this;
+    }
+
+    @Override
+    public CommittedBundle<T> commit(Instant synchronizedProcessingTime) {
+      throw new IllegalStateException(
+          String.format(
+              "The elements of %s are processed as they are output and can't be committed",
+              pcollection));
+    }
+  }
+}
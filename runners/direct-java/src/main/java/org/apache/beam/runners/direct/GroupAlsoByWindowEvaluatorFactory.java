@@ -36,6 +36,7 @@ import org.apache.beam.runners.core.triggers.ExecutableTriggerStateMachine;
 import org.apache.beam.runners.core.triggers.TriggerStateMachines;
 import org.apache.beam.runners.direct.DirectExecutionContext.DirectStepContext;
 import org.apache.beam.runners.direct.DirectGroupByKey.DirectGroupAlsoByWindow;
+import org.apache.beam.runners.direct.MergingWindowsCombine.DirectCombineAlsoByWindow;
 import org.apache.beam.runners.local.StructuralKey;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.metrics.Counter;
@@ -54,7 +55,8 @@ import org.joda.time.Instant;
 
 /**
  * The {@link DirectRunner} {@link TransformEvaluatorFactory} for the
- * {@link DirectGroupAlsoByWindow} {@link PTransform}.
+ * {@link DirectGroupAlsoByWindow} and {@link DirectCombineAlsoByWindow} {@link PTransform
+ * PTransforms}.
  */
 class GroupAlsoByWindowEvaluatorFactory implements TransformEvaluatorFactory {
   private final EvaluationContext evaluationContext;
@@ -77,41 +79,54 @@ class GroupAlsoByWindowEvaluatorFactory implements TransformEvaluatorFactory {
   @Override
   public void cleanup() {}
 
+  @SuppressWarnings({"unchecked", "rawtypes"})
   private <K, V> TransformEvaluator<KeyedWorkItem<K, V>> createEvaluator(
-      AppliedPTransform<
-              PCollection<KeyedWorkItem<K, V>>,
-              PCollection<KV<K, Iterable<V>>>,
-              DirectGroupAlsoByWindow<K, V>>
-          application,
+      AppliedPTransform<PCollection<KeyedWorkItem<K, V>>, PCollection<KV<K, ?>>, ?> application,
       CommittedBundle<KeyedWorkItem<K, V>> inputBundle) {
-    return new GroupAlsoByWindowEvaluator<>(
-        evaluationContext, inputBundle, application);
+    Coder<KeyedWorkItem<K, V>> inputCoder = inputBundle.getPCollection().getCoder();
+    if (application.getTransform() instanceof DirectCombineAlsoByWindow) {
+      DirectCombineAlsoByWindow<K, V, ?, ?> transform =
+          (DirectCombineAlsoByWindow<K, V, ?, ?>) application.getTransform();
+      return new GroupAlsoByWindowEvaluator(
+          evaluationContext,
+          inputBundle,
+          application,
+          transform.getInputWindowingStrategy(),
+          transform.getReduceFn(inputCoder));
+    }
+    DirectGroupAlsoByWindow<K, V> transform =
+        (DirectGroupAlsoByWindow<K, V>) application.getTransform();
+    return new GroupAlsoByWindowEvaluator(
+        evaluationContext,
+        inputBundle,
+        application,
+        transform.getInputWindowingStrategy(),
+        SystemReduceFn.buffering(transform.getValueCoder(inputCoder)));
   }
 
   /**
-   * A transform evaluator for the pseudo-primitive {@link DirectGroupAlsoByWindow}. The window of
+   * A transform evaluator for the pseudo-primitives {@link DirectGroupAlsoByWindow} and {@link
+   * DirectCombineAlsoByWindow}, which differ only in their {@link SystemReduceFn}. The window of
    * the input {@link KeyedWorkItem} is ignored; it should be in the global window, as element
    * windows are reified in the {@link KeyedWorkItem#elementsIterable()}.
    *
    * @see GroupByKeyViaGroupByKeyOnly
    */
-  private static class GroupAlsoByWindowEvaluator<K, V>
+  private static class GroupAlsoByWindowEvaluator<K, V, OutputT>
       implements TransformEvaluator<KeyedWorkItem<K, V>> {
     private final EvaluationContext evaluationContext;
     private final AppliedPTransform<
-        PCollection<KeyedWorkItem<K, V>>, PCollection<KV<K, Iterable<V>>>,
-        DirectGroupAlsoByWindow<K, V>>
+        PCollection<KeyedWorkItem<K, V>>, PCollection<KV<K, OutputT>>, ?>
         application;
 
     private final DirectStepContext stepContext;
-    private @SuppressWarnings("unchecked") final WindowingStrategy<?, BoundedWindow>
-        windowingStrategy;
+    private final WindowingStrategy<?, BoundedWindow> windowingStrategy;
 
     private final StructuralKey<?> structuralKey;
     private final Collection<UncommittedBundle<?>> outputBundles;
     private final ImmutableList.Builder<WindowedValue<KeyedWorkItem<K, V>>> unprocessedElements;
 
-    private final SystemReduceFn<K, V, Iterable<V>, Iterable<V>, BoundedWindow> reduceFn;
+    private final SystemReduceFn<K, V, ?, OutputT, BoundedWindow> reduceFn;
     private final Counter droppedDueToClosedWindow;
     private final Counter droppedDueToLateness;
 
@@ -119,9 +134,9 @@ class GroupAlsoByWindowEvaluatorFactory implements TransformEvaluatorFactory {
         final EvaluationContext evaluationContext,
         CommittedBundle<KeyedWorkItem<K, V>> inputBundle,
         final AppliedPTransform<
-                PCollection<KeyedWorkItem<K, V>>,
-                PCollection<KV<K, Iterable<V>>>,
-                DirectGroupAlsoByWindow<K, V>> application) {
+                PCollection<KeyedWorkItem<K, V>>, PCollection<KV<K, OutputT>>, ?> application,
+        WindowingStrategy<?, BoundedWindow> windowingStrategy,
+        SystemReduceFn<K, V, ?, OutputT, BoundedWindow> reduceFn) {
       this.evaluationContext = evaluationContext;
       this.application = application;
 
@@ -130,16 +145,12 @@ class GroupAlsoByWindowEvaluatorFactory implements TransformEvaluatorFactory {
           .getExecutionContext(application, inputBundle.getKey())
           .getStepContext(
               evaluationContext.getStepName(application));
-      windowingStrategy =
-          (WindowingStrategy<?, BoundedWindow>)
-              application.getTransform().getInputWindowingStrategy();
+      this.windowingStrategy = windowingStrategy;
 
       outputBundles = new ArrayList<>();
       unprocessedElements = ImmutableList.builder();
 
-      Coder<V> valueCoder =
-          application.getTransform().getValueCoder(inputBundle.getPCollection().getCoder());
-      reduceFn = SystemReduceFn.buffering(valueCoder);
+      this.reduceFn = reduceFn;
       droppedDueToClosedWindow = Metrics.counter(GroupAlsoByWindowEvaluator.class,
           GroupAlsoByWindowsAggregators.DROPPED_DUE_TO_CLOSED_WINDOW_COUNTER);
       droppedDueToLateness = Metrics.counter(GroupAlsoByWindowEvaluator.class,
@@ -151,10 +162,10 @@ class GroupAlsoByWindowEvaluatorFactory implements TransformEvaluatorFactory {
       KeyedWorkItem<K, V> workItem = element.getValue();
       K key = workItem.key();
 
-      UncommittedBundle<KV<K, Iterable<V>>> bundle =
+      UncommittedBundle<KV<K, OutputT>> bundle =
           evaluationContext.createKeyedBundle(
               structuralKey,
-              (PCollection<KV<K, Iterable<V>>>)
+              (PCollection<KV<K, OutputT>>)
                   Iterables.getOnlyElement(application.getOutputs().values()));
       outputBundles.add(bundle);
       CopyOnAccessInMemoryStateInternals stateInternals =
@@ -162,7 +173,7 @@ class GroupAlsoByWindowEvaluatorFactory implements TransformEvaluatorFactory {
       DirectTimerInternals timerInternals = stepContext.timerInternals();
       RunnerApi.Trigger runnerApiTrigger =
           TriggerTranslation.toProto(windowingStrategy.getTrigger());
-      ReduceFnRunner<K, V, Iterable<V>, BoundedWindow> reduceFnRunner =
+      ReduceFnRunner<K, V, OutputT, BoundedWindow> reduceFnRunner =
           new ReduceFnRunner<>(
               key,
               windowingStrategy,
@@ -231,17 +242,17 @@ class GroupAlsoByWindowEvaluatorFactory implements TransformEvaluatorFactory {
     }
   }
 
-  private static class OutputWindowedValueToBundle<K, V>
-      implements OutputWindowedValue<KV<K, Iterable<V>>> {
-    private final UncommittedBundle<KV<K, Iterable<V>>> bundle;
+  private static class OutputWindowedValueToBundle<K, OutputT>
+      implements OutputWindowedValue<KV<K, OutputT>> {
+    private final UncommittedBundle<KV<K, OutputT>> bundle;
 
-    private OutputWindowedValueToBundle(UncommittedBundle<KV<K, Iterable<V>>> bundle) {
+    private OutputWindowedValueToBundle(UncommittedBundle<KV<K, OutputT>> bundle) {
       this.bundle = bundle;
     }
 
     @Override
     public void outputWindowedValue(
-        KV<K, Iterable<V>> output,
+        KV<K, OutputT> output,
         Instant timestamp,
         Collection<? extends BoundedWindow> windows,
         PaneInfo pane) {
@@ -50,15 +50,28 @@ class ImmutabilityCheckingBundleFactory implements BundleFactory {
    */
   public static ImmutabilityCheckingBundleFactory create(
       BundleFactory underlying, DirectGraph graph) {
-    return new ImmutabilityCheckingBundleFactory(underlying, graph);
+    return create(underlying, graph, EnforcementSampler.<PCollection<?>>always());
+  }
+
+  /**
+   * Create a new {@link ImmutabilityCheckingBundleFactory} that uses the underlying {@link
+   * BundleFactory} to create the output bundle, and only checks the elements chosen by the
+   * provided {@link EnforcementSampler}.
+   */
+  public static ImmutabilityCheckingBundleFactory create(
+      BundleFactory underlying, DirectGraph graph, EnforcementSampler<PCollection<?>> sampler) {
+    return new ImmutabilityCheckingBundleFactory(underlying, graph, sampler);
   }
 
   private final BundleFactory underlying;
   private final DirectGraph graph;
+  private final EnforcementSampler<PCollection<?>> sampler;
 
-  private ImmutabilityCheckingBundleFactory(BundleFactory underlying, DirectGraph graph) {
+  private ImmutabilityCheckingBundleFactory(
+      BundleFactory underlying, DirectGraph graph, EnforcementSampler<PCollection<?>> sampler) {
     this.underlying = checkNotNull(underlying);
     this.graph = graph;
+    this.sampler = checkNotNull(sampler);
   }
 
   /**
@@ -107,11 +120,13 @@ class ImmutabilityCheckingBundleFactory implements BundleFactory {
 
     @Override
     public UncommittedBundle<T> add(WindowedValue<T> element) {
-      try {
-        mutationDetectors.put(
-            element, MutationDetectors.forValueWithCoder(element.getValue(), coder));
-      } catch (CoderException e) {
-        throw new RuntimeException(e);
+      if (sampler.shouldCheck(getPCollection())) {
+        try {
+          mutationDetectors.put(
+              element, MutationDetectors.forValueWithCoder(element.getValue(), coder));
+        } catch (CoderException e) {
+          throw new RuntimeException(e);
+        }
       }
       underlying.add(element);
       return this;
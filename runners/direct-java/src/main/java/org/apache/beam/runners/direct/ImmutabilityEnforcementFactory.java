@@ -34,7 +34,22 @@ import org.apache.beam.sdk.util.WindowedValue;
  */
 class ImmutabilityEnforcementFactory implements ModelEnforcementFactory {
   public static ModelEnforcementFactory create() {
-    return new ImmutabilityEnforcementFactory();
+    return create(EnforcementSampler.<AppliedPTransform<?, ?, ?>>always());
+  }
+
+  /**
+   * Creates an {@link ImmutabilityEnforcementFactory} that only checks the elements chosen by the
+   * provided {@link EnforcementSampler}.
+   */
+  public static ModelEnforcementFactory create(
+      EnforcementSampler<AppliedPTransform<?, ?, ?>> sampler) {
+    return new ImmutabilityEnforcementFactory(sampler);
+  }
+
+  private final EnforcementSampler<AppliedPTransform<?, ?, ?>> sampler;
+
+  private ImmutabilityEnforcementFactory(EnforcementSampler<AppliedPTransform<?, ?, ?>> sampler) {
+    this.sampler = sampler;
   }
 
   @Override
@@ -43,7 +58,7 @@ class ImmutabilityEnforcementFactory implements ModelEnforcementFactory {
     return new ImmutabilityCheckingEnforcement<>(input, consumer);
   }
 
-  private static class ImmutabilityCheckingEnforcement<T> extends AbstractModelEnforcement<T> {
+  private class ImmutabilityCheckingEnforcement<T> extends AbstractModelEnforcement<T> {
     private final AppliedPTransform<?, ?, ?> transform;
     private final Map<WindowedValue<T>, MutationDetector> mutationElements;
     private final Coder<T> coder;
@@ -57,6 +72,9 @@ class ImmutabilityEnforcementFactory implements ModelEnforcementFactory {
 
     @Override
     public void beforeElement(WindowedValue<T> element) {
+      if (!sampler.shouldCheck(transform)) {
+        return;
+      }
       try {
         mutationElements.put(
             element, MutationDetectors.forValueWithCoder(element.getValue(), coder));
@@ -67,7 +85,10 @@ class ImmutabilityEnforcementFactory implements ModelEnforcementFactory {
 
     @Override
     public void afterElement(WindowedValue<T> element) {
-      verifyUnmodified(mutationElements.get(element));
+      MutationDetector detector = mutationElements.get(element);
+      if (detector != null) {
+        verifyUnmodified(detector);
+      }
     }
 
     @Override
@@ -26,6 +26,7 @@ import java.util.Set;
 import org.apache.beam.runners.core.SplittableParDoViaKeyedWorkItems;
 import org.apache.beam.runners.direct.DirectGroupByKey.DirectGroupAlsoByWindow;
 import org.apache.beam.runners.direct.DirectGroupByKey.DirectGroupByKeyOnly;
+import org.apache.beam.runners.direct.MergingWindowsCombine.DirectCombineAlsoByWindow;
 import org.apache.beam.sdk.Pipeline.PipelineVisitor;
 import org.apache.beam.sdk.runners.TransformHierarchy;
 import org.apache.beam.sdk.transforms.GroupByKey;
@@ -50,7 +51,8 @@ class KeyedPValueTrackingVisitor extends PipelineVisitor.Defaults {
       ImmutableSet.of(
           SplittableParDoViaKeyedWorkItems.GBKIntoKeyedWorkItems.class,
           DirectGroupByKeyOnly.class,
-          DirectGroupAlsoByWindow.class);
+          DirectGroupAlsoByWindow.class,
+          DirectCombineAlsoByWindow.class);
 
   private final Set<PValue> keyedValues;
   private boolean finalized;
@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.collect.Iterables;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.apache.beam.model.pipeline.v1.RunnerApi;
+import org.apache.beam.runners.core.KeyedWorkItem;
+import org.apache.beam.runners.core.KeyedWorkItemCoder;
+import org.apache.beam.runners.core.SystemReduceFn;
+import org.apache.beam.runners.core.construction.CombineTranslation;
+import org.apache.beam.runners.core.construction.PTransformTranslation;
+import org.apache.beam.runners.core.construction.PTransformTranslation.RawPTransform;
+import org.apache.beam.runners.core.construction.SingleInputOutputOverrideFactory;
+import org.apache.beam.runners.direct.DirectGroupByKey.DirectGroupByKeyOnly;
+import org.apache.beam.sdk.coders.CannotProvideCoderException;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.runners.AppliedPTransform;
+import org.apache.beam.sdk.runners.PTransformMatcher;
+import org.apache.beam.sdk.runners.PTransformOverrideFactory;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.Combine.CombineFn;
+import org.apache.beam.sdk.transforms.Combine.PerKey;
+import org.apache.beam.sdk.transforms.CombineFnBase.GlobalCombineFn;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.util.AppliedCombineFn;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PValue;
+import org.apache.beam.sdk.values.TupleTag;
+import org.apache.beam.sdk.values.WindowingStrategy;
+
+/**
+ * A {@link Combine.PerKey} over merging windows, such as sessions, that keeps a single accumulator
+ * per window rather than buffering every input until the window closes. Accumulators are merged
+ * when their windows merge.
+ *
+ * <p>{@link MultiStepCombine} combines inputs before grouping them, which is not possible when
+ * windows merge, as the windows an input will belong to are not known until the merge.
+ */
+class MergingWindowsCombine<K, InputT, AccumT, OutputT>
+    extends RawPTransform<PCollection<KV<K, InputT>>, PCollection<KV<K, OutputT>>> {
+  static final String DIRECT_MERGING_WINDOWS_COMBINE_URN =
+      "urn:beam:directrunner:transforms:mergingwindowscombine:v1";
+  static final String DIRECT_CABW_URN = "urn:beam:directrunner:transforms:cabw:v1";
+
+  public static PTransformMatcher matcher() {
+    return new PTransformMatcher() {
+      @Override
+      public boolean matches(AppliedPTransform<?, ?, ?> application) {
+        if (PTransformTranslation.COMBINE_TRANSFORM_URN.equals(
+            PTransformTranslation.urnForTransformOrNull(application.getTransform()))) {
+          try {
+            GlobalCombineFn fn = CombineTranslation.getCombineFn(application);
+            return isApplicable(application.getInputs(), fn);
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+        return false;
+      }
+
+      private <K, InputT> boolean isApplicable(
+          Map<TupleTag<?>, PValue> inputs, GlobalCombineFn<InputT, ?, ?> fn) {
+        if (!(fn instanceof CombineFn) || inputs.size() != 1) {
+          return false;
+        }
+        PCollection<KV<K, InputT>> input =
+            (PCollection<KV<K, InputT>>) Iterables.getOnlyElement(inputs.values());
+        if (input.getWindowingStrategy().getWindowFn().isNonMerging()
+            || !(input.getCoder() instanceof KvCoder)) {
+          return false;
+        }
+        KvCoder<K, InputT> kvCoder = (KvCoder<K, InputT>) input.getCoder();
+        try {
+          return fn.getAccumulatorCoder(
+                  input.getPipeline().getCoderRegistry(), kvCoder.getValueCoder())
+              != null;
+        } catch (CannotProvideCoderException e) {
+          // The combine will fail to expand in the same way if it is not replaced.
+          return false;
+        }
+      }
+    };
+  }
+
+  static class Factory<K, InputT, AccumT, OutputT>
+      extends SingleInputOutputOverrideFactory<
+            PCollection<KV<K, InputT>>, PCollection<KV<K, OutputT>>,
+            PTransform<PCollection<KV<K, InputT>>, PCollection<KV<K, OutputT>>>> {
+    public static PTransformOverrideFactory create() {
+      return new Factory<>();
+    }
+
+    private Factory() {}
+
+    @Override
+    public PTransformReplacement<PCollection<KV<K, InputT>>, PCollection<KV<K, OutputT>>>
+        getReplacementTransform(
+            AppliedPTransform<
+                    PCollection<KV<K, InputT>>, PCollection<KV<K, OutputT>>,
+                    PTransform<PCollection<KV<K, InputT>>, PCollection<KV<K, OutputT>>>>
+                transform) {
+      try {
+        GlobalCombineFn<?, ?, ?> globalFn = CombineTranslation.getCombineFn(transform);
+        checkState(
+            globalFn instanceof CombineFn,
+            "%s.matcher() should only match %s instances using %s, got %s",
+            MergingWindowsCombine.class.getSimpleName(),
+            PerKey.class.getSimpleName(),
+            CombineFn.class.getSimpleName(),
+            globalFn.getClass().getName());
+        @SuppressWarnings("unchecked")
+        CombineFn<InputT, AccumT, OutputT> fn = (CombineFn<InputT, AccumT, OutputT>) globalFn;
+        @SuppressWarnings("unchecked")
+        PCollection<KV<K, InputT>> input =
+            (PCollection<KV<K, InputT>>) Iterables.getOnlyElement(transform.getInputs().values());
+        @SuppressWarnings("unchecked")
+        PCollection<KV<K, OutputT>> output =
+            (PCollection<KV<K, OutputT>>) Iterables.getOnlyElement(transform.getOutputs().values());
+        return PTransformReplacement.of(
+            input,
+            new MergingWindowsCombine<>(
+                fn, output.getCoder(), output.getWindowingStrategy()));
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  // ===========================================================================================
+
+  private final CombineFn<InputT, AccumT, OutputT> combineFn;
+  private final Coder<KV<K, OutputT>> outputCoder;
+  private final WindowingStrategy<?, ?> outputWindowingStrategy;
+
+  private MergingWindowsCombine(
+      CombineFn<InputT, AccumT, OutputT> combineFn,
+      Coder<KV<K, OutputT>> outputCoder,
+      WindowingStrategy<?, ?> outputWindowingStrategy) {
+    this.combineFn = combineFn;
+    this.outputCoder = outputCoder;
+    this.outputWindowingStrategy = outputWindowingStrategy;
+  }
+
+  @Nonnull
+  @Override
+  public String getUrn() {
+    return DIRECT_MERGING_WINDOWS_COMBINE_URN;
+  }
+
+  @Nullable
+  @Override
+  public RunnerApi.FunctionSpec getSpec() {
+    return null;
+  }
+
+  @Override
+  public PCollection<KV<K, OutputT>> expand(PCollection<KV<K, InputT>> input) {
+    checkArgument(
+        input.getCoder() instanceof KvCoder,
+        "Expected input to have a %s of type %s, got %s",
+        Coder.class.getSimpleName(),
+        KvCoder.class.getSimpleName(),
+        input.getCoder());
+    KvCoder<K, InputT> inputCoder = (KvCoder<K, InputT>) input.getCoder();
+    Coder<AccumT> accumulatorCoder;
+    try {
+      accumulatorCoder =
+          combineFn.getAccumulatorCoder(
+              input.getPipeline().getCoderRegistry(), inputCoder.getValueCoder());
+    } catch (CannotProvideCoderException e) {
+      throw new IllegalStateException(
+          String.format(
+              "Could not construct an Accumulator Coder with the provided %s %s",
+              CombineFn.class.getSimpleName(), combineFn),
+          e);
+    }
+    AppliedCombineFn<K, InputT, AccumT, OutputT> appliedFn =
+        AppliedCombineFn.withAccumulatorCoder(
+            combineFn,
+            accumulatorCoder,
+            Collections.emptyList(),
+            inputCoder,
+            input.getWindowingStrategy());
+    return input
+        .apply(new DirectGroupByKeyOnly<>())
+        .apply(
+            "CombineAlsoByWindow",
+            new DirectCombineAlsoByWindow<>(
+                input.getWindowingStrategy(), outputWindowingStrategy, appliedFn, outputCoder));
+  }
+
+  /**
+   * A primitive {@link PTransform} that groups the elements of each key by window, merging
+   * windows as needed, and combines the elements of each window into an accumulator as they
+   * arrive. The counterpart of {@link DirectGroupByKey.DirectGroupAlsoByWindow} for a {@link
+   * Combine.PerKey}.
+   */
+  static class DirectCombineAlsoByWindow<K, InputT, AccumT, OutputT>
+      extends RawPTransform<PCollection<KeyedWorkItem<K, InputT>>, PCollection<KV<K, OutputT>>> {
+    private final WindowingStrategy<?, ?> inputWindowingStrategy;
+    private final WindowingStrategy<?, ?> outputWindowingStrategy;
+    private final AppliedCombineFn<K, InputT, AccumT, OutputT> combineFn;
+    private final Coder<KV<K, OutputT>> outputCoder;
+
+    private DirectCombineAlsoByWindow(
+        WindowingStrategy<?, ?> inputWindowingStrategy,
+        WindowingStrategy<?, ?> outputWindowingStrategy,
+        AppliedCombineFn<K, InputT, AccumT, OutputT> combineFn,
+        Coder<KV<K, OutputT>> outputCoder) {
+      this.inputWindowingStrategy = inputWindowingStrategy;
+      this.outputWindowingStrategy = outputWindowingStrategy;
+      this.combineFn = combineFn;
+      this.outputCoder = outputCoder;
+    }
+
+    public WindowingStrategy<?, ?> getInputWindowingStrategy() {
+      return inputWindowingStrategy;
+    }
+
+    /** Returns a {@link SystemReduceFn} that combines the values of each window. */
+    <W extends BoundedWindow> SystemReduceFn<K, InputT, AccumT, OutputT, W> getReduceFn(
+        Coder<KeyedWorkItem<K, InputT>> inputCoder) {
+      checkArgument(
+          inputCoder instanceof KeyedWorkItemCoder,
+          "%s requires a %s<...> but got %s",
+          getClass().getSimpleName(),
+          KeyedWorkItemCoder.class.getSimpleName(),
+          inputCoder);
+      Coder<K> keyCoder = ((KeyedWorkItemCoder<K, InputT>) inputCoder).getKeyCoder();
+      return SystemReduceFn.combining(keyCoder, combineFn);
+    }
+
+    @Override
+    public PCollection<KV<K, OutputT>> expand(PCollection<KeyedWorkItem<K, InputT>> input) {
+      return PCollection.createPrimitiveOutputInternal(
+          input.getPipeline(), outputWindowingStrategy, input.isBounded(), outputCoder);
+    }
+
+    @Nonnull
+    @Override
+    public String getUrn() {
+      return DIRECT_CABW_URN;
+    }
+
+    @Nullable
+    @Override
+    public RunnerApi.FunctionSpec getSpec() {
+      return null;
+    }
+  }
+}
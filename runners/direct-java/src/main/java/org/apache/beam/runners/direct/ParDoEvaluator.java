@@ -94,9 +94,34 @@ class ParDoEvaluator<InputT> implements TransformEvaluator<InputT> {
       List<TupleTag<?>> additionalOutputTags,
       Map<TupleTag<?>, PCollection<?>> outputs,
       DoFnRunnerFactory<InputT, OutputT> runnerFactory) {
+    return create(
+        evaluationContext,
+        stepContext,
+        application,
+        windowingStrategy,
+        fn,
+        sideInputs,
+        mainOutputTag,
+        additionalOutputTags,
+        createOutputManager(evaluationContext, key, outputs),
+        runnerFactory);
+  }
 
-    BundleOutputManager outputManager = createOutputManager(evaluationContext, key, outputs);
-
+  /**
+   * Creates a {@link ParDoEvaluator} which outputs to the bundles of the provided {@link
+   * BundleOutputManager} rather than to new bundles of the outputs of the application.
+   */
+  public static <InputT, OutputT> ParDoEvaluator<InputT> create(
+      EvaluationContext evaluationContext,
+      DirectStepContext stepContext,
+      AppliedPTransform<?, ?, ?> application,
+      WindowingStrategy<?, ? extends BoundedWindow> windowingStrategy,
+      DoFn<InputT, OutputT> fn,
+      List<PCollectionView<?>> sideInputs,
+      TupleTag<OutputT> mainOutputTag,
+      List<TupleTag<?>> additionalOutputTags,
+      BundleOutputManager outputManager,
+      DoFnRunnerFactory<InputT, OutputT> runnerFactory) {
     ReadyCheckingSideInputReader sideInputReader =
         evaluationContext.createSideInputReader(sideInputs);
 
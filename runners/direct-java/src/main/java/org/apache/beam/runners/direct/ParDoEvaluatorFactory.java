@@ -20,11 +20,14 @@ package org.apache.beam.runners.direct;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Iterables;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.apache.beam.runners.core.construction.ParDoTranslation;
+import org.apache.beam.runners.core.construction.TransformInputs;
 import org.apache.beam.runners.direct.DirectExecutionContext.DirectStepContext;
+import org.apache.beam.runners.direct.ParDoEvaluator.BundleOutputManager;
 import org.apache.beam.runners.local.StructuralKey;
 import org.apache.beam.sdk.runners.AppliedPTransform;
 import org.apache.beam.sdk.transforms.DoFn;
@@ -124,6 +127,48 @@ final class ParDoEvaluatorFactory<InputT, OutputT> implements TransformEvaluator
         fnManager);
   }
 
+  /**
+   * Creates an evaluator for a {@link ParDo} that is executed as one of the steps of a {@link
+   * ParDoFusion.FusedParDo}. The evaluator uses the provided step context and outputs to the
+   * bundles of the provided {@link BundleOutputManager}.
+   */
+  @SuppressWarnings("unchecked")
+  DoFnLifecycleManagerRemovingTransformEvaluator<InputT> createFusedEvaluator(
+      AppliedPTransform<?, ?, ?> application,
+      DirectStepContext stepContext,
+      BundleOutputManager outputManager)
+      throws Exception {
+    DoFnLifecycleManager fnManager = fnClones.getUnchecked(application);
+    PCollection<InputT> mainInput =
+        (PCollection<InputT>)
+            Iterables.getOnlyElement(TransformInputs.nonAdditionalInputs(application));
+    try {
+      return DoFnLifecycleManagerRemovingTransformEvaluator.wrapping(
+          ParDoEvaluator.create(
+              evaluationContext,
+              stepContext,
+              application,
+              mainInput.getWindowingStrategy(),
+              (DoFn<InputT, OutputT>) fnManager.get(),
+              ParDoTranslation.getSideInputs(application),
+              (TupleTag<OutputT>) ParDoTranslation.getMainOutputTag(application),
+              ParDoTranslation.getAdditionalOutputTags(application).getAll(),
+              outputManager,
+              runnerFactory),
+          fnManager);
+    } catch (Exception e) {
+      try {
+        fnManager.remove();
+      } catch (Exception removalException) {
+        LOG.error(
+            "Exception encountered while cleaning up in ParDo evaluator construction",
+            removalException);
+        e.addSuppressed(removalException);
+      }
+      throw e;
+    }
+  }
+
   ParDoEvaluator<InputT> createParDoEvaluator(
       AppliedPTransform<PCollection<InputT>, PCollectionTuple, ?> application,
       StructuralKey<?> key,
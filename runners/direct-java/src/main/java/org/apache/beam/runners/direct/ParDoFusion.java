@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+import org.apache.beam.runners.core.construction.PTransformTranslation;
+import org.apache.beam.runners.core.construction.ParDoTranslation;
+import org.apache.beam.sdk.runners.AppliedPTransform;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PCollectionView;
+import org.apache.beam.sdk.values.PInput;
+import org.apache.beam.sdk.values.POutput;
+import org.apache.beam.sdk.values.PValue;
+
+/**
+ * Fuses chains of consecutive stateless {@link ParDo ParDos} within a {@link DirectGraph} into
+ * single steps. A fused step evaluates the {@link DoFn DoFns} of all of its {@link ParDo ParDos}
+ * on each input bundle, passing elements from one to the next directly, so the intermediate
+ * {@link PCollection PCollections} are never materialized as bundles or tracked by the {@link
+ * WatermarkManager}.
+ *
+ * <p>A {@link ParDo} is fused with the {@link ParDo} that consumes its output if it has a single,
+ * unkeyed output that has no other consumers, the consumer has no side inputs, and neither of them
+ * uses state or timers or is splittable.
+ */
+class ParDoFusion {
+  static final String DIRECT_FUSED_PAR_DO_URN = "urn:beam:directrunner:transforms:fused_par_do:v1";
+
+  private ParDoFusion() {}
+
+  /**
+   * Returns a {@link DirectGraph} in which every chain of fusable {@link ParDo ParDos} of the
+   * provided graph is replaced with a single {@link FusedParDo}, or the provided graph if there is
+   * nothing to fuse.
+   */
+  static DirectGraph fuse(DirectGraph graph, Set<PValue> keyedPValues) {
+    Map<AppliedPTransform<?, ?, ?>, AppliedPTransform<?, ?, ?>> fusedConsumers = new HashMap<>();
+    for (AppliedPTransform<?, ?, ?> step : graph.getPrimitiveTransforms()) {
+      AppliedPTransform<?, ?, ?> consumer = getFusableConsumer(graph, keyedPValues, step);
+      if (consumer != null) {
+        fusedConsumers.put(step, consumer);
+      }
+    }
+    if (fusedConsumers.isEmpty()) {
+      return graph;
+    }
+
+    Map<AppliedPTransform<?, ?, ?>, AppliedPTransform<?, ?, ?>> replacements = new HashMap<>();
+    Set<PValue> intermediates = new HashSet<>();
+    Set<AppliedPTransform<?, ?, ?>> consumers = new HashSet<>(fusedConsumers.values());
+    for (AppliedPTransform<?, ?, ?> head : fusedConsumers.keySet()) {
+      if (consumers.contains(head)) {
+        // Not the start of a chain.
+        continue;
+      }
+      List<AppliedPTransform<?, ?, ?>> chain = new ArrayList<>();
+      for (AppliedPTransform<?, ?, ?> step = head; step != null; step = fusedConsumers.get(step)) {
+        if (!chain.isEmpty()) {
+          intermediates.add(getOnlyOutput(chain.get(chain.size() - 1)));
+        }
+        chain.add(step);
+      }
+      AppliedPTransform<?, ?, ?> fused = createFusedApplication(graph, chain);
+      for (AppliedPTransform<?, ?, ?> step : chain) {
+        replacements.put(step, fused);
+      }
+    }
+
+    Map<PCollection<?>, AppliedPTransform<?, ?, ?>> producers = new HashMap<>();
+    for (PCollection<?> pcollection : graph.getPCollections()) {
+      if (!intermediates.contains(pcollection)) {
+        producers.put(pcollection, replace(replacements, graph.getProducer(pcollection)));
+      }
+    }
+    Map<PCollectionView<?>, AppliedPTransform<?, ?, ?>> viewWriters = new HashMap<>();
+    for (PCollectionView<?> view : graph.getViews()) {
+      viewWriters.put(view, graph.getWriter(view));
+    }
+    ListMultimap<PInput, AppliedPTransform<?, ?, ?>> perElementConsumers =
+        ArrayListMultimap.create();
+    ListMultimap<PValue, AppliedPTransform<?, ?, ?>> allConsumers = ArrayListMultimap.create();
+    Map<AppliedPTransform<?, ?, ?>, String> stepNames = new HashMap<>();
+    for (AppliedPTransform<?, ?, ?> step : graph.getPrimitiveTransforms()) {
+      AppliedPTransform<?, ?, ?> replacement = replace(replacements, step);
+      if (replacement != step && consumers.contains(step)) {
+        // Only the first step of a fused chain consumes values that remain in the graph.
+        continue;
+      }
+      for (PValue input : step.getInputs().values()) {
+        if (graph.getPerElementConsumers(input).contains(step)) {
+          perElementConsumers.put(input, replacement);
+        }
+        if (graph.getAllConsumers(input).contains(step)) {
+          allConsumers.put(input, replacement);
+        }
+      }
+      stepNames.put(replacement, graph.getStepName(step));
+    }
+
+    return DirectGraph.create(
+        producers,
+        viewWriters,
+        perElementConsumers,
+        allConsumers,
+        graph.getRootTransforms(),
+        stepNames);
+  }
+
+  /**
+   * Returns the step that consumes the output of the provided step if the two can be fused, null
+   * otherwise.
+   */
+  @Nullable
+  private static AppliedPTransform<?, ?, ?> getFusableConsumer(
+      DirectGraph graph, Set<PValue> keyedPValues, AppliedPTransform<?, ?, ?> step) {
+    if (!isFusable(step) || step.getOutputs().size() != 1) {
+      return null;
+    }
+    PValue output = getOnlyOutput(step);
+    if (!(output instanceof PCollection) || keyedPValues.contains(output)) {
+      return null;
+    }
+    List<AppliedPTransform<?, ?, ?>> consumers = graph.getAllConsumers(output);
+    if (consumers.size() != 1 || !consumers.equals(graph.getPerElementConsumers(output))) {
+      return null;
+    }
+    AppliedPTransform<?, ?, ?> consumer = consumers.get(0);
+    if (consumer.getInputs().size() != 1 || !isFusable(consumer)) {
+      return null;
+    }
+    return consumer;
+  }
+
+  private static boolean isFusable(AppliedPTransform<?, ?, ?> step) {
+    if (!PTransformTranslation.PAR_DO_TRANSFORM_URN.equals(
+        PTransformTranslation.urnForTransform(step.getTransform()))) {
+      return false;
+    }
+    try {
+      return !ParDoTranslation.usesStateOrTimers(step) && !ParDoTranslation.isSplittable(step);
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          String.format("Could not inspect %s for fusion", step.getFullName()), e);
+    }
+  }
+
+  private static PValue getOnlyOutput(AppliedPTransform<?, ?, ?> step) {
+    return Iterables.getOnlyElement(step.getOutputs().values());
+  }
+
+  private static AppliedPTransform<?, ?, ?> replace(
+      Map<AppliedPTransform<?, ?, ?>, AppliedPTransform<?, ?, ?>> replacements,
+      AppliedPTransform<?, ?, ?> step) {
+    AppliedPTransform<?, ?, ?> replacement = replacements.get(step);
+    return replacement == null ? step : replacement;
+  }
+
+  private static AppliedPTransform<?, ?, ?> createFusedApplication(
+      DirectGraph graph, List<AppliedPTransform<?, ?, ?>> chain) {
+    List<String> fullNames = new ArrayList<>();
+    List<String> stepNames = new ArrayList<>();
+    for (AppliedPTransform<?, ?, ?> step : chain) {
+      fullNames.add(step.getFullName());
+      stepNames.add(graph.getStepName(step));
+    }
+    String fullName = String.join(" + ", fullNames);
+    AppliedPTransform<?, ?, ?> first = chain.get(0);
+    AppliedPTransform<?, ?, ?> last = chain.get(chain.size() - 1);
+    return AppliedPTransform.<PInput, POutput, FusedParDo>of(
+        fullName,
+        first.getInputs(),
+        last.getOutputs(),
+        new FusedParDo(fullName, chain, stepNames),
+        first.getPipeline());
+  }
+
+  /**
+   * A runner-specific primitive that stands in for a chain of fused {@link ParDo ParDos}. It is
+   * only created by {@link #fuse(DirectGraph, Set)} and never expanded.
+   */
+  static class FusedParDo extends PTransform<PInput, POutput> {
+    private final List<AppliedPTransform<?, ?, ?>> steps;
+    private final List<String> stepNames;
+
+    private FusedParDo(
+        String name, List<AppliedPTransform<?, ?, ?>> steps, List<String> stepNames) {
+      super(name);
+      this.steps = ImmutableList.copyOf(steps);
+      this.stepNames = ImmutableList.copyOf(stepNames);
+    }
+
+    /** Returns the fused steps, in the order elements flow through them. */
+    List<AppliedPTransform<?, ?, ?>> getSteps() {
+      return steps;
+    }
+
+    /** Returns the step names of the fused steps, in the same order as {@link #getSteps()}. */
+    List<String> getStepNames() {
+      return stepNames;
+    }
+
+    @Override
+    public POutput expand(PInput input) {
+      throw new IllegalStateException(
+          String.format(
+              "%s is only created while executing a Pipeline and can't be expanded",
+              FusedParDo.class.getSimpleName()));
+    }
+  }
+}
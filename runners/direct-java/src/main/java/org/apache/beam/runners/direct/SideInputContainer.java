@@ -35,14 +35,10 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 import javax.annotation.Nullable;
-import org.apache.beam.runners.core.InMemoryMultimapSideInputView;
 import org.apache.beam.runners.core.ReadyCheckingSideInputReader;
+import org.apache.beam.runners.core.SideInputCache;
 import org.apache.beam.runners.core.SideInputReader;
-import org.apache.beam.sdk.coders.Coder;
-import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.transforms.Materializations;
-import org.apache.beam.sdk.transforms.Materializations.MultimapView;
-import org.apache.beam.sdk.transforms.ViewFn;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.transforms.windowing.PaneInfo;
 import org.apache.beam.sdk.util.WindowedValue;
@@ -60,6 +56,7 @@ class SideInputContainer {
   private final LoadingCache<
           PCollectionViewWindow<?>, AtomicReference<Iterable<? extends WindowedValue<?>>>>
       viewByWindows;
+  private final SideInputCache materializedViews;
 
   /**
    * Create a new {@link SideInputContainer} with the provided views and the provided
@@ -67,6 +64,20 @@ class SideInputContainer {
    */
   public static SideInputContainer create(
       final EvaluationContext context, Collection<PCollectionView<?>> containedViews) {
+    return create(
+        context,
+        containedViews,
+        SideInputCache.withMaximumWeight(SideInputCache.DEFAULT_MAXIMUM_WEIGHT));
+  }
+
+  /**
+   * Create a new {@link SideInputContainer} with the provided views and the provided
+   * context, which holds the materialized contents of the views in the provided cache.
+   */
+  public static SideInputContainer create(
+      final EvaluationContext context,
+      Collection<PCollectionView<?>> containedViews,
+      SideInputCache materializedViews) {
     for (PCollectionView<?> pCollectionView : containedViews) {
       checkArgument(
           Materializations.MULTIMAP_MATERIALIZATION_URN.equals(
@@ -79,15 +90,17 @@ class SideInputContainer {
     }
     LoadingCache<PCollectionViewWindow<?>, AtomicReference<Iterable<? extends WindowedValue<?>>>>
         viewByWindows = CacheBuilder.newBuilder().build(new CallbackSchedulingLoader(context));
-    return new SideInputContainer(containedViews, viewByWindows);
+    return new SideInputContainer(containedViews, viewByWindows, materializedViews);
   }
 
   private SideInputContainer(
       Collection<PCollectionView<?>> containedViews,
       LoadingCache<PCollectionViewWindow<?>, AtomicReference<Iterable<? extends WindowedValue<?>>>>
-          viewByWindows) {
+          viewByWindows,
+      SideInputCache materializedViews) {
     this.containedViews = ImmutableSet.copyOf(containedViews);
     this.viewByWindows = viewByWindows;
+    this.materializedViews = materializedViews;
   }
 
   /**
@@ -255,16 +268,17 @@ class SideInputContainer {
           window);
       // Safe covariant cast since we know that the view only contains KVs.
       @SuppressWarnings("unchecked")
-      Iterable<KV<?, ?>> elements =
-          Iterables.transform(
-              (Iterable<WindowedValue<KV<?, ?>>>)
-                  viewContents.getUnchecked(PCollectionViewWindow.of(view, window)).get(),
-                  WindowedValue::getValue);
+      Iterable<WindowedValue<KV<?, ?>>> contents =
+          (Iterable<WindowedValue<KV<?, ?>>>)
+              viewContents.getUnchecked(PCollectionViewWindow.of(view, window)).get();
 
-      ViewFn<MultimapView, T> viewFn = (ViewFn<MultimapView, T>) view.getViewFn();
-      Coder<?> keyCoder = ((KvCoder<?, ?>) view.getCoderInternal()).getKeyCoder();
-      return (T) viewFn.apply(
-          InMemoryMultimapSideInputView.fromIterable(keyCoder, (Iterable) elements));
+      // The contents of a pane are never modified after they are written, so they identify the
+      // materialized view built from them.
+      return materializedViews.get(
+          view,
+          window,
+          SideInputCache.identityOf(contents),
+          () -> Iterables.transform(contents, WindowedValue::getValue));
     }
 
     @Override
@@ -26,7 +26,9 @@ import static org.apache.beam.runners.core.construction.PTransformTranslation.WI
 import static org.apache.beam.runners.core.construction.SplittableParDo.SPLITTABLE_PROCESS_URN;
 import static org.apache.beam.runners.direct.DirectGroupByKey.DIRECT_GABW_URN;
 import static org.apache.beam.runners.direct.DirectGroupByKey.DIRECT_GBKO_URN;
+import static org.apache.beam.runners.direct.MergingWindowsCombine.DIRECT_CABW_URN;
 import static org.apache.beam.runners.direct.MultiStepCombine.DIRECT_MERGE_ACCUMULATORS_EXTRACT_OUTPUT_URN;
+import static org.apache.beam.runners.direct.ParDoFusion.DIRECT_FUSED_PAR_DO_URN;
 import static org.apache.beam.runners.direct.ParDoMultiOverrideFactory.DIRECT_STATEFUL_PAR_DO_URN;
 import static org.apache.beam.runners.direct.TestStreamEvaluatorFactory.DirectTestStreamFactory.DIRECT_TEST_STREAM_URN;
 import static org.apache.beam.runners.direct.ViewOverrideFactory.DIRECT_WRITE_VIEW_URN;
@@ -73,8 +75,10 @@ class TransformEvaluatorRegistry implements TransformEvaluatorFactory {
             // Runner-specific primitives
             .put(DIRECT_WRITE_VIEW_URN, new ViewEvaluatorFactory(ctxt))
             .put(DIRECT_STATEFUL_PAR_DO_URN, new StatefulParDoEvaluatorFactory<>(ctxt))
+            .put(DIRECT_FUSED_PAR_DO_URN, new FusedParDoEvaluatorFactory(ctxt))
             .put(DIRECT_GBKO_URN, new GroupByKeyOnlyEvaluatorFactory(ctxt))
             .put(DIRECT_GABW_URN, new GroupAlsoByWindowEvaluatorFactory(ctxt))
+            .put(DIRECT_CABW_URN, new GroupAlsoByWindowEvaluatorFactory(ctxt))
             .put(DIRECT_TEST_STREAM_URN, new TestStreamEvaluatorFactory(ctxt))
             .put(
                 DIRECT_MERGE_ACCUMULATORS_EXTRACT_OUTPUT_URN,
@@ -105,6 +109,9 @@ class TransformEvaluatorRegistry implements TransformEvaluatorFactory {
           .put(
               ParDoMultiOverrideFactory.StatefulParDo.class,
               TransformPayloadTranslator.NotSerializable.forUrn(DIRECT_STATEFUL_PAR_DO_URN))
+          .put(
+              ParDoFusion.FusedParDo.class,
+              TransformPayloadTranslator.NotSerializable.forUrn(DIRECT_FUSED_PAR_DO_URN))
           .put(
               ViewOverrideFactory.WriteView.class,
               TransformPayloadTranslator.NotSerializable.forUrn(DIRECT_WRITE_VIEW_URN))
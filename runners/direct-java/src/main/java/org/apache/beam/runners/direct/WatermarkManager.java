@@ -36,6 +36,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -46,6 +47,7 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -775,6 +777,29 @@ class WatermarkManager {
   @GuardedBy("refreshLock")
   private final Set<AppliedPTransform<?, ?, ?>> pendingRefreshes;
 
+  /**
+   * The position of each {@link AppliedPTransform} in a topological order of the graph, in which
+   * every transform comes after the producers of its main inputs. Refreshing in this order
+   * refreshes each transform at most once per call to {@link #refreshAll()}.
+   */
+  private final Map<AppliedPTransform<?, ?, ?>, Integer> refreshOrder;
+
+  /**
+   * The {@link AppliedPTransform AppliedPTransforms} that have had timers set. Only these can have
+   * timers to fire.
+   */
+  @GuardedBy("refreshLock")
+  private final Set<AppliedPTransform<?, ?, ?>> transformsWithTimers;
+
+  @GuardedBy("refreshLock")
+  private long refreshes;
+
+  @GuardedBy("refreshLock")
+  private long refreshedTransforms;
+
+  @GuardedBy("refreshLock")
+  private long refreshNanos;
+
   /**
    * Creates a new {@link WatermarkManager}. All watermarks within the newly created {@link
    * WatermarkManager} start at {@link BoundedWindow#TIMESTAMP_MIN_VALUE}, the minimum watermark,
@@ -795,8 +820,10 @@ class WatermarkManager {
 
     this.refreshLock = new ReentrantLock();
     this.pendingRefreshes = new HashSet<>();
+    this.transformsWithTimers = new HashSet<>();
 
     transformToWatermarks = new HashMap<>();
+    refreshOrder = new HashMap<>();
 
     for (AppliedPTransform<?, ?, ?> rootTransform : graph.getRootTransforms()) {
       getTransformWatermark(rootTransform);
@@ -840,6 +867,8 @@ class WatermarkManager {
               inputProcessingWatermark,
               outputProcessingWatermark);
       transformToWatermarks.put(transform, wms);
+      // The watermarks of the producers of the inputs were created, and numbered, above.
+      refreshOrder.put(transform, refreshOrder.size());
     }
     return wms;
   }
@@ -1014,6 +1043,9 @@ class WatermarkManager {
       completedTransform.addPending(result.getUnprocessedInputs().get());
     }
     completedTransform.updateTimers(timerUpdate);
+    if (!Iterables.isEmpty(timerUpdate.getSetTimers())) {
+      transformsWithTimers.add(result.getTransform());
+    }
     if (input != null) {
       completedTransform.removePending(input);
     }
@@ -1022,26 +1054,43 @@ class WatermarkManager {
   /**
    * Refresh the watermarks contained within this {@link WatermarkManager}, causing all
    * watermarks to be advanced as far as possible.
+   *
+   * <p>Only the transforms that have had updates applied since the last refresh are refreshed,
+   * followed by the consumers of each transform whose watermarks advanced. Transforms are refreshed
+   * in topological order, so each is refreshed at most once, after all of its changed producers.
    */
   synchronized void refreshAll() {
     refreshLock.lock();
     try {
+      long startNanos = System.nanoTime();
       applyAllPendingUpdates();
-      Set<AppliedPTransform<?, ?, ?>> toRefresh = pendingRefreshes;
+      Comparator<AppliedPTransform<?, ?, ?>> topologicalOrder =
+          Comparator.comparing(refreshOrder::get);
+      NavigableSet<AppliedPTransform<?, ?, ?>> toRefresh = new TreeSet<>(topologicalOrder);
+      toRefresh.addAll(pendingRefreshes);
+      pendingRefreshes.clear();
       while (!toRefresh.isEmpty()) {
-        toRefresh = refreshAllOf(toRefresh);
+        toRefresh.addAll(refreshWatermarks(toRefresh.pollFirst()));
+        refreshedTransforms++;
       }
+      refreshes++;
+      refreshNanos += System.nanoTime() - startNanos;
     } finally {
       refreshLock.unlock();
     }
   }
 
-  private Set<AppliedPTransform<?, ?, ?>> refreshAllOf(Set<AppliedPTransform<?, ?, ?>> toRefresh) {
-    Set<AppliedPTransform<?, ?, ?>> newRefreshes = new HashSet<>();
-    for (AppliedPTransform<?, ?, ?> transform : toRefresh) {
-      newRefreshes.addAll(refreshWatermarks(transform));
+  /**
+   * Returns statistics about the calls to {@link #refreshAll()} made on this {@link
+   * WatermarkManager}.
+   */
+  RefreshStatistics getRefreshStatistics() {
+    refreshLock.lock();
+    try {
+      return RefreshStatistics.create(refreshes, refreshedTransforms, refreshNanos);
+    } finally {
+      refreshLock.unlock();
     }
-    return newRefreshes;
   }
 
   private Set<AppliedPTransform<?, ?, ?>> refreshWatermarks(AppliedPTransform<?, ?, ?> toRefresh) {
@@ -1065,9 +1114,9 @@ class WatermarkManager {
     Collection<FiredTimers> allTimers = new ArrayList<>();
     refreshLock.lock();
     try {
-      for (Map.Entry<AppliedPTransform<?, ?, ?>, TransformWatermarks> watermarksEntry
-          : transformToWatermarks.entrySet()) {
-        Collection<FiredTimers> firedTimers = watermarksEntry.getValue().extractFiredTimers();
+      for (AppliedPTransform<?, ?, ?> transform : transformsWithTimers) {
+        Collection<FiredTimers> firedTimers =
+            transformToWatermarks.get(transform).extractFiredTimers();
         allTimers.addAll(firedTimers);
       }
       return allTimers;
@@ -1561,4 +1610,29 @@ class WatermarkManager {
           earliestHold);
     }
   }
+
+  /** Statistics about the watermark refreshes performed by a {@link WatermarkManager}. */
+  @AutoValue
+  abstract static class RefreshStatistics {
+    /** The number of calls to {@link WatermarkManager#refreshAll()}. */
+    public abstract long getRefreshes();
+
+    /** The number of times the watermarks of any transform were refreshed. */
+    public abstract long getRefreshedTransforms();
+
+    /** The total time spent refreshing watermarks, in nanoseconds. */
+    public abstract long getRefreshNanos();
+
+    /** The mean time spent in each call to {@link WatermarkManager#refreshAll()}. */
+    public double getMeanRefreshMillis() {
+      return getRefreshes() == 0
+          ? 0
+          : (double) getRefreshNanos() / getRefreshes() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    static RefreshStatistics create(long refreshes, long refreshedTransforms, long refreshNanos) {
+      return new AutoValue_WatermarkManager_RefreshStatistics(
+          refreshes, refreshedTransforms, refreshNanos);
+    }
+  }
 }
@@ -20,6 +20,7 @@ package org.apache.beam.runners.direct;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.emptyIterable;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.theInstance;
@@ -30,6 +31,9 @@ import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 
 import com.google.common.collect.Lists;
+import org.apache.beam.runners.core.DecodedStateCache;
+import org.apache.beam.runners.core.EncodedInMemoryStateInternals.EncodedBag;
+import org.apache.beam.runners.core.EncodedInMemoryStateInternals.EncodedStateBinder;
 import org.apache.beam.runners.core.StateNamespace;
 import org.apache.beam.runners.core.StateNamespaceForTest;
 import org.apache.beam.runners.core.StateNamespaces;
@@ -168,6 +172,35 @@ public class CopyOnAccessInMemoryStateInternalsTest {
         equalTo(Lists.newArrayList(reReadUnderlyingValue.read())));
   }
 
+  @Test
+  public void testEncodedBagStateWithUnderlying() {
+    DecodedStateCache cache = DecodedStateCache.withMaximumWeight(1024);
+    CopyOnAccessInMemoryStateInternals<String> underlying =
+        CopyOnAccessInMemoryStateInternals.withUnderlying(
+            key, null, c -> new EncodedStateBinder(c, cache));
+
+    StateNamespace namespace = new StateNamespaceForTest("foo");
+    StateTag<BagState<Integer>> valueTag = StateTags.bag("foo", VarIntCoder.of());
+    BagState<Integer> underlyingValue = underlying.state(namespace, valueTag);
+    assertThat(underlyingValue, instanceOf(EncodedBag.class));
+    underlyingValue.add(1);
+    underlying.commit();
+
+    CopyOnAccessInMemoryStateInternals<String> internals =
+        CopyOnAccessInMemoryStateInternals.withUnderlying(key, underlying);
+    BagState<Integer> copyOnAccessState = internals.state(namespace, valueTag);
+    assertThat(copyOnAccessState, instanceOf(EncodedBag.class));
+    copyOnAccessState.add(4);
+    assertThat(copyOnAccessState.read(), containsInAnyOrder(4, 1));
+    assertThat(underlyingValue.read(), containsInAnyOrder(1));
+
+    StateTag<BagState<Integer>> newTag = StateTags.bag("bar", VarIntCoder.of());
+    assertThat(
+        "State absent from the underlying table is created with the underlying binders",
+        internals.state(namespace, newTag),
+        instanceOf(EncodedBag.class));
+  }
+
   @Test
   public void testSetStateWithUnderlying() {
     CopyOnAccessInMemoryStateInternals<String> underlying =
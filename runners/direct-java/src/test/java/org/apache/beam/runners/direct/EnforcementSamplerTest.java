@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link EnforcementSampler}. */
+@RunWith(JUnit4.class)
+public class EnforcementSamplerTest {
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void alwaysChecksEveryElement() {
+    EnforcementSampler<String> sampler = EnforcementSampler.always();
+    for (int i = 0; i < 10000; i++) {
+      assertThat(sampler.shouldCheck("step"), is(true));
+    }
+  }
+
+  @Test
+  public void defaultOptionsCheckEveryElement() {
+    EnforcementSampler<String> sampler =
+        EnforcementSampler.create(PipelineOptionsFactory.create().as(DirectOptions.class));
+    for (int i = 0; i < 10000; i++) {
+      assertThat(sampler.shouldCheck("step"), is(true));
+    }
+  }
+
+  @Test
+  public void backsOffToSampleRate() {
+    EnforcementSampler<String> sampler = EnforcementSampler.create(options(0.25, 10));
+
+    // Every element until 10 checks have passed
+    assertThat(countChecks(sampler, "step", 10), is(10));
+    // Then every second element for the next 10 checks
+    assertThat(countChecks(sampler, "step", 20), is(10));
+    // Then every fourth element, which is the sample rate
+    assertThat(countChecks(sampler, "step", 40), is(10));
+    assertThat(countChecks(sampler, "step", 400), is(100));
+  }
+
+  @Test
+  public void backsOffPerStep() {
+    EnforcementSampler<String> sampler = EnforcementSampler.create(options(0.5, 10));
+
+    assertThat(countChecks(sampler, "first", 100), is(55));
+    assertThat(countChecks(sampler, "second", 10), is(10));
+  }
+
+  @Test
+  public void sampleRateBelowOneSamples() {
+    EnforcementSampler<String> sampler = EnforcementSampler.create(options(0.75, 10));
+
+    assertThat(countChecks(sampler, "step", 10), is(10));
+    // A stride of 1 / 0.75 rounds up to every second element
+    assertThat(countChecks(sampler, "step", 100), is(50));
+  }
+
+  @Test
+  public void sampleRateNaNThrows() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("sample rate");
+    EnforcementSampler.create(options(Double.NaN, 10));
+  }
+
+  @Test
+  public void sampleRateZeroThrows() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("sample rate");
+    EnforcementSampler.create(options(0, 10));
+  }
+
+  @Test
+  public void sampleRateAboveOneThrows() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("sample rate");
+    EnforcementSampler.create(options(1.5, 10));
+  }
+
+  private static int countChecks(EnforcementSampler<String> sampler, String step, int elements) {
+    int checks = 0;
+    for (int i = 0; i < elements; i++) {
+      if (sampler.shouldCheck(step)) {
+        checks++;
+      }
+    }
+    return checks;
+  }
+
+  private static DirectOptions options(double sampleRate, int checksBeforeBackoff) {
+    DirectOptions options = PipelineOptionsFactory.create().as(DirectOptions.class);
+    options.setEnforcementSampleRate(sampleRate);
+    options.setEnforcementChecksBeforeBackoff(checksBeforeBackoff);
+    return options;
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.beam.sdk.Pipeline.PipelineVisitor;
+import org.apache.beam.sdk.runners.TransformHierarchy;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.Sum;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.Sessions;
+import org.apache.beam.sdk.transforms.windowing.Window;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TimestampedValue;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link MergingWindowsCombine}.
+ */
+@RunWith(JUnit4.class)
+public class MergingWindowsCombineTest implements Serializable {
+  @Rule public transient TestPipeline pipeline = TestPipeline.create();
+
+  @Test
+  public void testCombineInSessions() {
+    PCollection<KV<String, Long>> combined =
+        pipeline
+            .apply(
+                Create.timestamped(
+                    TimestampedValue.of(KV.of("foo", 1L), new Instant(1L)),
+                    TimestampedValue.of(KV.of("foo", 2L), new Instant(5L)),
+                    TimestampedValue.of(KV.of("foo", 4L), new Instant(30L)),
+                    TimestampedValue.of(KV.of("bar", 8L), new Instant(3L)),
+                    TimestampedValue.of(KV.of("bar", 16L), new Instant(12L))))
+            .apply(Window.into(Sessions.withGapDuration(Duration.millis(10L))))
+            .apply(Combine.perKey(Sum.ofLongs()));
+
+    PAssert.that(combined)
+        .inWindow(new IntervalWindow(new Instant(1L), new Instant(15L)))
+        .containsInAnyOrder(KV.of("foo", 3L));
+    PAssert.that(combined)
+        .inWindow(new IntervalWindow(new Instant(3L), new Instant(22L)))
+        .containsInAnyOrder(KV.of("bar", 24L));
+    PAssert.that(combined)
+        .containsInAnyOrder(KV.of("foo", 3L), KV.of("foo", 4L), KV.of("bar", 24L));
+    pipeline.run();
+  }
+
+  @Test
+  public void testMatchesOnlyMergingWindows() {
+    pipeline.enableAbandonedNodeEnforcement(false);
+    PCollection<KV<String, Long>> input = pipeline.apply(Create.of(KV.of("foo", 1L)));
+    input
+        .apply("Sessions", Window.into(Sessions.withGapDuration(Duration.millis(10L))))
+        .apply("SessionSum", Combine.perKey(Sum.ofLongs()));
+    input
+        .apply("Fixed", Window.into(FixedWindows.of(Duration.millis(10L))))
+        .apply("FixedSum", Combine.perKey(Sum.ofLongs()));
+
+    final AtomicBoolean sessionsMatched = new AtomicBoolean();
+    final AtomicBoolean fixedMatched = new AtomicBoolean();
+    pipeline.traverseTopologically(
+        new PipelineVisitor.Defaults() {
+          @Override
+          public CompositeBehavior enterCompositeTransform(TransformHierarchy.Node node) {
+            if (node.getTransform() instanceof Combine.PerKey) {
+              boolean matches =
+                  MergingWindowsCombine.matcher().matches(node.toAppliedPTransform(pipeline));
+              if (node.getFullName().startsWith("SessionSum")) {
+                sessionsMatched.set(matches);
+              } else {
+                fixedMatched.set(matches);
+              }
+            }
+            return CompositeBehavior.ENTER_TRANSFORM;
+          }
+        });
+    assertTrue(sessionsMatched.get());
+    assertFalse(fixedMatched.get());
+  }
+}
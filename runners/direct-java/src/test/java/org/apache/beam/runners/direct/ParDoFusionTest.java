@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.Serializable;
+import java.util.List;
+import org.apache.beam.runners.direct.ParDoFusion.FusedParDo;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.MetricNameFilter;
+import org.apache.beam.sdk.metrics.MetricQueryResults;
+import org.apache.beam.sdk.metrics.MetricResult;
+import org.apache.beam.sdk.metrics.Metrics;
+import org.apache.beam.sdk.metrics.MetricsFilter;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.runners.AppliedPTransform;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.SimpleFunction;
+import org.apache.beam.sdk.transforms.View;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PCollectionView;
+import org.hamcrest.Matchers;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ParDoFusion}. */
+@RunWith(JUnit4.class)
+public class ParDoFusionTest implements Serializable {
+  @Rule
+  public transient TestPipeline p = TestPipeline.create().enableAbandonedNodeEnforcement(false);
+
+  @Test
+  public void fusesConsecutiveParDos() {
+    PCollection<Integer> first = p.apply(Create.of(1, 2, 3)).apply("First", addOne());
+    PCollection<Integer> second = first.apply("Second", addOne());
+    PCollection<Integer> third = second.apply("Third", addOne());
+
+    DirectGraph graph = fuse(p);
+
+    AppliedPTransform<?, ?, ?> producer = graph.getProducer(third);
+    assertThat(producer.getTransform(), instanceOf(FusedParDo.class));
+    List<AppliedPTransform<?, ?, ?>> steps = ((FusedParDo) producer.getTransform()).getSteps();
+    assertThat(
+        steps.subList(steps.size() - 3, steps.size()),
+        contains(
+            DirectGraphs.getProducer(first),
+            DirectGraphs.getProducer(second),
+            DirectGraphs.getProducer(third)));
+    assertThat(graph.getProducer(first), nullValue());
+    assertThat(graph.getProducer(second), nullValue());
+  }
+
+  @Test
+  public void doesNotFuseOutputsWithSeveralConsumers() {
+    PCollection<Integer> first = p.apply(Create.of(1, 2, 3)).apply("First", addOne());
+    PCollection<Integer> second = first.apply("Second", addOne());
+    PCollection<Integer> third = first.apply("Third", addOne());
+
+    DirectGraph graph = fuse(p);
+
+    assertThat(graph.getProducer(first), Matchers.<AppliedPTransform<?, ?, ?>>notNullValue());
+    assertThat(graph.getAllConsumers(first), Matchers.hasSize(2));
+    assertThat(graph.getProducer(second), is(DirectGraphs.getProducer(second)));
+    assertThat(graph.getProducer(third), is(DirectGraphs.getProducer(third)));
+  }
+
+  @Test
+  public void doesNotFuseIntoParDosWithSideInputs() {
+    final PCollectionView<Integer> view =
+        p.apply("CreateSideInput", Create.of(1)).apply(View.<Integer>asSingleton());
+    PCollection<Integer> first = p.apply(Create.of(1, 2, 3)).apply("First", addOne());
+    PCollection<Integer> second =
+        first.apply(
+            "Second",
+            ParDo.of(
+                    new DoFn<Integer, Integer>() {
+                      @ProcessElement
+                      public void processElement(ProcessContext c) {
+                        c.output(c.element() + c.sideInput(view));
+                      }
+                    })
+                .withSideInputs(view));
+
+    DirectGraph graph = fuse(p);
+
+    assertThat(graph.getProducer(first), Matchers.<AppliedPTransform<?, ?, ?>>notNullValue());
+    assertThat(graph.getProducer(second), is(DirectGraphs.getProducer(second)));
+  }
+
+  @Test
+  public void runsFusedParDos() {
+    DirectOptions options = PipelineOptionsFactory.create().as(DirectOptions.class);
+    options.setRunner(DirectRunner.class);
+    options.setFuseParDos(true);
+    Pipeline pipeline = Pipeline.create(options);
+
+    PCollection<Integer> result =
+        pipeline
+            .apply(Create.of(1, 2, 3))
+            .apply("First", addOne())
+            .apply(
+                "Count",
+                ParDo.of(
+                    new DoFn<Integer, Integer>() {
+                      private final Counter elements = Metrics.counter("fused", "elements");
+
+                      @ProcessElement
+                      public void processElement(ProcessContext c) {
+                        elements.inc();
+                        c.output(c.element());
+                      }
+                    }))
+            .apply("Second", addOne());
+    PAssert.that(result).containsInAnyOrder(3, 4, 5);
+
+    MetricQueryResults metrics =
+        pipeline
+            .run()
+            .metrics()
+            .queryMetrics(
+                MetricsFilter.builder()
+                    .addNameFilter(MetricNameFilter.named("fused", "elements"))
+                    .build());
+    MetricResult<Long> elements = metrics.counters().iterator().next();
+    assertThat(elements.step(), Matchers.containsString("Count"));
+    assertThat(elements.committed(), is(3L));
+  }
+
+  private static DirectGraph fuse(Pipeline pipeline) {
+    DirectGraphs.performDirectOverrides(pipeline);
+    KeyedPValueTrackingVisitor keyedPValueVisitor = KeyedPValueTrackingVisitor.create();
+    pipeline.traverseTopologically(keyedPValueVisitor);
+    return ParDoFusion.fuse(
+        DirectGraphs.getGraph(pipeline), keyedPValueVisitor.getKeyedPValues());
+  }
+
+  private static MapElements<Integer, Integer> addOne() {
+    return MapElements.via(
+        new SimpleFunction<Integer, Integer>() {
+          @Override
+          public Integer apply(Integer input) {
+            return input + 1;
+          }
+        });
+  }
+}
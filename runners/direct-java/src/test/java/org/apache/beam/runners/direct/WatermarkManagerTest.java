@@ -38,6 +38,7 @@ import org.apache.beam.runners.core.StateNamespaces;
 import org.apache.beam.runners.core.TimerInternals.TimerData;
 import org.apache.beam.runners.direct.CommittedResult.OutputType;
 import org.apache.beam.runners.direct.WatermarkManager.FiredTimers;
+import org.apache.beam.runners.direct.WatermarkManager.RefreshStatistics;
 import org.apache.beam.runners.direct.WatermarkManager.TimerUpdate;
 import org.apache.beam.runners.direct.WatermarkManager.TimerUpdate.TimerUpdateBuilder;
 import org.apache.beam.runners.direct.WatermarkManager.TransformWatermarks;
@@ -163,6 +164,31 @@ public class WatermarkManagerTest implements Serializable {
     assertThat(updatedSourceWatermark.getOutputWatermark(), equalTo(new Instant(8000L)));
   }
 
+  /**
+   * Demonstrates that refreshAll refreshes the transforms that were updated and the consumers of
+   * those whose watermarks advanced, and nothing once there are no further updates.
+   */
+  @Test
+  public void refreshAllRefreshesOnlyUpdatedTransforms() {
+    manager.updateWatermarks(null,
+        TimerUpdate.empty(),
+        result(graph.getProducer(intsToFlatten),
+            null,
+            Collections.<CommittedBundle<?>>emptyList()),
+        BoundedWindow.TIMESTAMP_MAX_VALUE);
+    manager.refreshAll();
+
+    // The source is done, so its consumer is refreshed too
+    RefreshStatistics afterUpdate = manager.getRefreshStatistics();
+    assertThat(afterUpdate.getRefreshes(), equalTo(1L));
+    assertThat(afterUpdate.getRefreshedTransforms(), equalTo(2L));
+
+    manager.refreshAll();
+    RefreshStatistics withoutUpdate = manager.getRefreshStatistics();
+    assertThat(withoutUpdate.getRefreshes(), equalTo(2L));
+    assertThat(withoutUpdate.getRefreshedTransforms(), equalTo(2L));
+  }
+
   /**
    * Demonstrates that getWatermark for a transform that takes multiple inputs is held to the
    * minimum watermark across all of its inputs.
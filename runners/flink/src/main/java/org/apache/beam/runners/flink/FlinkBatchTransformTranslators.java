@@ -588,7 +588,7 @@ class FlinkBatchTransformTranslators {
         FlinkStatefulDoFnFunction<?, ?, OutputT> doFnWrapper = new FlinkStatefulDoFnFunction<>(
             (DoFn) doFn, context.getCurrentTransform().getFullName(),
             windowingStrategy, sideInputStrategies, context.getPipelineOptions(),
-            outputMap, (TupleTag<OutputT>) mainOutputTag
+            outputMap, (TupleTag<OutputT>) mainOutputTag, inputCoder.getKeyCoder()
         );
 
         Grouping<WindowedValue<InputT>> grouping =
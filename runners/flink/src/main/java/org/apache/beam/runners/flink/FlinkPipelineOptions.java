@@ -93,6 +93,21 @@ public interface FlinkPipelineOptions
   Long getExecutionRetryDelay();
   void setExecutionRetryDelay(Long delay);
 
+  @Description("The maximum total size in bytes of the encoded side input contents that each "
+      + "task manager keeps materialized. The least recently used side input windows are "
+      + "evicted first.")
+  @Default.Long(128L << 20)
+  Long getSideInputCacheMaxBytes();
+  void setSideInputCacheMaxBytes(Long maxBytes);
+
+  @Description("The number of elements of state that a stateful ParDo keeps in memory for each "
+      + "key in batch mode before spilling the least recently accessed windows to local disk. "
+      + "Bags, sets and maps weigh one per element, and all other state weighs one. A negative "
+      + "value keeps all state in memory.")
+  @Default.Long(-1L)
+  Long getBatchStateSpillThreshold();
+  void setBatchStateSpillThreshold(Long threshold);
+
   @Description("Sets the behavior of reusing objects.")
   @Default.Boolean(false)
   Boolean getObjectReuse();
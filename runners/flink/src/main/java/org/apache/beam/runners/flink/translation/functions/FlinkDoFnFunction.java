@@ -102,7 +102,7 @@ public class FlinkDoFnFunction<InputT, OutputT>
 
     DoFnRunner<InputT, OutputT> doFnRunner = DoFnRunners.simpleRunner(
         serializedOptions.get(), doFn,
-        new FlinkSideInputReader(sideInputs, runtimeContext),
+        new FlinkSideInputReader(sideInputs, runtimeContext, serializedOptions.get()),
         outputManager,
         mainOutputTag,
         additionalOutputTags,
@@ -72,7 +72,7 @@ public class FlinkMergingNonShuffleReduceFunction<
     PipelineOptions options = serializedOptions.get();
 
     FlinkSideInputReader sideInputReader =
-        new FlinkSideInputReader(sideInputs, getRuntimeContext());
+        new FlinkSideInputReader(sideInputs, getRuntimeContext(), options);
 
     AbstractFlinkCombineRunner<K, InputT, AccumT, OutputT, W> reduceRunner;
     if (windowingStrategy.getWindowFn().windowCoder().equals(IntervalWindow.getCoder())) {
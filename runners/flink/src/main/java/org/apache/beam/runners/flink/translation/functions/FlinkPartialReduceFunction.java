@@ -71,7 +71,7 @@ public class FlinkPartialReduceFunction<K, InputT, AccumT, W extends BoundedWind
     PipelineOptions options = serializedOptions.get();
 
     FlinkSideInputReader sideInputReader =
-        new FlinkSideInputReader(sideInputs, getRuntimeContext());
+        new FlinkSideInputReader(sideInputs, getRuntimeContext(), options);
 
     AbstractFlinkCombineRunner<K, InputT, AccumT, AccumT, W> reduceRunner;
 
@@ -73,7 +73,7 @@ public class FlinkReduceFunction<K, AccumT, OutputT, W extends BoundedWindow>
     PipelineOptions options = serializedOptions.get();
 
     FlinkSideInputReader sideInputReader =
-        new FlinkSideInputReader(sideInputs, getRuntimeContext());
+        new FlinkSideInputReader(sideInputs, getRuntimeContext(), options);
 
     AbstractFlinkCombineRunner<K, AccumT, AccumT, OutputT, W> reduceRunner;
 
@@ -22,13 +22,16 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import javax.annotation.Nullable;
+import org.apache.beam.runners.core.SideInputCache;
 import org.apache.beam.runners.core.SideInputReader;
+import org.apache.beam.runners.flink.FlinkPipelineOptions;
+import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.transforms.Materializations;
-import org.apache.beam.sdk.transforms.Materializations.MultimapView;
-import org.apache.beam.sdk.transforms.ViewFn;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollectionView;
 import org.apache.beam.sdk.values.TupleTag;
 import org.apache.beam.sdk.values.WindowingStrategy;
@@ -36,17 +39,21 @@ import org.apache.flink.api.common.functions.RuntimeContext;
 
 /**
  * A {@link SideInputReader} for the Flink Batch Runner.
+ *
+ * <p>Materialized side inputs are held in a {@link SideInputCache} that is shared by all of the
+ * tasks of a task manager, and that is sized by {@link
+ * FlinkPipelineOptions#getSideInputCacheMaxBytes()}.
  */
 public class FlinkSideInputReader implements SideInputReader {
-  /** A {@link MultimapView} which always returns an empty iterable. */
-  private static final MultimapView EMPTY_MULTMAP_VIEW = o -> Collections.EMPTY_LIST;
-
   private final Map<TupleTag<?>, WindowingStrategy<?, ?>> sideInputs;
 
   private RuntimeContext runtimeContext;
 
+  private final SideInputCache materializedViews;
+
   public FlinkSideInputReader(Map<PCollectionView<?>, WindowingStrategy<?, ?>> indexByView,
-                              RuntimeContext runtimeContext) {
+                              RuntimeContext runtimeContext,
+                              PipelineOptions options) {
     for (PCollectionView<?> view : indexByView.keySet()) {
       checkArgument(
           Materializations.MULTIMAP_MATERIALIZATION_URN.equals(
@@ -62,6 +69,8 @@ public class FlinkSideInputReader implements SideInputReader {
       sideInputs.put(entry.getKey().getTagInternal(), entry.getValue());
     }
     this.runtimeContext = runtimeContext;
+    this.materializedViews =
+        SideInputCache.shared(options.as(FlinkPipelineOptions.class).getSideInputCacheMaxBytes());
   }
 
   @Nullable
@@ -73,15 +82,19 @@ public class FlinkSideInputReader implements SideInputReader {
         sideInputs.get(tag),
         "Side input for " + view + " not available.");
 
-    Map<BoundedWindow, T> sideInputs =
+    Map<BoundedWindow, List<KV<?, ?>>> sideInputs =
         runtimeContext.getBroadcastVariableWithInitializer(
             tag.getId(), new SideInputInitializer<>(view));
-    T result = sideInputs.get(window);
-    if (result == null) {
-      ViewFn<MultimapView, T> viewFn = (ViewFn<MultimapView, T>) view.getViewFn();
-      result = viewFn.apply(EMPTY_MULTMAP_VIEW);
+    List<KV<?, ?>> elements = sideInputs.get(window);
+    if (elements == null) {
+      elements = Collections.emptyList();
     }
-    return result;
+    // The initialized broadcast variable is shared by the tasks of a task manager, so the
+    // elements of a window identify the materialized view built from them. They are compared by
+    // identity, because hashing them would cost as much as materializing them.
+    List<KV<?, ?>> contents = elements;
+    return materializedViews.get(
+        view, window, SideInputCache.identityOf(contents), () -> contents);
   }
 
   @Override
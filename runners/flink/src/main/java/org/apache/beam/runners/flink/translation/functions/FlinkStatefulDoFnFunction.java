@@ -20,6 +20,9 @@ package org.apache.beam.runners.flink.translation.functions;
 import static org.apache.flink.util.Preconditions.checkArgument;
 
 import com.google.common.collect.Lists;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -27,6 +30,7 @@ import org.apache.beam.runners.core.DoFnRunner;
 import org.apache.beam.runners.core.DoFnRunners;
 import org.apache.beam.runners.core.InMemoryStateInternals;
 import org.apache.beam.runners.core.InMemoryTimerInternals;
+import org.apache.beam.runners.core.SpillingStateBackend;
 import org.apache.beam.runners.core.StateInternals;
 import org.apache.beam.runners.core.StateNamespace;
 import org.apache.beam.runners.core.StateNamespaces;
@@ -34,6 +38,7 @@ import org.apache.beam.runners.core.TimerInternals;
 import org.apache.beam.runners.core.construction.SerializablePipelineOptions;
 import org.apache.beam.runners.flink.FlinkPipelineOptions;
 import org.apache.beam.runners.flink.metrics.DoFnRunnerWithMetricsUpdate;
+import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.ParDo;
@@ -53,10 +58,17 @@ import org.joda.time.Instant;
 
 /**
  * A {@link RichGroupReduceFunction} for stateful {@link ParDo} in Flink Batch Runner.
+ *
+ * <p>The state of each key is held in memory, unless {@link
+ * FlinkPipelineOptions#getBatchStateSpillThreshold()} is set, in which case it is held in a {@link
+ * SpillingStateBackend} that spills to local disk.
  */
 public class FlinkStatefulDoFnFunction<K, V, OutputT>
     extends RichGroupReduceFunction<WindowedValue<KV<K, V>>, WindowedValue<OutputT>> {
 
+  /** The number of elements and timers processed between checks of whether to spill state. */
+  private static final int ELEMENTS_PER_SPILL_CHECK = 1000;
+
   private final DoFn<KV<K, V>, OutputT> dofn;
   private String stepName;
   private final WindowingStrategy<?, ?> windowingStrategy;
@@ -64,7 +76,11 @@ public class FlinkStatefulDoFnFunction<K, V, OutputT>
   private final SerializablePipelineOptions serializedOptions;
   private final Map<TupleTag<?>, Integer> outputMap;
   private final TupleTag<OutputT> mainOutputTag;
+  private final Coder<K> keyCoder;
   private transient DoFnInvoker doFnInvoker;
+  private transient File spillDirectory;
+  private transient SpillingStateBackend<K> spillingStateBackend;
+  private transient int elementsSinceSpillCheck;
 
   public FlinkStatefulDoFnFunction(
       DoFn<KV<K, V>, OutputT> dofn,
@@ -73,7 +89,8 @@ public class FlinkStatefulDoFnFunction<K, V, OutputT>
       Map<PCollectionView<?>, WindowingStrategy<?, ?>> sideInputs,
       PipelineOptions pipelineOptions,
       Map<TupleTag<?>, Integer> outputMap,
-      TupleTag<OutputT> mainOutputTag) {
+      TupleTag<OutputT> mainOutputTag,
+      Coder<K> keyCoder) {
 
     this.dofn = dofn;
     this.stepName = stepName;
@@ -82,6 +99,7 @@ public class FlinkStatefulDoFnFunction<K, V, OutputT>
     this.serializedOptions = new SerializablePipelineOptions(pipelineOptions);
     this.outputMap = outputMap;
     this.mainOutputTag = mainOutputTag;
+    this.keyCoder = keyCoder;
   }
 
   @Override
@@ -106,7 +124,8 @@ public class FlinkStatefulDoFnFunction<K, V, OutputT>
     WindowedValue<KV<K, V>> currentValue = iterator.next();
     final K key = currentValue.getValue().getKey();
 
-    final InMemoryStateInternals<K> stateInternals = InMemoryStateInternals.forKey(key);
+    final StateInternals inMemoryStateInternals =
+        spillingStateBackend == null ? InMemoryStateInternals.forKey(key) : null;
 
     // Used with Batch, we know that all the data is available for this key. We can't use the
     // timer manager from the context because it doesn't exist. So we create one and advance
@@ -119,14 +138,17 @@ public class FlinkStatefulDoFnFunction<K, V, OutputT>
 
     DoFnRunner<KV<K, V>, OutputT> doFnRunner = DoFnRunners.simpleRunner(
         serializedOptions.get(), dofn,
-        new FlinkSideInputReader(sideInputs, runtimeContext),
+        new FlinkSideInputReader(sideInputs, runtimeContext, serializedOptions.get()),
         outputManager,
         mainOutputTag,
         additionalOutputTags,
         new FlinkNoOpStepContext() {
           @Override
           public StateInternals stateInternals() {
-            return stateInternals;
+            // The state internals of a spilling backend must be obtained again after each spill.
+            return inMemoryStateInternals != null
+                ? inMemoryStateInternals
+                : spillingStateBackend.stateInternalsForKey(key);
           }
           @Override
           public TimerInternals timerInternals() {
@@ -146,6 +168,7 @@ public class FlinkStatefulDoFnFunction<K, V, OutputT>
     while (iterator.hasNext()) {
       currentValue = iterator.next();
       doFnRunner.processElement(currentValue);
+      spillIfNecessary();
     }
 
     // Finish any pending windows by advancing the input watermark to infinity.
@@ -158,6 +181,17 @@ public class FlinkStatefulDoFnFunction<K, V, OutputT>
     fireEligibleTimers(timerInternals, doFnRunner);
 
     doFnRunner.finishBundle();
+
+    if (spillingStateBackend != null) {
+      spillingStateBackend.clear(key);
+    }
+  }
+
+  private void spillIfNecessary() throws IOException {
+    if (spillingStateBackend != null && ++elementsSinceSpillCheck >= ELEMENTS_PER_SPILL_CHECK) {
+      spillingStateBackend.spillIfNecessary();
+      elementsSinceSpillCheck = 0;
+    }
   }
 
   private void fireEligibleTimers(
@@ -172,14 +206,17 @@ public class FlinkStatefulDoFnFunction<K, V, OutputT>
       while ((timer = timerInternals.removeNextEventTimer()) != null) {
         hasFired = true;
         fireTimer(timer, runner);
+        spillIfNecessary();
       }
       while ((timer = timerInternals.removeNextProcessingTimer()) != null) {
         hasFired = true;
         fireTimer(timer, runner);
+        spillIfNecessary();
       }
       while ((timer = timerInternals.removeNextSynchronizedProcessingTimer()) != null) {
         hasFired = true;
         fireTimer(timer, runner);
+        spillIfNecessary();
       }
       if (!hasFired) {
         break;
@@ -199,11 +236,25 @@ public class FlinkStatefulDoFnFunction<K, V, OutputT>
   public void open(Configuration parameters) throws Exception {
     doFnInvoker = DoFnInvokers.invokerFor(dofn);
     doFnInvoker.invokeSetup();
+
+    long spillThreshold =
+        serializedOptions.get().as(FlinkPipelineOptions.class).getBatchStateSpillThreshold();
+    if (spillThreshold >= 0) {
+      spillDirectory = Files.createTempDirectory("beam-state-").toFile();
+      spillingStateBackend = SpillingStateBackend.create(keyCoder, spillDirectory, spillThreshold);
+    }
   }
 
   @Override
   public void close() throws Exception {
-    doFnInvoker.invokeTeardown();
+    try {
+      doFnInvoker.invokeTeardown();
+    } finally {
+      if (spillingStateBackend != null) {
+        spillingStateBackend.close();
+        spillDirectory.delete();
+      }
+    }
   }
 
 }
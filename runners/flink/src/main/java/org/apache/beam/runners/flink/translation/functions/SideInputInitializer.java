@@ -23,13 +23,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-import org.apache.beam.runners.core.InMemoryMultimapSideInputView;
-import org.apache.beam.sdk.coders.Coder;
-import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.transforms.Materializations;
-import org.apache.beam.sdk.transforms.Materializations.MultimapView;
-import org.apache.beam.sdk.transforms.ViewFn;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.beam.sdk.values.KV;
@@ -38,10 +32,13 @@ import org.apache.flink.api.common.functions.BroadcastVariableInitializer;
 
 /**
  * {@link BroadcastVariableInitializer} that initializes the broadcast input as a {@code Map}
- * from window to side input.
+ * from window to the elements of the side input in that window.
+ *
+ * <p>The side input is materialized from these elements when it is read, so that materialized
+ * side inputs can be bounded in memory by a {@link org.apache.beam.runners.core.SideInputCache}.
  */
 public class SideInputInitializer<ViewT>
-    implements BroadcastVariableInitializer<WindowedValue<?>, Map<BoundedWindow, ViewT>> {
+    implements BroadcastVariableInitializer<WindowedValue<?>, Map<BoundedWindow, List<KV<?, ?>>>> {
 
   PCollectionView<ViewT> view;
 
@@ -58,41 +55,20 @@ public class SideInputInitializer<ViewT>
   }
 
   @Override
-  public Map<BoundedWindow, ViewT> initializeBroadcastVariable(
+  public Map<BoundedWindow, List<KV<?, ?>>> initializeBroadcastVariable(
       Iterable<WindowedValue<?>> inputValues) {
 
-    // first partition into windows
-    Map<BoundedWindow, List<WindowedValue<KV<?, ?>>>> partitionedElements = new HashMap<>();
+    // partition into windows
+    Map<BoundedWindow, List<KV<?, ?>>> partitionedElements = new HashMap<>();
     for (WindowedValue<KV<?, ?>> value
         : (Iterable<WindowedValue<KV<?, ?>>>) (Iterable) inputValues) {
       for (BoundedWindow window: value.getWindows()) {
-        List<WindowedValue<KV<?, ?>>> windowedValues =
+        List<KV<?, ?>> windowedValues =
             partitionedElements.computeIfAbsent(window, k -> new ArrayList<>());
-        windowedValues.add(value);
+        windowedValues.add(value.getValue());
       }
     }
 
-    Map<BoundedWindow, ViewT> resultMap = new HashMap<>();
-
-    for (Map.Entry<BoundedWindow, List<WindowedValue<KV<?, ?>>>> elements:
-        partitionedElements.entrySet()) {
-
-      ViewFn<MultimapView, ViewT> viewFn = (ViewFn<MultimapView, ViewT>) view.getViewFn();
-      Coder keyCoder = ((KvCoder<?, ?>) view.getCoderInternal()).getKeyCoder();
-      resultMap.put(
-          elements.getKey(),
-          (ViewT)
-              viewFn.apply(
-                  InMemoryMultimapSideInputView.fromIterable(
-                      keyCoder,
-                      (Iterable)
-                          elements
-                              .getValue()
-                              .stream()
-                              .map(WindowedValue::getValue)
-                              .collect(Collectors.toList()))));
-    }
-
-    return resultMap;
+    return partitionedElements;
   }
 }
@@ -41,6 +41,7 @@ import org.apache.beam.runners.core.DoFnRunners;
 import org.apache.beam.runners.core.GroupAlsoByWindowViaWindowSetNewDoFn;
 import org.apache.beam.runners.core.NullSideInputReader;
 import org.apache.beam.runners.core.PushbackSideInputDoFnRunner;
+import org.apache.beam.runners.core.SideInputCache;
 import org.apache.beam.runners.core.SideInputHandler;
 import org.apache.beam.runners.core.SideInputReader;
 import org.apache.beam.runners.core.SimplePushbackSideInputDoFnRunner;
@@ -263,7 +264,15 @@ public class DoFnOperator<InputT, OutputT>
           new FlinkBroadcastStateInternals<>(
               getContainingTask().getIndexInSubtaskGroup(), getOperatorStateBackend());
 
-      sideInputHandler = new SideInputHandler(sideInputs, sideInputStateInternals);
+      sideInputHandler =
+          new SideInputHandler(
+              sideInputs,
+              sideInputStateInternals,
+              SideInputCache.shared(
+                  serializedOptions
+                      .get()
+                      .as(FlinkPipelineOptions.class)
+                      .getSideInputCacheMaxBytes()));
       sideInputReader = sideInputHandler;
 
       pushedBackWatermark = Optional.absent();
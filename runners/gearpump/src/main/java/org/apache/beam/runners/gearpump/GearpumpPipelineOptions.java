@@ -45,6 +45,14 @@ public interface GearpumpPipelineOptions extends PipelineOptions {
   @Default.Integer(1)
   int getParallelism();
 
+  @Description("set the maximum total size in bytes of the encoded side input contents that each "
+      + "executor keeps materialized. The least recently used side input windows are evicted "
+      + "first.")
+  void setSideInputCacheMaxBytes(long maxBytes);
+
+  @Default.Long(128L << 20)
+  long getSideInputCacheMaxBytes();
+
   @Description("register Kryo serializers")
   void setSerializers(Map<String, String> serializers);
 
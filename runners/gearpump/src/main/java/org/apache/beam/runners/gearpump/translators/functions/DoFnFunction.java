@@ -34,6 +34,7 @@ import java.util.Set;
 import org.apache.beam.runners.core.DoFnRunners;
 import org.apache.beam.runners.core.InMemoryStateInternals;
 import org.apache.beam.runners.core.PushbackSideInputDoFnRunner;
+import org.apache.beam.runners.core.SideInputCache;
 import org.apache.beam.runners.core.SideInputHandler;
 import org.apache.beam.runners.gearpump.GearpumpPipelineOptions;
 import org.apache.beam.runners.gearpump.translators.utils.DoFnRunnerFactory;
@@ -70,6 +71,7 @@ public class DoFnFunction<InputT, OutputT> extends
   private final TupleTag<OutputT> mainOutput;
   private final List<TupleTag<?>> sideOutputs;
   private final DoFnOutputManager outputManager;
+  private final long sideInputCacheMaxBytes;
 
   public DoFnFunction(
       GearpumpPipelineOptions pipelineOptions,
@@ -81,6 +83,7 @@ public class DoFnFunction<InputT, OutputT> extends
       List<TupleTag<?>> sideOutputs) {
     this.doFn = doFn;
     this.outputManager = new DoFnOutputManager();
+    this.sideInputCacheMaxBytes = pipelineOptions.getSideInputCacheMaxBytes();
     this.doFnRunnerFactory = new DoFnRunnerFactory<>(
         pipelineOptions,
         doFn,
@@ -100,7 +103,8 @@ public class DoFnFunction<InputT, OutputT> extends
   @Override
   public void setup() {
     sideInputReader = new SideInputHandler(sideInputs,
-        InMemoryStateInternals.<Void>forKey(null));
+        InMemoryStateInternals.<Void>forKey(null),
+        SideInputCache.shared(sideInputCacheMaxBytes));
     doFnInvoker = DoFnInvokers.invokerFor(doFn);
     doFnInvoker.invokeSetup();
 
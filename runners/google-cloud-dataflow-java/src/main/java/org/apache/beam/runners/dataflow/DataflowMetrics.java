@@ -334,6 +334,8 @@ class DataflowMetrics extends MetricResults {
 
   @AutoValue
   abstract static class DataflowMetricQueryResults implements MetricQueryResults {
+    // The Dataflow service does not report histograms, so histograms() keeps the default
+    // implementation of MetricQueryResults, which returns no results.
     public static MetricQueryResults create(
         Iterable<MetricResult<Long>> counters,
         Iterable<MetricResult<DistributionResult>> distributions,
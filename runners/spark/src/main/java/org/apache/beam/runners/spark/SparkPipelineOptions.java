@@ -19,10 +19,12 @@
 package org.apache.beam.runners.spark;
 
 import java.util.List;
+import org.apache.beam.sdk.annotations.Experimental;
 import org.apache.beam.sdk.options.ApplicationNameOptions;
 import org.apache.beam.sdk.options.Default;
 import org.apache.beam.sdk.options.DefaultValueFactory;
 import org.apache.beam.sdk.options.Description;
+import org.apache.beam.sdk.options.Hidden;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.options.StreamingOptions;
 
@@ -53,6 +55,13 @@ public interface SparkPipelineOptions
   Long getMinReadTimeMillis();
   void setMinReadTimeMillis(Long minReadTimeMillis);
 
+  @Description("The maximum total size in bytes of the encoded side input contents that each "
+      + "executor keeps materialized. The least recently used side input windows are evicted "
+      + "first.")
+  @Default.Long(128L << 20)
+  Long getSideInputCacheMaxBytes();
+  void setSideInputCacheMaxBytes(Long maxBytes);
+
   @Description("Max records per micro-batch. For streaming sources only.")
   @Default.Long(-1)
   Long getMaxRecordsPerBatch();
@@ -94,6 +103,41 @@ public interface SparkPipelineOptions
   Boolean getEnableSparkMetricSinks();
   void setEnableSparkMetricSinks(Boolean enableSparkMetricSinks);
 
+  @Hidden
+  @Experimental
+  @Description("[Experimental] Enable/disable grouping batch GroupByKeys by sorting the shuffled "
+      + "values by their encoded keys, rather than with Spark's groupByKey. Sorting streams the "
+      + "values of each key instead of collecting them in memory, but its throughput has not yet "
+      + "been compared with groupByKey on the Nexmark suite.")
+  @Default.Boolean(false)
+  boolean getSortBasedGroupByKey();
+  void setSortBasedGroupByKey(boolean sortBasedGroupByKey);
+
+  @Description("Enable/disable choosing which batch PCollections to cache, and at which storage "
+      + "level, from their estimated recomputation cost and size, rather than caching every "
+      + "PCollection that is read more than once at the default storage level. Cached datasets "
+      + "are unpersisted once their last consumer has run.")
+  @Default.Boolean(false)
+  boolean getCostBasedCaching();
+  void setCostBasedCaching(boolean costBasedCaching);
+
+  @Description("The estimated encoded size in bytes above which cost-based caching keeps a "
+      + "PCollection on disk (DISK_ONLY), rather than serialized in memory (MEMORY_ONLY_SER).")
+  @Default.Long(256L << 20)
+  Long getCacheMaxMemoryBytes();
+  void setCacheMaxMemoryBytes(Long maxBytes);
+
+  @Description("Enable/disable skipping the streaming GroupByKey windowing logic of idle keys, "
+      + "i.e., keys with no new input and no timer eligible at the current watermark, whose "
+      + "previous state is then carried over as is. Every key is still visited each batch and "
+      + "written out whenever the state is checkpointed. The state is kept deserialized in memory "
+      + "(MEMORY_ONLY rather than MEMORY_ONLY_SER) between batches: it takes more heap as Java "
+      + "objects than serialized, adds to garbage collection, and partitions that do not fit in "
+      + "memory are recomputed from the last checkpoint rather than spilled.")
+  @Default.Boolean(false)
+  boolean getSkipIdleStreamingKeys();
+  void setSkipIdleStreamingKeys(boolean skipIdleStreamingKeys);
+
   @Description("If the spark runner will be initialized with a provided Spark Context. "
       + "The Spark Context should be provided with SparkContextOptions.")
   @Default.Boolean(false)
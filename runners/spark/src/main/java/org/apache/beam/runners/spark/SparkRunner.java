@@ -334,6 +334,15 @@ public final class SparkRunner extends PipelineRunner<SparkPipelineResult> {
           ctxt.getCacheCandidates().put((PCollection) value, count);
         }
       }
+
+      // record the transform to estimate the cost and size of its outputs.
+      if (ctxt.isCostBasedCaching()) {
+        ctxt.getCachePlanner()
+            .addTransform(
+                node.getTransform(),
+                TransformInputs.nonAdditionalInputs(node.toAppliedPTransform(getPipeline())),
+                node.getOutputs().values());
+      }
     }
   }
 
@@ -21,7 +21,6 @@ package org.apache.beam.runners.spark.coders;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.LinkedList;
@@ -30,6 +29,8 @@ import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 import org.apache.beam.runners.spark.util.ByteArray;
 import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.util.CoderUtils;
 import org.apache.spark.api.java.function.Function;
 import org.apache.spark.api.java.function.PairFunction;
 import scala.Tuple2;
@@ -50,13 +51,12 @@ public final class CoderHelpers {
    * @return Byte array representing serialized object.
    */
   public static <T> byte[] toByteArray(T value, Coder<T> coder) {
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    // Encodes into a reused thread local buffer, so the only allocation is the returned array.
     try {
-      coder.encode(value, baos, new Coder.Context(true));
-    } catch (IOException e) {
+      return CoderUtils.encodeToByteArray(coder, value, Coder.Context.OUTER);
+    } catch (CoderException e) {
       throw new IllegalStateException("Error encoding value: " + value, e);
     }
-    return baos.toByteArray();
   }
 
   /**
@@ -84,9 +84,11 @@ public final class CoderHelpers {
    * @return Deserialized object.
    */
   public static <T> T fromByteArray(byte[] serialized, Coder<T> coder) {
+    // not an ExposedByteArrayInputStream, which may hand the serialized array itself to the
+    // decoded value (e.g. a byte[] decoded in the outer context) and alias the caller's array.
     ByteArrayInputStream bais = new ByteArrayInputStream(serialized);
     try {
-      return coder.decode(bais, new Coder.Context(true));
+      return coder.decode(bais, Coder.Context.OUTER);
     } catch (IOException e) {
       throw new IllegalStateException("Error decoding bytes for coder: " + coder, e);
     }
@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.spark.coders;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+import org.apache.beam.runners.spark.util.ByteArray;
+import org.apache.beam.sdk.coders.ByteArrayCoder;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.spark.serializer.DeserializationStream;
+import org.apache.spark.serializer.SerializationStream;
+import org.apache.spark.serializer.Serializer;
+import org.apache.spark.serializer.SerializerInstance;
+import scala.Product2;
+import scala.Tuple2;
+import scala.collection.Iterator;
+import scala.collection.JavaConversions;
+import scala.reflect.ClassTag;
+
+/**
+ * A Spark {@link Serializer} for shuffled records whose keys are {@link ByteArray}s of encoded
+ * keys, and whose values are encoded with a Beam {@link Coder}.
+ *
+ * <p>Keys and values are written straight into the shuffle streams with their coders, instead of
+ * through the serializer configured for the {@link org.apache.spark.SparkContext}. Each record is
+ * encoded on its own, so Spark can relocate serialized records, e.g. to sort them by partition
+ * without deserializing them.
+ *
+ * <p>Only records of the shuffle it is set on can be serialized, see
+ * {@link org.apache.spark.rdd.ShuffledRDD#setSerializer(Serializer)}.
+ *
+ * @param <V> the type of the values of the shuffled records.
+ */
+public class CoderShuffleSerializer<V> extends Serializer implements Serializable {
+  private static final Coder<byte[]> KEY_CODER = ByteArrayCoder.of();
+
+  private final Coder<V> valueCoder;
+
+  public CoderShuffleSerializer(Coder<V> valueCoder) {
+    this.valueCoder = valueCoder;
+  }
+
+  @Override
+  public SerializerInstance newInstance() {
+    return new CoderSerializerInstance();
+  }
+
+  @Override
+  public boolean supportsRelocationOfSerializedObjects() {
+    // records are encoded independently of each other, without stream headers or references.
+    return true;
+  }
+
+  private class CoderSerializerInstance extends SerializerInstance {
+
+    @Override
+    public <T> ByteBuffer serialize(T record, ClassTag<T> tag) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      serializeStream(out).writeObject(record, tag).close();
+      return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    @Override
+    public <T> T deserialize(ByteBuffer bytes, ClassTag<T> tag) {
+      byte[] array = new byte[bytes.remaining()];
+      bytes.get(array);
+      return deserializeStream(new ByteArrayInputStream(array)).readObject(tag);
+    }
+
+    @Override
+    public <T> T deserialize(ByteBuffer bytes, ClassLoader loader, ClassTag<T> tag) {
+      // coders hold the classes they decode to, so there is nothing to resolve with the loader.
+      return deserialize(bytes, tag);
+    }
+
+    @Override
+    public SerializationStream serializeStream(OutputStream out) {
+      return new CoderSerializationStream(out);
+    }
+
+    @Override
+    public DeserializationStream deserializeStream(InputStream in) {
+      return new CoderDeserializationStream(in);
+    }
+  }
+
+  private class CoderSerializationStream extends SerializationStream {
+    private final OutputStream out;
+
+    private CoderSerializationStream(OutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public <T> SerializationStream writeObject(T record, ClassTag<T> tag) {
+      if (!(record instanceof Product2)) {
+        throw new UnsupportedOperationException(
+            String.format(
+                "%s can only serialize shuffled key-value records, not %s",
+                CoderShuffleSerializer.class.getSimpleName(), record));
+      }
+      Product2<?, ?> keyValue = (Product2<?, ?>) record;
+      writeKey(keyValue._1(), tag);
+      return writeValue(keyValue._2(), tag);
+    }
+
+    @Override
+    public <T> SerializationStream writeKey(Object key, ClassTag<T> tag) {
+      try {
+        KEY_CODER.encode(((ByteArray) key).getValue(), out);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      return this;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> SerializationStream writeValue(Object value, ClassTag<T> tag) {
+      try {
+        valueCoder.encode((V) value, out);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      return this;
+    }
+
+    @Override
+    public void flush() {
+      try {
+        out.flush();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public void close() {
+      try {
+        out.close();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  private class CoderDeserializationStream extends DeserializationStream {
+    private final PushbackInputStream in;
+
+    private CoderDeserializationStream(InputStream in) {
+      this.in = new PushbackInputStream(in);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T readObject(ClassTag<T> tag) {
+      return (T) new Tuple2<>(readKey(tag), readValue(tag));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T readKey(ClassTag<T> tag) {
+      try {
+        return (T) new ByteArray(KEY_CODER.decode(in));
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T readValue(ClassTag<T> tag) {
+      try {
+        return (T) valueCoder.decode(in);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public Iterator<Object> asIterator() {
+      return JavaConversions.asScalaIterator(
+          new RecordIterator<Object>() {
+            @Override
+            Object read() {
+              return readObject(null);
+            }
+          });
+    }
+
+    @Override
+    public Iterator<Tuple2<Object, Object>> asKeyValueIterator() {
+      return JavaConversions.asScalaIterator(
+          new RecordIterator<Tuple2<Object, Object>>() {
+            @Override
+            Tuple2<Object, Object> read() {
+              return new Tuple2<>(readKey(null), readValue(null));
+            }
+          });
+    }
+
+    /**
+     * Reads records until the end of the stream. Spark's own iterators detect the end by an
+     * {@link java.io.EOFException} thrown while reading a record, which these methods cannot
+     * declare, so the end is detected by reading ahead instead.
+     */
+    private abstract class RecordIterator<T> implements java.util.Iterator<T> {
+      private boolean finished = false;
+
+      @Override
+      public boolean hasNext() {
+        if (finished) {
+          return false;
+        }
+        try {
+          int next = in.read();
+          if (next < 0) {
+            finished = true;
+            close();
+            return false;
+          }
+          in.unread(next);
+          return true;
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+
+      @Override
+      public T next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return read();
+      }
+
+      abstract T read();
+    }
+
+    @Override
+    public void close() {
+      try {
+        in.close();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+}
@@ -17,15 +17,21 @@
  */
 package org.apache.beam.runners.spark.stateful;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Predicate;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.FluentIterable;
+import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Table;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import org.apache.beam.runners.core.GroupAlsoByWindowsAggregators;
@@ -40,10 +46,12 @@ import org.apache.beam.runners.core.construction.SerializablePipelineOptions;
 import org.apache.beam.runners.core.construction.TriggerTranslation;
 import org.apache.beam.runners.core.metrics.CounterCell;
 import org.apache.beam.runners.core.metrics.MetricsContainerImpl;
+import org.apache.beam.runners.core.metrics.MetricsContainerStepMap;
 import org.apache.beam.runners.core.triggers.ExecutableTriggerStateMachine;
 import org.apache.beam.runners.core.triggers.TriggerStateMachines;
 import org.apache.beam.runners.spark.SparkPipelineOptions;
 import org.apache.beam.runners.spark.coders.CoderHelpers;
+import org.apache.beam.runners.spark.metrics.MetricsAccumulator;
 import org.apache.beam.runners.spark.translation.TranslationUtils;
 import org.apache.beam.runners.spark.translation.WindowingHelpers;
 import org.apache.beam.runners.spark.util.ByteArray;
@@ -61,8 +69,10 @@ import org.apache.beam.sdk.util.WindowedValue.FullWindowedValueCoder;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.TupleTag;
 import org.apache.beam.sdk.values.WindowingStrategy;
+import org.apache.spark.Accumulator;
 import org.apache.spark.api.java.JavaSparkContext$;
 import org.apache.spark.api.java.function.FlatMapFunction;
+import org.apache.spark.storage.StorageLevel;
 import org.apache.spark.streaming.Duration;
 import org.apache.spark.streaming.api.java.JavaDStream;
 import org.apache.spark.streaming.api.java.JavaPairDStream;
@@ -92,11 +102,22 @@ import scala.runtime.AbstractFunction1;
  * state (new values for key) but also check if timers are ready to fire. Since updateStateByKey
  * bounds the types of state and output to be the same, a (state, output) tuple is used, filtering
  * the state (and output if no firing) in the following steps.
+ *
+ * <p>With {@link SparkPipelineOptions#getSkipIdleStreamingKeys()} enabled, keys with no new input
+ * and no timer eligible at the current watermark pass their previous state through as is, without
+ * decoding it or running the {@link ReduceFnRunner}, and the state stream is kept deserialized in
+ * memory. This only saves the windowing work of idle keys: every key is still visited by
+ * updateStateByKey each batch, and is serialized whenever the state stream is checkpointed.
  */
 public class SparkGroupAlsoByWindowViaWindowSet implements Serializable {
   private static final Logger LOG =
       LoggerFactory.getLogger(SparkGroupAlsoByWindowViaWindowSet.class);
 
+  /** Counts the keys whose previous state was carried over as is, see {@link #isIdle}. */
+  @VisibleForTesting
+  static final MetricName IDLE_KEYS_CARRIED_OVER =
+      MetricName.named(SparkGroupAlsoByWindowViaWindowSet.class, "idleKeysCarriedOver");
+
   private static class StateAndTimers implements Serializable {
     //Serializable state for internals (namespace to state tag to coded value).
     private final Table<String, String, byte[]> state;
@@ -167,6 +188,7 @@ public class SparkGroupAlsoByWindowViaWindowSet implements Serializable {
           input;
       private final SystemReduceFn<K, InputT, Iterable<InputT>, Iterable<InputT>, W> reduceFn;
       private final CounterCell droppedDueToLateness;
+      private final CounterCell idleKeysCarriedOver;
 
       private SparkStateInternals<K> processPreviousState(
           final Option<Tuple2<StateAndTimers, List<byte[]>>> prevStateAndTimersOpt,
@@ -181,8 +203,14 @@ public class SparkGroupAlsoByWindowViaWindowSet implements Serializable {
         } else {
           // with pre-existing state.
           final StateAndTimers prevStateAndTimers = prevStateAndTimersOpt.get()._1();
-          // get state(internals) per key.
-          stateInternals = SparkStateInternals.forKeyAndState(key, prevStateAndTimers.getState());
+          // get state(internals) per key. previous state stays cached deserialized when
+          // skipping idle keys, so it is copied rather than mutated in place.
+          stateInternals =
+              SparkStateInternals.forKeyAndState(
+                  key,
+                  skipIdleKeys
+                      ? HashBasedTable.create(prevStateAndTimers.getState())
+                      : prevStateAndTimers.getState());
 
           timerInternals.addTimers(
               SparkTimerInternals.deserializeTimers(
@@ -197,10 +225,12 @@ public class SparkGroupAlsoByWindowViaWindowSet implements Serializable {
                   Tuple3<ByteArray, Seq<byte[]>, Option<Tuple2<StateAndTimers, List<byte[]>>>>>
               input,
           final SystemReduceFn<K, InputT, Iterable<InputT>, Iterable<InputT>, W> reduceFn,
-          final CounterCell droppedDueToLateness) {
+          final CounterCell droppedDueToLateness,
+          final CounterCell idleKeysCarriedOver) {
         this.input = input;
         this.reduceFn = reduceFn;
         this.droppedDueToLateness = droppedDueToLateness;
+        this.idleKeysCarriedOver = idleKeysCarriedOver;
       }
 
       /**
@@ -223,6 +253,33 @@ public class SparkGroupAlsoByWindowViaWindowSet implements Serializable {
         return FluentIterable.from(timers).filter(eligibleForProcessing).toSet();
       }
 
+      /**
+       * Whether a key without new input can skip the {@link ReduceFnRunner} altogether, i.e., it
+       * has state to keep and none of its timers would be eligible once the watermark advances.
+       */
+      private boolean isIdle(
+          final StateAndTimers prevStateAndTimers,
+          final Map<Integer, GlobalWatermarkHolder.SparkWatermarks> watermarks) {
+        if (prevStateAndTimers.getState().isEmpty()) {
+          // leave eviction of empty state to the regular path.
+          return false;
+        }
+        final SparkTimerInternals timerInternals =
+            SparkTimerInternals.forStreamFromSources(sourceIds, watermarks);
+        timerInternals.advanceWatermark();
+        final Instant inputWatermark = timerInternals.currentInputWatermarkTime();
+        final java.util.Iterator<TimerInternals.TimerData> timers =
+            SparkTimerInternals.deserializeTimers(prevStateAndTimers.getTimers(), timerDataCoder);
+        while (timers.hasNext()) {
+          final TimerInternals.TimerData timer = timers.next();
+          // processing-time timers are always eligible, see eligibleForProcessing.
+          if (!timer.getDomain().equals(TimeDomain.EVENT_TIME)
+              || inputWatermark.isAfter(timer.getTimestamp())) {
+            return false;
+          }
+        }
+        return true;
+      }
 
       @Override
       protected Tuple2</*K*/ ByteArray, Tuple2<StateAndTimers, /*WV<KV<K, Itr<I>>>*/ List<byte[]>>>
@@ -239,11 +296,22 @@ public class SparkGroupAlsoByWindowViaWindowSet implements Serializable {
           final Seq<byte[]> encodedKeyedElements = next._2();
           final Option<Tuple2<StateAndTimers, List<byte[]>>> prevStateAndTimersOpt = next._3();
 
-          final K key = CoderHelpers.fromByteArray(encodedKey.getValue(), keyCoder);
-
           final Map<Integer, GlobalWatermarkHolder.SparkWatermarks> watermarks =
               GlobalWatermarkHolder.get(getBatchDuration(options));
 
+          if (skipIdleKeys
+              && encodedKeyedElements.isEmpty()
+              && prevStateAndTimersOpt.isDefined()
+              && isIdle(prevStateAndTimersOpt.get()._1(), watermarks)) {
+            // nothing to process or fire for this key, keep its previous state as is.
+            idleKeysCarriedOver.inc();
+            return new Tuple2<>(
+                encodedKey,
+                new Tuple2<>(prevStateAndTimersOpt.get()._1(), Collections.<byte[]>emptyList()));
+          }
+
+          final K key = CoderHelpers.fromByteArray(encodedKey.getValue(), keyCoder);
+
           final SparkTimerInternals timerInternals =
               SparkTimerInternals.forStreamFromSources(sourceIds, watermarks);
 
@@ -386,6 +454,9 @@ public class SparkGroupAlsoByWindowViaWindowSet implements Serializable {
     private final IterableCoder<WindowedValue<InputT>> itrWvCoder;
     private final String logPrefix;
     private final Coder<WindowedValue<KV<K, Iterable<InputT>>>> wvKvIterCoder;
+    private final boolean skipIdleKeys;
+    // not serialized with the function, see writeObject.
+    private transient Accumulator<MetricsContainerStepMap> metricsAccum;
 
     UpdateStateByKeyFunction(
         final List<Integer> sourceIds,
@@ -407,6 +478,21 @@ public class SparkGroupAlsoByWindowViaWindowSet implements Serializable {
               keyCoder,
               wvCoder.getValueCoder(),
               ((FullWindowedValueCoder<InputT>) wvCoder).getWindowCoder());
+      this.skipIdleKeys = isSkippingIdleKeys(options);
+      this.metricsAccum = MetricsAccumulator.getInstance();
+    }
+
+    // this function is part of the checkpointed DStream graph, so the accumulator it was created
+    // with does not survive a recovery. always ship the driver's current instance instead.
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+      out.defaultWriteObject();
+      out.writeObject(MetricsAccumulator.getInstance());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+      in.defaultReadObject();
+      metricsAccum = (Accumulator<MetricsContainerStepMap>) in.readObject();
     }
 
     @Override
@@ -459,8 +545,13 @@ public class SparkGroupAlsoByWindowViaWindowSet implements Serializable {
         droppedDueToClosedWindow.inc(-droppedDueToClosedWindow.getCumulative());
       }
 
+      // logPrefix is the transform's full name, which is also its metrics step name.
+      final CounterCell idleKeysCarriedOver =
+          metricsAccum.localValue().getContainer(logPrefix).getCounter(IDLE_KEYS_CARRIED_OVER);
+
       return scala.collection.JavaConversions.asScalaIterator(
-          new UpdateStateByKeyOutputIterator(input, reduceFn, droppedDueToLateness));
+          new UpdateStateByKeyOutputIterator(
+              input, reduceFn, droppedDueToLateness, idleKeysCarriedOver));
     }
   }
 
@@ -489,6 +580,10 @@ public class SparkGroupAlsoByWindowViaWindowSet implements Serializable {
     }
   }
 
+  private static boolean isSkippingIdleKeys(final SerializablePipelineOptions options) {
+    return options.get().as(SparkPipelineOptions.class).getSkipIdleStreamingKeys();
+  }
+
   private static Long getBatchDuration(final SerializablePipelineOptions options) {
     return options.get().as(SparkPipelineOptions.class).getCheckpointDurationMillis();
   }
@@ -615,6 +710,11 @@ public class SparkGroupAlsoByWindowViaWindowSet implements Serializable {
                 true,
                 JavaSparkContext$.MODULE$.fakeClassTag());
 
+    if (isSkippingIdleKeys(options)) {
+      // keep the state deserialized between batches, idle keys are then carried over as is.
+      firedStream.persist(StorageLevel.MEMORY_ONLY());
+    }
+
     checkpointIfNeeded(firedStream, options);
 
     // filter state-only output (nothing to fire) and remove the state from the output.
@@ -23,6 +23,7 @@ import java.util.List;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import org.apache.beam.runners.spark.coders.CoderHelpers;
+import org.apache.beam.runners.spark.metrics.MetricsAccumulator;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.transforms.windowing.GlobalWindows;
@@ -47,6 +48,8 @@ public class BoundedDataset<T> implements Dataset {
   private Iterable<WindowedValue<T>> windowedValues;
   private Coder<T> coder;
   private JavaRDD<WindowedValue<T>> rdd;
+  // only set once cached
+  @Nullable private JavaRDD<?> persisted;
 
   BoundedDataset(JavaRDD<WindowedValue<T>> rdd) {
     this.rdd = rdd;
@@ -101,13 +104,54 @@ public class BoundedDataset<T> implements Dataset {
     if (TranslationUtils.avoidRddSerialization(level)) {
       // if it is memory only reduce the overhead of moving to bytes
       this.rdd = getRDD().persist(level);
+      this.persisted = rdd;
     } else {
       // Caching can cause Serialization, we need to code to bytes
       // more details in https://issues.apache.org/jira/browse/BEAM-2669
       Coder<WindowedValue<T>> windowedValueCoder = (Coder<WindowedValue<T>>) coder;
-      this.rdd = getRDD().map(CoderHelpers.toByteFunction(windowedValueCoder))
-          .persist(level)
-          .map(CoderHelpers.fromByteFunction(windowedValueCoder));
+      JavaRDD<byte[]> bytes =
+          getRDD().map(CoderHelpers.toByteFunction(windowedValueCoder)).persist(level);
+      this.persisted = bytes;
+      this.rdd = bytes.map(CoderHelpers.fromByteFunction(windowedValueCoder));
+    }
+  }
+
+  /**
+   * Caches the encoded dataset at the given serialized storage level, like
+   * {@link #cache(String, Coder)}, and counts the hits and misses of the cache in the metrics of
+   * the given step, see {@link CachePlanner}.
+   */
+  @SuppressWarnings("unchecked")
+  void cache(String storageLevel, Coder<?> coder, String stepName) {
+    Coder<WindowedValue<T>> windowedValueCoder = (Coder<WindowedValue<T>>) coder;
+    String cacheId = stepName + "@" + getRDD().id();
+    JavaRDD<byte[]> bytes =
+        getRDD()
+            .mapPartitions(CachePlanner.<WindowedValue<T>>markComputed(cacheId), true)
+            .map(CoderHelpers.toByteFunction(windowedValueCoder))
+            .persist(StorageLevel.fromString(storageLevel));
+    bytes.setName(stepName);
+    this.persisted = bytes;
+    this.rdd =
+        bytes
+            .mapPartitions(
+                CachePlanner.<byte[]>countHits(
+                    cacheId, stepName, MetricsAccumulator.getInstance()),
+                true)
+            .map(CoderHelpers.fromByteFunction(windowedValueCoder));
+  }
+
+  /** The RDD holding the cached contents of this dataset, or {@code null} if not cached. */
+  @Nullable
+  JavaRDD<?> getPersistedRDD() {
+    return persisted;
+  }
+
+  /** Removes the cached contents of this dataset, if it is cached. */
+  void unpersist() {
+    if (persisted != null) {
+      persisted.unpersist(false);
+      persisted = null;
     }
   }
 
@@ -0,0 +1,308 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.spark.translation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+import org.apache.beam.runners.core.metrics.MetricsContainerImpl;
+import org.apache.beam.runners.core.metrics.MetricsContainerStepMap;
+import org.apache.beam.runners.spark.SparkPipelineOptions;
+import org.apache.beam.runners.spark.metrics.MetricsAccumulator;
+import org.apache.beam.sdk.io.Read;
+import org.apache.beam.sdk.metrics.MetricName;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.Flatten;
+import org.apache.beam.sdk.transforms.GroupByKey;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.Reshuffle;
+import org.apache.beam.sdk.transforms.View;
+import org.apache.beam.sdk.transforms.windowing.Window;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PValue;
+import org.apache.spark.Accumulator;
+import org.apache.spark.TaskContext;
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.apache.spark.util.TaskCompletionListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Plans which batch {@link PCollection}s are cached, and at which storage level, from their
+ * estimated recomputation cost and encoded size, see
+ * {@link SparkPipelineOptions#getCostBasedCaching()}.
+ *
+ * <p>The cost of recomputing a {@link PCollection} adds up the transforms that produce it, back
+ * to the nearest cached {@link PCollection}s: reading a source or shuffling is expensive, running
+ * user code is cheap, and other transforms, such as {@link Flatten}, are free. The size of a
+ * {@link PCollection} is estimated from the sizes of the sources it is read from.
+ *
+ * <p>A {@link PCollection} read more than once is cached serialized in memory, unless it is free
+ * to recompute. If it is estimated to be larger than
+ * {@link SparkPipelineOptions#getCacheMaxMemoryBytes()}, it is cached on disk when it is
+ * expensive to recompute, and not cached otherwise.
+ *
+ * <p>The decisions are reported as metrics of the {@link PCollection}, in the
+ * {@link #METRICS_NAMESPACE} namespace, along with the hits and misses of the cache.
+ */
+public class CachePlanner {
+  private static final Logger LOG = LoggerFactory.getLogger(CachePlanner.class);
+
+  public static final String METRICS_NAMESPACE = "SparkCache";
+  public static final String HITS = "hits";
+  public static final String MISSES = "misses";
+  public static final String ESTIMATED_COST = "estimatedRecomputationCost";
+  public static final String ESTIMATED_SIZE = "estimatedSizeBytes";
+  /** The prefix of the counter of the decision, followed by the storage level or {@code NONE}. */
+  public static final String DECISION_PREFIX = "storageLevel.";
+
+  static final String MEMORY = "MEMORY_ONLY_SER";
+  static final String DISK = "DISK_ONLY";
+
+  static final long SOURCE_READ_COST = 10L;
+  static final long SHUFFLE_COST = 10L;
+  static final long USER_CODE_COST = 1L;
+
+  /**
+   * The ids of the cached datasets whose partition was computed by the current task, to tell
+   * misses from hits. It is cleared when the task completes, as executor threads are reused.
+   */
+  private static final ThreadLocal<Set<String>> COMPUTED_PARTITIONS =
+      ThreadLocal.withInitial(HashSet::new);
+
+  private final Map<PCollection, Long> consumers;
+  private final PipelineOptions options;
+  private final long maxMemoryBytes;
+  private final Map<PCollection<?>, Producer> producers = new HashMap<>();
+  private final Map<PCollection<?>, Long> costs = new HashMap<>();
+  private final Map<PCollection<?>, Long> sizes = new HashMap<>();
+  private final Map<PCollection<?>, String> decisions = new HashMap<>();
+  private final Set<PCollection<?>> reported = new HashSet<>();
+
+  CachePlanner(Map<PCollection, Long> consumers, PipelineOptions options) {
+    this.consumers = consumers;
+    this.options = options;
+    this.maxMemoryBytes = options.as(SparkPipelineOptions.class).getCacheMaxMemoryBytes();
+  }
+
+  /**
+   * Records a transform that is translated as a whole, with its main inputs, to estimate the
+   * cost and size of its outputs.
+   */
+  public void addTransform(
+      PTransform<?, ?> transform, Collection<PValue> inputs, Collection<PValue> outputs) {
+    Producer producer = new Producer(transform, inputs);
+    for (PValue output : outputs) {
+      if (output instanceof PCollection) {
+        producers.put((PCollection<?>) output, producer);
+      }
+    }
+  }
+
+  /**
+   * Returns the storage level to cache the given {@link PCollection} at, or {@code null} if it
+   * should not be cached.
+   */
+  @Nullable
+  String getStorageLevel(PCollection<?> pcollection) {
+    if (!decisions.containsKey(pcollection)) {
+      decisions.put(pcollection, decide(pcollection));
+    }
+    return decisions.get(pcollection);
+  }
+
+  @Nullable
+  private String decide(PCollection<?> pcollection) {
+    if (!isCandidate(pcollection)) {
+      return null;
+    }
+    long cost = cost(pcollection);
+    if (cost == 0) {
+      return null;
+    }
+    long size = size(pcollection);
+    if (size < 0 || size <= maxMemoryBytes) {
+      return MEMORY;
+    }
+    return cost >= Math.min(SOURCE_READ_COST, SHUFFLE_COST) ? DISK : null;
+  }
+
+  /**
+   * Reports the decision for the given {@link PCollection} to the metrics, only once, if it is
+   * read more than once. The estimated size is only reported if the decision needed it.
+   */
+  void reportDecision(PCollection<?> pcollection) {
+    if (!isCandidate(pcollection) || !reported.add(pcollection)) {
+      return;
+    }
+    String storageLevel = getStorageLevel(pcollection);
+    Long size = sizes.get(pcollection);
+    LOG.info(
+        "Cache decision for {}: {} (estimated recomputation cost {}, estimated size {} bytes)",
+        pcollection.getName(),
+        storageLevel == null ? "NONE" : storageLevel,
+        cost(pcollection),
+        size == null ? "unknown" : size);
+    MetricsContainerStepMap update = new MetricsContainerStepMap();
+    MetricsContainerImpl container = update.getContainer(pcollection.getName());
+    container
+        .getCounter(metricName(DECISION_PREFIX + (storageLevel == null ? "NONE" : storageLevel)))
+        .inc();
+    container.getCounter(metricName(ESTIMATED_COST)).inc(cost(pcollection));
+    if (size != null && size >= 0) {
+      container.getCounter(metricName(ESTIMATED_SIZE)).inc(size);
+    }
+    MetricsAccumulator.getInstance().add(update);
+  }
+
+  private boolean isCandidate(PCollection<?> pcollection) {
+    Long count = consumers.get(pcollection);
+    return count != null && count > 1;
+  }
+
+  private long cost(PCollection<?> pcollection) {
+    if (!costs.containsKey(pcollection)) {
+      Producer producer = producers.get(pcollection);
+      long cost = 0;
+      if (producer != null) {
+        cost = producer.cost;
+        for (PCollection<?> input : producer.inputs) {
+          // reading the cached contents of an input is free.
+          if (getStorageLevel(input) == null) {
+            cost += cost(input);
+          }
+        }
+      }
+      costs.put(pcollection, cost);
+    }
+    return costs.get(pcollection);
+  }
+
+  /** The estimated size of a {@link PCollection} in bytes, or -1 if it is unknown. */
+  private long size(PCollection<?> pcollection) {
+    if (!sizes.containsKey(pcollection)) {
+      Producer producer = producers.get(pcollection);
+      long size = producer == null ? -1 : producer.sourceSize();
+      if (producer != null && !producer.inputs.isEmpty()) {
+        size = 0;
+        for (PCollection<?> input : producer.inputs) {
+          long inputSize = size(input);
+          if (inputSize < 0) {
+            size = -1;
+            break;
+          }
+          size += inputSize;
+        }
+      }
+      sizes.put(pcollection, size);
+    }
+    return sizes.get(pcollection);
+  }
+
+  private static MetricName metricName(String name) {
+    return MetricName.named(METRICS_NAMESPACE, name);
+  }
+
+  /**
+   * Returns a function to apply to the partitions of a dataset before it is persisted, which
+   * marks them as computed, so that reading them afterwards counts as a miss.
+   */
+  static <T> FlatMapFunction<Iterator<T>, T> markComputed(String cacheId) {
+    return partition -> {
+      Set<String> computed = COMPUTED_PARTITIONS.get();
+      if (computed.isEmpty()) {
+        TaskCompletionListener clear = context -> COMPUTED_PARTITIONS.remove();
+        TaskContext.get().addTaskCompletionListener(clear);
+      }
+      computed.add(cacheId);
+      return partition;
+    };
+  }
+
+  /**
+   * Returns a function to apply to the partitions of a dataset after it is persisted, which
+   * counts the hits and misses of the cache in the metrics of the given step.
+   */
+  static <T> FlatMapFunction<Iterator<T>, T> countHits(
+      String cacheId, String stepName, Accumulator<MetricsContainerStepMap> metricsAccum) {
+    return partition -> {
+      boolean computed = COMPUTED_PARTITIONS.get().remove(cacheId);
+      metricsAccum
+          .localValue()
+          .getContainer(stepName)
+          .getCounter(metricName(computed ? MISSES : HITS))
+          .inc();
+      return partition;
+    };
+  }
+
+  /** The transform producing a {@link PCollection}, with its main inputs. */
+  private class Producer {
+    private final long cost;
+    @Nullable private final Read.Bounded<?> read;
+    private final List<PCollection<?>> inputs = new ArrayList<>();
+
+    private Producer(PTransform<?, ?> transform, Collection<PValue> inputs) {
+      for (PValue input : inputs) {
+        if (input instanceof PCollection) {
+          this.inputs.add((PCollection<?>) input);
+        }
+      }
+      this.cost = costOf(transform);
+      this.read = transform instanceof Read.Bounded ? (Read.Bounded<?>) transform : null;
+    }
+
+    /** The estimated size of the read source, or -1 if it is unknown or this is not a read. */
+    private long sourceSize() {
+      if (read == null) {
+        return -1;
+      }
+      try {
+        return read.getSource().getEstimatedSizeBytes(options);
+      } catch (Exception e) {
+        LOG.debug("Could not estimate the size of {}", read.getSource(), e);
+        return -1;
+      }
+    }
+  }
+
+  private static long costOf(PTransform<?, ?> transform) {
+    if (transform instanceof Read.Bounded) {
+      return SOURCE_READ_COST;
+    } else if (transform instanceof GroupByKey
+        || transform instanceof Combine.PerKey
+        || transform instanceof Combine.Globally
+        || transform instanceof Reshuffle) {
+      return SHUFFLE_COST;
+    } else if (transform instanceof Create.Values
+        || transform instanceof Flatten.PCollections
+        || transform instanceof Window.Assign
+        || transform instanceof View.CreatePCollectionView) {
+      return 0;
+    }
+    return USER_CODE_COST;
+  }
+}
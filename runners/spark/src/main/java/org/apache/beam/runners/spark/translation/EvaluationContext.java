@@ -21,9 +21,14 @@ package org.apache.beam.runners.spark.translation;
 import static com.google.common.base.Preconditions.checkArgument;
 
 import com.google.common.collect.Iterables;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import org.apache.beam.runners.core.construction.SerializablePipelineOptions;
@@ -41,9 +46,12 @@ import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionView;
 import org.apache.beam.sdk.values.PValue;
 import org.apache.beam.sdk.values.TupleTag;
+import org.apache.spark.Dependency;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.rdd.RDD;
 import org.apache.spark.streaming.api.java.JavaStreamingContext;
+import scala.collection.JavaConversions;
 
 /**
  * The EvaluationContext allows us to define pipeline instructions and translate between
@@ -60,6 +68,8 @@ public class EvaluationContext {
   private AppliedPTransform<?, ?, ?> currentTransform;
   private final SparkPCollectionView pviews = new SparkPCollectionView();
   private final Map<PCollection, Long> cacheCandidates = new HashMap<>();
+  private final CachePlanner cachePlanner;
+  private final Set<BoundedDataset<?>> cachedDatasets = new LinkedHashSet<>();
   private final PipelineOptions options;
   private final SerializablePipelineOptions serializableOptions;
 
@@ -68,6 +78,7 @@ public class EvaluationContext {
     this.pipeline = pipeline;
     this.options = options;
     this.serializableOptions = new SerializablePipelineOptions(options);
+    this.cachePlanner = new CachePlanner(cacheCandidates, options);
   }
 
   public EvaluationContext(
@@ -129,7 +140,23 @@ public class EvaluationContext {
     return currentTransform.getOutputs();
   }
 
+  /**
+   * Whether the batch datasets to cache are chosen by the {@link CachePlanner}, see
+   * {@link SparkPipelineOptions#getCostBasedCaching()}.
+   */
+  public boolean isCostBasedCaching() {
+    // streams are always cached at the same storage level, see UnboundedDataset.
+    return jssc == null && options.as(SparkPipelineOptions.class).getCostBasedCaching();
+  }
+
   private boolean shouldCache(PValue pvalue) {
+    if (isCostBasedCaching()) {
+      if (!(pvalue instanceof PCollection)) {
+        return false;
+      }
+      cachePlanner.reportDecision((PCollection<?>) pvalue);
+      return cachePlanner.getStorageLevel((PCollection<?>) pvalue) != null;
+    }
     if ((pvalue instanceof PCollection)
         && cacheCandidates.containsKey(pvalue)
         && cacheCandidates.get(pvalue) > 1) {
@@ -160,7 +187,16 @@ public class EvaluationContext {
         Coder<?> coder = ((PCollection<?>) pvalue).getCoder();
         Coder<? extends BoundedWindow> wCoder =
             ((PCollection<?>) pvalue).getWindowingStrategy().getWindowFn().windowCoder();
-        dataset.cache(storageLevel(), WindowedValue.getFullCoder(coder, wCoder));
+        if (!forceCache && isCostBasedCaching()) {
+          BoundedDataset<?> boundedDataset = (BoundedDataset<?>) dataset;
+          boundedDataset.cache(
+              cachePlanner.getStorageLevel((PCollection<?>) pvalue),
+              WindowedValue.getFullCoder(coder, wCoder),
+              pvalue.getName());
+          cachedDatasets.add(boundedDataset);
+        } else {
+          dataset.cache(storageLevel(), WindowedValue.getFullCoder(coder, wCoder));
+        }
       }
     }
     datasets.put(pvalue, dataset);
@@ -201,8 +237,44 @@ public class EvaluationContext {
    * saving to a file) registered on them (i.e. they are performed for side effects).
    */
   public void computeOutputs() {
+    List<Dataset> remainingLeaves = new ArrayList<>(leaves);
     for (Dataset dataset : leaves) {
       dataset.action(); // force computation.
+      remainingLeaves.remove(dataset);
+      unpersistConsumed(remainingLeaves);
+    }
+  }
+
+  /**
+   * Unpersists the datasets cached by cost-based caching that none of the given leaves depend
+   * on, as all of their consumers have run.
+   */
+  private void unpersistConsumed(Collection<Dataset> remainingLeaves) {
+    if (cachedDatasets.isEmpty()) {
+      return;
+    }
+    Set<Integer> lineage = new HashSet<>();
+    for (Dataset leaf : remainingLeaves) {
+      if (leaf instanceof BoundedDataset) {
+        addLineage(((BoundedDataset<?>) leaf).getRDD().rdd(), lineage);
+      }
+    }
+    Iterator<BoundedDataset<?>> cached = cachedDatasets.iterator();
+    while (cached.hasNext()) {
+      BoundedDataset<?> dataset = cached.next();
+      JavaRDD<?> persisted = dataset.getPersistedRDD();
+      if (persisted == null || !lineage.contains(persisted.id())) {
+        dataset.unpersist();
+        cached.remove();
+      }
+    }
+  }
+
+  private static void addLineage(RDD<?> rdd, Set<Integer> lineage) {
+    if (lineage.add(rdd.id())) {
+      for (Dependency<?> dependency : JavaConversions.seqAsJavaList(rdd.dependencies())) {
+        addLineage(dependency.rdd(), lineage);
+      }
     }
   }
 
@@ -251,6 +323,16 @@ public class EvaluationContext {
     pviews.putPView(view, value, coder);
   }
 
+  /**
+   * Get the planner of the datasets to cache, used when
+   * {@link SparkPipelineOptions#getCostBasedCaching()} is set.
+   *
+   * @return The {@link CachePlanner} of the evaluation context.
+   */
+  public CachePlanner getCachePlanner() {
+    return cachePlanner;
+  }
+
   /**
    * Get the map of cache candidates hold by the evaluation context.
    *
@@ -18,13 +18,29 @@
 
 package org.apache.beam.runners.spark.translation;
 
+import static com.google.common.base.Preconditions.checkState;
+
 import com.google.common.base.Optional;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import javax.annotation.Nullable;
 import org.apache.beam.runners.spark.coders.CoderHelpers;
+import org.apache.beam.runners.spark.coders.CoderShuffleSerializer;
 import org.apache.beam.runners.spark.util.ByteArray;
+import org.apache.beam.sdk.coders.ByteArrayCoder;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.IterableCoder;
-import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.transforms.Reshuffle;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.beam.sdk.util.WindowedValue.WindowedValueCoder;
 import org.apache.beam.sdk.values.KV;
@@ -33,14 +49,23 @@ import org.apache.spark.HashPartitioner;
 import org.apache.spark.Partitioner;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
-import org.apache.spark.api.java.function.Function;
+import org.apache.spark.api.java.JavaSparkContext$;
 import org.apache.spark.api.java.function.Function2;
+import org.apache.spark.rdd.ShuffledRDD;
+import scala.Tuple2;
+import scala.math.Ordering$;
 
 /**
  * A set of group/combine functions to apply to Spark {@link org.apache.spark.rdd.RDD}s.
  */
 public class GroupCombineFunctions {
 
+  /** The estimated encoded size of the accumulators a partition holds before the shuffle. */
+  private static final long MAP_SIDE_COMBINE_MAX_BYTES = 64L << 20;
+
+  /** The number of inputs after which the map-side combine samples the size of a key again. */
+  private static final int MAP_SIDE_COMBINE_SAMPLE_INTERVAL = 1000;
+
   /**
    * An implementation of
    * {@link org.apache.beam.runners.core.GroupByKeyViaGroupByKeyOnly.GroupByKeyOnly}
@@ -60,10 +85,32 @@ public class GroupCombineFunctions {
     // use a default parallelism HashPartitioner.
     Partitioner partitioner = new HashPartitioner(rdd.rdd().sparkContext().defaultParallelism());
 
+    // group like groupByKey(partitioner) does, but shuffle the encoded records as they are
+    // instead of through the serializer of the context.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    JavaPairRDD<ByteArray, Iterable<byte[]>> grouped =
+        (JavaPairRDD)
+            pairRDD.<List<byte[]>>combineByKey(
+                value -> {
+                  List<byte[]> values = new ArrayList<>();
+                  values.add(value);
+                  return values;
+                },
+                (values, value) -> {
+                  values.add(value);
+                  return values;
+                },
+                (values, other) -> {
+                  values.addAll(other);
+                  return values;
+                },
+                partitioner,
+                false,
+                new CoderShuffleSerializer<>(ByteArrayCoder.of()));
+
     // using mapPartitions allows to preserve the partitioner
     // and avoid unnecessary shuffle downstream.
-    return pairRDD
-        .groupByKey(partitioner)
+    return grouped
         .mapPartitionsToPair(
             TranslationUtils.pairFunctionToPairFlatMapFunction(
                 CoderHelpers.fromByteFunctionIterable(keyCoder, wvCoder)),
@@ -73,6 +120,52 @@ public class GroupCombineFunctions {
             TranslationUtils.functionToFlatMapFunction(WindowingHelpers.windowFunction()), true);
   }
 
+  /**
+   * An implementation of
+   * {@link org.apache.beam.runners.core.GroupByKeyViaGroupByKeyOnly.GroupByKeyOnly}
+   * for the Spark runner which shuffles with
+   * {@link JavaPairRDD#repartitionAndSortWithinPartitions(Partitioner)} instead of
+   * {@link JavaPairRDD#groupByKey(Partitioner)}.
+   *
+   * <p>The values of a key are not collected in memory. Instead, the {@link Iterable} of each key
+   * decodes its values while reading the sorted partition, so it can only be iterated once, and
+   * only before the next key of the partition is read.
+   */
+  public static <K, V> JavaRDD<WindowedValue<KV<K, Iterable<WindowedValue<V>>>>>
+      groupByKeyOnlySorted(
+          JavaRDD<WindowedValue<KV<K, V>>> rdd,
+          Coder<K> keyCoder,
+          WindowedValueCoder<V> wvCoder) {
+    // we use the key coder to convert keys to byte arrays, so they can be sorted by their encoded
+    // keys, values are written into the shuffle with their coder by the shuffle serializer.
+    JavaPairRDD<ByteArray, WindowedValue<V>> pairRDD =
+        rdd.map(new ReifyTimestampsAndWindowsFunction<>())
+            .map(WindowingHelpers.unwindowFunction())
+            .mapToPair(TranslationUtils.toPairFunction())
+            .mapToPair(
+                kv ->
+                    new Tuple2<>(
+                        new ByteArray(CoderHelpers.toByteArray(kv._1(), keyCoder)), kv._2()));
+    // use a default parallelism HashPartitioner.
+    Partitioner partitioner = new HashPartitioner(rdd.rdd().sparkContext().defaultParallelism());
+
+    // this is what repartitionAndSortWithinPartitions(partitioner) does, with the serializer.
+    ShuffledRDD<ByteArray, WindowedValue<V>, WindowedValue<V>> shuffled =
+        new ShuffledRDD<>(
+            pairRDD.rdd(),
+            partitioner,
+            JavaSparkContext$.MODULE$.fakeClassTag(),
+            JavaSparkContext$.MODULE$.fakeClassTag(),
+            JavaSparkContext$.MODULE$.fakeClassTag());
+    shuffled.setSerializer(new CoderShuffleSerializer<>(wvCoder));
+    shuffled.setKeyOrdering(Ordering$.MODULE$.comparatorToOrdering(Comparator.naturalOrder()));
+
+    // sorting within partitions places all values of a key next to each other, and
+    // using mapPartitions allows to preserve the partitioner.
+    return JavaRDD.fromRDD(shuffled, JavaSparkContext$.MODULE$.fakeClassTag())
+        .mapPartitions(sorted -> new SortedGroupsIterator<>(sorted, keyCoder), true);
+  }
+
   /**
    * Apply a composite {@link org.apache.beam.sdk.transforms.Combine.Globally} transformation.
    */
@@ -140,7 +233,9 @@ public class GroupCombineFunctions {
    * Apply a composite {@link org.apache.beam.sdk.transforms.Combine.PerKey} transformation.
    * <p>
    * This aggregation will apply Beam's {@link org.apache.beam.sdk.transforms.Combine.CombineFn}
-   * via Spark's {@link JavaPairRDD#combineByKey(Function, Function2, Function2)} aggregation.
+   * within each partition, accumulating the windows of each key before the shuffle, and merge
+   * the encoded accumulators of each key as they are shuffled, via Spark's
+   * {@link JavaPairRDD#reduceByKey(Function2)}.
    * </p>
    * For streaming, this will be called from within a serialized context
    * (DStream's transform callback), so passed arguments need to be Serializable.
@@ -153,75 +248,41 @@ public class GroupCombineFunctions {
           final Coder<InputT> iCoder,
           final Coder<AccumT> aCoder,
           final WindowingStrategy<?, ?> windowingStrategy) {
-    // coders.
-    final WindowedValue.FullWindowedValueCoder<KV<K, InputT>> wkviCoder =
-        WindowedValue.FullWindowedValueCoder.of(KvCoder.of(keyCoder, iCoder),
-            windowingStrategy.getWindowFn().windowCoder());
-    final WindowedValue.FullWindowedValueCoder<KV<K, AccumT>> wkvaCoder =
-        WindowedValue.FullWindowedValueCoder.of(KvCoder.of(keyCoder, aCoder),
-            windowingStrategy.getWindowFn().windowCoder());
-    final IterableCoder<WindowedValue<KV<K, AccumT>>> iterAccumCoder = IterableCoder.of(wkvaCoder);
-
-    // We need to duplicate K as both the key of the JavaPairRDD as well as inside the value,
-    // since the functions passed to combineByKey don't receive the associated key of each
-    // value, and we need to map back into methods in Combine.KeyedCombineFn, which each
-    // require the key in addition to the InputT's and AccumT's being merged/accumulated.
-    // Once Spark provides a way to include keys in the arguments of combine/merge functions,
-    // we won't need to duplicate the keys anymore.
-    // Key has to bw windowed in order to group by window as well.
-    JavaPairRDD<K, WindowedValue<KV<K, InputT>>> inRddDuplicatedKeyPair =
-        rdd.mapToPair(TranslationUtils.toPairByKeyInWindowedValue());
+    // coders, the key is encoded once per record and not duplicated for each window.
+    final IterableCoder<WindowedValue<AccumT>> iterAccumCoder =
+        IterableCoder.of(
+            WindowedValue.FullWindowedValueCoder.of(
+                aCoder, windowingStrategy.getWindowFn().windowCoder()));
 
-    // Use coders to convert objects in the PCollection to byte arrays, so they
-    // can be transferred over the network for the shuffle.
-    // for readability, we add comments with actual type next to byte[].
-    // to shorten line length, we use:
-    //---- WV: WindowedValue
-    //---- Iterable: Itr
-    //---- AccumT: A
-    //---- InputT: I
-    JavaPairRDD<ByteArray, byte[]> inRddDuplicatedKeyPairBytes = inRddDuplicatedKeyPair
-        .mapToPair(CoderHelpers.toByteFunction(keyCoder, wkviCoder));
-
-    /*Itr<WV<KV<K, A>>>*/
-    /*Itr<WV<KV<K, A>>>*/
-    /*Itr<WV<KV<K, A>>>*/
-    /*Itr<WV<KV<K, A>>>*/
-    /*Itr<WV<KV<K, A>>>*/
-    /*Itr<WV<KV<K, A>>>*/
-    /*Itr<WV<KV<K, A>>>*/
-    /*WV<KV<K, I>>*/
-    /*Itr<WV<KV<K, A>>>*/
-    /*Itr<WV<KV<K, A>>>*/
-    /*Itr<WV<KV<K, A>>>*/
-    /*WV<KV<K, I>>*/
-    /*WV<KV<K, I>>*/
-    /*Itr<WV<KV<K, A>>>*/
-    /*Itr<WV<KV<K, A>>>*/
-    /*WV<KV<K, I>>*/
-    JavaPairRDD</*K*/ ByteArray, /*Itr<WV<KV<K, A>>>*/ byte[]> accumulatedBytes =
-        inRddDuplicatedKeyPairBytes.combineByKey(
-            input -> {
-              WindowedValue<KV<K, InputT>> wkvi = CoderHelpers.fromByteArray(input, wkviCoder);
-              return CoderHelpers.toByteArray(sparkCombineFn.createCombiner(wkvi), iterAccumCoder);
-            },
-            (acc, input) -> {
-              Iterable<WindowedValue<KV<K, AccumT>>> wkvas =
-                  CoderHelpers.fromByteArray(acc, iterAccumCoder);
-              WindowedValue<KV<K, InputT>> wkvi = CoderHelpers.fromByteArray(input, wkviCoder);
-              return CoderHelpers.toByteArray(
-                  sparkCombineFn.mergeValue(wkvi, wkvas), iterAccumCoder);
-            },
-            (acc1, acc2) -> {
-              Iterable<WindowedValue<KV<K, AccumT>>> wkvas1 =
-                  CoderHelpers.fromByteArray(acc1, iterAccumCoder);
-              Iterable<WindowedValue<KV<K, AccumT>>> wkvas2 =
-                  CoderHelpers.fromByteArray(acc2, iterAccumCoder);
+    // combine the elements of each partition into the per-window accumulators of their key,
+    // so that a key is shuffled once per partition no matter how many windows it is in.
+    JavaPairRDD</*K*/ ByteArray, /*Itr<WV<A>>*/ byte[]> accumulatedBytes =
+        rdd.mapPartitionsToPair(
+            inputs ->
+                new MapSideCombineIterator<>(
+                    inputs, sparkCombineFn, keyCoder, iterAccumCoder, windowingStrategy));
+
+    // merge the accumulators of each key from all partitions two at a time, so that Spark can
+    // spill them while they are merged, and never holds all the records of a key at once.
+    return accumulatedBytes
+        .reduceByKey(
+            (a1b, a2b) -> {
+              Iterable<WindowedValue<AccumT>> a1 = CoderHelpers.fromByteArray(a1b, iterAccumCoder);
+              Iterable<WindowedValue<AccumT>> a2 = CoderHelpers.fromByteArray(a2b, iterAccumCoder);
               return CoderHelpers.toByteArray(
-                  sparkCombineFn.mergeCombiners(wkvas1, wkvas2), iterAccumCoder);
+                  sparkCombineFn.mergeUnkeyedCombiners(a1, a2), iterAccumCoder);
+            })
+        .mapToPair(
+            keyAndAccums -> {
+              K key = CoderHelpers.fromByteArray(keyAndAccums._1().getValue(), keyCoder);
+              Iterable<WindowedValue<AccumT>> wvas =
+                  CoderHelpers.fromByteArray(keyAndAccums._2(), iterAccumCoder);
+              List<WindowedValue<KV<K, AccumT>>> wkvas = new ArrayList<>();
+              for (WindowedValue<AccumT> wva : wvas) {
+                wkvas.add(wva.withValue(KV.of(key, wva.getValue())));
+              }
+              return new Tuple2<>(key, wkvas);
             });
-
-    return accumulatedBytes.mapToPair(CoderHelpers.fromByteFunction(keyCoder, iterAccumCoder));
   }
 
   /**
@@ -244,4 +305,191 @@ public class GroupCombineFunctions {
         .map(TranslationUtils.fromPairFunction())
         .map(TranslationUtils.toKVByWindowInValue());
   }
+
+  /**
+   * Groups the consecutive values of each key of a partition that is sorted by key, decoding keys
+   * as they are read.
+   */
+  private static class SortedGroupsIterator<K, V>
+      implements Iterator<WindowedValue<KV<K, Iterable<WindowedValue<V>>>>> {
+    private final PeekingIterator<Tuple2<ByteArray, WindowedValue<V>>> sorted;
+    private final Coder<K> keyCoder;
+    @Nullable private ValuesIterator currentValues;
+
+    private SortedGroupsIterator(
+        Iterator<Tuple2<ByteArray, WindowedValue<V>>> sorted, Coder<K> keyCoder) {
+      this.sorted = Iterators.peekingIterator(sorted);
+      this.keyCoder = keyCoder;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (currentValues != null) {
+        // skip the values of the previous key which were not read.
+        currentValues.skipRemaining();
+        currentValues = null;
+      }
+      return sorted.hasNext();
+    }
+
+    @Override
+    public WindowedValue<KV<K, Iterable<WindowedValue<V>>>> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      ByteArray key = sorted.peek()._1();
+      ValuesIterator values = new ValuesIterator(key);
+      currentValues = values;
+      Iterable<WindowedValue<V>> iterable =
+          new Iterable<WindowedValue<V>>() {
+            private boolean iterated = false;
+
+            @Override
+            public Iterator<WindowedValue<V>> iterator() {
+              checkState(
+                  !iterated,
+                  "The values of a key grouped by sorting can only be iterated once.");
+              iterated = true;
+              return values;
+            }
+          };
+      return WindowedValue.valueInGlobalWindow(
+          KV.of(CoderHelpers.fromByteArray(key.getValue(), keyCoder), iterable));
+    }
+
+    /** The values of a single key, read from the sorted partition. */
+    private class ValuesIterator implements Iterator<WindowedValue<V>> {
+      private final ByteArray key;
+      private boolean skipped = false;
+
+      private ValuesIterator(ByteArray key) {
+        this.key = key;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return !skipped && sorted.hasNext() && sorted.peek()._1().equals(key);
+      }
+
+      @Override
+      public WindowedValue<V> next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return sorted.next()._2();
+      }
+
+      private void skipRemaining() {
+        while (hasNext()) {
+          sorted.next();
+        }
+        skipped = true;
+      }
+    }
+  }
+
+  /**
+   * Combines the elements of a partition into the per-window accumulators of each key, and
+   * encodes them as one record per key, with the key encoded once.
+   *
+   * <p>The accumulators held in memory are bounded by {@link #MAP_SIDE_COMBINE_MAX_BYTES}. Their
+   * size is estimated from the encoded size of a key and its accumulators, sampled every
+   * {@link #MAP_SIDE_COMBINE_SAMPLE_INTERVAL} inputs, times the number of keys held. When the
+   * estimate reaches the bound, the held accumulators are emitted first, so a key may then have
+   * more than one record in a partition.
+   */
+  private static class MapSideCombineIterator<K, InputT, AccumT>
+      extends AbstractIterator<Tuple2<ByteArray, byte[]>> {
+    private final Iterator<WindowedValue<KV<K, InputT>>> inputs;
+    private final SparkKeyedCombineFn<K, InputT, AccumT, ?> sparkCombineFn;
+    private final Coder<K> keyCoder;
+    private final Coder<Iterable<WindowedValue<AccumT>>> iterAccumCoder;
+    private final boolean merging;
+    private Iterator<KeyedAccumulators<K, AccumT>> combined = Collections.emptyIterator();
+    private long read = 0L;
+    private long sampledBytes = 0L;
+    private long samples = 0L;
+
+    MapSideCombineIterator(
+        Iterator<WindowedValue<KV<K, InputT>>> inputs,
+        SparkKeyedCombineFn<K, InputT, AccumT, ?> sparkCombineFn,
+        Coder<K> keyCoder,
+        Coder<Iterable<WindowedValue<AccumT>>> iterAccumCoder,
+        WindowingStrategy<?, ?> windowingStrategy) {
+      this.inputs = inputs;
+      this.sparkCombineFn = sparkCombineFn;
+      this.keyCoder = keyCoder;
+      this.iterAccumCoder = iterAccumCoder;
+      this.merging = !windowingStrategy.getWindowFn().isNonMerging();
+    }
+
+    @Override
+    protected Tuple2<ByteArray, byte[]> computeNext() {
+      if (!combined.hasNext()) {
+        if (!inputs.hasNext()) {
+          return endOfData();
+        }
+        combined = combine().values().iterator();
+      }
+      KeyedAccumulators<K, AccumT> next = combined.next();
+      // release the accumulators as soon as they are encoded.
+      combined.remove();
+      return encode(next);
+    }
+
+    private Tuple2<ByteArray, byte[]> encode(KeyedAccumulators<K, AccumT> keyed) {
+      List<WindowedValue<AccumT>> wvas = new ArrayList<>();
+      for (WindowedValue<KV<K, AccumT>> wkva : keyed.accumulators()) {
+        wvas.add(wkva.withValue(wkva.getValue().getValue()));
+      }
+      return new Tuple2<>(
+          new ByteArray(CoderHelpers.toByteArray(keyed.key, keyCoder)),
+          CoderHelpers.toByteArray(wvas, iterAccumCoder));
+    }
+
+    private boolean isFull(int keys) {
+      return samples > 0 && keys * (sampledBytes / samples) >= MAP_SIDE_COMBINE_MAX_BYTES;
+    }
+
+    private Map<Object, KeyedAccumulators<K, AccumT>> combine() {
+      Map<Object, KeyedAccumulators<K, AccumT>> accumulators = new HashMap<>();
+      while (inputs.hasNext() && !isFull(accumulators.size())) {
+        WindowedValue<KV<K, InputT>> wkvi = inputs.next();
+        K key = wkvi.getValue().getKey();
+        KeyedAccumulators<K, AccumT> keyed =
+            accumulators.computeIfAbsent(
+                keyCoder.structuralValue(key), structural -> new KeyedAccumulators<>(key));
+        if (merging) {
+          // merging windows are merged as the accumulators are, sorted by window.
+          keyed.merged =
+              keyed.merged == null
+                  ? sparkCombineFn.createCombiner(wkvi)
+                  : sparkCombineFn.mergeValue(wkvi, keyed.merged);
+        } else {
+          sparkCombineFn.addInput(wkvi, keyed.byWindow);
+        }
+        if (read++ % MAP_SIDE_COMBINE_SAMPLE_INTERVAL == 0) {
+          Tuple2<ByteArray, byte[]> encoded = encode(keyed);
+          sampledBytes += encoded._1().getValue().length + encoded._2().length;
+          samples++;
+        }
+      }
+      return accumulators;
+    }
+  }
+
+  /** The accumulators of a key, by window for non-merging windows, or merged by window. */
+  private static class KeyedAccumulators<K, AccumT> {
+    private final K key;
+    private final Map<BoundedWindow, WindowedValue<KV<K, AccumT>>> byWindow = new HashMap<>();
+    @Nullable private Iterable<WindowedValue<KV<K, AccumT>>> merged;
+
+    KeyedAccumulators(K key) {
+      this.key = key;
+    }
+
+    Iterable<WindowedValue<KV<K, AccumT>>> accumulators() {
+      return merged != null ? merged : byWindow.values();
+    }
+  }
 }
@@ -137,7 +137,7 @@ public class MultiDoFnFunction<InputT, OutputT>
         DoFnRunners.simpleRunner(
             options.get(),
             doFn,
-            new SparkSideInputReader(sideInputs),
+            new SparkSideInputReader(sideInputs, options.get()),
             outputManager,
             mainOutputTag,
             additionalOutputTags,
@@ -71,7 +71,7 @@ public class SparkAbstractCombineFn implements Serializable {
   protected SparkCombineContext ctxtForInput(WindowedValue<?> input) {
     if (combineContext == null) {
       combineContext = new SparkCombineContext(options.get(),
-          new SparkSideInputReader(sideInputs));
+          new SparkSideInputReader(sideInputs, options.get()));
     }
     return combineContext.forInput(input);
   }
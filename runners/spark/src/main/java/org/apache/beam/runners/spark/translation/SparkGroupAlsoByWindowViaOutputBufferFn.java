@@ -18,6 +18,7 @@
 
 package org.apache.beam.runners.spark.translation;
 
+import com.google.common.collect.Iterables;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
@@ -49,11 +50,20 @@ import org.joda.time.Instant;
 /**
  * An implementation of {@link GroupAlsoByWindow}
  * for the Spark runner.
+ *
+ * <p>The grouped values of a key are read in a single pass, so they may be streamed from the
+ * shuffle, as by {@link GroupCombineFunctions#groupByKeyOnlySorted}.
  */
 public class SparkGroupAlsoByWindowViaOutputBufferFn<K, InputT, W extends BoundedWindow>
     implements FlatMapFunction<WindowedValue<KV<K, Iterable<WindowedValue<InputT>>>>,
         WindowedValue<KV<K, Iterable<InputT>>>> {
 
+  /**
+   * The number of values handed to the {@link ReduceFnRunner} at a time, as it iterates the values
+   * it processes more than once.
+   */
+  private static final int VALUES_PER_BATCH = 10_000;
+
   private final WindowingStrategy<?, W> windowingStrategy;
   private final StateInternalsFactory<K> stateInternalsFactory;
   private final SystemReduceFn<K, InputT, Iterable<InputT>, Iterable<InputT>, W> reduceFn;
@@ -103,7 +113,9 @@ public class SparkGroupAlsoByWindowViaOutputBufferFn<K, InputT, W extends Bounde
             options.get());
 
     // Process the grouped values.
-    reduceFnRunner.processElements(values);
+    for (List<WindowedValue<InputT>> batch : Iterables.partition(values, VALUES_PER_BATCH)) {
+      reduceFnRunner.processElements(batch);
+    }
 
     // Finish any pending windows by advancing the input watermark to infinity.
     timerInternals.advanceInputWatermark(BoundedWindow.TIMESTAMP_MAX_VALUE);
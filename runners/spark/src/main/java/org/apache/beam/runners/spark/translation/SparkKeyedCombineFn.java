@@ -20,6 +20,7 @@ package org.apache.beam.runners.spark.translation;
 
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -143,6 +144,42 @@ public class SparkKeyedCombineFn<K, InputT, AccumT, OutputT> extends SparkAbstra
     return output;
   }
 
+  /**
+   * Accumulates an input into the per-window accumulators of its key, kept by window, as done by
+   * the map-side combine of {@link GroupCombineFunctions#combinePerKey}.
+   *
+   * <p>Each window of the input is added to its own accumulator, which is created if the window
+   * has none yet, so no sorting is needed. This does not merge windows, and must only be used
+   * for non-merging {@link WindowFn}s; for merging ones use {@link #mergeValue}.
+   */
+  void addInput(
+      WindowedValue<KV<K, InputT>> wkvi,
+      Map<BoundedWindow, WindowedValue<KV<K, AccumT>>> accumulators) {
+    TimestampCombiner timestampCombiner = windowingStrategy.getTimestampCombiner();
+    WindowFn<?, BoundedWindow> windowFn = windowingStrategy.getWindowFn();
+
+    K key = wkvi.getValue().getKey();
+    InputT input = wkvi.getValue().getValue();
+    for (WindowedValue<KV<K, InputT>> windowedInput : wkvi.explodeWindows()) {
+      BoundedWindow window = Iterables.getOnlyElement(windowedInput.getWindows());
+      Instant timestamp =
+          timestampCombiner.assign(
+              window, windowFn.getOutputTime(windowedInput.getTimestamp(), window));
+      WindowedValue<KV<K, AccumT>> current = accumulators.get(window);
+      AccumT accumulator;
+      if (current == null) {
+        accumulator = combineFn.createAccumulator(ctxtForInput(windowedInput));
+      } else {
+        accumulator = current.getValue().getValue();
+        timestamp = timestampCombiner.combine(current.getTimestamp(), timestamp);
+      }
+      accumulator = combineFn.addInput(accumulator, input, ctxtForInput(windowedInput));
+      accumulators.put(
+          window,
+          WindowedValue.of(KV.of(key, accumulator), timestamp, window, PaneInfo.NO_FIRING));
+    }
+  }
+
   /**
    * Implements Spark's mergeValue function in:
    * <p>
@@ -261,6 +298,25 @@ public class SparkKeyedCombineFn<K, InputT, AccumT, OutputT> extends SparkAbstra
     return output;
   }
 
+  /**
+   * Merges per-window accumulators that are shuffled without their key, as done by
+   * {@link GroupCombineFunctions#combinePerKey}. Merging does not depend on the key, which
+   * {@link #mergeCombiners} only carries along, so they are merged under a {@code null} key.
+   */
+  Iterable<WindowedValue<AccumT>> mergeUnkeyedCombiners(
+      Iterable<WindowedValue<AccumT>> wvas1, Iterable<WindowedValue<AccumT>> wvas2) {
+    List<WindowedValue<KV<K, AccumT>>> wkvas = Lists.newArrayList();
+    for (WindowedValue<AccumT> wva : Iterables.concat(wvas1, wvas2)) {
+      wkvas.add(wva.withValue(KV.<K, AccumT>of(null, wva.getValue())));
+    }
+    List<WindowedValue<AccumT>> merged = Lists.newArrayList();
+    for (WindowedValue<KV<K, AccumT>> wkva
+        : mergeCombiners(wkvas, Collections.<WindowedValue<KV<K, AccumT>>>emptyList())) {
+      merged.add(wkva.withValue(wkva.getValue().getValue()));
+    }
+    return merged;
+  }
+
   Iterable<WindowedValue<OutputT>> extractOutput(Iterable<WindowedValue<KV<K, AccumT>>> wkvas) {
     return StreamSupport.stream(wkvas.spliterator(), false)
         .map(
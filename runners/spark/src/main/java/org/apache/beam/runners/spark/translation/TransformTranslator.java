@@ -31,6 +31,7 @@ import java.util.Collection;
 import java.util.Map;
 import org.apache.beam.runners.core.SystemReduceFn;
 import org.apache.beam.runners.core.metrics.MetricsContainerStepMap;
+import org.apache.beam.runners.spark.SparkPipelineOptions;
 import org.apache.beam.runners.spark.aggregators.AggregatorsAccumulator;
 import org.apache.beam.runners.spark.aggregators.NamedAggregators;
 import org.apache.beam.runners.spark.coders.CoderHelpers;
@@ -135,7 +136,7 @@ public final class TransformTranslator {
 
         // --- group by key only.
         JavaRDD<WindowedValue<KV<K, Iterable<WindowedValue<V>>>>> groupedByKey =
-            GroupCombineFunctions.groupByKeyOnly(inRDD, keyCoder, wvCoder);
+            groupByKeyOnly(context, inRDD, keyCoder, wvCoder);
 
         // --- now group also by window.
         // for batch, GroupAlsoByWindow uses an in-memory StateInternals.
@@ -367,6 +368,7 @@ public final class TransformTranslator {
           // Based on the fact that the signature is stateful, DoFnSignatures ensures
           // that it is also keyed
           all = statefulParDoTransform(
+              context,
               (KvCoder) context.getInput(transform).getCoder(),
               windowingStrategy.getWindowFn().windowCoder(),
               (JavaRDD) inRDD,
@@ -410,6 +412,7 @@ public final class TransformTranslator {
   }
 
   private static <K, V, OutputT> JavaPairRDD<TupleTag<?>, WindowedValue<?>> statefulParDoTransform(
+      EvaluationContext context,
       KvCoder<K, V> kvCoder,
       Coder<? extends BoundedWindow> windowCoder,
       JavaRDD<WindowedValue<KV<K, V>>> kvInRDD,
@@ -420,7 +423,7 @@ public final class TransformTranslator {
         kvCoder.getValueCoder(), windowCoder);
 
     JavaRDD<WindowedValue<KV<K, Iterable<WindowedValue<V>>>>> groupRDD =
-        GroupCombineFunctions.groupByKeyOnly(kvInRDD, keyCoder, wvCoder);
+        groupByKeyOnly(context, kvInRDD, keyCoder, wvCoder);
 
     return groupRDD
         .map(
@@ -436,6 +439,21 @@ public final class TransformTranslator {
         .flatMapToPair(doFnFunction);
   }
 
+  /**
+   * Groups by key only, by sorting if {@link SparkPipelineOptions#getSortBasedGroupByKey()} is
+   * set. The grouped values are only iterated once by all callers.
+   */
+  private static <K, V> JavaRDD<WindowedValue<KV<K, Iterable<WindowedValue<V>>>>> groupByKeyOnly(
+      EvaluationContext context,
+      JavaRDD<WindowedValue<KV<K, V>>> rdd,
+      Coder<K> keyCoder,
+      WindowedValue.WindowedValueCoder<V> wvCoder) {
+    if (context.getOptions().as(SparkPipelineOptions.class).getSortBasedGroupByKey()) {
+      return GroupCombineFunctions.groupByKeyOnlySorted(rdd, keyCoder, wvCoder);
+    }
+    return GroupCombineFunctions.groupByKeyOnly(rdd, keyCoder, wvCoder);
+  }
+
   private static <T> TransformEvaluator<Read.Bounded<T>> readBounded() {
     return new TransformEvaluator<Read.Bounded<T>>() {
       @Override
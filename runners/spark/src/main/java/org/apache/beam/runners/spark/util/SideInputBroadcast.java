@@ -55,6 +55,27 @@ public class SideInputBroadcast<T> implements Serializable {
     return value;
   }
 
+  /**
+   * Decodes the broadcast contents without retaining them, unlike {@link #getValue()}, for callers
+   * that only keep what they derive from the contents.
+   */
+  public T decodeValue() {
+    return deserialize();
+  }
+
+  /**
+   * Returns the id of the underlying Spark broadcast, which identifies the broadcast contents on
+   * every executor.
+   */
+  public long getBroadcastId() {
+    return bcast.id();
+  }
+
+  /** Returns the size in bytes of the encoded broadcast contents. */
+  public long getEncodedSize() {
+    return bcast.value().length;
+  }
+
   public void broadcast(JavaSparkContext jsc) {
     this.bcast = jsc.broadcast(bytes);
   }
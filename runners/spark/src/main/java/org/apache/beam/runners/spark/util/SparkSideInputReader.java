@@ -21,16 +21,15 @@ package org.apache.beam.runners.spark.util;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.collect.Iterables;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nullable;
-import org.apache.beam.runners.core.InMemoryMultimapSideInputView;
+import org.apache.beam.runners.core.SideInputCache;
 import org.apache.beam.runners.core.SideInputReader;
-import org.apache.beam.sdk.coders.Coder;
-import org.apache.beam.sdk.coders.KvCoder;
-import org.apache.beam.sdk.transforms.Materializations.MultimapView;
-import org.apache.beam.sdk.transforms.ViewFn;
+import org.apache.beam.runners.spark.SparkPipelineOptions;
+import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.beam.sdk.values.KV;
@@ -40,13 +39,22 @@ import org.apache.beam.sdk.values.WindowingStrategy;
 
 /**
  * A {@link SideInputReader} for the SparkRunner.
+ *
+ * <p>Materialized side inputs are held in a {@link SideInputCache} that is shared by all of the
+ * tasks of an executor, and that is sized by {@link
+ * SparkPipelineOptions#getSideInputCacheMaxBytes()}.
  */
 public class SparkSideInputReader implements SideInputReader {
   private final Map<TupleTag<?>, KV<WindowingStrategy<?, ?>, SideInputBroadcast<?>>> sideInputs;
+  private final SideInputCache materializedViews;
 
   public SparkSideInputReader(
-      Map<TupleTag<?>, KV<WindowingStrategy<?, ?>, SideInputBroadcast<?>>> sideInputs) {
+      Map<TupleTag<?>, KV<WindowingStrategy<?, ?>, SideInputBroadcast<?>>> sideInputs,
+      PipelineOptions options) {
     this.sideInputs = sideInputs;
+    this.materializedViews =
+        SideInputCache.shared(
+            options.as(SparkPipelineOptions.class).getSideInputCacheMaxBytes());
   }
 
   @Nullable
@@ -62,32 +70,59 @@ public class SparkSideInputReader implements SideInputReader {
     final BoundedWindow sideInputWindow =
         view.getWindowMappingFn().getSideInputWindow(window);
 
+    //--- the broadcast identifies the contents of every window of the side input, so the side
+    // input only needs to be materialized if the cache holds no view built from this broadcast.
+    // The cache keeps the materialized view, so the decoded broadcast is not retained.
+    SideInputBroadcast<?> broadcast = windowedBroadcastHelper.getValue();
+    AtomicLong broadcastElements = new AtomicLong();
+    return materializedViews.get(
+        view,
+        sideInputWindow,
+        broadcast.getBroadcastId(),
+        () -> sideInputForWindow(broadcast, sideInputWindow, broadcastElements),
+        elements -> weigh(broadcast, elements, broadcastElements.get()));
+  }
+
+  /**
+   * Estimates the encoded size of the elements of a window as their share of the encoded size of
+   * the broadcast, which is already known, rather than encoding them again.
+   */
+  private static long weigh(
+      SideInputBroadcast<?> broadcast,
+      Iterable<? extends KV<?, ?>> elements,
+      long broadcastElements) {
+    return broadcastElements == 0L
+        ? 0L
+        : broadcast.getEncodedSize() * Iterables.size(elements) / broadcastElements;
+  }
+
+  /**
+   * Decodes the broadcast and returns its elements in the provided window, counting all of the
+   * elements of the broadcast in {@code broadcastElements} so that weighing needs no second decode.
+   */
+  private static Iterable<KV<?, ?>> sideInputForWindow(
+      SideInputBroadcast<?> broadcast,
+      BoundedWindow sideInputWindow,
+      AtomicLong broadcastElements) {
     //--- match the appropriate sideInput window.
     // a tag will point to all matching sideInputs, that is all windows.
     // now that we've obtained the appropriate sideInputWindow, all that's left is to filter by it.
-    Iterable<WindowedValue<KV<?, ?>>> availableSideInputs =
-        (Iterable<WindowedValue<KV<?, ?>>>) windowedBroadcastHelper.getValue().getValue();
-    Iterable<KV<?, ?>> sideInputForWindow =
-        StreamSupport.stream(
-                StreamSupport.stream(availableSideInputs.spliterator(), false)
-                    .filter(
-                        sideInputCandidate -> {
-                          if (sideInputCandidate == null) {
-                            return false;
-                          }
-                          return Iterables.contains(
-                              sideInputCandidate.getWindows(), sideInputWindow);
-                        })
-                    .collect(Collectors.toList())
-                    .spliterator(),
-                false)
-            .map(WindowedValue::getValue)
-            .collect(Collectors.toList());
-
-    ViewFn<MultimapView, T> viewFn = (ViewFn<MultimapView, T>) view.getViewFn();
-    Coder keyCoder = ((KvCoder<?, ?>) view.getCoderInternal()).getKeyCoder();
-    return (T) viewFn.apply(
-        InMemoryMultimapSideInputView.fromIterable(keyCoder, (Iterable) sideInputForWindow));
+    @Nullable Iterable<WindowedValue<KV<?, ?>>> availableSideInputs =
+        (Iterable<WindowedValue<KV<?, ?>>>) broadcast.decodeValue();
+    List<KV<?, ?>> windowElements = new ArrayList<>();
+    if (availableSideInputs == null) {
+      return windowElements;
+    }
+    long count = 0L;
+    for (WindowedValue<KV<?, ?>> sideInputCandidate : availableSideInputs) {
+      count++;
+      if (sideInputCandidate != null
+          && Iterables.contains(sideInputCandidate.getWindows(), sideInputWindow)) {
+        windowElements.add(sideInputCandidate.getValue());
+      }
+    }
+    broadcastElements.set(count);
+    return windowElements;
   }
 
   @Override
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.spark;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.PipelineResult;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.GroupByKey;
+import org.apache.beam.sdk.transforms.Keys;
+import org.apache.beam.sdk.transforms.Sum;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.junit.Test;
+
+/**
+ * Tests grouping by key with {@link SparkPipelineOptions#getSortBasedGroupByKey()} set.
+ */
+public class SortBasedGroupByKeyTest {
+
+  @Test
+  public void testGroupByKey() throws Exception {
+    Pipeline pipeline = createPipeline();
+    List<KV<String, Integer>> input = new ArrayList<>();
+    // more values than are processed by the GroupAlsoByWindow at a time.
+    for (int i = 0; i < 25_000; i++) {
+      input.add(KV.of("hot", 1));
+    }
+    input.add(KV.of("cold", 2));
+    input.add(KV.of("cold", 3));
+
+    PCollection<KV<String, Integer>> sums =
+        pipeline
+            .apply(Create.of(input))
+            .apply(GroupByKey.create())
+            .apply(Combine.groupedValues(Sum.ofIntegers()));
+
+    PAssert.that(sums).containsInAnyOrder(KV.of("hot", 25_000), KV.of("cold", 5));
+    run(pipeline);
+  }
+
+  @Test
+  public void testGroupByKeyManyKeysPerPartition() throws Exception {
+    Pipeline pipeline = createPipeline();
+
+    PCollection<String> keys =
+        pipeline
+            .apply(
+                Create.of(
+                    KV.of("a", 1), KV.of("b", 2), KV.of("a", 3), KV.of("c", 4), KV.of("b", 5)))
+            .apply(GroupByKey.create())
+            .apply(Keys.create());
+
+    PAssert.that(keys).containsInAnyOrder("a", "b", "c");
+    run(pipeline);
+  }
+
+  private static Pipeline createPipeline() {
+    TestSparkPipelineOptions options =
+        PipelineOptionsFactory.create().as(TestSparkPipelineOptions.class);
+    options.setRunner(TestSparkRunner.class);
+    options.setSortBasedGroupByKey(true);
+    return Pipeline.create(options);
+  }
+
+  private static void run(Pipeline pipeline) {
+    PipelineResult result = pipeline.run();
+    TestPipeline.verifyPAssertsSucceeded(pipeline, result);
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.spark;
+
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.PipelineResult;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.Sum;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.Sessions;
+import org.apache.beam.sdk.transforms.windowing.SlidingWindows;
+import org.apache.beam.sdk.transforms.windowing.Window;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TimestampedValue;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Test;
+
+/**
+ * Tests {@link org.apache.beam.sdk.transforms.Combine.PerKey} of windowed inputs, which the Spark
+ * runner combines by window within each partition before the shuffle.
+ */
+public class WindowedCombinePerKeyTest {
+
+  @Test
+  public void testSlidingWindows() throws Exception {
+    Pipeline pipeline = createPipeline();
+
+    PCollection<KV<String, Integer>> sums =
+        pipeline
+            .apply(
+                Create.timestamped(
+                    TimestampedValue.of(KV.of("a", 1), new Instant(0)),
+                    TimestampedValue.of(KV.of("a", 2), new Instant(5)),
+                    TimestampedValue.of(KV.of("b", 3), new Instant(5)),
+                    TimestampedValue.of(KV.of("a", 4), new Instant(15))))
+            .apply(
+                Window.into(
+                    SlidingWindows.of(Duration.millis(20)).every(Duration.millis(10))))
+            .apply(Sum.integersPerKey());
+
+    PAssert.that(sums)
+        .inWindow(new IntervalWindow(new Instant(-10), new Instant(10)))
+        .containsInAnyOrder(KV.of("a", 3), KV.of("b", 3));
+    PAssert.that(sums)
+        .inWindow(new IntervalWindow(new Instant(0), new Instant(20)))
+        .containsInAnyOrder(KV.of("a", 7), KV.of("b", 3));
+    PAssert.that(sums)
+        .inWindow(new IntervalWindow(new Instant(10), new Instant(30)))
+        .containsInAnyOrder(KV.of("a", 4));
+    run(pipeline);
+  }
+
+  @Test
+  public void testSessions() throws Exception {
+    Pipeline pipeline = createPipeline();
+
+    PCollection<KV<String, Integer>> sums =
+        pipeline
+            .apply(
+                Create.timestamped(
+                    TimestampedValue.of(KV.of("a", 1), new Instant(0)),
+                    TimestampedValue.of(KV.of("a", 2), new Instant(5)),
+                    TimestampedValue.of(KV.of("a", 4), new Instant(30))))
+            .apply(Window.into(Sessions.withGapDuration(Duration.millis(10))))
+            .apply(Sum.integersPerKey());
+
+    PAssert.that(sums)
+        .inWindow(new IntervalWindow(new Instant(0), new Instant(15)))
+        .containsInAnyOrder(KV.of("a", 3));
+    PAssert.that(sums)
+        .inWindow(new IntervalWindow(new Instant(30), new Instant(40)))
+        .containsInAnyOrder(KV.of("a", 4));
+    run(pipeline);
+  }
+
+  private static Pipeline createPipeline() {
+    TestSparkPipelineOptions options =
+        PipelineOptionsFactory.create().as(TestSparkPipelineOptions.class);
+    options.setRunner(TestSparkRunner.class);
+    return Pipeline.create(options);
+  }
+
+  private static void run(Pipeline pipeline) {
+    PipelineResult result = pipeline.run();
+    TestPipeline.verifyPAssertsSucceeded(pipeline, result);
+  }
+}
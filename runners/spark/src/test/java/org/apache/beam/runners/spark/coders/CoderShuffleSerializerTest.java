@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.spark.coders;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.beam.runners.spark.util.ByteArray;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.spark.api.java.JavaSparkContext$;
+import org.apache.spark.serializer.SerializationStream;
+import org.apache.spark.serializer.SerializerInstance;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import scala.Tuple2;
+import scala.collection.JavaConversions;
+
+/**
+ * Tests for {@link CoderShuffleSerializer}.
+ */
+public class CoderShuffleSerializerTest {
+
+  @Rule
+  public ExpectedException exception = ExpectedException.none();
+
+  private final CoderShuffleSerializer<String> serializer =
+      new CoderShuffleSerializer<>(StringUtf8Coder.of());
+
+  @Test
+  public void testRoundTrip() {
+    SerializerInstance instance = serializer.newInstance();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    SerializationStream stream = instance.serializeStream(out);
+    stream.writeKey(key("a"), JavaSparkContext$.MODULE$.fakeClassTag());
+    stream.writeValue("first", JavaSparkContext$.MODULE$.fakeClassTag());
+    stream.writeObject(
+        new Tuple2<>(key("b"), "second"), JavaSparkContext$.MODULE$.fakeClassTag());
+    stream.close();
+
+    assertThat(
+        read(instance, out.toByteArray()),
+        equalTo(Arrays.<Object>asList(
+            new Tuple2<>(key("a"), "first"), new Tuple2<>(key("b"), "second"))));
+  }
+
+  @Test
+  public void testRelocation() {
+    assertTrue(serializer.supportsRelocationOfSerializedObjects());
+    SerializerInstance instance = serializer.newInstance();
+    byte[] first = serialize(instance, new Tuple2<>(key("a"), "first"));
+    byte[] second = serialize(instance, new Tuple2<>(key("b"), "second"));
+
+    // serialized records can be reordered without deserializing them.
+    ByteArrayOutputStream relocated = new ByteArrayOutputStream();
+    relocated.write(second, 0, second.length);
+    relocated.write(first, 0, first.length);
+
+    assertThat(
+        read(instance, relocated.toByteArray()),
+        equalTo(Arrays.<Object>asList(
+            new Tuple2<>(key("b"), "second"), new Tuple2<>(key("a"), "first"))));
+  }
+
+  @Test
+  public void testEmptyStream() {
+    assertThat(read(serializer.newInstance(), new byte[0]).size(), equalTo(0));
+  }
+
+  @Test
+  public void testOnlyKeyValueRecords() {
+    exception.expect(UnsupportedOperationException.class);
+    serializer
+        .newInstance()
+        .serializeStream(new ByteArrayOutputStream())
+        .writeObject("not a record", JavaSparkContext$.MODULE$.fakeClassTag());
+  }
+
+  private static ByteArray key(String key) {
+    return new ByteArray(CoderHelpers.toByteArray(key, StringUtf8Coder.of()));
+  }
+
+  private static byte[] serialize(SerializerInstance instance, Tuple2<ByteArray, String> record) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    instance.serializeStream(out).writeObject(record, JavaSparkContext$.MODULE$.fakeClassTag());
+    return out.toByteArray();
+  }
+
+  private static List<Object> read(SerializerInstance instance, byte[] bytes) {
+    List<Object> records = new ArrayList<>();
+    JavaConversions.asJavaIterator(
+            instance.deserializeStream(new ByteArrayInputStream(bytes)).asKeyValueIterator())
+        .forEachRemaining(records::add);
+    return records;
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.spark.stateful;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.Serializable;
+import org.apache.beam.runners.spark.ReuseSparkContextRule;
+import org.apache.beam.runners.spark.SparkPipelineOptions;
+import org.apache.beam.runners.spark.StreamingTest;
+import org.apache.beam.runners.spark.io.CreateStream;
+import org.apache.beam.sdk.PipelineResult;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.metrics.MetricName;
+import org.apache.beam.sdk.metrics.MetricNameFilter;
+import org.apache.beam.sdk.metrics.MetricQueryResults;
+import org.apache.beam.sdk.metrics.MetricResult;
+import org.apache.beam.sdk.metrics.MetricsFilter;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Flatten;
+import org.apache.beam.sdk.transforms.GroupByKey;
+import org.apache.beam.sdk.transforms.Values;
+import org.apache.beam.sdk.transforms.WithKeys;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.Window;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TimestampedValue;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests for {@link SparkGroupAlsoByWindowViaWindowSet} with
+ * {@link SparkPipelineOptions#getSkipIdleStreamingKeys()} enabled.
+ */
+@Category(StreamingTest.class)
+public class SparkGroupAlsoByWindowViaWindowSetTest implements Serializable {
+
+  @Rule
+  public final transient TestPipeline p = TestPipeline.create();
+  @Rule
+  public final transient ReuseSparkContextRule noContextResue = ReuseSparkContextRule.no();
+
+  @Test
+  public void testSkipsIdleKey() throws IOException {
+    p.getOptions().as(SparkPipelineOptions.class).setSkipIdleStreamingKeys(true);
+    CreateStream<String> source =
+        CreateStream.of(StringUtf8Coder.of(), batchDuration())
+            .nextBatch(
+                TimestampedValue.of("first", new Instant(100)),
+                TimestampedValue.of("second", new Instant(200)))
+            // the key has no input and no eligible timer in these batches.
+            .advanceWatermarkForNextBatch(new Instant(500L))
+            .emptyBatch()
+            .advanceWatermarkForNextBatch(new Instant(900L))
+            .emptyBatch()
+            .advanceWatermarkForNextBatch(new Instant(1001L))
+            .emptyBatch()
+            .advanceNextBatchWatermarkToInfinity()
+            .nextBatch(TimestampedValue.of("next", new Instant(1500)));
+
+    FixedWindows windowFn = FixedWindows.of(Duration.millis(1000L));
+    PCollection<String> values =
+        p.apply(source)
+            .apply(Window.<String>into(windowFn))
+            .apply(WithKeys.of(1))
+            .apply(GroupByKey.create())
+            .apply(Values.create())
+            .apply(Flatten.iterables());
+
+    PAssert.that(values)
+        .inOnTimePane(windowFn.assignWindow(new Instant(100)))
+        .containsInAnyOrder("first", "second");
+    PAssert.that(values)
+        .inOnTimePane(windowFn.assignWindow(new Instant(1500)))
+        .containsInAnyOrder("next");
+
+    PipelineResult result = p.run();
+
+    MetricName idleKeys = SparkGroupAlsoByWindowViaWindowSet.IDLE_KEYS_CARRIED_OVER;
+    MetricQueryResults metrics =
+        result
+            .metrics()
+            .queryMetrics(
+                MetricsFilter.builder()
+                    .addNameFilter(MetricNameFilter.named(idleKeys.namespace(), idleKeys.name()))
+                    .build());
+
+    // the key was carried over as is while its end-of-window timer was not eligible.
+    long carriedOver = 0;
+    for (MetricResult<Long> counter : metrics.counters()) {
+      carriedOver += counter.attempted();
+    }
+    assertThat(carriedOver, greaterThan(0L));
+  }
+
+  private Duration batchDuration() {
+    return Duration.millis(
+        (p.getOptions().as(SparkPipelineOptions.class)).getBatchIntervalMillis());
+  }
+}
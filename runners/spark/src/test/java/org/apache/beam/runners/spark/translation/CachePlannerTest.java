@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.spark.translation;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+
+import org.apache.beam.runners.core.metrics.MetricsContainerStepMap;
+import org.apache.beam.runners.spark.SparkRunner;
+import org.apache.beam.runners.spark.TestSparkPipelineOptions;
+import org.apache.beam.runners.spark.TestSparkRunner;
+import org.apache.beam.runners.spark.metrics.MetricsAccumulator;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.io.GenerateSequence;
+import org.apache.beam.sdk.metrics.MetricNameFilter;
+import org.apache.beam.sdk.metrics.MetricQueryResults;
+import org.apache.beam.sdk.metrics.MetricResult;
+import org.apache.beam.sdk.metrics.MetricsFilter;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.transforms.Count;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TypeDescriptors;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.junit.Test;
+
+/**
+ * Tests the decisions of the {@link CachePlanner}, and how the datasets it caches are used.
+ */
+public class CachePlannerTest {
+
+  @Test
+  public void testCachesUserCodeOutputsInMemory() throws Exception {
+    TestSparkPipelineOptions options = createOptions();
+    Pipeline pipeline = Pipeline.create(options);
+    PCollection<String> created = pipeline.apply(Create.of("foo", "bar"));
+    PCollection<Integer> lengths =
+        created.apply(MapElements.into(TypeDescriptors.integers()).via(String::length));
+    created.apply("CountCreated", Count.globally());
+    created.apply("CountCreatedAgain", Count.globally());
+    lengths.apply("CountLengths", Count.globally());
+    lengths.apply("CountLengthsAgain", Count.globally());
+
+    CachePlanner planner = plan(pipeline, options);
+    // created values are free to recompute.
+    assertNull(planner.getStorageLevel(created));
+    assertEquals(CachePlanner.MEMORY, planner.getStorageLevel(lengths));
+  }
+
+  @Test
+  public void testCachesLargeExpensiveOutputsOnDisk() throws Exception {
+    TestSparkPipelineOptions options = createOptions();
+    options.setCacheMaxMemoryBytes(1L);
+    Pipeline pipeline = Pipeline.create(options);
+    PCollection<Long> read = pipeline.apply(GenerateSequence.from(0).to(1000));
+    PCollection<Long> plusOne =
+        read.apply(MapElements.into(TypeDescriptors.longs()).via(x -> x + 1));
+    PCollection<Long> unread =
+        pipeline
+            .apply("ReadOnce", GenerateSequence.from(0).to(1000))
+            .apply("PlusOneOnce", MapElements.into(TypeDescriptors.longs()).via(x -> x + 1));
+    read.apply("CountRead", Count.globally());
+    plusOne.apply("CountPlusOne", Count.globally());
+    plusOne.apply("CountPlusOneAgain", Count.globally());
+    unread.apply("CountUnread", Count.globally());
+    unread.apply("CountUnreadAgain", Count.globally());
+
+    CachePlanner planner = plan(pipeline, options);
+    assertEquals(CachePlanner.DISK, planner.getStorageLevel(read));
+    // recomputing from the cached read is cheaper than keeping another copy on disk.
+    assertNull(planner.getStorageLevel(plusOne));
+    // the source it is read from is not cached.
+    assertEquals(CachePlanner.DISK, planner.getStorageLevel(unread));
+  }
+
+  @Test
+  public void testUnpersistsAfterLastConsumerAndCountsHits() throws Exception {
+    TestSparkPipelineOptions options = createOptions();
+    Pipeline pipeline = Pipeline.create(options);
+    PCollection<Integer> lengths =
+        pipeline
+            .apply(Create.of("foo", "bar"))
+            .apply(MapElements.into(TypeDescriptors.integers()).via(String::length));
+    lengths.apply("CountLengths", Count.globally());
+    lengths.apply("CountLengthsAgain", Count.globally());
+
+    JavaSparkContext jsc = SparkContextFactory.getSparkContext(options);
+    MetricsAccumulator.clear();
+    MetricsAccumulator.init(options, jsc);
+    EvaluationContext ctxt = new EvaluationContext(jsc, pipeline, options);
+    TransformTranslator.Translator translator = new TransformTranslator.Translator();
+    SparkRunner.updateCacheCandidates(pipeline, translator, ctxt);
+    pipeline.traverseTopologically(new SparkRunner.Evaluator(translator, ctxt));
+    ctxt.computeOutputs();
+
+    // the first consumer computed the cached partitions, and the second one read them.
+    assertThat(counterValue(CachePlanner.MISSES), greaterThan(0L));
+    assertThat(counterValue(CachePlanner.HITS), greaterThan(0L));
+    // both consumers have run, so the cached partitions were released.
+    assertNull(((BoundedDataset<?>) ctxt.borrowDataset(lengths)).getPersistedRDD());
+  }
+
+  private static long counterValue(String name) {
+    MetricQueryResults results =
+        MetricsContainerStepMap.asAttemptedOnlyMetricResults(
+                MetricsAccumulator.getInstance().value())
+            .queryMetrics(
+                MetricsFilter.builder()
+                    .addNameFilter(MetricNameFilter.named(CachePlanner.METRICS_NAMESPACE, name))
+                    .build());
+    long value = 0L;
+    for (MetricResult<Long> counter : results.counters()) {
+      value += counter.attempted();
+    }
+    return value;
+  }
+
+  private static TestSparkPipelineOptions createOptions() {
+    TestSparkPipelineOptions options =
+        PipelineOptionsFactory.create().as(TestSparkPipelineOptions.class);
+    options.setRunner(TestSparkRunner.class);
+    options.setCostBasedCaching(true);
+    return options;
+  }
+
+  private static CachePlanner plan(Pipeline pipeline, TestSparkPipelineOptions options) {
+    JavaSparkContext jsc = SparkContextFactory.getSparkContext(options);
+    EvaluationContext ctxt = new EvaluationContext(jsc, pipeline, options);
+    SparkRunner.updateCacheCandidates(pipeline, new TransformTranslator.Translator(), ctxt);
+    return ctxt.getCachePlanner();
+  }
+}
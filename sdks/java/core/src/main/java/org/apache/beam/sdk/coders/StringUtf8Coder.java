@@ -18,14 +18,15 @@
 package org.apache.beam.sdk.coders;
 
 import com.google.common.base.Utf8;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import com.google.common.io.ByteStreams;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UTFDataFormatException;
+import java.lang.ref.SoftReference;
 import java.nio.charset.StandardCharsets;
+import org.apache.beam.sdk.util.ExposedByteArrayInputStream;
 import org.apache.beam.sdk.util.ExposedByteArrayOutputStream;
 import org.apache.beam.sdk.util.StreamUtils;
 import org.apache.beam.sdk.util.VarInt;
@@ -47,21 +48,121 @@ public class StringUtf8Coder extends AtomicCoder<String> {
   private static final StringUtf8Coder INSTANCE = new StringUtf8Coder();
   private static final TypeDescriptor<String> TYPE_DESCRIPTOR = new TypeDescriptor<String>() {};
 
-  private static void writeString(String value, DataOutputStream dos)
+  /**
+   * The maximum number of UTF-8 bytes a single {@code char} can encode to. Surrogate pairs encode
+   * to 4 bytes, that is 2 bytes per {@code char}.
+   */
+  private static final int MAX_BYTES_PER_CHAR = 3;
+
+  /** Initial size of the per-thread scratch buffer. */
+  private static final int INITIAL_BUFFER_SIZE = 1024;
+
+  /**
+   * Largest scratch buffer kept per thread. Longer strings are encoded into a freshly allocated
+   * array instead, so that a single huge string does not pin memory on every thread.
+   */
+  private static final int MAX_BUFFER_SIZE = 64 * 1024;
+
+  private static final ThreadLocal<SoftReference<byte[]>> threadLocalBuffer = new ThreadLocal<>();
+
+  /** UTF-8 encoding of the replacement used by {@link String#getBytes} for malformed input. */
+  private static final byte REPLACEMENT_BYTE = '?';
+
+  /**
+   * Returns a per-thread scratch buffer of at least {@code minSize} bytes. The buffer is only
+   * valid until the next call to this method on the same thread.
+   */
+  private static byte[] getBuffer(int minSize) {
+    SoftReference<byte[]> refBuffer = threadLocalBuffer.get();
+    byte[] buffer = refBuffer == null ? null : refBuffer.get();
+    if (buffer == null || buffer.length < minSize) {
+      buffer = new byte[Math.max(minSize, INITIAL_BUFFER_SIZE)];
+      threadLocalBuffer.set(new SoftReference<>(buffer));
+    }
+    return buffer;
+  }
+
+  /**
+   * Encodes {@code value} to UTF-8 into {@code buffer}, which must be at least
+   * {@link #MAX_BYTES_PER_CHAR} times as long as {@code value}, and returns the number of bytes
+   * written. Produces the same bytes as {@code value.getBytes(StandardCharsets.UTF_8)}.
+   */
+  private static int encodeUtf8(String value, byte[] buffer) {
+    int length = value.length();
+    int i = 0;
+    // Fast path for the common case of ASCII strings, one byte per char.
+    for (; i < length; i++) {
+      char c = value.charAt(i);
+      if (c >= 0x80) {
+        break;
+      }
+      buffer[i] = (byte) c;
+    }
+    int pos = i;
+    for (; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        buffer[pos++] = (byte) c;
+      } else if (c < 0x800) {
+        buffer[pos++] = (byte) (0xc0 | (c >> 6));
+        buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+      } else if (!Character.isSurrogate(c)) {
+        buffer[pos++] = (byte) (0xe0 | (c >> 12));
+        buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < length
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        buffer[pos++] = (byte) (0xf0 | (codePoint >> 18));
+        buffer[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+        buffer[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        buffer[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+      } else {
+        // Unpaired surrogate, replaced the same way String.getBytes does.
+        buffer[pos++] = REPLACEMENT_BYTE;
+      }
+    }
+    return pos;
+  }
+
+  /**
+   * Writes the UTF-8 encoding of {@code value} to {@code outStream}, prefixed with its length if
+   * {@code withLength} is set. Short strings are encoded via a per-thread scratch buffer, so no
+   * intermediate array is allocated.
+   */
+  private static void writeString(String value, OutputStream outStream, boolean withLength)
       throws IOException {
-    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
-    VarInt.encode(bytes.length, dos);
-    dos.write(bytes);
+    if (value.length() > MAX_BUFFER_SIZE / MAX_BYTES_PER_CHAR) {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      if (withLength) {
+        VarInt.encode(bytes.length, outStream);
+      }
+      outStream.write(bytes);
+      return;
+    }
+    byte[] buffer = getBuffer(value.length() * MAX_BYTES_PER_CHAR);
+    int encodedLength = encodeUtf8(value, buffer);
+    if (withLength) {
+      VarInt.encode(encodedLength, outStream);
+    }
+    outStream.write(buffer, 0, encodedLength);
   }
 
-  private static String readString(DataInputStream dis) throws IOException {
-    int len = VarInt.decodeInt(dis);
+  private static String readString(InputStream inStream) throws IOException {
+    int len = VarInt.decodeInt(inStream);
     if (len < 0) {
       throw new CoderException("Invalid encoded string length: " + len);
     }
-    byte[] bytes = new byte[len];
-    dis.readFully(bytes);
-    return new String(bytes, StandardCharsets.UTF_8);
+    // Coders are usually handed an UnownedInputStream, e.g. by CoderUtils, so look through it.
+    ExposedByteArrayInputStream exposed = ExposedByteArrayInputStream.unwrap(inStream);
+    if (exposed != null) {
+      // Decode straight out of the backing array.
+      return exposed.readString(len, StandardCharsets.UTF_8);
+    }
+    byte[] bytes = len > MAX_BUFFER_SIZE ? new byte[len] : getBuffer(len);
+    ByteStreams.readFully(inStream, bytes, 0, len);
+    return new String(bytes, 0, len, StandardCharsets.UTF_8);
   }
 
   private StringUtf8Coder() {}
@@ -78,15 +179,12 @@ public class StringUtf8Coder extends AtomicCoder<String> {
     if (value == null) {
       throw new CoderException("cannot encode a null String");
     }
-    if (context.isWholeStream) {
-      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
-      if (outStream instanceof ExposedByteArrayOutputStream) {
-        ((ExposedByteArrayOutputStream) outStream).writeAndOwn(bytes);
-      } else {
-        outStream.write(bytes);
-      }
+    if (context.isWholeStream && outStream instanceof ExposedByteArrayOutputStream) {
+      // The stream takes ownership of the array, avoiding a copy.
+      ((ExposedByteArrayOutputStream) outStream)
+          .writeAndOwn(value.getBytes(StandardCharsets.UTF_8));
     } else {
-      writeString(value, new DataOutputStream(outStream));
+      writeString(value, outStream, !context.isWholeStream);
     }
   }
 
@@ -103,7 +201,7 @@ public class StringUtf8Coder extends AtomicCoder<String> {
       return new String(bytes, StandardCharsets.UTF_8);
     } else {
       try {
-        return readString(new DataInputStream(inStream));
+        return readString(inStream);
       } catch (EOFException | UTFDataFormatException exn) {
         // These exceptions correspond to decoding problems, so change
         // what kind of exception they're branded as.
@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.metrics;
+
+import org.apache.beam.sdk.annotations.Experimental;
+import org.apache.beam.sdk.annotations.Experimental.Kind;
+
+/**
+ * A metric that reports approximate percentiles of the reported values, such as the median and
+ * 99th percentile of per-element latencies.
+ *
+ * <p>Values are counted in buckets whose width is at most 1/16th of their lower bound. Percentiles
+ * are reported as the middle of their bucket, so they are within 1/32nd (about 3%) of the exact
+ * ones. Negative values are counted as 0.
+ */
+@Experimental(Kind.METRICS)
+public interface Histogram extends Metric {
+  /** Add an observation to this histogram. */
+  void update(long value);
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.metrics;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.auto.value.AutoValue;
+import java.util.Arrays;
+import org.apache.beam.sdk.annotations.Experimental;
+import org.apache.beam.sdk.annotations.Experimental.Kind;
+import org.apache.beam.sdk.annotations.Internal;
+
+/**
+ * The result of a {@link Histogram} metric.
+ *
+ * <p>Values 0 through 15 are counted exactly. Larger values are counted in 16 equally sized
+ * buckets per power of two.
+ */
+@Experimental(Kind.METRICS)
+@AutoValue
+public abstract class HistogramResult {
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  /** The number of buckets a histogram is counted in. */
+  @Internal
+  public static final int NUM_BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  public static final HistogramResult EMPTY =
+      create(new long[NUM_BUCKETS], Long.MAX_VALUE, Long.MIN_VALUE);
+
+  /** Returns the index of the bucket the provided value is counted in. */
+  @Internal
+  public static int bucketIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) Math.max(value, 0);
+    }
+    int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    int shift = exponent - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+  }
+
+  private static long bucketLowerBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+  }
+
+  private static long bucketWidth(int index) {
+    return index < SUB_BUCKETS ? 1 : 1L << (index / SUB_BUCKETS - 1);
+  }
+
+  /** The number of values reported to the histogram. */
+  public abstract long count();
+
+  /** The smallest value reported to the histogram, after negative values are counted as 0. */
+  public abstract long min();
+
+  /** The largest value reported to the histogram. */
+  public abstract long max();
+
+  @SuppressWarnings("mutable")
+  abstract long[] bucketCounts();
+
+  /**
+   * Returns the approximate value below which the provided percentage of the reported values fall,
+   * or 0 if no values were reported.
+   *
+   * @param percentile the percentage, between 0 and 100
+   */
+  public long percentile(double percentile) {
+    checkArgument(
+        percentile >= 0 && percentile <= 100,
+        "Percentile must be between 0 and 100, got %s",
+        percentile);
+    if (count() == 0) {
+      return 0;
+    }
+    long rank = Math.max(1L, (long) Math.ceil(percentile / 100 * count()));
+    long[] bucketCounts = bucketCounts();
+    long seen = 0;
+    for (int i = 0; i < bucketCounts.length; i++) {
+      seen += bucketCounts[i];
+      if (seen >= rank) {
+        // Report the middle of the bucket, which can't be outside of the reported range.
+        long estimate = bucketLowerBound(i) + (bucketWidth(i) - 1) / 2;
+        return Math.min(Math.max(estimate, min()), max());
+      }
+    }
+    return max();
+  }
+
+  /** Returns the approximate median of the reported values. */
+  public long p50() {
+    return percentile(50);
+  }
+
+  /** Returns the approximate 90th percentile of the reported values. */
+  public long p90() {
+    return percentile(90);
+  }
+
+  /** Returns the approximate 99th percentile of the reported values. */
+  public long p99() {
+    return percentile(99);
+  }
+
+  /**
+   * Creates a {@link HistogramResult} from the number of values counted in each bucket, indexed by
+   * {@link #bucketIndex(long)}.
+   */
+  @Internal
+  public static HistogramResult create(long[] bucketCounts, long min, long max) {
+    checkArgument(
+        bucketCounts.length == NUM_BUCKETS,
+        "Expected %s bucket counts, got %s",
+        NUM_BUCKETS,
+        bucketCounts.length);
+    long count = 0;
+    for (long bucketCount : bucketCounts) {
+      count += bucketCount;
+    }
+    return new AutoValue_HistogramResult(
+        count, min, max, Arrays.copyOf(bucketCounts, bucketCounts.length));
+  }
+}
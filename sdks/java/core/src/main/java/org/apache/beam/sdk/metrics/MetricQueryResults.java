@@ -17,6 +17,7 @@
  */
 package org.apache.beam.sdk.metrics;
 
+import java.util.Collections;
 import org.apache.beam.sdk.annotations.Experimental;
 import org.apache.beam.sdk.annotations.Experimental.Kind;
 
@@ -31,6 +32,14 @@ public interface MetricQueryResults {
   /** Return the metric results for the distributions that matched the filter. */
   Iterable<MetricResult<DistributionResult>> distributions();
 
+  /**
+   * Return the metric results for the histograms that matched the filter. The default
+   * implementation returns no results, for runners that do not report histograms.
+   */
+  default Iterable<MetricResult<HistogramResult>> histograms() {
+    return Collections.emptyList();
+  }
+
   /** Return the metric results for the gauges that matched the filter. */
   Iterable<MetricResult<GaugeResult>> gauges();
 }
@@ -85,6 +85,22 @@ public class Metrics {
     return new DelegatingDistribution(MetricName.named(namespace, name));
   }
 
+  /**
+   * Create a metric that records approximate percentiles, such as the median and 99th percentile,
+   * of reported values.
+   */
+  public static Histogram histogram(String namespace, String name) {
+    return new DelegatingHistogram(MetricName.named(namespace, name));
+  }
+
+  /**
+   * Create a metric that records approximate percentiles, such as the median and 99th percentile,
+   * of reported values.
+   */
+  public static Histogram histogram(Class<?> namespace, String name) {
+    return new DelegatingHistogram(MetricName.named(namespace, name));
+  }
+
   /**
    * Create a metric that can have its new value set, and is aggregated by taking the last reported
    * value.
@@ -101,14 +117,33 @@ public class Metrics {
     return new DelegatingGauge(MetricName.named(namespace, name));
   }
 
+  /**
+   * A metric retrieved from a {@link MetricsContainer} on some thread, so that the thread can reuse
+   * it without looking it up again for as long as the same container is current on it.
+   */
+  private static class BoundMetric<T> {
+    private final MetricsContainer container;
+    private final T metric;
+
+    private BoundMetric(MetricsContainer container, T metric) {
+      this.container = container;
+      this.metric = metric;
+    }
+  }
+
   /** Implementation of {@link Counter} that delegates to the instance for the current context. */
   private static class DelegatingCounter implements Metric, Counter, Serializable {
     private final MetricName name;
+    private final transient ThreadLocal<BoundMetric<Counter>> bound = new ThreadLocal<>();
 
     private DelegatingCounter(MetricName name) {
       this.name = name;
     }
 
+    private Object readResolve() {
+      return new DelegatingCounter(name);
+    }
+
     /** Increment the counter. */
     @Override public void inc() {
       inc(1);
@@ -118,7 +153,12 @@ public class Metrics {
     @Override public void inc(long n) {
       MetricsContainer container = MetricsEnvironment.getCurrentContainer();
       if (container != null) {
-        container.getCounter(name).inc(n);
+        BoundMetric<Counter> current = bound.get();
+        if (current == null || current.container != container) {
+          current = new BoundMetric<>(container, container.getCounter(name));
+          bound.set(current);
+        }
+        current.metric.inc(n);
       }
     }
 
@@ -142,16 +182,49 @@ public class Metrics {
    */
   private static class DelegatingDistribution implements Metric, Distribution, Serializable {
     private final MetricName name;
+    private final transient ThreadLocal<BoundMetric<Distribution>> bound = new ThreadLocal<>();
 
     private DelegatingDistribution(MetricName name) {
       this.name = name;
     }
 
+    private Object readResolve() {
+      return new DelegatingDistribution(name);
+    }
+
+    @Override
+    public void update(long value) {
+      MetricsContainer container = MetricsEnvironment.getCurrentContainer();
+      if (container != null) {
+        BoundMetric<Distribution> current = bound.get();
+        if (current == null || current.container != container) {
+          current = new BoundMetric<>(container, container.getDistribution(name));
+          bound.set(current);
+        }
+        current.metric.update(value);
+      }
+    }
+
+    @Override public MetricName getName() {
+      return name;
+    }
+  }
+
+  /**
+   * Implementation of {@link Histogram} that delegates to the instance for the current context.
+   */
+  private static class DelegatingHistogram implements Metric, Histogram, Serializable {
+    private final MetricName name;
+
+    private DelegatingHistogram(MetricName name) {
+      this.name = name;
+    }
+
     @Override
     public void update(long value) {
       MetricsContainer container = MetricsEnvironment.getCurrentContainer();
       if (container != null) {
-        container.getDistribution(name).update(value);
+        container.getHistogram(name).update(value);
       }
     }
 
@@ -25,6 +25,10 @@ import org.apache.beam.sdk.annotations.Experimental.Kind;
 /**
  * Holds the metrics for a single step. Each of the methods should return an implementation of the
  * appropriate metrics interface for the "current" step.
+ *
+ * <p>A container must return the same metric for a given name for as long as it is used, as the
+ * counters and distributions created by {@link Metrics} cache, per thread, the metric they last
+ * retrieved from the container that is current on that thread.
  */
 @Experimental(Kind.METRICS)
 public interface MetricsContainer extends Serializable {
@@ -41,6 +45,25 @@ public interface MetricsContainer extends Serializable {
    */
   Distribution getDistribution(MetricName metricName);
 
+  /**
+   * Return the {@link Histogram} that should be used for implementing the given
+   * {@code metricName} in this container.
+   *
+   * <p>The default implementation returns a histogram that discards all values, for containers
+   * that do not support histograms.
+   */
+  default Histogram getHistogram(final MetricName metricName) {
+    return new Histogram() {
+      @Override
+      public void update(long value) {}
+
+      @Override
+      public MetricName getName() {
+        return metricName;
+      }
+    };
+  }
+
   /**
    * Return the {@link Gauge} that should be used for implementing the given
    * {@code metricName} in this container.
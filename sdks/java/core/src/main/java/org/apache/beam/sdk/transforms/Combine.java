@@ -20,9 +20,13 @@ package org.apache.beam.sdk.transforms;
 import static com.google.common.base.Preconditions.checkState;
 
 import com.google.common.collect.ImmutableList;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UTFDataFormatException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -30,15 +34,18 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ThreadLocalRandom;
 import javax.annotation.Nullable;
+import org.apache.beam.sdk.coders.AtomicCoder;
 import org.apache.beam.sdk.coders.CannotProvideCoderException;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.coders.CoderRegistry;
 import org.apache.beam.sdk.coders.DelegateCoder;
+import org.apache.beam.sdk.coders.DoubleCoder;
 import org.apache.beam.sdk.coders.IterableCoder;
 import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.coders.StructuredCoder;
 import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.coders.VarLongCoder;
 import org.apache.beam.sdk.coders.VoidCoder;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.transforms.CombineFnBase.AbstractGlobalCombineFn;
@@ -58,6 +65,7 @@ import org.apache.beam.sdk.util.AppliedCombineFn;
 import org.apache.beam.sdk.util.NameUtils;
 import org.apache.beam.sdk.util.NameUtils.NameOverride;
 import org.apache.beam.sdk.util.SerializableUtils;
+import org.apache.beam.sdk.util.VarInt;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionList;
@@ -491,6 +499,18 @@ public class Combine {
      */
     public abstract int identity();
 
+    /**
+     * Applies the binary operation to two unboxed operands, returning the result.
+     *
+     * <p>This is what {@link #addInput} and {@link #mergeAccumulators} call for every input and
+     * accumulator. The default implementation boxes the operands and delegates to {@link
+     * #apply(TenantAwareValue, TenantAwareValue)}. Subclasses should override it with the
+     * equivalent primitive operation.
+     */
+    public int applyAsInt(int left, int right) {
+      return apply((Integer) left, (Integer) right);
+    }
+
     @Override
     public TenantAwareValue<int[]> createAccumulator() {
       return TenantAwareValue.of(TenantAwareValue.NULL_TENANT, wrap(identity()));
@@ -499,9 +519,9 @@ public class Combine {
     @Override
     public TenantAwareValue<int[]> addInput(
         TenantAwareValue<int[]> accumulator, TenantAwareValue<Integer> input) {
-      accumulator.getValue()[0] = apply(accumulator.getValue()[0], input.getValue());
-
-      return TenantAwareValue.of(input.getTenantId(), accumulator.getValue());
+      int[] running = accumulator.getValue();
+      running[0] = applyAsInt(running[0], input.getValue());
+      return withTenant(accumulator, input.getTenantId());
     }
 
     @Override
@@ -518,9 +538,9 @@ public class Combine {
         TenantAwareValue<int[]> firstElem = iter.next();
         int[] running = firstElem.getValue();
         while (iter.hasNext()) {
-          running[0] = apply(running[0], iter.next().getValue()[0]);
+          running[0] = applyAsInt(running[0], iter.next().getValue()[0]);
         }
-        return TenantAwareValue.of(firstElem.getTenantId(), running);
+        return firstElem;
       }
     }
 
@@ -532,6 +552,9 @@ public class Combine {
     @Override
     public TenantAwareValueCoder<int[]> getAccumulatorCoder(
         CoderRegistry registry, Coder<Integer> inputCoder) {
+      if (VarIntCoder.of().equals(inputCoder)) {
+        return TenantAwareValueCoder.of(VarIntAccumulatorCoder.INSTANCE);
+      }
       return TenantAwareValueCoder.of(
           DelegateCoder.of(
               inputCoder, new ToIntegerCodingFunction(), new FromIntegerCodingFunction()));
@@ -611,6 +634,18 @@ public class Combine {
      */
     public abstract long identity();
 
+    /**
+     * Applies the binary operation to two unboxed operands, returning the result.
+     *
+     * <p>This is what {@link #addInput} and {@link #mergeAccumulators} call for every input and
+     * accumulator. The default implementation boxes the operands and delegates to {@link
+     * #apply(TenantAwareValue, TenantAwareValue)}. Subclasses should override it with the
+     * equivalent primitive operation.
+     */
+    public long applyAsLong(long left, long right) {
+      return apply((Long) left, (Long) right);
+    }
+
     @Override
     public TenantAwareValue<long[]> createAccumulator() {
       return TenantAwareValue.of(TenantAwareValue.NULL_TENANT, wrap(identity()));
@@ -619,8 +654,9 @@ public class Combine {
     @Override
     public TenantAwareValue<long[]> addInput(
         TenantAwareValue<long[]> accumulator, TenantAwareValue<Long> input) {
-      accumulator.getValue()[0] = apply(accumulator.getValue()[0], input.getValue());
-      return TenantAwareValue.of(input.getTenantId(), accumulator.getValue());
+      long[] running = accumulator.getValue();
+      running[0] = applyAsLong(running[0], input.getValue());
+      return withTenant(accumulator, input.getTenantId());
     }
 
     @Override
@@ -633,9 +669,9 @@ public class Combine {
         TenantAwareValue<long[]> firstElem = iter.next();
         long[] running = firstElem.getValue();
         while (iter.hasNext()) {
-          running[0] = apply(running[0], iter.next().getValue()[0]);
+          running[0] = applyAsLong(running[0], iter.next().getValue()[0]);
         }
-        return TenantAwareValue.of(firstElem.getTenantId(), running);
+        return firstElem;
       }
     }
 
@@ -647,6 +683,9 @@ public class Combine {
     @Override
     public TenantAwareValueCoder<long[]> getAccumulatorCoder(
         CoderRegistry registry, Coder<Long> inputCoder) {
+      if (VarLongCoder.of().equals(inputCoder)) {
+        return TenantAwareValueCoder.of(VarLongAccumulatorCoder.INSTANCE);
+      }
       return TenantAwareValueCoder.of(
           DelegateCoder.of(inputCoder, new ToLongCodingFunction(), new FromLongCodingFunction()));
     }
@@ -727,6 +766,18 @@ public class Combine {
      */
     public abstract double identity();
 
+    /**
+     * Applies the binary operation to two unboxed operands, returning the result.
+     *
+     * <p>This is what {@link #addInput} and {@link #mergeAccumulators} call for every input and
+     * accumulator. The default implementation boxes the operands and delegates to {@link
+     * #apply(TenantAwareValue, TenantAwareValue)}. Subclasses should override it with the
+     * equivalent primitive operation.
+     */
+    public double applyAsDouble(double left, double right) {
+      return apply((Double) left, (Double) right);
+    }
+
     @Override
     public TenantAwareValue<double[]> createAccumulator() {
       return TenantAwareValue.of(TenantAwareValue.NULL_TENANT, wrap(identity()));
@@ -735,9 +786,9 @@ public class Combine {
     @Override
     public TenantAwareValue<double[]> addInput(
         TenantAwareValue<double[]> accumulator, TenantAwareValue<Double> input) {
-      accumulator.getValue()[0] = apply(accumulator.getValue()[0], input.getValue());
-
-      return TenantAwareValue.of(input.getTenantId(), accumulator.getValue());
+      double[] running = accumulator.getValue();
+      running[0] = applyAsDouble(running[0], input.getValue());
+      return withTenant(accumulator, input.getTenantId());
     }
 
     @Override
@@ -750,9 +801,9 @@ public class Combine {
         TenantAwareValue<double[]> firstElem = iter.next();
         double[] running = firstElem.getValue();
         while (iter.hasNext()) {
-          running[0] = apply(running[0], iter.next().getValue()[0]);
+          running[0] = applyAsDouble(running[0], iter.next().getValue()[0]);
         }
-        return TenantAwareValue.of(firstElem.getTenantId(), running);
+        return firstElem;
       }
     }
 
@@ -764,6 +815,9 @@ public class Combine {
     @Override
     public TenantAwareValueCoder<double[]> getAccumulatorCoder(
         CoderRegistry registry, Coder<Double> inputCoder) {
+      if (DoubleCoder.of().equals(inputCoder)) {
+        return TenantAwareValueCoder.of(DoubleAccumulatorCoder.INSTANCE);
+      }
       return TenantAwareValueCoder.of(
           DelegateCoder.of(
               inputCoder, new ToDoubleCodingFunction(), new FromDoubleCodingFunction()));
@@ -815,6 +869,97 @@ public class Combine {
     }
   }
 
+  /**
+   * Returns {@code accumulator} if it already belongs to {@code tenantId}, and otherwise a
+   * {@link TenantAwareValue} of the same accumulator for {@code tenantId}. This avoids allocating
+   * a new wrapper for every input added to a mutable accumulator.
+   */
+  private static <AccumT> TenantAwareValue<AccumT> withTenant(
+      TenantAwareValue<AccumT> accumulator, String tenantId) {
+    if (accumulator.getTenantId().equals(tenantId)) {
+      return accumulator;
+    }
+    return TenantAwareValue.of(tenantId, accumulator.getValue());
+  }
+
+  /**
+   * Accumulator {@link Coder} of {@link BinaryCombineIntegerFn} for {@link VarIntCoder} inputs.
+   * Produces the same encoding as {@link VarIntCoder}, without boxing the accumulated value.
+   */
+  private static final class VarIntAccumulatorCoder extends AtomicCoder<int[]> {
+    private static final VarIntAccumulatorCoder INSTANCE = new VarIntAccumulatorCoder();
+
+    @Override
+    public void encode(int[] value, OutputStream outStream) throws IOException {
+      VarInt.encode(value[0], outStream);
+    }
+
+    @Override
+    public int[] decode(InputStream inStream) throws IOException {
+      try {
+        return new int[] {VarInt.decodeInt(inStream)};
+      } catch (EOFException | UTFDataFormatException exn) {
+        throw new CoderException(exn);
+      }
+    }
+
+    @Override
+    public void verifyDeterministic() {}
+  }
+
+  /**
+   * Accumulator {@link Coder} of {@link BinaryCombineLongFn} for {@link VarLongCoder} inputs.
+   * Produces the same encoding as {@link VarLongCoder}, without boxing the accumulated value.
+   */
+  private static final class VarLongAccumulatorCoder extends AtomicCoder<long[]> {
+    private static final VarLongAccumulatorCoder INSTANCE = new VarLongAccumulatorCoder();
+
+    @Override
+    public void encode(long[] value, OutputStream outStream) throws IOException {
+      VarInt.encode(value[0], outStream);
+    }
+
+    @Override
+    public long[] decode(InputStream inStream) throws IOException {
+      try {
+        return new long[] {VarInt.decodeLong(inStream)};
+      } catch (EOFException | UTFDataFormatException exn) {
+        throw new CoderException(exn);
+      }
+    }
+
+    @Override
+    public void verifyDeterministic() {}
+  }
+
+  /**
+   * Accumulator {@link Coder} of {@link BinaryCombineDoubleFn} for {@link DoubleCoder} inputs.
+   * Produces the same encoding as {@link DoubleCoder}, without boxing the accumulated value.
+   */
+  private static final class DoubleAccumulatorCoder extends AtomicCoder<double[]> {
+    private static final DoubleAccumulatorCoder INSTANCE = new DoubleAccumulatorCoder();
+
+    @Override
+    public void encode(double[] value, OutputStream outStream) throws IOException {
+      new DataOutputStream(outStream).writeDouble(value[0]);
+    }
+
+    @Override
+    public double[] decode(InputStream inStream) throws IOException {
+      try {
+        return new double[] {new DataInputStream(inStream).readDouble()};
+      } catch (EOFException | UTFDataFormatException exn) {
+        throw new CoderException(exn);
+      }
+    }
+
+    @Override
+    public void verifyDeterministic() throws NonDeterministicException {
+      throw new NonDeterministicException(
+          this, "Floating point encodings are not guaranteed to be deterministic.");
+    }
+  }
+
   /////////////////////////////////////////////////////////////////////////////
 
   /**
@@ -883,7 +1028,7 @@ public class Combine {
     public final TenantAwareValue<AccumT> addInput(
         TenantAwareValue<AccumT> accumulator, TenantAwareValue<InputT> input) {
       accumulator.getValue().addInput(input);
-      return TenantAwareValue.of(input.getTenantId(), accumulator.getValue());
+      return withTenant(accumulator, input.getTenantId());
     }
 
     @Override
@@ -250,6 +250,11 @@ public class Max {
       return left.getValue() >= right.getValue() ? left : right;
     }
 
+    @Override
+    public int applyAsInt(int left, int right) {
+      return left >= right ? left : right;
+    }
+
     @Override
     public int identity() {
       return Integer.MIN_VALUE;
@@ -263,6 +268,11 @@ public class Max {
       return left.getValue() >= right.getValue() ? left : right;
     }
 
+    @Override
+    public long applyAsLong(long left, long right) {
+      return left >= right ? left : right;
+    }
+
     @Override
     public long identity() {
       return Long.MIN_VALUE;
@@ -277,6 +287,11 @@ public class Max {
       return left.getValue() >= right.getValue() ? left : right;
     }
 
+    @Override
+    public double applyAsDouble(double left, double right) {
+      return left >= right ? left : right;
+    }
+
     @Override
     public double identity() {
       return Double.NEGATIVE_INFINITY;
@@ -136,6 +136,11 @@ public class Sum {
       return TenantAwareValue.of(b.getTenantId(), a.getValue() + b.getValue());
     }
 
+    @Override
+    public int applyAsInt(int left, int right) {
+      return left + right;
+    }
+
     @Override
     public int identity() {
       return 0;
@@ -159,6 +164,11 @@ public class Sum {
       return TenantAwareValue.of(b.getTenantId(), a.getValue() + b.getValue());
     }
 
+    @Override
+    public long applyAsLong(long left, long right) {
+      return left + right;
+    }
+
     @Override
     public long identity() {
       return 0;
@@ -182,6 +192,11 @@ public class Sum {
       return TenantAwareValue.of(b.getTenantId(), a.getValue() + b.getValue());
     }
 
+    @Override
+    public double applyAsDouble(double left, double right) {
+      return left + right;
+    }
+
     @Override
     public double identity() {
       return 0;
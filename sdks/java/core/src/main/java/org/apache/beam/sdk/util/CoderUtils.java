@@ -26,6 +26,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.ref.SoftReference;
 import java.lang.reflect.ParameterizedType;
+import java.nio.ByteBuffer;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.values.TypeDescriptor;
@@ -71,6 +72,41 @@ public final class CoderUtils {
     }
   }
 
+  /**
+   * Encodes the given value using the specified Coder into a reusable per-thread buffer, and
+   * returns a {@link ByteBuffer} wrapping the encoded bytes. Unlike {@link #encodeToByteArray},
+   * this does not copy the encoded bytes into an array of their own.
+   *
+   * <p>The returned buffer is backed by memory that is overwritten by the next call to any
+   * {@code encode} method or {@link #clone} of this class on the same thread. Callers must consume
+   * or copy its contents before that, and must not modify them.
+   *
+   * <p>This function is not reentrant; it should not be called from methods of the provided {@link
+   * Coder}.
+   */
+  public static <T> ByteBuffer encodeToByteBuffer(Coder<T> coder, T value)
+      throws CoderException {
+    return encodeToByteBuffer(coder, value, Coder.Context.OUTER);
+  }
+
+  public static <T> ByteBuffer encodeToByteBuffer(Coder<T> coder, T value, Coder.Context context)
+      throws CoderException {
+    if (threadLocalOutputStreamInUse.get()) {
+      ExposedByteArrayOutputStream stream = new ExposedByteArrayOutputStream();
+      encodeToSafeStream(coder, value, stream, context);
+      return stream.toByteBuffer();
+    } else {
+      threadLocalOutputStreamInUse.set(true);
+      try {
+        ExposedByteArrayOutputStream stream = getThreadLocalOutputStream();
+        encodeToSafeStream(coder, value, stream, context);
+        return stream.toByteBuffer();
+      } finally {
+        threadLocalOutputStreamInUse.set(false);
+      }
+    }
+  }
+
   /**
    * Encodes {@code value} to the given {@code stream}, which should be a stream that never throws
    * {@code IOException}, such as {@code ByteArrayOutputStream} or {@link
@@ -94,14 +130,50 @@ public final class CoderUtils {
 
   public static <T> T decodeFromByteArray(
       Coder<T> coder, byte[] encodedValue, Coder.Context context) throws CoderException {
-    try (ExposedByteArrayInputStream stream = new ExposedByteArrayInputStream(encodedValue)) {
-      T result = decodeFromSafeStream(coder, stream, context);
-      if (stream.available() != 0) {
-        throw new CoderException(
-            stream.available() + " unexpected extra bytes after decoding " + result);
-      }
-      return result;
+    return decodeFully(coder, new ExposedByteArrayInputStream(encodedValue), context);
+  }
+
+  /**
+   * Decodes the remaining bytes of the given {@link ByteBuffer} using the specified Coder, and
+   * returns the resulting decoded value. The position of {@code encodedValue} is not changed.
+   *
+   * <p>Heap buffers, such as the ones returned by {@link #encodeToByteBuffer}, are decoded
+   * without copying their contents.
+   */
+  public static <T> T decodeFromByteBuffer(Coder<T> coder, ByteBuffer encodedValue)
+      throws CoderException {
+    return decodeFromByteBuffer(coder, encodedValue, Coder.Context.OUTER);
+  }
+
+  public static <T> T decodeFromByteBuffer(
+      Coder<T> coder, ByteBuffer encodedValue, Coder.Context context) throws CoderException {
+    ExposedByteArrayInputStream stream;
+    if (encodedValue.hasArray()) {
+      stream =
+          new ExposedByteArrayInputStream(
+              encodedValue.array(),
+              encodedValue.arrayOffset() + encodedValue.position(),
+              encodedValue.remaining());
+    } else {
+      byte[] bytes = new byte[encodedValue.remaining()];
+      encodedValue.duplicate().get(bytes);
+      stream = new ExposedByteArrayInputStream(bytes);
     }
+    return decodeFully(coder, stream, context);
+  }
+
+  /**
+   * Decodes a value from the given {@code stream}, failing if any bytes remain after decoding.
+   */
+  private static <T> T decodeFully(
+      Coder<T> coder, ExposedByteArrayInputStream stream, Coder.Context context)
+      throws CoderException {
+    T result = decodeFromSafeStream(coder, stream, context);
+    if (stream.available() != 0) {
+      throw new CoderException(
+          stream.available() + " unexpected extra bytes after decoding " + result);
+    }
+    return result;
   }
 
   /**
@@ -120,7 +192,7 @@ public final class CoderUtils {
     }
   }
 
-  private static ByteArrayOutputStream getThreadLocalOutputStream() {
+  private static ExposedByteArrayOutputStream getThreadLocalOutputStream() {
     SoftReference<ExposedByteArrayOutputStream> refStream = threadLocalOutputStream.get();
     ExposedByteArrayOutputStream stream = refStream == null ? null : refStream.get();
     if (stream == null) {
@@ -138,7 +210,29 @@ public final class CoderUtils {
    * Coder}.
    */
   public static <T> T clone(Coder<T> coder, T value) throws CoderException {
-    return decodeFromByteArray(coder, encodeToByteArray(coder, value));
+    if (threadLocalOutputStreamInUse.get()) {
+      return decodeFromByteArray(coder, encodeToByteArray(coder, value));
+    }
+    // Decode straight out of the thread local stream, rather than from a copy of its contents.
+    // The stream stays marked as in use until decoding is done. A plain ByteArrayInputStream is
+    // used because, unlike ExposedByteArrayInputStream#readAll, it never hands out its buffer, so
+    // the clone cannot alias the thread local buffer that the next encode overwrites.
+    threadLocalOutputStreamInUse.set(true);
+    try {
+      ExposedByteArrayOutputStream stream = getThreadLocalOutputStream();
+      encodeToSafeStream(coder, value, stream, Coder.Context.OUTER);
+      ByteBuffer encoded = stream.toByteBuffer();
+      ByteArrayInputStream input =
+          new ByteArrayInputStream(encoded.array(), encoded.arrayOffset(), encoded.remaining());
+      T result = decodeFromSafeStream(coder, input, Coder.Context.OUTER);
+      if (input.available() != 0) {
+        throw new CoderException(
+            input.available() + " unexpected extra bytes after decoding " + result);
+      }
+      return result;
+    } finally {
+      threadLocalOutputStreamInUse.set(false);
+    }
   }
 
   /**
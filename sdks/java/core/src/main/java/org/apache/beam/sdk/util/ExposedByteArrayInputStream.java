@@ -18,7 +18,11 @@
 package org.apache.beam.sdk.util;
 
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import javax.annotation.Nullable;
 
 /**
  * {@link ByteArrayInputStream} that allows accessing the entire internal buffer without copying.
@@ -29,6 +33,29 @@ public class ExposedByteArrayInputStream extends ByteArrayInputStream{
     super(buf);
   }
 
+  /**
+   * Creates a stream that reads the {@code length} bytes of {@code buf} starting at
+   * {@code offset}.
+   */
+  public ExposedByteArrayInputStream(byte[] buf, int offset, int length) {
+    super(buf, offset, length);
+  }
+
+  /**
+   * Returns the {@link ExposedByteArrayInputStream} that {@code stream} reads from, looking
+   * through an {@link UnownedInputStream} wrapper, or {@code null} if it reads from another kind
+   * of stream. Callers may only read from the returned stream, never close, mark or reset it.
+   */
+  @Nullable
+  public static ExposedByteArrayInputStream unwrap(InputStream stream) {
+    if (stream instanceof UnownedInputStream) {
+      stream = ((UnownedInputStream) stream).getDelegate();
+    }
+    return stream instanceof ExposedByteArrayInputStream
+        ? (ExposedByteArrayInputStream) stream
+        : null;
+  }
+
   /**
    * Read all remaining bytes.
    */
@@ -42,6 +69,22 @@ public class ExposedByteArrayInputStream extends ByteArrayInputStream{
     return ret;
   }
 
+  /**
+   * Reads the next {@code length} bytes and decodes them to a {@link String} using the given
+   * {@link Charset}, without copying them to an intermediate array.
+   *
+   * @throws EOFException if fewer than {@code length} bytes remain in the stream
+   */
+  public String readString(int length, Charset charset) throws EOFException {
+    if (length > count - pos) {
+      throw new EOFException(
+          String.format("Expected %d bytes, but only %d remain", length, count - pos));
+    }
+    String result = new String(buf, pos, length, charset);
+    pos += length;
+    return result;
+  }
+
   @Override
   public void close() {
     try {
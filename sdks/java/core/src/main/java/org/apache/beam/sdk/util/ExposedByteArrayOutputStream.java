@@ -19,6 +19,7 @@ package org.apache.beam.sdk.util;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * {@link ByteArrayOutputStream} special cased to treat writes of a single byte-array specially.
@@ -101,6 +102,15 @@ public class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
     }
   }
 
+  /**
+   * Returns a {@link ByteBuffer} wrapping the current contents of this stream, without copying
+   * them. The returned buffer is only valid until the next write to or {@link #reset()} of this
+   * stream.
+   */
+  public ByteBuffer toByteBuffer() {
+    return ByteBuffer.wrap(buf, 0, count);
+  }
+
   @Override
   public void reset() {
     if (count == 0) {
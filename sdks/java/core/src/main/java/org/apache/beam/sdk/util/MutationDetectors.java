@@ -17,6 +17,7 @@
  */
 package org.apache.beam.sdk.util;
 
+import java.nio.ByteBuffer;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.CoderException;
 
@@ -73,7 +74,6 @@ public class MutationDetectors {
   private static class CodedValueMutationDetector<T> implements MutationDetector {
 
     private final Coder<T> coder;
-    private final T clonedOriginalValue;
 
     /**
      * A saved pointer to an in-memory value provided upon construction, which we will check for
@@ -88,9 +88,8 @@ public class MutationDetectors {
     private final byte[] encodedOriginalObject;
 
     /**
-     * The object decoded from {@link #encodedOriginalObject}. It will be used during every call to
-     * {@link #verifyUnmodified}, which could be called many times throughout the lifetime of this
-     * {@link CodedValueMutationDetector}.
+     * The object decoded from {@link #encodedOriginalObject}. It is only used to report a
+     * mutation.
      */
     private final T clonedOriginalObject;
 
@@ -107,14 +106,13 @@ public class MutationDetectors {
      */
     public CodedValueMutationDetector(T value, Coder<T> coder) throws CoderException {
       this.coder = coder;
+      this.possiblyModifiedObject = value;
+      this.encodedOriginalObject = CoderUtils.encodeToByteArray(coder, value);
       // We need to clone the original value before getting it's structural value.
       // If the object is consistent with equals, the Structural value will be the
       // exact same object reference making it impossible to detect changes.
-      clonedOriginalValue = CoderUtils.clone(coder, value);
-      this.originalStructuralValue = coder.structuralValue(clonedOriginalValue);
-      this.possiblyModifiedObject = value;
-      this.encodedOriginalObject = CoderUtils.encodeToByteArray(coder, value);
       this.clonedOriginalObject = CoderUtils.decodeFromByteArray(coder, encodedOriginalObject);
+      this.originalStructuralValue = coder.structuralValue(clonedOriginalObject);
     }
 
     @Override
@@ -127,6 +125,16 @@ public class MutationDetectors {
     }
 
     private void verifyUnmodifiedThrowingCheckedExceptions() throws CoderException {
+      // If the value still encodes to the same bytes, it decodes to the same value, so there is
+      // no need to clone it. The encoding is compared without copying it out of the reusable
+      // buffer.
+      ByteBuffer encodedPossiblyModifiedObject =
+          CoderUtils.encodeToByteBuffer(coder, possiblyModifiedObject);
+      if (ByteBuffer.wrap(encodedOriginalObject).equals(encodedPossiblyModifiedObject)) {
+        return;
+      }
+
+      // The encoding may differ for a non-deterministic coder even if the value did not change.
       // Since there is no guarantee that cloning an object via the coder will
       // return the exact same type as value, We are cloning the possiblyModifiedObject
       // before getting it's structural value. This way we are guaranteed to compare the same
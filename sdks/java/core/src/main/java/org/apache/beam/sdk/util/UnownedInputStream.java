@@ -68,6 +68,11 @@ public class UnownedInputStream extends FilterInputStream {
         + " and should not call reset().");
   }
 
+  /** Returns the wrapped stream. */
+  InputStream getDelegate() {
+    return in;
+  }
+
   @Override
   public String toString() {
     return MoreObjects.toStringHelper(UnownedInputStream.class).add("in", in).toString();
@@ -18,12 +18,26 @@
 package org.apache.beam.sdk.coders;
 
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 
+import com.google.common.base.Strings;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import org.apache.beam.sdk.coders.Coder.Context;
 import org.apache.beam.sdk.testing.CoderProperties;
 import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.util.ExposedByteArrayInputStream;
+import org.apache.beam.sdk.util.VarInt;
 import org.apache.beam.sdk.values.TypeDescriptor;
 import org.junit.Rule;
 import org.junit.Test;
@@ -81,6 +95,86 @@ public class StringUtf8CoderTest {
     CoderUtils.encodeToBase64(TEST_CODER, null);
   }
 
+  @Test
+  public void testDecodeEncodeEqualMultiByte() throws Exception {
+    for (String value : Arrays.asList(
+        "caf\u00e9", "\u4e2d\u6587", "emoji \ud83d\ude00 in the middle",
+        Strings.repeat("x\u00e9\u4e2d", 100000))) {
+      CoderProperties.coderDecodeEncodeEqual(TEST_CODER, value);
+    }
+  }
+
+  @Test
+  public void testEncodeMatchesStringGetBytes() throws Exception {
+    // Unpaired surrogates cannot be round tripped, but must encode the same as String.getBytes.
+    for (String value : Arrays.asList(
+        "\ud83d", "a\ude00b", "\ud83d\ud83d\ude00", Strings.repeat("\u00e9", 100000))) {
+      byte[] expected = value.getBytes(StandardCharsets.UTF_8);
+
+      ByteArrayOutputStream nested = new ByteArrayOutputStream();
+      TEST_CODER.encode(value, nested);
+      ByteArrayOutputStream expectedNested = new ByteArrayOutputStream();
+      VarInt.encode(expected.length, expectedNested);
+      expectedNested.write(expected);
+      assertArrayEquals(expectedNested.toByteArray(), nested.toByteArray());
+
+      ByteArrayOutputStream outer = new ByteArrayOutputStream();
+      TEST_CODER.encode(value, outer, Context.OUTER);
+      assertArrayEquals(expected, outer.toByteArray());
+    }
+  }
+
+  @Test
+  public void testDecodeConsecutiveValues() throws Exception {
+    ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+    for (String value : TEST_VALUES) {
+      TEST_CODER.encode(value, outStream);
+    }
+    byte[] encoded = outStream.toByteArray();
+
+    ExposedByteArrayInputStream exposedStream = new ExposedByteArrayInputStream(encoded);
+    ByteArrayInputStream plainStream = new ByteArrayInputStream(encoded);
+    for (String value : TEST_VALUES) {
+      assertEquals(value, TEST_CODER.decode(exposedStream));
+      assertEquals(value, TEST_CODER.decode(plainStream));
+    }
+    assertEquals(0, exposedStream.available());
+    assertEquals(0, plainStream.available());
+  }
+
+  @Test
+  public void testDecodeFromByteArrayReadsBackingArray() throws Exception {
+    final List<InputStream> streams = new ArrayList<>();
+    Coder<String> recordingCoder =
+        new AtomicCoder<String>() {
+          @Override
+          public void encode(String value, OutputStream outStream) throws IOException {
+            TEST_CODER.encode(value, outStream);
+          }
+
+          @Override
+          public String decode(InputStream inStream) throws IOException {
+            streams.add(inStream);
+            return TEST_CODER.decode(inStream);
+          }
+        };
+    byte[] encoded = CoderUtils.encodeToByteArray(recordingCoder, "hello");
+
+    assertEquals("hello", CoderUtils.decodeFromByteArray(recordingCoder, encoded));
+    // the stream CoderUtils hands out is wrapped, but the string is read from its backing array.
+    assertThat(ExposedByteArrayInputStream.unwrap(streams.get(0)), notNullValue());
+  }
+
+  @Test
+  public void testDecodeTruncatedThrowsCoderException() throws Exception {
+    ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+    TEST_CODER.encode("hello", outStream);
+    byte[] encoded = outStream.toByteArray();
+    thrown.expect(CoderException.class);
+    TEST_CODER.decode(
+        new ExposedByteArrayInputStream(Arrays.copyOf(encoded, encoded.length - 1)));
+  }
+
   @Test
   public void testEncodedTypeDescriptor() throws Exception {
     assertThat(TEST_CODER.getEncodedTypeDescriptor(), equalTo(TypeDescriptor.of(String.class)));
@@ -24,6 +24,7 @@ import static org.apache.beam.sdk.metrics.MetricResultsMatchers.metricsResult;
 import static org.hamcrest.Matchers.hasItem;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -160,6 +161,83 @@ public class MetricsTest implements Serializable {
     verify(mockCounter).inc(-5);
   }
 
+  @Test
+  public void testCounterLooksUpCellOncePerContainer() {
+    MetricsContainer firstContainer = Mockito.mock(MetricsContainer.class);
+    Counter firstCounter = Mockito.mock(Counter.class);
+    when(firstContainer.getCounter(METRIC_NAME)).thenReturn(firstCounter);
+    MetricsContainer secondContainer = Mockito.mock(MetricsContainer.class);
+    Counter secondCounter = Mockito.mock(Counter.class);
+    when(secondContainer.getCounter(METRIC_NAME)).thenReturn(secondCounter);
+
+    Counter counter = Metrics.counter(NS, NAME);
+
+    MetricsEnvironment.setCurrentContainer(firstContainer);
+    counter.inc(1L);
+    counter.inc(2L);
+    MetricsEnvironment.setCurrentContainer(secondContainer);
+    counter.inc(3L);
+    MetricsEnvironment.setCurrentContainer(firstContainer);
+    counter.inc(4L);
+
+    verify(firstCounter).inc(1L);
+    verify(firstCounter).inc(2L);
+    verify(secondCounter).inc(3L);
+    verify(firstCounter).inc(4L);
+    verify(firstContainer, times(2)).getCounter(METRIC_NAME);
+    verify(secondContainer, times(1)).getCounter(METRIC_NAME);
+  }
+
+  @Test
+  public void testCounterCachesCellPerThread() throws Exception {
+    MetricsContainer mainContainer = Mockito.mock(MetricsContainer.class);
+    Counter mainCounter = Mockito.mock(Counter.class);
+    when(mainContainer.getCounter(METRIC_NAME)).thenReturn(mainCounter);
+    final MetricsContainer otherContainer = Mockito.mock(MetricsContainer.class);
+    Counter otherCounter = Mockito.mock(Counter.class);
+    when(otherContainer.getCounter(METRIC_NAME)).thenReturn(otherCounter);
+
+    final Counter counter = Metrics.counter(NS, NAME);
+
+    MetricsEnvironment.setCurrentContainer(mainContainer);
+    counter.inc(1L);
+    Thread other =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                MetricsEnvironment.setCurrentContainer(otherContainer);
+                counter.inc(2L);
+              }
+            });
+    other.start();
+    other.join();
+    counter.inc(3L);
+
+    verify(mainCounter).inc(1L);
+    verify(otherCounter).inc(2L);
+    verify(mainCounter).inc(3L);
+    // the other thread's container did not evict the cell cached for this thread.
+    verify(mainContainer, times(1)).getCounter(METRIC_NAME);
+  }
+
+  @Test
+  public void testDistributionLooksUpCellOncePerContainer() {
+    MetricsContainer mockContainer = Mockito.mock(MetricsContainer.class);
+    Distribution mockDistribution = Mockito.mock(Distribution.class);
+    when(mockContainer.getDistribution(METRIC_NAME)).thenReturn(mockDistribution);
+
+    Distribution distribution = Metrics.distribution(NS, NAME);
+
+    MetricsEnvironment.setCurrentContainer(mockContainer);
+    distribution.update(5L);
+    distribution.update(7L);
+
+    verify(mockDistribution).update(5L);
+    verify(mockDistribution).update(7L);
+    verify(mockContainer, times(1)).getDistribution(METRIC_NAME);
+  }
+
   @Category({ValidatesRunner.class, UsesCommittedMetrics.class, UsesCounterMetrics.class,
       UsesDistributionMetrics.class, UsesGaugeMetrics.class})
   @Test
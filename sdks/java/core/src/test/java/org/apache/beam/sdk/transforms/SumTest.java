@@ -20,6 +20,7 @@ package org.apache.beam.sdk.transforms;
 import static org.apache.beam.sdk.testing.CombineFnTester.testCombineFn;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
 
 import com.google.common.collect.Lists;
 import org.apache.beam.sdk.coders.BigEndianIntegerCoder;
@@ -28,6 +29,9 @@ import org.apache.beam.sdk.coders.CoderRegistry;
 import org.apache.beam.sdk.coders.DoubleCoder;
 import org.apache.beam.sdk.coders.VarIntCoder;
 import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.testing.CoderProperties;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.values.TenantAwareValue;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -96,4 +100,52 @@ public class SumTest {
         sumDoubleFn.getAccumulatorCoder(STANDARD_REGISTRY, DoubleCoder.of()),
         sumDoubleFn.getAccumulatorCoder(STANDARD_REGISTRY, DoubleCoder.of()));
   }
+
+  @Test
+  public void testAddInputReusesAccumulator() {
+    Combine.BinaryCombineLongFn sumLongFn = Sum.ofLongs();
+    TenantAwareValue<long[]> accumulator =
+        sumLongFn.addInput(
+            sumLongFn.createAccumulator(), TenantAwareValue.of("tenant", 1L));
+    assertSame(
+        accumulator, sumLongFn.addInput(accumulator, TenantAwareValue.of("tenant", 2L)));
+    assertEquals(3L, accumulator.getValue()[0]);
+    assertEquals(3L, sumLongFn.applyAsLong(1L, 2L));
+  }
+
+  @Test
+  public void testAccumulatorCoderMatchesInputEncoding() throws Exception {
+    long[] accumulator = {-300L};
+    Combine.BinaryCombineLongFn sumLongFn = Sum.ofLongs();
+    TenantAwareValue.TenantAwareValueCoder<long[]> longCoder =
+        sumLongFn.getAccumulatorCoder(STANDARD_REGISTRY, VarLongCoder.of());
+    byte[] encoded =
+        CoderUtils.encodeToByteArray(longCoder, TenantAwareValue.of("tenant", accumulator));
+    assertEquals(
+        CoderUtils.encodeToBase64(
+            TenantAwareValue.TenantAwareValueCoder.of(VarLongCoder.of()),
+            TenantAwareValue.of("tenant", -300L)),
+        CoderUtils.encodeToBase64(longCoder, TenantAwareValue.of("tenant", accumulator)));
+    assertEquals(
+        -300L, CoderUtils.decodeFromByteArray(longCoder, encoded).getValue()[0]);
+    CoderProperties.coderSerializable(longCoder);
+
+    Combine.BinaryCombineIntegerFn sumIntegerFn = Sum.ofIntegers();
+    TenantAwareValue.TenantAwareValueCoder<int[]> intCoder =
+        sumIntegerFn.getAccumulatorCoder(STANDARD_REGISTRY, VarIntCoder.of());
+    assertEquals(
+        CoderUtils.encodeToBase64(
+            TenantAwareValue.TenantAwareValueCoder.of(VarIntCoder.of()),
+            TenantAwareValue.of("tenant", 42)),
+        CoderUtils.encodeToBase64(intCoder, TenantAwareValue.of("tenant", new int[] {42})));
+
+    Combine.BinaryCombineDoubleFn sumDoubleFn = Sum.ofDoubles();
+    TenantAwareValue.TenantAwareValueCoder<double[]> doubleCoder =
+        sumDoubleFn.getAccumulatorCoder(STANDARD_REGISTRY, DoubleCoder.of());
+    assertEquals(
+        CoderUtils.encodeToBase64(
+            TenantAwareValue.TenantAwareValueCoder.of(DoubleCoder.of()),
+            TenantAwareValue.of("tenant", 1.5)),
+        CoderUtils.encodeToBase64(doubleCoder, TenantAwareValue.of("tenant", new double[] {1.5})));
+  }
 }
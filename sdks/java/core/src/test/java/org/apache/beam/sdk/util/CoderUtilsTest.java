@@ -17,6 +17,8 @@
  */
 package org.apache.beam.sdk.util;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doThrow;
@@ -24,10 +26,17 @@ import static org.mockito.Mockito.mock;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
 import org.apache.beam.sdk.coders.AtomicCoder;
+import org.apache.beam.sdk.coders.ByteArrayCoder;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.Coder.Context;
 import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.ListCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
 import org.apache.beam.sdk.testing.CoderPropertiesTest.ClosingCoder;
 import org.junit.Rule;
 import org.junit.Test;
@@ -121,4 +130,74 @@ public class CoderUtilsTest {
     expectedException.expectMessage("Caller does not own the underlying");
     CoderUtils.encodeToByteArray(new ClosingCoder(), "test-value", Context.NESTED);
   }
+
+  @Test
+  public void testEncodeToByteBuffer() throws Exception {
+    ByteBuffer encoded = CoderUtils.encodeToByteBuffer(StringUtf8Coder.of(), "hello");
+    byte[] bytes = new byte[encoded.remaining()];
+    encoded.get(bytes);
+    assertArrayEquals(CoderUtils.encodeToByteArray(StringUtf8Coder.of(), "hello"), bytes);
+  }
+
+  @Test
+  public void testEncodeToByteBufferInContext() throws Exception {
+    ByteBuffer encoded =
+        CoderUtils.encodeToByteBuffer(StringUtf8Coder.of(), "hello", Context.NESTED);
+    assertEquals(
+        "hello", CoderUtils.decodeFromByteBuffer(StringUtf8Coder.of(), encoded, Context.NESTED));
+  }
+
+  @Test
+  public void testDecodeFromByteBufferSlice() throws Exception {
+    byte[] encoded = CoderUtils.encodeToByteArray(VarIntCoder.of(), 300);
+    byte[] padded = new byte[encoded.length + 4];
+    System.arraycopy(encoded, 0, padded, 2, encoded.length);
+    ByteBuffer buffer = ByteBuffer.wrap(padded, 2, encoded.length).slice();
+
+    assertEquals(300, (int) CoderUtils.decodeFromByteBuffer(VarIntCoder.of(), buffer));
+    assertEquals(0, buffer.position());
+    assertEquals(
+        300,
+        (int) CoderUtils.decodeFromByteBuffer(VarIntCoder.of(), buffer.asReadOnlyBuffer()));
+  }
+
+  @Test
+  public void testDecodeFromByteBufferExtraBytes() throws Exception {
+    expectedException.expect(CoderException.class);
+    expectedException.expectMessage("unexpected extra bytes");
+    CoderUtils.decodeFromByteBuffer(VarIntCoder.of(), ByteBuffer.wrap(new byte[] {1, 2}));
+  }
+
+  @Test
+  public void testClone() throws Exception {
+    List<String> value = Arrays.asList("a", "b", "c");
+    ListCoder<String> coder = ListCoder.of(StringUtf8Coder.of());
+    List<String> clone = CoderUtils.clone(coder, value);
+    assertEquals(value, clone);
+
+    // A ByteBuffer obtained before cloning is overwritten, the clone is not.
+    CoderUtils.encodeToByteBuffer(coder, Arrays.asList("x", "y", "z"));
+    assertEquals(value, clone);
+  }
+
+  @Test
+  public void testClosingCoderFailsWhenEncodingToByteBuffer() throws Exception {
+    expectedException.expect(UnsupportedOperationException.class);
+    expectedException.expectMessage("Caller does not own the underlying");
+    CoderUtils.encodeToByteBuffer(new ClosingCoder(), "test-value");
+  }
+
+  @Test
+  public void testCloneDoesNotAliasThreadLocalBuffer() throws Exception {
+    // 32 bytes exactly fill the thread local stream's initial buffer.
+    byte[] value = new byte[32];
+    Arrays.fill(value, (byte) 7);
+
+    byte[] clone = CoderUtils.clone(ByteArrayCoder.of(), value);
+    byte[] other = new byte[32];
+    Arrays.fill(other, (byte) 9);
+    CoderUtils.encodeToByteArray(ByteArrayCoder.of(), other);
+
+    assertArrayEquals(value, clone);
+  }
 }
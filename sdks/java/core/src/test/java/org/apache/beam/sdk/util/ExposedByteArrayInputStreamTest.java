@@ -23,7 +23,9 @@ import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertSame;
 
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -76,4 +78,16 @@ public class ExposedByteArrayInputStreamTest {
     assertArrayEquals("ello World!".getBytes(), ret);
   }
 
+  @Test
+  public void testReadString() throws IOException {
+    assertNotEquals(-1, exposedStream.read());
+    assertEquals("ello", exposedStream.readString(4, StandardCharsets.UTF_8));
+    assertEquals(" World!", exposedStream.readString(7, StandardCharsets.UTF_8));
+    assertEquals(0, exposedStream.available());
+  }
+
+  @Test(expected = EOFException.class)
+  public void testReadStringPastEnd() throws IOException {
+    exposedStream.readString(TEST_DATA.length + 1, StandardCharsets.UTF_8);
+  }
 }
@@ -30,17 +30,19 @@ import org.apache.beam.sdk.values.KV;
  */
 public class BufferedExternalSorter implements Sorter {
   public static Options options() {
-    return new Options("/tmp", 100);
+    return new Options("/tmp", 100, false);
   }
 
   /** Contains configuration for the sorter. */
   public static class Options implements Serializable {
     private final String tempLocation;
     private final int memoryMB;
+    private final boolean compressRuns;
 
-    private Options(String tempLocation, int memoryMB) {
+    private Options(String tempLocation, int memoryMB, boolean compressRuns) {
       this.tempLocation = tempLocation;
       this.memoryMB = memoryMB;
+      this.compressRuns = compressRuns;
     }
 
     /** Sets the path to a temporary location where the sorter writes intermediate files. */
@@ -49,7 +51,7 @@ public class BufferedExternalSorter implements Sorter {
           !tempLocation.startsWith("gs://"),
           "BufferedExternalSorter does not support GCS temporary location");
 
-      return new Options(tempLocation, memoryMB);
+      return new Options(tempLocation, memoryMB, compressRuns);
     }
 
     /** Returns the configured temporary location. */
@@ -64,16 +66,29 @@ public class BufferedExternalSorter implements Sorter {
      */
     public Options withMemoryMB(int memoryMB) {
       checkArgument(memoryMB > 0, "memoryMB must be greater than zero");
-      // Hadoop's external sort stores the number of available memory bytes in an int, this prevents
+      // The external sort computes the number of available memory bytes in an int, this prevents
       // overflow
       checkArgument(memoryMB < 2048, "memoryMB must be less than 2048");
-      return new Options(tempLocation, memoryMB);
+      return new Options(tempLocation, memoryMB, compressRuns);
     }
 
     /** Returns the configured size of the memory buffer. */
     public int getMemoryMB() {
       return memoryMB;
     }
+
+    /**
+     * Sets whether the intermediate files written once the values don't fit into memory are
+     * compressed with Snappy.
+     */
+    public Options withCompressRuns(boolean compressRuns) {
+      return new Options(tempLocation, memoryMB, compressRuns);
+    }
+
+    /** Returns whether the intermediate files are compressed. */
+    public boolean getCompressRuns() {
+      return compressRuns;
+    }
   }
 
   private ExternalSorter externalSorter;
@@ -90,6 +105,7 @@ public class BufferedExternalSorter implements Sorter {
     ExternalSorter.Options externalSorterOptions = new ExternalSorter.Options();
     externalSorterOptions.setMemoryMB(options.getMemoryMB());
     externalSorterOptions.setTempLocation(options.getTempLocation());
+    externalSorterOptions.setCompressRuns(options.getCompressRuns());
 
     InMemorySorter.Options inMemorySorterOptions = new InMemorySorter.Options();
     inMemorySorterOptions.setMemoryMB(options.getMemoryMB());
@@ -120,9 +136,8 @@ public class BufferedExternalSorter implements Sorter {
    * sorter.
    */
   private void transferToExternalSorter() throws IOException {
-    for (KV<byte[], byte[]> record : inMemorySorter.sort()) {
-      externalSorter.add(record);
-    }
+    // Already sorted, so written out as a single run rather than buffered again
+    externalSorter.addSorted(inMemorySorter.sort());
     // Allow in memory sorter and its contents to be garbage collected
     inMemorySorter = null;
   }
@@ -15,56 +15,105 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package org.apache.beam.sdk.extensions.sorter;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import com.google.common.primitives.UnsignedBytes;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.beam.sdk.util.VarInt;
 import org.apache.beam.sdk.values.KV;
-import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.BytesWritable;
-import org.apache.hadoop.io.SequenceFile;
-import org.apache.hadoop.io.SequenceFile.CompressionType;
-import org.apache.hadoop.io.SequenceFile.Sorter.RawKeyValueIterator;
-import org.apache.hadoop.io.SequenceFile.Writer;
-import org.apache.hadoop.mapred.JobConf;
-
-/** Does an external sort of the provided values using Hadoop's {@link SequenceFile}. */
-class ExternalSorter implements Sorter {
+import org.xerial.snappy.SnappyInputStream;
+import org.xerial.snappy.SnappyOutputStream;
+
+/**
+ * Does an external sort of the provided values.
+ *
+ * <p>Records are collected in an {@link InMemorySorter} sized by {@link Options#getMemoryMB()}.
+ * Whenever it fills up, its contents are sorted and written to a temporary file as a sorted run.
+ * {@link #sort()} merges all runs with a loser tree, first merging groups of runs into larger runs
+ * if there are more of them than can be read at once with the configured memory.
+ *
+ * <p>The runs are deleted by {@link #close()}, or else once the sorter and the {@link Iterable}
+ * returned by {@link #sort()} are garbage collected, and at the latest when the JVM exits.
+ */
+class ExternalSorter implements Sorter, AutoCloseable {
+  /** The comparator to use to merge the records by key. */
+  private static final Comparator<byte[]> COMPARATOR = UnsignedBytes.lexicographicalComparator();
+
+  /** Size of the buffer used when writing a run. */
+  private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+  /** Size of the buffer used for each run being read during a merge. */
+  private static final int READ_BUFFER_SIZE = 256 * 1024;
+
+  /** Maximum number of runs merged at once, bounds the number of open files. */
+  private static final int MAX_MERGE_FAN_IN = 512;
+
+  /** Temporary directories not deleted yet, deleted on exit if still there. */
+  private static final Set<TempDirReference> TEMP_DIRS = ConcurrentHashMap.newKeySet();
+
+  /** Enqueues the temporary directories of sorters that can no longer be read. */
+  private static final ReferenceQueue<ExternalSorter> UNREACHABLE_SORTERS = new ReferenceQueue<>();
+
+  static {
+    // A single hook for all sorters, unlike File#deleteOnExit which keeps every path registered
+    // until the JVM exits.
+    Runtime.getRuntime()
+        .addShutdownHook(
+            new Thread(
+                () -> {
+                  for (TempDirReference tempDir : TEMP_DIRS) {
+                    tempDir.delete();
+                  }
+                }));
+  }
+
   private Options options;
 
   /** Whether {@link #sort()} was already called. */
   private boolean sortCalled = false;
 
-  /** SequenceFile Writer for writing all input data to a file. */
-  private Writer writer;
+  /** Buffer of records not yet written to a run. */
+  private InMemorySorter buffer;
 
-  /** Sorter used to sort the input file. */
-  private SequenceFile.Sorter sorter;
+  /** Temporary directory for the runs, created when the first run is written. */
+  private TempDirReference tempDir;
 
-  /** Temporary directory for input and intermediate files. */
-  private Path tempDir;
-
-  /** The list of input files to be sorted. */
-  private Path[] paths;
-
-  private boolean initialized = false;
+  /** Sorted runs written so far, in the order their records were added. */
+  private List<Run> runs = new ArrayList<>();
 
   /** {@link Options} contains configuration of the sorter. */
   public static class Options implements Serializable {
     private String tempLocation = "/tmp";
     private int memoryMB = 100;
+    private boolean compressRuns = false;
 
     /** Sets the path to a temporary location where the sorter writes intermediate files. */
     public Options setTempLocation(String tempLocation) {
@@ -87,8 +136,7 @@ class ExternalSorter implements Sorter {
      */
     public Options setMemoryMB(int memoryMB) {
       checkArgument(memoryMB > 0, "memoryMB must be greater than zero");
-      // Hadoop's external sort stores the number of available memory bytes in an int, this prevents
-      // integer overflow
+      // The number of available memory bytes is computed in an int, this prevents integer overflow
       checkArgument(memoryMB < 2048, "memoryMB must be less than 2048");
       this.memoryMB = memoryMB;
       return this;
@@ -98,6 +146,20 @@ class ExternalSorter implements Sorter {
     public int getMemoryMB() {
       return memoryMB;
     }
+
+    /**
+     * Sets whether the intermediate files are compressed with Snappy. Trades CPU for disk
+     * bandwidth, which pays off for records that compress well on slow disks.
+     */
+    public Options setCompressRuns(boolean compressRuns) {
+      this.compressRuns = compressRuns;
+      return this;
+    }
+
+    /** Returns whether the intermediate files are compressed. */
+    public boolean getCompressRuns() {
+      return compressRuns;
+    }
   }
 
   /** Returns a {@link Sorter} configured with the given {@link Options}. */
@@ -109,12 +171,34 @@ class ExternalSorter implements Sorter {
   public void add(KV<byte[], byte[]> record) throws IOException {
     checkState(!sortCalled, "Records can only be added before sort()");
 
-    initHadoopSorter();
+    if (buffer == null) {
+      buffer = newBuffer();
+    }
+    if (!buffer.addIfRoom(record)) {
+      writeRun(buffer.sort());
+      buffer = newBuffer();
+      if (!buffer.addIfRoom(record)) {
+        // Larger than the whole buffer, so it gets a run of its own.
+        writeRun(Collections.singletonList(record));
+        buffer = null;
+      }
+    }
+  }
 
-    BytesWritable key = new BytesWritable(record.getKey());
-    BytesWritable value = new BytesWritable(record.getValue().getValue());
+  /**
+   * Adds records that are already sorted by key among themselves. They are written as a run of
+   * their own and merged with the other records by {@link #sort()}, where they come after any
+   * previously added records with equal keys. Used to hand over the contents of another sorter
+   * without buffering them a second time.
+   */
+  void addSorted(Iterable<KV<byte[], byte[]>> sortedRecords) throws IOException {
+    checkState(!sortCalled, "Records can only be added before sort()");
 
-    writer.append(key, value);
+    if (buffer != null) {
+      writeRun(buffer.sort());
+      buffer = null;
+    }
+    writeRun(sortedRecords);
   }
 
   @Override
@@ -122,116 +206,324 @@ class ExternalSorter implements Sorter {
     checkState(!sortCalled, "sort() can only be called once.");
     sortCalled = true;
 
-    initHadoopSorter();
+    if (runs.isEmpty()) {
+      // Everything fit into memory, no need to touch the disk.
+      return buffer == null ? Collections.emptyList() : buffer.sort();
+    }
+    if (buffer != null) {
+      writeRun(buffer.sort());
+      buffer = null;
+    }
 
-    writer.close();
+    int fanIn = Math.max(2, Math.min(MAX_MERGE_FAN_IN, memoryBytes() / READ_BUFFER_SIZE));
+    while (runs.size() > fanIn) {
+      // Merge neighbouring runs so records with equal keys keep the order they were added in.
+      List<Run> merged = new ArrayList<>();
+      for (int i = 0; i < runs.size(); i += fanIn) {
+        List<Run> group = runs.subList(i, Math.min(i + fanIn, runs.size()));
+        if (group.size() == 1) {
+          merged.add(group.get(0));
+          continue;
+        }
+        Run run = newRun();
+        try (RunWriter writer = new RunWriter(run);
+            MergingIterator iterator = new MergingIterator(group)) {
+          while (iterator.hasNext()) {
+            writer.write(iterator.next());
+          }
+        }
+        for (Run input : group) {
+          Files.delete(input.path);
+        }
+        merged.add(run);
+      }
+      runs = merged;
+    }
 
-    return new SortedRecordsIterable();
+    List<Run> sortedRuns = runs;
+    return () -> new MergingIterator(sortedRuns);
+  }
+
+  /**
+   * Deletes the runs written so far. The {@link Iterable} returned by {@link #sort()} can no longer
+   * be iterated afterwards.
+   */
+  @Override
+  public void close() {
+    if (tempDir != null) {
+      tempDir.delete();
+    }
   }
 
   private ExternalSorter(Options options) {
     this.options = options;
   }
 
+  private int memoryBytes() {
+    return options.getMemoryMB() * 1024 * 1024;
+  }
+
+  private InMemorySorter newBuffer() {
+    InMemorySorter.Options bufferOptions = new InMemorySorter.Options();
+    bufferOptions.setMemoryMB(options.getMemoryMB());
+    return InMemorySorter.create(bufferOptions);
+  }
+
+  /** Writes the given sorted records to a new run. */
+  private void writeRun(Iterable<KV<byte[], byte[]>> sortedRecords) throws IOException {
+    Run run = newRun();
+    try (RunWriter writer = new RunWriter(run)) {
+      for (KV<byte[], byte[]> record : sortedRecords) {
+        writer.write(record);
+      }
+    }
+    runs.add(run);
+  }
+
+  /** Creates a new, empty run within the temporary directory. */
+  private Run newRun() throws IOException {
+    if (tempDir == null) {
+      deleteUnreachableTempDirs();
+      Path dir = Paths.get(options.getTempLocation(), "tmp" + UUID.randomUUID().toString());
+      Files.createDirectories(dir);
+      tempDir = new TempDirReference(this, dir);
+    }
+    return new Run(Files.createTempFile(tempDir.dir, "run", ".bin"));
+  }
+
+  /** Deletes the temporary directories of sorters that were garbage collected. */
+  private static void deleteUnreachableTempDirs() {
+    Reference<? extends ExternalSorter> reference;
+    while ((reference = UNREACHABLE_SORTERS.poll()) != null) {
+      ((TempDirReference) reference).delete();
+    }
+  }
+
   /**
-   * Initializes the hadoop sorter. Does some local file system setup, and is somewhat expensive
-   * (~20 ms on local machine). Only executed when necessary.
+   * The temporary directory of a sorter, enqueued once the sorter is unreachable. The sorted
+   * {@link Iterable} and its iterators refer to their sorter, so the runs are not deleted while
+   * they can still be read.
    */
-  private void initHadoopSorter() throws IOException {
-    if (!initialized) {
-      tempDir = new Path(options.getTempLocation(), "tmp" + UUID.randomUUID().toString());
-      paths = new Path[] {new Path(tempDir, "test.seq")};
+  private static class TempDirReference extends PhantomReference<ExternalSorter> {
+    private final Path dir;
 
-      JobConf conf = new JobConf();
-      // Sets directory for intermediate files created during merge of merge sort
-      conf.set("io.seqfile.local.dir", tempDir.toUri().getPath());
+    TempDirReference(ExternalSorter sorter, Path dir) {
+      super(sorter, UNREACHABLE_SORTERS);
+      this.dir = dir;
+      TEMP_DIRS.add(this);
+    }
 
-      writer =
-          SequenceFile.createWriter(
-              conf,
-              Writer.valueClass(BytesWritable.class),
-              Writer.keyClass(BytesWritable.class),
-              Writer.file(paths[0]),
-              Writer.compression(CompressionType.NONE));
+    /** Deletes the directory and the runs within it, ignoring failures. */
+    void delete() {
+      if (!TEMP_DIRS.remove(this)) {
+        return;
+      }
+      try {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+          for (Path file : files) {
+            Files.deleteIfExists(file);
+          }
+        }
+        Files.deleteIfExists(dir);
+      } catch (IOException e) {
+        // Best effort, like File#deleteOnExit.
+      }
+    }
+  }
+
+  /** A sorted run of records in a temporary file. */
+  private static class Run {
+    private final Path path;
+    private long numRecords;
+
+    Run(Path path) {
+      this.path = path;
+    }
+  }
 
-      FileSystem fs = FileSystem.getLocal(conf);
-      // Directory has to exist for Hadoop to recognize it as deletable on exit
-      fs.mkdirs(tempDir);
-      fs.deleteOnExit(tempDir);
+  /**
+   * Writes records to a {@link Run}, each as the lengths of key and value as {@link VarInt}s
+   * followed by their bytes.
+   */
+  private class RunWriter implements AutoCloseable {
+    private final Run run;
+    private final DataOutputStream out;
+
+    RunWriter(Run run) throws IOException {
+      this.run = run;
+      OutputStream file = new FileOutputStream(run.path.toFile());
+      this.out =
+          new DataOutputStream(
+              new BufferedOutputStream(
+                  options.getCompressRuns() ? new SnappyOutputStream(file) : file,
+                  WRITE_BUFFER_SIZE));
+    }
 
-      sorter =
-          new SequenceFile.Sorter(
-              fs, new BytesWritable.Comparator(), BytesWritable.class, BytesWritable.class, conf);
-      sorter.setMemory(options.getMemoryMB() * 1024 * 1024);
+    void write(KV<byte[], byte[]> record) throws IOException {
+      byte[] key = record.getKey();
+      byte[] value = record.getValue();
+      VarInt.encode(key.length, out);
+      VarInt.encode(value.length, out);
+      out.write(key);
+      out.write(value);
+      run.numRecords++;
+    }
 
-      initialized = true;
+    @Override
+    public void close() throws IOException {
+      out.close();
     }
   }
 
-  /** An {@link Iterable} producing the iterators over sorted data. */
-  private class SortedRecordsIterable implements Iterable<KV<byte[], byte[]>> {
+  /** Reads the records of a {@link Run} back in order. */
+  private class RunReader implements AutoCloseable {
+    private final DataInputStream in;
+    private long remaining;
+
+    RunReader(Run run) throws IOException {
+      this.remaining = run.numRecords;
+      InputStream file =
+          new BufferedInputStream(new FileInputStream(run.path.toFile()), READ_BUFFER_SIZE);
+      this.in = new DataInputStream(options.getCompressRuns() ? new SnappyInputStream(file) : file);
+    }
+
+    /** Returns the next record, or null if the run is exhausted. */
+    KV<byte[], byte[]> read() throws IOException {
+      if (remaining == 0) {
+        return null;
+      }
+      remaining--;
+      byte[] key = new byte[VarInt.decodeInt(in)];
+      byte[] value = new byte[VarInt.decodeInt(in)];
+      in.readFully(key);
+      in.readFully(value);
+      return KV.of(key, value);
+    }
+
     @Override
-    public Iterator<KV<byte[], byte[]>> iterator() {
-      return new SortedRecordsIterator();
+    public void close() throws IOException {
+      in.close();
     }
   }
 
-  /** An {@link Iterator} producing the sorted data. */
-  private class SortedRecordsIterator implements Iterator<KV<byte[], byte[]>> {
-    private RawKeyValueIterator iterator;
+  /**
+   * An {@link Iterator} merging sorted runs with a loser tree, which needs a single comparison per
+   * level of the tree for each record. Records with equal keys are returned in the order of the
+   * runs they come from.
+   */
+  private class MergingIterator implements Iterator<KV<byte[], byte[]>>, AutoCloseable {
+    private final RunReader[] readers;
+
+    /** The current record of every run, null once the run is exhausted. */
+    private final KV<byte[], byte[]>[] heads;
 
-    /** Next {@link KV} to return from {@link #next()}. */
-    private KV<byte[], byte[]> nextKV = null;
+    /** The index of the overall winner at position zero and of the loser at every inner node. */
+    private final int[] tree;
 
-    SortedRecordsIterator() {
+    @SuppressWarnings("unchecked")
+    MergingIterator(List<Run> runs) {
+      int numRuns = runs.size();
+      readers = new RunReader[numRuns];
+      heads = new KV[numRuns];
+      tree = new int[numRuns];
       try {
-        this.iterator = sorter.sortAndIterate(paths, tempDir, false);
+        for (int i = 0; i < numRuns; i++) {
+          readers[i] = new RunReader(runs.get(i));
+          heads[i] = readers[i].read();
+        }
       } catch (IOException e) {
+        closeQuietly();
         throw new RuntimeException(e);
       }
 
-      nextKV = KV.of(null, null); // A dummy value that will be overwritten by next().
-      next();
+      // Leaves are at positions numRuns to 2 * numRuns - 1, play the initial tournament upwards.
+      int[] winners = new int[2 * numRuns];
+      for (int i = 0; i < numRuns; i++) {
+        winners[numRuns + i] = i;
+      }
+      for (int node = numRuns - 1; node > 0; node--) {
+        int left = winners[2 * node];
+        int right = winners[2 * node + 1];
+        if (beats(left, right)) {
+          winners[node] = left;
+          tree[node] = right;
+        } else {
+          winners[node] = right;
+          tree[node] = left;
+        }
+      }
+      tree[0] = winners[1];
     }
 
     @Override
     public boolean hasNext() {
-      return nextKV != null;
+      return heads[tree[0]] != null;
     }
 
     @Override
     public KV<byte[], byte[]> next() {
-      if (nextKV == null) {
+      int winner = tree[0];
+      KV<byte[], byte[]> current = heads[winner];
+      if (current == null) {
         throw new NoSuchElementException();
       }
 
-      KV<byte[], byte[]> current = nextKV;
-
       try {
-        if (iterator.next()) {
-          // Parse key from DataOutputBuffer.
-          ByteArrayInputStream keyStream = new ByteArrayInputStream(iterator.getKey().getData());
-          BytesWritable key = new BytesWritable();
-          key.readFields(new DataInputStream(keyStream));
-
-          // Parse value from ValueBytes.
-          ByteArrayOutputStream valOutStream = new ByteArrayOutputStream();
-          iterator.getValue().writeUncompressedBytes(new DataOutputStream(valOutStream));
-          ByteArrayInputStream valInStream = new ByteArrayInputStream(valOutStream.toByteArray());
-          BytesWritable value = new BytesWritable();
-          value.readFields(new DataInputStream(valInStream));
-
-          nextKV = KV.of(key.copyBytes(), value.copyBytes());
-        } else {
-          nextKV = null;
+        heads[winner] = readers[winner].read();
+        if (heads[winner] == null) {
+          readers[winner].close();
         }
       } catch (IOException e) {
+        closeQuietly();
         throw new RuntimeException(e);
       }
 
+      // Replay the matches on the path from the winner's leaf to the root.
+      for (int node = (winner + readers.length) / 2; node > 0; node /= 2) {
+        if (beats(tree[node], winner)) {
+          int loser = winner;
+          winner = tree[node];
+          tree[node] = loser;
+        }
+      }
+      tree[0] = winner;
+
+      if (heads[winner] == null) {
+        // Every run is exhausted.
+        closeQuietly();
+      }
       return current;
     }
 
+    /** Returns whether the head of run {@code a} is returned before the head of run {@code b}. */
+    private boolean beats(int a, int b) {
+      if (heads[a] == null) {
+        return false;
+      }
+      if (heads[b] == null) {
+        return true;
+      }
+      int comparison = COMPARATOR.compare(heads[a].getKey(), heads[b].getKey());
+      return comparison < 0 || (comparison == 0 && a < b);
+    }
+
+    @Override
+    public void close() throws IOException {
+      for (RunReader reader : readers) {
+        if (reader != null) {
+          reader.close();
+        }
+      }
+    }
+
+    private void closeQuietly() {
+      try {
+        close();
+      } catch (IOException e) {
+        // Already failing or done reading, nothing more to do.
+      }
+    }
+
     @Override
     public void remove() {
       throw new UnsupportedOperationException("Iterator does not support remove");
@@ -15,22 +15,28 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package org.apache.beam.sdk.extensions.sorter;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 
-import com.google.common.primitives.UnsignedBytes;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import org.apache.beam.sdk.values.KV;
 
 /**
  * Sorts {@code <key, value>} pairs in memory. Based on the configured size of the memory buffer,
  * will reject additional pairs.
+ *
+ * <p>Records are not retained as {@link KV} objects. Their bytes are copied into large pages and
+ * each record is represented by two {@code long}s in a pointer array: the first eight bytes of
+ * its key, read as an unsigned big-endian number, and the address of the record within the pages.
+ * Sorting orders the pointer array and only dereferences the pages when two key prefixes are
+ * equal, which keeps both the per-record overhead and the number of cache misses small.
  */
 class InMemorySorter implements Sorter {
   /** {@code Options} contains configuration of the sorter. */
@@ -49,37 +55,42 @@ class InMemorySorter implements Sorter {
     }
   }
 
-  /** The comparator to use to sort the records by key. */
-  private static final Comparator<byte[]> COMPARATOR = UnsignedBytes.lexicographicalComparator();
+  /** Size of a regular page. Records that don't fit into one get a page of their own. */
+  private static final int PAGE_SIZE = 64 * 1024;
 
-  /** How many bytes per word in the running JVM. Assumes 64 bit/8 bytes if unknown. */
-  private static final long NUM_BYTES_PER_WORD = getNumBytesPerWord();
+  /** Bytes in front of every record in a page: the key length and the value length. */
+  private static final int RECORD_HEADER_SIZE = 8;
 
-  /**
-   * Estimate of memory overhead per KV record in bytes not including memory associated with keys
-   * and values.
-   *
-   * <ul>
-   *   <li>Object reference within {@link ArrayList} (1 word),
-   *   <li>A {@link KV} (2 words),
-   *   <li>Two byte arrays (2 words for array lengths),
-   *   <li>Per-object overhead (JVM-specific, guessing 2 words * 3 objects)
-   * </ul>
-   */
-  private static final long RECORD_MEMORY_OVERHEAD_ESTIMATE = 11 * NUM_BYTES_PER_WORD;
+  /** Number of {@code long}s used per record in the pointer array: key prefix and address. */
+  private static final int POINTER_SIZE = 2;
+
+  /** Initial number of records the pointer array has room for. */
+  private static final int INITIAL_CAPACITY = 64;
+
+  /** Runs shorter than this are sorted with insertion sort. */
+  private static final int INSERTION_SORT_THRESHOLD = 16;
 
   /** Maximum size of the buffer in bytes. */
-  private long maxBufferSize;
+  private final long maxBufferSize;
+
+  /** Pages holding the key and value bytes of the records. */
+  private final List<byte[]> pages = new ArrayList<>();
 
-  /** Current number of stored bytes. Including estimated overhead bytes. */
-  private long numBytes;
+  /** Total size of all allocated pages. */
+  private long pageBytes;
+
+  /** Write position within the last page. */
+  private int pageOffset;
+
+  /** Key prefix and address of every record, {@link #POINTER_SIZE} {@code long}s per record. */
+  private long[] pointers = new long[0];
+
+  /** Number of records stored. */
+  private int numRecords;
 
   /** Whether sort has been called. */
   private boolean sortCalled;
 
-  /** The stored records to be sorted. */
-  private ArrayList<KV<byte[], byte[]>> records = new ArrayList<>();
-
   /** Private constructor. */
   private InMemorySorter(Options options) {
     maxBufferSize = options.getMemoryMB() * 1024L * 1024L;
@@ -99,14 +110,44 @@ class InMemorySorter implements Sorter {
   public boolean addIfRoom(KV<byte[], byte[]> record) {
     checkState(!sortCalled, "Records can only be added before sort()");
 
-    long recordBytes = estimateRecordBytes(record);
-    if (roomInBuffer(numBytes + recordBytes, records.size() + 1)) {
-      records.add(record);
-      numBytes += recordBytes;
-      return true;
-    } else {
+    byte[] key = record.getKey();
+    byte[] value = record.getValue();
+    long recordSize = (long) RECORD_HEADER_SIZE + key.length + value.length;
+    if (recordSize > Integer.MAX_VALUE || numRecords == Integer.MAX_VALUE / POINTER_SIZE) {
       return false;
     }
+
+    long pointerCapacity = pointers.length / POINTER_SIZE;
+    if (numRecords == pointerCapacity) {
+      long minCapacity = numRecords + 1;
+      pointerCapacity = Math.max(minCapacity, Math.max(INITIAL_CAPACITY, pointerCapacity * 2));
+      pointerCapacity = Math.min(pointerCapacity, Integer.MAX_VALUE / POINTER_SIZE);
+      if (!roomInBuffer(pageBytes + newPageSize(recordSize), pointerCapacity, minCapacity)) {
+        // Size the pointers for the records that are still likely to fit into what is left of
+        // the buffer, assuming they are as large as the ones seen so far.
+        long averageRecordBytes = numRecords == 0 ? recordSize : pageBytes / numRecords;
+        // Each record also needs its pointer and half a pointer of scratch space.
+        long bytesPerRecord = averageRecordBytes + POINTER_SIZE * 8L * 3 / 2;
+        long remainingBytes = maxBufferSize - 1 - pageBytes - newPageSize(recordSize);
+        pointerCapacity =
+            Math.max(
+                minCapacity,
+                (remainingBytes + numRecords * averageRecordBytes) / bytesPerRecord);
+        pointerCapacity = Math.min(pointerCapacity, Integer.MAX_VALUE / POINTER_SIZE);
+      }
+    }
+    if (!roomInBuffer(pageBytes + newPageSize(recordSize), pointerCapacity, numRecords + 1)) {
+      return false;
+    }
+
+    if (pointerCapacity * POINTER_SIZE != pointers.length) {
+      pointers = Arrays.copyOf(pointers, (int) pointerCapacity * POINTER_SIZE);
+    }
+    long address = write(key, value, (int) recordSize);
+    pointers[numRecords * POINTER_SIZE] = prefix(key);
+    pointers[numRecords * POINTER_SIZE + 1] = address;
+    numRecords++;
+    return true;
   }
 
   @Override
@@ -115,48 +156,196 @@ class InMemorySorter implements Sorter {
 
     sortCalled = true;
 
-    Comparator<KV<byte[], byte[]>> kvComparator =
-        (o1, o2) -> COMPARATOR.compare(o1.getKey(), o2.getKey());
-    records.sort(kvComparator);
-    return Collections.unmodifiableList(records);
+    if (numRecords > INSERTION_SORT_THRESHOLD) {
+      // Merging copies the left half of a run aside, so half of the pointers is enough.
+      long[] scratch = new long[(numRecords / 2) * POINTER_SIZE];
+      mergeSort(0, numRecords, scratch);
+    } else {
+      insertionSort(0, numRecords);
+    }
+    return SortedRecordsIterator::new;
   }
 
   /**
-   * Estimate the number of additional bytes required to store this record. Including the key, the
-   * value and any overhead for objects and references.
+   * Returns the number of page bytes that have to be allocated to store a record of the given
+   * size, or zero if it fits into the current page.
    */
-  private long estimateRecordBytes(KV<byte[], byte[]> record) {
-    return RECORD_MEMORY_OVERHEAD_ESTIMATE
-        + record.getKey().length
-        + record.getValue().getValue().length;
+  private long newPageSize(long recordSize) {
+    if (!pages.isEmpty() && pageOffset + recordSize <= pages.get(pages.size() - 1).length) {
+      return 0;
+    }
+    return Math.max(recordSize, PAGE_SIZE);
   }
 
   /**
-   * Check whether we have room to store the provided total number of bytes and total number of
-   * records.
+   * Check whether we have room for pages of the given total size, a pointer array with the given
+   * capacity and the scratch space needed to sort the given number of records.
    */
-  private boolean roomInBuffer(long numBytes, long numRecords) {
-    // Collections.sort may allocate up to n/2 extra object references.
-    // Also, ArrayList grows by a factor of 1.5x, so there might be up to n/2 null object
-    // references in the backing array.
-    // And finally, in Java 7, Collections.sort performs a defensive copy to an array in case the
-    // input list is a LinkedList.
-    // So assume we need an additional overhead of two words per record in the worst case
-    return (numBytes + (numRecords * NUM_BYTES_PER_WORD * 2)) < maxBufferSize;
+  private boolean roomInBuffer(long pageBytes, long pointerCapacity, long numRecords) {
+    long pointerBytes = pointerCapacity * POINTER_SIZE * 8L;
+    return pageBytes + pointerBytes + scratchBytes(numRecords) < maxBufferSize;
+  }
+
+  /** Returns the size of the scratch space {@link #sort()} allocates for the given records. */
+  private static long scratchBytes(long numRecords) {
+    return (numRecords / 2) * POINTER_SIZE * 8L;
+  }
+
+  /** Copies the record into the pages and returns its address. */
+  private long write(byte[] key, byte[] value, int recordSize) {
+    if (newPageSize(recordSize) > 0) {
+      byte[] page = new byte[(int) newPageSize(recordSize)];
+      pages.add(page);
+      pageBytes += page.length;
+      pageOffset = 0;
+    }
+    int pageIndex = pages.size() - 1;
+    byte[] page = pages.get(pageIndex);
+    int offset = pageOffset;
+    writeInt(page, offset, key.length);
+    writeInt(page, offset + 4, value.length);
+    System.arraycopy(key, 0, page, offset + RECORD_HEADER_SIZE, key.length);
+    System.arraycopy(value, 0, page, offset + RECORD_HEADER_SIZE + key.length, value.length);
+    pageOffset += recordSize;
+    return ((long) pageIndex << 32) | offset;
+  }
+
+  /** Sorts the records in {@code [from, to)} using {@code scratch} to merge. Stable. */
+  private void mergeSort(int from, int to, long[] scratch) {
+    if (to - from <= INSERTION_SORT_THRESHOLD) {
+      insertionSort(from, to);
+      return;
+    }
+    int mid = (from + to) >>> 1;
+    mergeSort(from, mid, scratch);
+    mergeSort(mid, to, scratch);
+
+    int last = (mid - 1) * POINTER_SIZE;
+    int first = mid * POINTER_SIZE;
+    if (compare(pointers[last], pointers[last + 1], pointers[first], pointers[first + 1]) <= 0) {
+      // Already in order.
+      return;
+    }
+
+    int leftLength = (mid - from) * POINTER_SIZE;
+    System.arraycopy(pointers, from * POINTER_SIZE, scratch, 0, leftLength);
+    int left = 0;
+    int right = mid * POINTER_SIZE;
+    int end = to * POINTER_SIZE;
+    int out = from * POINTER_SIZE;
+    while (left < leftLength && right < end) {
+      if (compare(scratch[left], scratch[left + 1], pointers[right], pointers[right + 1]) <= 0) {
+        pointers[out++] = scratch[left++];
+        pointers[out++] = scratch[left++];
+      } else {
+        pointers[out++] = pointers[right++];
+        pointers[out++] = pointers[right++];
+      }
+    }
+    // Anything left over from the right run is already in place.
+    System.arraycopy(scratch, left, pointers, out, leftLength - left);
+  }
+
+  /** Sorts the records in {@code [from, to)} using insertion sort. Stable. */
+  private void insertionSort(int from, int to) {
+    int start = from * POINTER_SIZE;
+    for (int i = start + POINTER_SIZE; i < to * POINTER_SIZE; i += POINTER_SIZE) {
+      long prefix = pointers[i];
+      long address = pointers[i + 1];
+      int j = i;
+      while (j > start && compare(pointers[j - 2], pointers[j - 1], prefix, address) > 0) {
+        pointers[j] = pointers[j - 2];
+        pointers[j + 1] = pointers[j - 1];
+        j -= POINTER_SIZE;
+      }
+      pointers[j] = prefix;
+      pointers[j + 1] = address;
+    }
   }
 
   /**
-   * Returns the number of bytes in a word according to the JVM. Defaults to 8 for 64 bit if answer
-   * unknown.
+   * Compares two records by the unsigned lexicographical order of their keys, looking at the key
+   * bytes in the pages only if the prefixes are equal.
    */
-  private static long getNumBytesPerWord() {
-    String bitsPerWord = System.getProperty("sun.arch.data.model");
-
-    try {
-      return Long.parseLong(bitsPerWord) / 8;
-    } catch (Exception e) {
-      // Can't determine whether 32 or 64 bit, so assume 64
-      return 8;
+  private int compare(long prefix1, long address1, long prefix2, long address2) {
+    if (prefix1 != prefix2) {
+      return Long.compareUnsigned(prefix1, prefix2);
+    }
+    byte[] page1 = pages.get((int) (address1 >>> 32));
+    byte[] page2 = pages.get((int) (address2 >>> 32));
+    int offset1 = (int) address1;
+    int offset2 = (int) address2;
+    int length1 = readInt(page1, offset1);
+    int length2 = readInt(page2, offset2);
+    int minLength = Math.min(length1, length2);
+    // Equal prefixes mean the first eight bytes, or as many as the shorter key has, are equal.
+    for (int i = Math.min(8, minLength); i < minLength; i++) {
+      int b1 = page1[offset1 + RECORD_HEADER_SIZE + i] & 0xFF;
+      int b2 = page2[offset2 + RECORD_HEADER_SIZE + i] & 0xFF;
+      if (b1 != b2) {
+        return b1 - b2;
+      }
+    }
+    return length1 - length2;
+  }
+
+  /** Returns the first eight bytes of the key as an unsigned big-endian number, zero padded. */
+  private static long prefix(byte[] key) {
+    long prefix = 0;
+    for (int i = 0; i < 8; i++) {
+      prefix <<= 8;
+      if (i < key.length) {
+        prefix |= key[i] & 0xFF;
+      }
+    }
+    return prefix;
+  }
+
+  private static void writeInt(byte[] page, int offset, int value) {
+    page[offset] = (byte) (value >>> 24);
+    page[offset + 1] = (byte) (value >>> 16);
+    page[offset + 2] = (byte) (value >>> 8);
+    page[offset + 3] = (byte) value;
+  }
+
+  private static int readInt(byte[] page, int offset) {
+    return ((page[offset] & 0xFF) << 24)
+        | ((page[offset + 1] & 0xFF) << 16)
+        | ((page[offset + 2] & 0xFF) << 8)
+        | (page[offset + 3] & 0xFF);
+  }
+
+  /** An {@link Iterator} copying the sorted records out of the pages. */
+  private class SortedRecordsIterator implements Iterator<KV<byte[], byte[]>> {
+    private int next = 0;
+
+    @Override
+    public boolean hasNext() {
+      return next < numRecords;
+    }
+
+    @Override
+    public KV<byte[], byte[]> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      long address = pointers[next * POINTER_SIZE + 1];
+      next++;
+
+      byte[] page = pages.get((int) (address >>> 32));
+      int offset = (int) address;
+      int keyLength = readInt(page, offset);
+      int valueLength = readInt(page, offset + 4);
+      int keyOffset = offset + RECORD_HEADER_SIZE;
+      int valueOffset = keyOffset + keyLength;
+      return KV.of(
+          Arrays.copyOfRange(page, keyOffset, valueOffset),
+          Arrays.copyOfRange(page, valueOffset, valueOffset + valueLength));
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Iterator does not support remove");
     }
   }
 }
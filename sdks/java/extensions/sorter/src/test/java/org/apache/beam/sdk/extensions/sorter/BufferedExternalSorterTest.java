@@ -129,8 +129,7 @@ public class BufferedExternalSorterTest {
 
     assertEquals(Arrays.asList(kvs[0], kvs[1], kvs[2]), testSorter.sort());
 
-    verify(mockExternalSorter, times(1)).add(kvs[0]);
-    verify(mockExternalSorter, times(1)).add(kvs[1]);
+    verify(mockExternalSorter, times(1)).addSorted(Arrays.asList(kvs[0], kvs[1]));
     verify(mockExternalSorter, times(1)).add(kvs[2]);
   }
 
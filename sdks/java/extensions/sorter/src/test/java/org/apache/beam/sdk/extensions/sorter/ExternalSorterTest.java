@@ -18,14 +18,19 @@
 
 package org.apache.beam.sdk.extensions.sorter;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.fail;
 
+import com.google.common.primitives.Ints;
 import java.io.IOException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.stream.Stream;
+import org.apache.beam.sdk.values.KV;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Rule;
@@ -96,6 +101,73 @@ public class ExternalSorterTest {
         1000000);
   }
 
+  @Test
+  public void testRandomWithSpills() throws Exception {
+    // A one megabyte buffer holds a few ten thousand records, so this spills into several runs
+    // and needs more than one merge pass.
+    SorterTestUtils.testRandom(
+        () ->
+            ExternalSorter.create(
+                new ExternalSorter.Options()
+                    .setTempLocation(tmpLocation.toString())
+                    .setMemoryMB(1)),
+        1,
+        500000);
+  }
+
+  @Test
+  public void testRandomWithCompressedSpills() throws Exception {
+    SorterTestUtils.testRandom(
+        () ->
+            ExternalSorter.create(
+                new ExternalSorter.Options()
+                    .setTempLocation(tmpLocation.toString())
+                    .setMemoryMB(1)
+                    .setCompressRuns(true)),
+        1,
+        500000);
+  }
+
+  @Test
+  public void testEqualKeysKeepInsertionOrder() throws Exception {
+    ExternalSorter sorter =
+        ExternalSorter.create(
+            new ExternalSorter.Options().setTempLocation(tmpLocation.toString()).setMemoryMB(1));
+    int numRecords = 200000;
+    for (int i = 0; i < numRecords; i++) {
+      sorter.add(KV.of(new byte[] {(byte) (i % 2)}, Ints.toByteArray(i)));
+    }
+
+    int i = 0;
+    for (KV<byte[], byte[]> record : sorter.sort()) {
+      int expected = i < numRecords / 2 ? 2 * i : 2 * (i - numRecords / 2) + 1;
+      assertEquals(expected, Ints.fromByteArray(record.getValue()));
+      i++;
+    }
+    assertEquals(numRecords, i);
+  }
+
+  @Test
+  public void testCloseDeletesRuns() throws Exception {
+    Path location = Files.createTempDirectory(tmpLocation, "close");
+    ExternalSorter sorter =
+        ExternalSorter.create(
+            new ExternalSorter.Options().setTempLocation(location.toString()).setMemoryMB(1));
+    for (int i = 0; i < 200000; i++) {
+      sorter.add(KV.of(Ints.toByteArray(i), new byte[0]));
+    }
+    int numRecords = 0;
+    for (KV<byte[], byte[]> record : sorter.sort()) {
+      numRecords++;
+    }
+    assertEquals(200000, numRecords);
+
+    sorter.close();
+    try (Stream<Path> files = Files.list(location)) {
+      assertFalse(files.findAny().isPresent());
+    }
+  }
+
   @Test
   public void testAddAfterSort() throws Exception {
     SorterTestUtils.testAddAfterSort(ExternalSorter.create(new ExternalSorter.Options()
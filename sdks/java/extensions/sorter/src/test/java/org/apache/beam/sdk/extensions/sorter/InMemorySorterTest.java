@@ -18,6 +18,9 @@
 
 package org.apache.beam.sdk.extensions.sorter;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.fail;
 
@@ -123,6 +126,63 @@ public class InMemorySorterTest {
     Assert.assertFalse(stillRoom);
   }
 
+  @Test
+  public void testAddIfRoomPacked() throws Exception {
+    InMemorySorter.Options options = new InMemorySorter.Options();
+    options.setMemoryMB(1);
+    InMemorySorter sorter = InMemorySorter.create(options);
+
+    // Records are stored without per-record objects, so a tiny record costs a few dozen bytes
+    int numRecords = 0;
+    while (sorter.addIfRoom(KV.of(new byte[8], new byte[8]))) {
+      numRecords++;
+    }
+
+    assertThat(numRecords, greaterThan(20000));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testKeysWithCommonPrefix() throws Exception {
+    InMemorySorter sorter = InMemorySorter.create(new InMemorySorter.Options());
+    KV<byte[], byte[]>[] kvs =
+        new KV[] {
+          KV.of(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}, new byte[] {0}),
+          KV.of(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 0}, new byte[] {1}),
+          KV.of(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 1}, new byte[] {2}),
+          KV.of(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, (byte) 0xff}, new byte[] {3}),
+          KV.of(new byte[] {(byte) 0x80}, new byte[] {4})
+        };
+    sorter.add(kvs[3]);
+    sorter.add(kvs[4]);
+    sorter.add(kvs[1]);
+    sorter.add(kvs[0]);
+    sorter.add(kvs[2]);
+
+    assertThat(sorter.sort(), contains(kvs[0], kvs[1], kvs[2], kvs[3], kvs[4]));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testEqualKeysKeepInsertionOrder() throws Exception {
+    InMemorySorter sorter = InMemorySorter.create(new InMemorySorter.Options());
+    KV<byte[], byte[]>[] kvs = new KV[100];
+    for (int i = 0; i < kvs.length; i++) {
+      kvs[i] = KV.of(new byte[] {(byte) (i % 2)}, new byte[] {(byte) i});
+    }
+    for (KV<byte[], byte[]> kv : kvs) {
+      sorter.add(kv);
+    }
+
+    int i = 0;
+    for (KV<byte[], byte[]> kv : sorter.sort()) {
+      int expected = i < 50 ? 2 * i : 2 * (i - 50) + 1;
+      Assert.assertArrayEquals(kvs[expected].getValue(), kv.getValue());
+      i++;
+    }
+    Assert.assertEquals(kvs.length, i);
+  }
+
   @Test
   public void testNegativeMemory() throws Exception {
     thrown.expect(IllegalArgumentException.class);
@@ -48,6 +48,7 @@ import org.apache.beam.fn.harness.fn.ThrowingRunnable;
 import org.apache.beam.fn.harness.state.BagUserState;
 import org.apache.beam.fn.harness.state.BeamFnStateClient;
 import org.apache.beam.fn.harness.state.MultimapSideInput;
+import org.apache.beam.fn.harness.state.StatePageCache;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateKey;
 import org.apache.beam.model.pipeline.v1.RunnerApi;
 import org.apache.beam.model.pipeline.v1.RunnerApi.PCollection;
@@ -319,6 +320,7 @@ public class FnApiDoFnRunner<InputT, OutputT> implements DoFnRunner<InputT, Outp
 
   private final PipelineOptions pipelineOptions;
   private final BeamFnStateClient beamFnStateClient;
+  private final StatePageCache statePageCache;
   private final String ptransformId;
   private final Supplier<String> processBundleInstructionId;
   private final DoFn<InputT, OutputT> doFn;
@@ -373,6 +375,7 @@ public class FnApiDoFnRunner<InputT, OutputT> implements DoFnRunner<InputT, Outp
       WindowingStrategy windowingStrategy) {
     this.pipelineOptions = pipelineOptions;
     this.beamFnStateClient = beamFnStateClient;
+    this.statePageCache = StatePageCache.forOptions(pipelineOptions);
     this.ptransformId = ptransformId;
     this.processBundleInstructionId = processBundleInstructionId;
     this.doFn = doFn;
@@ -988,7 +991,8 @@ public class FnApiDoFnRunner<InputT, OutputT> implements DoFnRunner<InputT, Outp
           stateId,
           encodedCurrentWindow,
           encodedCurrentKey,
-          valueCoder);
+          valueCoder,
+          statePageCache);
       stateFinalizers.add(rval::asyncClose);
       return rval;
     }
@@ -1114,6 +1118,7 @@ public class FnApiDoFnRunner<InputT, OutputT> implements DoFnRunner<InputT, Outp
         sideInputId,
         encodedWindow,
         keyCoder,
-        valueCoder);
+        valueCoder,
+        statePageCache);
   }
 }
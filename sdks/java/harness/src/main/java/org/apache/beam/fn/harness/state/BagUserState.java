@@ -28,7 +28,6 @@ import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateAppendRequest;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateClearRequest;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateRequest;
 import org.apache.beam.sdk.coders.Coder;
-import org.apache.beam.sdk.fn.stream.DataStreams;
 
 /**
  * An implementation of a bag user state that utilizes the Beam Fn State API to fetch, clear
@@ -40,7 +39,10 @@ import org.apache.beam.sdk.fn.stream.DataStreams;
  * <p>TODO: Move to an async persist model where persistence is signalled based upon cache
  * memory pressure and its need to flush.
  *
- * <p>TODO: Support block level caching and prefetch.
+ * <p>Values which were present before this object was created are read through a bounded
+ * {@link StatePageCache}.
+ *
+ * <p>TODO: Support prefetch.
  */
 public class BagUserState<T> {
   private final BeamFnStateClient beamFnStateClient;
@@ -58,6 +60,26 @@ public class BagUserState<T> {
       ByteString encodedWindow,
       ByteString encodedKey,
       Coder<T> valueCoder) {
+    this(
+        beamFnStateClient,
+        instructionId,
+        ptransformId,
+        stateId,
+        encodedWindow,
+        encodedKey,
+        valueCoder,
+        StatePageCache.withMaximumBytes(Long.MAX_VALUE));
+  }
+
+  public BagUserState(
+      BeamFnStateClient beamFnStateClient,
+      String instructionId,
+      String ptransformId,
+      String stateId,
+      ByteString encodedWindow,
+      ByteString encodedKey,
+      Coder<T> valueCoder,
+      StatePageCache pageCache) {
     this.beamFnStateClient = beamFnStateClient;
     this.valueCoder = valueCoder;
 
@@ -72,12 +94,7 @@ public class BagUserState<T> {
         .setKey(encodedKey);
     request = requestBuilder.build();
 
-    this.oldValues = new LazyCachingIteratorToIterable<>(
-        new DataStreams.DataStreamDecoder(valueCoder,
-            DataStreams.inbound(
-                StateFetchingIterators.forFirstChunk(
-                    beamFnStateClient,
-                    request))));
+    this.oldValues = new StateBackedIterable<>(beamFnStateClient, request, valueCoder, pageCache);
     this.newValues = new ArrayList<>();
   }
 
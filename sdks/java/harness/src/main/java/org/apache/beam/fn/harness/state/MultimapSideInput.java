@@ -21,13 +21,14 @@ import com.google.protobuf.ByteString;
 import java.io.IOException;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateRequest;
 import org.apache.beam.sdk.coders.Coder;
-import org.apache.beam.sdk.fn.stream.DataStreams;
 import org.apache.beam.sdk.transforms.Materializations.MultimapView;
 
 /**
  * An implementation of a multimap side input that utilizes the Beam Fn State API to fetch values.
  *
- * <p>TODO: Support block level caching and prefetch.
+ * <p>Values are read through a bounded {@link StatePageCache}.
+ *
+ * <p>TODO: Support prefetch.
  */
 public class MultimapSideInput<K, V> implements MultimapView<K, V> {
 
@@ -38,6 +39,7 @@ public class MultimapSideInput<K, V> implements MultimapView<K, V> {
   private final ByteString encodedWindow;
   private final Coder<K> keyCoder;
   private final Coder<V> valueCoder;
+  private final StatePageCache pageCache;
 
   public MultimapSideInput(
       BeamFnStateClient beamFnStateClient,
@@ -47,6 +49,26 @@ public class MultimapSideInput<K, V> implements MultimapView<K, V> {
       ByteString encodedWindow,
       Coder<K> keyCoder,
       Coder<V> valueCoder) {
+    this(
+        beamFnStateClient,
+        instructionId,
+        ptransformId,
+        sideInputId,
+        encodedWindow,
+        keyCoder,
+        valueCoder,
+        StatePageCache.withMaximumBytes(Long.MAX_VALUE));
+  }
+
+  public MultimapSideInput(
+      BeamFnStateClient beamFnStateClient,
+      String instructionId,
+      String ptransformId,
+      String sideInputId,
+      ByteString encodedWindow,
+      Coder<K> keyCoder,
+      Coder<V> valueCoder,
+      StatePageCache pageCache) {
     this.beamFnStateClient = beamFnStateClient;
     this.instructionId = instructionId;
     this.ptransformId = ptransformId;
@@ -54,6 +76,7 @@ public class MultimapSideInput<K, V> implements MultimapView<K, V> {
     this.encodedWindow = encodedWindow;
     this.keyCoder = keyCoder;
     this.valueCoder = valueCoder;
+    this.pageCache = pageCache;
   }
 
   public Iterable<V> get(K k) {
@@ -75,11 +98,7 @@ public class MultimapSideInput<K, V> implements MultimapView<K, V> {
         .setWindow(encodedWindow)
         .setKey(output.toByteString());
 
-    return new LazyCachingIteratorToIterable<>(
-        new DataStreams.DataStreamDecoder(valueCoder,
-            DataStreams.inbound(
-                StateFetchingIterators.forFirstChunk(
-                    beamFnStateClient,
-                    requestBuilder.build()))));
+    return new StateBackedIterable<>(
+        beamFnStateClient, requestBuilder.build(), valueCoder, pageCache);
   }
 }
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness.state;
+
+import com.google.common.collect.Iterables;
+import com.google.protobuf.ByteString;
+import java.util.Iterator;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateRequest;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.fn.stream.DataStreams;
+
+/**
+ * An {@link Iterable} of the values of a state stream fetched over the Beam Fn State API.
+ *
+ * <p>Unlike {@link LazyCachingIteratorToIterable}, decoded values are not retained. Each iterator
+ * decodes the values from the chunks of the state stream, which are held in a bounded {@link
+ * StatePageCache} and fetched again if they were evicted, so state larger than memory can be
+ * iterated any number of times.
+ */
+class StateBackedIterable<T> implements Iterable<T> {
+  private final Coder<T> valueCoder;
+  private final Iterable<ByteString> chunks;
+
+  StateBackedIterable(
+      BeamFnStateClient beamFnStateClient,
+      StateRequest stateRequestForFirstChunk,
+      Coder<T> valueCoder,
+      StatePageCache pageCache) {
+    this.valueCoder = valueCoder;
+    this.chunks =
+        StateFetchingIterators.readAllChunks(
+            beamFnStateClient, stateRequestForFirstChunk, pageCache);
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    return new DataStreams.DataStreamDecoder<>(valueCoder, DataStreams.inbound(chunks.iterator()));
+  }
+
+  @Override
+  public int hashCode() {
+    Iterator<T> iterator = iterator();
+    return iterator.hasNext() ? iterator.next().hashCode() : -1789023489;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof Iterable
+        && Iterables.elementsEqual(this, (Iterable) obj);
+  }
+
+  @Override
+  public String toString() {
+    return Iterables.toString(this);
+  }
+}
@@ -19,11 +19,14 @@ package org.apache.beam.fn.harness.state;
 
 import com.google.common.base.Throwables;
 import com.google.protobuf.ByteString;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateGetRequest;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateGetResponse;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateRequest;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateResponse;
 
@@ -52,6 +55,56 @@ public class StateFetchingIterators {
     return new LazyBlockingStateFetchingIterator(beamFnStateClient, stateRequestForFirstChunk);
   }
 
+  /**
+   * Returns an {@link Iterable} over all the chunks returned by the Beam Fn State API for the
+   * supplied state request, which may be iterated any number of times.
+   *
+   * <p>Fetched chunks are held in the supplied {@link StatePageCache}. Chunks which were evicted
+   * from the cache are fetched again using the continuation token returned with the preceding
+   * chunk, so only the continuation tokens of a state stream are held for as long as the
+   * {@link Iterable} is referenced.
+   *
+   * @param beamFnStateClient A client for handling state requests.
+   * @param stateRequestForFirstChunk A fully populated state request for the first (and possibly
+   * only) chunk of a state stream. This state request will be populated with a continuation token
+   * to request further chunks of the stream if required.
+   * @param pageCache The cache holding fetched chunks.
+   */
+  public static Iterable<ByteString> readAllChunks(
+      BeamFnStateClient beamFnStateClient,
+      StateRequest stateRequestForFirstChunk,
+      StatePageCache pageCache) {
+    return new CachingStateFetchingIterable(
+        beamFnStateClient, stateRequestForFirstChunk, pageCache);
+  }
+
+  /**
+   * Fetches the chunk of a state stream for the supplied continuation token, blocking until it is
+   * available.
+   */
+  private static StateGetResponse fetch(
+      BeamFnStateClient beamFnStateClient,
+      StateRequest stateRequestForFirstChunk,
+      ByteString continuationToken) {
+    CompletableFuture<StateResponse> stateResponseFuture = new CompletableFuture<>();
+    beamFnStateClient.handle(
+        stateRequestForFirstChunk.toBuilder().setGet(
+            StateGetRequest.newBuilder().setContinuationToken(continuationToken)),
+        stateResponseFuture);
+    try {
+      return stateResponseFuture.get().getGet();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() == null) {
+        throw new IllegalStateException(e);
+      }
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
   /**
    * An {@link Iterator} which fetches {@link ByteString} chunks using the State API.
    *
@@ -81,26 +134,10 @@ public class StateFetchingIterators {
         case EOF:
           return false;
         case READ_REQUIRED:
-          CompletableFuture<StateResponse> stateResponseFuture = new CompletableFuture<>();
-          beamFnStateClient.handle(
-              stateRequestForFirstChunk.toBuilder().setGet(
-                  StateGetRequest.newBuilder().setContinuationToken(continuationToken)),
-              stateResponseFuture);
-          StateResponse stateResponse;
-          try {
-            stateResponse = stateResponseFuture.get();
-          } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new IllegalStateException(e);
-          } catch (ExecutionException e) {
-            if (e.getCause() == null) {
-              throw new IllegalStateException(e);
-            }
-            Throwables.throwIfUnchecked(e.getCause());
-            throw new IllegalStateException(e.getCause());
-          }
-          continuationToken = stateResponse.getGet().getContinuationToken();
-          next = stateResponse.getGet().getData();
+          StateGetResponse stateResponse =
+              fetch(beamFnStateClient, stateRequestForFirstChunk, continuationToken);
+          continuationToken = stateResponse.getContinuationToken();
+          next = stateResponse.getData();
           currentState = State.HAS_NEXT;
           return true;
         case HAS_NEXT:
@@ -119,4 +156,68 @@ public class StateFetchingIterators {
       return next;
     }
   }
+
+  /**
+   * An {@link Iterable} over the {@link ByteString} chunks of a state stream, which holds the
+   * fetched chunks in a {@link StatePageCache} and re-fetches evicted chunks.
+   *
+   * <p>The continuation token for every chunk is recorded when the chunk preceding it is first
+   * fetched. Like {@link LazyBlockingStateFetchingIterator}, no chunk is fetched before it is
+   * accessed.
+   */
+  static class CachingStateFetchingIterable implements Iterable<ByteString> {
+    private final BeamFnStateClient beamFnStateClient;
+    private final StateRequest stateRequestForFirstChunk;
+    private final StatePageCache pageCache;
+    /** The continuation token used to fetch each chunk known to exist. */
+    private final List<ByteString> continuationTokens;
+
+    CachingStateFetchingIterable(
+        BeamFnStateClient beamFnStateClient,
+        StateRequest stateRequestForFirstChunk,
+        StatePageCache pageCache) {
+      this.beamFnStateClient = beamFnStateClient;
+      this.stateRequestForFirstChunk = stateRequestForFirstChunk;
+      this.pageCache = pageCache;
+      this.continuationTokens = new ArrayList<>();
+      // The first chunk always exists, even if it is empty.
+      this.continuationTokens.add(ByteString.EMPTY);
+    }
+
+    @Override
+    public Iterator<ByteString> iterator() {
+      return new Iterator<ByteString>() {
+        private int position = 0;
+
+        @Override
+        public boolean hasNext() {
+          return position < continuationTokens.size();
+        }
+
+        @Override
+        public ByteString next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          return getChunk(position++);
+        }
+      };
+    }
+
+    private ByteString getChunk(int index) {
+      ByteString chunk = pageCache.get(this, index);
+      if (chunk != null) {
+        return chunk;
+      }
+      StateGetResponse stateResponse =
+          fetch(beamFnStateClient, stateRequestForFirstChunk, continuationTokens.get(index));
+      // If the continuation token is empty, that means this is the last chunk.
+      if (index == continuationTokens.size() - 1
+          && !ByteString.EMPTY.equals(stateResponse.getContinuationToken())) {
+        continuationTokens.add(stateResponse.getContinuationToken());
+      }
+      pageCache.put(this, index, stateResponse.getData());
+      return stateResponse.getData();
+    }
+  }
 }
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness.state;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.protobuf.ByteString;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Gauge;
+import org.apache.beam.sdk.metrics.Metrics;
+import org.apache.beam.sdk.options.ExperimentalOptions;
+import org.apache.beam.sdk.options.PipelineOptions;
+
+/**
+ * A bounded cache of the pages of state streams fetched over the Beam Fn State API, weighted by
+ * their size in bytes. The least recently used pages are evicted first.
+ *
+ * <p>A page that was evicted is fetched again, using the continuation token returned with the
+ * preceding page, when a state stream is iterated again. This allows iterating state that is
+ * larger than the cache any number of times.
+ *
+ * <p>The number of bytes fetched and the number of bytes currently cached are reported as the
+ * {@link #BYTES_FETCHED} counter and the {@link #BYTES_CACHED} gauge, and are available from
+ * {@link #getBytesFetched()} and {@link #getBytesCached()}.
+ *
+ * <p>The default maximum size can be overridden by specifying the experiment
+ * {@code beam_fn_api_state_cache_bytes=<bytes>}.
+ */
+public class StatePageCache {
+  public static final String BYTES_FETCHED = "stateBytesFetched";
+  public static final String BYTES_CACHED = "stateBytesCached";
+
+  private static final String BEAM_FN_API_STATE_CACHE_BYTES = "beam_fn_api_state_cache_bytes=";
+  private static final long DEFAULT_MAXIMUM_BYTES = 64L << 20;
+  private static final ConcurrentMap<Long, StatePageCache> SHARED = new ConcurrentHashMap<>();
+
+  private final Cache<PageKey, ByteString> pages;
+  private final Counter bytesFetchedCounter = Metrics.counter(StatePageCache.class, BYTES_FETCHED);
+  private final Gauge bytesCachedGauge = Metrics.gauge(StatePageCache.class, BYTES_CACHED);
+  private final AtomicLong bytesFetched = new AtomicLong();
+  private final AtomicLong bytesCached = new AtomicLong();
+
+  /**
+   * Returns the cache that is shared by all state accessed in this process, sized by the {@code
+   * beam_fn_api_state_cache_bytes} experiment.
+   */
+  public static StatePageCache forOptions(PipelineOptions options) {
+    return SHARED.computeIfAbsent(getMaximumBytes(options), StatePageCache::withMaximumBytes);
+  }
+
+  /** Creates a cache that holds at most {@code maximumBytes} bytes of pages. */
+  public static StatePageCache withMaximumBytes(long maximumBytes) {
+    checkArgument(maximumBytes >= 0, "Maximum bytes must be non-negative, got %s", maximumBytes);
+    return new StatePageCache(maximumBytes);
+  }
+
+  /**
+   * Returns the {@code beam_fn_api_state_cache_bytes=<long>} experiment value if set. Otherwise
+   * returns the default maximum size.
+   */
+  private static long getMaximumBytes(PipelineOptions options) {
+    List<String> experiments = options.as(ExperimentalOptions.class).getExperiments();
+    for (String experiment : experiments == null ? Collections.<String>emptyList() : experiments) {
+      if (experiment.startsWith(BEAM_FN_API_STATE_CACHE_BYTES)) {
+        return Long.parseLong(experiment.substring(BEAM_FN_API_STATE_CACHE_BYTES.length()));
+      }
+    }
+    return DEFAULT_MAXIMUM_BYTES;
+  }
+
+  private StatePageCache(long maximumBytes) {
+    this.pages =
+        CacheBuilder.newBuilder()
+            // A single segment, so that a page may use the whole of the maximum size.
+            .concurrencyLevel(1)
+            .maximumWeight(maximumBytes)
+            // Empty pages weigh one byte, as the cache would never evict entries weighing zero.
+            .<PageKey, ByteString>weigher((key, page) -> Math.max(1, page.size()))
+            .<PageKey, ByteString>removalListener(
+                notification -> bytesCached.addAndGet(-notification.getValue().size()))
+            .build();
+  }
+
+  /** Returns the page of {@code stream} at {@code index}, or null if it is not cached. */
+  @Nullable
+  ByteString get(Object stream, int index) {
+    return pages.getIfPresent(new PageKey(stream, index));
+  }
+
+  /** Records that {@code page} was fetched and caches it as the page of {@code stream}. */
+  void put(Object stream, int index, ByteString page) {
+    bytesFetched.addAndGet(page.size());
+    bytesFetchedCounter.inc(page.size());
+    bytesCached.addAndGet(page.size());
+    pages.put(new PageKey(stream, index), page);
+    bytesCachedGauge.set(bytesCached.get());
+  }
+
+  /** Returns the total number of bytes of pages that were fetched. */
+  public long getBytesFetched() {
+    return bytesFetched.get();
+  }
+
+  /** Returns the number of bytes of pages that are currently cached. */
+  public long getBytesCached() {
+    return bytesCached.get();
+  }
+
+  /** Returns the number of pages that are currently cached. */
+  @VisibleForTesting
+  long getPageCount() {
+    return pages.size();
+  }
+
+  /** Identifies a page by the identity of its stream and its index within the stream. */
+  private static final class PageKey {
+    private final Object stream;
+    private final int index;
+
+    private PageKey(Object stream, int index) {
+      this.stream = stream;
+      this.index = index;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof PageKey)) {
+        return false;
+      }
+      PageKey other = (PageKey) obj;
+      return stream == other.stream && index == other.index;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(stream) + index;
+    }
+  }
+}
@@ -18,10 +18,14 @@
 package org.apache.beam.fn.harness.state;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.google.protobuf.ByteString;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.beam.fn.harness.state.StateFetchingIterators.CachingStateFetchingIterable;
 import org.apache.beam.fn.harness.state.StateFetchingIterators.LazyBlockingStateFetchingIterator;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateGetResponse;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateRequest;
@@ -65,34 +69,112 @@ public class StateFetchingIteratorsTest {
     }
 
     private void testFetch(ByteString... expected) {
-      BeamFnStateClient fakeStateClient =
-          (requestBuilder, response) -> {
-            ByteString continuationToken = requestBuilder.getGet().getContinuationToken();
-            StateGetResponse.Builder builder = StateGetResponse.newBuilder();
-
-            int requestedPosition = 0; // Default position is 0
-            if (!ByteString.EMPTY.equals(continuationToken)) {
-              requestedPosition = Integer.parseInt(continuationToken.toStringUtf8());
-            }
-
-            // Compute the new continuation token
-            ByteString newContinuationToken = ByteString.EMPTY;
-            if (requestedPosition != expected.length - 1) {
-              newContinuationToken =
-                  ByteString.copyFromUtf8(Integer.toString(requestedPosition + 1));
-            }
-            response.complete(
-                StateResponse.newBuilder()
-                    .setId(requestBuilder.getId())
-                    .setGet(
-                        StateGetResponse.newBuilder()
-                            .setData(expected[requestedPosition])
-                            .setContinuationToken(newContinuationToken))
-                    .build());
-          };
+      BeamFnStateClient fakeStateClient = fakeStateClient(new AtomicInteger(), expected);
       Iterator<ByteString> byteStrings =
           new LazyBlockingStateFetchingIterator(fakeStateClient, StateRequest.getDefaultInstance());
       assertArrayEquals(expected, Iterators.toArray(byteStrings, Object.class));
     }
   }
+
+  /** Tests for {@link StateFetchingIterators.CachingStateFetchingIterable}. */
+  @RunWith(JUnit4.class)
+  public static class CachingStateFetchingIterableTest {
+    private static final ByteString[] CHUNKS = {
+        ByteString.copyFromUtf8("BC"), ByteString.EMPTY, ByteString.copyFromUtf8("DEF")
+    };
+
+    @Test
+    public void testEmpty() throws Exception {
+      AtomicInteger requests = new AtomicInteger();
+      Iterable<ByteString> byteStrings =
+          new CachingStateFetchingIterable(
+              fakeStateClient(requests, ByteString.EMPTY),
+              StateRequest.getDefaultInstance(),
+              StatePageCache.withMaximumBytes(Long.MAX_VALUE));
+      assertArrayEquals(
+          new ByteString[] {ByteString.EMPTY}, Iterables.toArray(byteStrings, ByteString.class));
+      assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testReiterationUsesCachedChunks() throws Exception {
+      AtomicInteger requests = new AtomicInteger();
+      StatePageCache pageCache = StatePageCache.withMaximumBytes(Long.MAX_VALUE);
+      Iterable<ByteString> byteStrings =
+          new CachingStateFetchingIterable(
+              fakeStateClient(requests, CHUNKS), StateRequest.getDefaultInstance(), pageCache);
+
+      assertArrayEquals(CHUNKS, Iterables.toArray(byteStrings, ByteString.class));
+      assertArrayEquals(CHUNKS, Iterables.toArray(byteStrings, ByteString.class));
+      assertEquals(3, requests.get());
+      assertEquals(5, pageCache.getBytesFetched());
+      assertEquals(5, pageCache.getBytesCached());
+    }
+
+    @Test
+    public void testReiterationRefetchesEvictedChunks() throws Exception {
+      AtomicInteger requests = new AtomicInteger();
+      // Too small to hold any non-empty chunk.
+      StatePageCache pageCache = StatePageCache.withMaximumBytes(1);
+      Iterable<ByteString> byteStrings =
+          new CachingStateFetchingIterable(
+              fakeStateClient(requests, CHUNKS), StateRequest.getDefaultInstance(), pageCache);
+
+      assertArrayEquals(CHUNKS, Iterables.toArray(byteStrings, ByteString.class));
+      assertArrayEquals(CHUNKS, Iterables.toArray(byteStrings, ByteString.class));
+      // The empty chunk stays cached.
+      assertEquals(5, requests.get());
+      assertEquals(10, pageCache.getBytesFetched());
+      assertEquals(0, pageCache.getBytesCached());
+    }
+
+    @Test
+    public void testEmptyChunksAreEvicted() throws Exception {
+      StatePageCache pageCache = StatePageCache.withMaximumBytes(10);
+      for (int i = 0; i < 100; i++) {
+        Iterable<ByteString> byteStrings =
+            new CachingStateFetchingIterable(
+                fakeStateClient(new AtomicInteger(), ByteString.EMPTY),
+                StateRequest.getDefaultInstance(),
+                pageCache);
+        Iterables.toArray(byteStrings, ByteString.class);
+      }
+      // Empty chunks still count towards the maximum size.
+      assertEquals(10, pageCache.getPageCount());
+      assertEquals(0, pageCache.getBytesCached());
+    }
+  }
+
+  /**
+   * Returns a client which returns the expected chunks and counts the requests it handled. The
+   * continuation token of a chunk is its position.
+   */
+  private static BeamFnStateClient fakeStateClient(
+      AtomicInteger requests, ByteString... expected) {
+    return (requestBuilder, response) -> {
+      requests.incrementAndGet();
+      ByteString continuationToken = requestBuilder.getGet().getContinuationToken();
+      StateGetResponse.Builder builder = StateGetResponse.newBuilder();
+
+      int requestedPosition = 0; // Default position is 0
+      if (!ByteString.EMPTY.equals(continuationToken)) {
+        requestedPosition = Integer.parseInt(continuationToken.toStringUtf8());
+      }
+
+      // Compute the new continuation token
+      ByteString newContinuationToken = ByteString.EMPTY;
+      if (requestedPosition != expected.length - 1) {
+        newContinuationToken =
+            ByteString.copyFromUtf8(Integer.toString(requestedPosition + 1));
+      }
+      response.complete(
+          StateResponse.newBuilder()
+              .setId(requestBuilder.getId())
+              .setGet(
+                  StateGetResponse.newBuilder()
+                      .setData(expected[requestedPosition])
+                      .setContinuationToken(newContinuationToken))
+              .build());
+    };
+  }
 }
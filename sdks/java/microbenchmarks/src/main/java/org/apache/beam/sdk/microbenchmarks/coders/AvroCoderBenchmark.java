@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks.coders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import org.apache.beam.sdk.coders.AvroCoder;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.DefaultCoder;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Benchmarks for {@link AvroCoder} on a reflect-based POJO, which is the most common way it is
+ * used in pipelines.
+ */
+public class AvroCoderBenchmark extends CoderBenchmark<AvroCoderBenchmark.Pojo> {
+  /** Distribution of the length of the string fields of each record. */
+  @Param
+  public ElementSize size;
+
+  /**
+   * A record with a mix of primitive, string and repeated fields.
+   */
+  @DefaultCoder(AvroCoder.class)
+  public static class Pojo {
+    public String name;
+    public long timestamp;
+    public double value;
+    public List<String> tags;
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Pojo)) {
+        return false;
+      }
+      Pojo that = (Pojo) other;
+      return Objects.equals(name, that.name)
+          && timestamp == that.timestamp
+          && value == that.value
+          && Objects.equals(tags, that.tags);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(name, timestamp, value, tags);
+    }
+  }
+
+  @Override
+  protected Coder<Pojo> createCoder() {
+    return AvroCoder.of(Pojo.class);
+  }
+
+  @Override
+  protected Pojo createElement(Random random) {
+    Pojo pojo = new Pojo();
+    pojo.name = RandomData.randomString(random, size.sample(random), 0.0);
+    pojo.timestamp = random.nextLong();
+    pojo.value = random.nextDouble();
+    int numTags = random.nextInt(4);
+    pojo.tags = new ArrayList<>(numTags);
+    for (int i = 0; i < numTags; i++) {
+      pojo.tags.add(RandomData.randomString(random, ElementSize.SMALL.sample(random), 0.0));
+    }
+    return pojo;
+  }
+}
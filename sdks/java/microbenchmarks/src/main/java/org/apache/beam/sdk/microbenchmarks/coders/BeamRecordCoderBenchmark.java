@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks.coders;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.apache.beam.sdk.coders.BeamRecordCoder;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.DoubleCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.values.BeamRecord;
+import org.apache.beam.sdk.values.BeamRecordType;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Benchmarks for {@link BeamRecordCoder} on a four column row, one in ten of whose string values
+ * is null.
+ */
+public class BeamRecordCoderBenchmark extends CoderBenchmark<BeamRecord> {
+  private static final BeamRecordType RECORD_TYPE =
+      new BeamRecordType(
+          Arrays.asList("id", "timestamp", "amount", "description"),
+          Arrays.<Coder>asList(
+              VarIntCoder.of(), VarLongCoder.of(), DoubleCoder.of(), StringUtf8Coder.of()));
+
+  /** Distribution of the length of the string column. */
+  @Param
+  public ElementSize size;
+
+  @Override
+  protected Coder<BeamRecord> createCoder() {
+    return RECORD_TYPE.getRecordCoder();
+  }
+
+  @Override
+  protected BeamRecord createElement(Random random) {
+    String description =
+        random.nextInt(10) == 0
+            ? null
+            : RandomData.randomString(random, size.sample(random), 0.0);
+    List<Object> values =
+        Arrays.<Object>asList(
+            random.nextInt(Integer.MAX_VALUE),
+            random.nextLong(),
+            random.nextDouble(),
+            description);
+    return new BeamRecord(RECORD_TYPE, values);
+  }
+}
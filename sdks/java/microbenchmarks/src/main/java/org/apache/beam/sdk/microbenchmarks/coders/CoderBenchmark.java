@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks.coders;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.beam.sdk.coders.Coder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Base class for benchmarks that measure the per-element cost of encoding and decoding with a
+ * {@link Coder}.
+ *
+ * <p>Each trial generates a fixed batch of {@link #BATCH_SIZE} elements from a seeded
+ * {@link Random}, so that runs are comparable across releases. The elements are encoded one after
+ * another into a single stream using the nested context, which is how they are laid out in
+ * shuffle, state and side input data. Reported times are per element.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public abstract class CoderBenchmark<T> {
+  static final int BATCH_SIZE = 1024;
+
+  private static final long SEED = 0x5eedc0deL;
+
+  private Coder<T> coder;
+  private List<T> elements;
+  private ByteArrayOutputStream outStream;
+  private byte[] encoded;
+
+  /**
+   * Returns the {@link Coder} under test.
+   */
+  protected abstract Coder<T> createCoder();
+
+  /**
+   * Returns a new element drawn from the distribution this benchmark is parameterized with.
+   */
+  protected abstract T createElement(Random random);
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    Random random = new Random(SEED);
+    coder = createCoder();
+    elements = new ArrayList<>(BATCH_SIZE);
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      elements.add(createElement(random));
+    }
+    outStream = new ByteArrayOutputStream();
+    encodeBatch();
+    encoded = outStream.toByteArray();
+  }
+
+  private int encodeBatch() throws IOException {
+    outStream.reset();
+    for (T element : elements) {
+      coder.encode(element, outStream);
+    }
+    return outStream.size();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public int encode() throws IOException {
+    return encodeBatch();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void decode(Blackhole blackhole) throws IOException {
+    ByteArrayInputStream inStream = new ByteArrayInputStream(encoded);
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      blackhole.consume(coder.decode(inStream));
+    }
+  }
+}
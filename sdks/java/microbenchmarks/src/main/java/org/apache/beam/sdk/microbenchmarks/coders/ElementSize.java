@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks.coders;
+
+import java.util.Random;
+
+/**
+ * Distributions of element sizes used to parameterize the coder benchmarks.
+ *
+ * <p>Sizes are drawn from a log-normal distribution around a median, clipped to
+ * {@code [1, 32 * median]}. This gives the long tail that record sizes usually have in real data,
+ * rather than a single fixed size that would let the JIT specialize for one length.
+ */
+public enum ElementSize {
+  SMALL(16),
+  MEDIUM(256),
+  LARGE(4096);
+
+  private final int median;
+
+  ElementSize(int median) {
+    this.median = median;
+  }
+
+  /**
+   * Returns a size drawn from this distribution.
+   */
+  public int sample(Random random) {
+    double size = median * Math.exp(random.nextGaussian());
+    return (int) Math.max(1, Math.min(size, 32L * median));
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks.coders;
+
+import java.util.Random;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.values.KV;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Benchmarks for {@link KvCoder}, using the {@code KV<String, Long>} shape that keyed counts and
+ * sums take on their way into a {@code GroupByKey}.
+ */
+public class KvCoderBenchmark extends CoderBenchmark<KV<String, Long>> {
+  @Param
+  public ElementSize keySize;
+
+  @Override
+  protected Coder<KV<String, Long>> createCoder() {
+    return KvCoder.of(StringUtf8Coder.of(), VarLongCoder.of());
+  }
+
+  @Override
+  protected KV<String, Long> createElement(Random random) {
+    return KV.of(
+        RandomData.randomString(random, keySize.sample(random), 0.0),
+        (long) ElementSize.MEDIUM.sample(random));
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks.coders;
+
+import java.util.Random;
+
+/**
+ * Generators for the random element contents used by the coder benchmarks.
+ */
+final class RandomData {
+  private static final String ASCII =
+      "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 _-.,:/";
+
+  /** Two and three byte UTF-8 characters, plus a surrogate pair. */
+  private static final String[] NON_ASCII = {
+    "\u00e9", "\u00fc", "\u4e2d", "\u6587", "\ud83d\ude00"
+  };
+
+  private RandomData() {}
+
+  /**
+   * Returns a string of {@code length} characters. If {@code nonAsciiFraction} is positive,
+   * approximately that fraction of characters is replaced with non-ASCII characters.
+   */
+  static String randomString(Random random, int length, double nonAsciiFraction) {
+    StringBuilder builder = new StringBuilder(length);
+    while (builder.length() < length) {
+      if (nonAsciiFraction > 0 && random.nextDouble() < nonAsciiFraction) {
+        builder.append(NON_ASCII[random.nextInt(NON_ASCII.length)]);
+      } else {
+        builder.append(ASCII.charAt(random.nextInt(ASCII.length())));
+      }
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks.coders;
+
+import java.util.Random;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Benchmarks for {@link StringUtf8Coder}.
+ */
+public class StringUtf8CoderBenchmark extends CoderBenchmark<String> {
+  @Param
+  public ElementSize size;
+
+  /** Fraction of characters that are outside of the ASCII range. */
+  @Param({"0.0", "0.1"})
+  public double nonAsciiFraction;
+
+  @Override
+  protected Coder<String> createCoder() {
+    return StringUtf8Coder.of();
+  }
+
+  @Override
+  protected String createElement(Random random) {
+    return RandomData.randomString(random, size.sample(random), nonAsciiFraction);
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks.coders;
+
+import java.util.Random;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Benchmarks for {@link VarIntCoder}.
+ */
+public class VarIntCoderBenchmark extends CoderBenchmark<Integer> {
+  /** The kind of values being encoded, which determines their encoded length. */
+  public enum Values {
+    /** Small counts and indices, mostly 1 or 2 bytes. */
+    COUNTS,
+    /** Uniformly distributed non-negative ids, mostly 5 bytes. */
+    IDS,
+    /** Negative values, always 5 bytes. */
+    NEGATIVE
+  }
+
+  @Param
+  public Values values;
+
+  @Override
+  protected Coder<Integer> createCoder() {
+    return VarIntCoder.of();
+  }
+
+  @Override
+  protected Integer createElement(Random random) {
+    switch (values) {
+      case COUNTS:
+        return ElementSize.SMALL.sample(random);
+      case IDS:
+        return random.nextInt(Integer.MAX_VALUE);
+      case NEGATIVE:
+        return -1 - random.nextInt(Integer.MAX_VALUE);
+      default:
+        throw new IllegalArgumentException("Unknown values " + values);
+    }
+  }
+}
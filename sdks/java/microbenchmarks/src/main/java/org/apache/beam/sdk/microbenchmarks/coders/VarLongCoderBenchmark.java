@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks.coders;
+
+import java.util.Random;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Benchmarks for {@link VarLongCoder}.
+ */
+public class VarLongCoderBenchmark extends CoderBenchmark<Long> {
+  /** The kind of values being encoded, which determines their encoded length. */
+  public enum Values {
+    /** Small counts and sums, mostly 1 or 2 bytes. */
+    COUNTS,
+    /** Epoch millisecond timestamps around the present, 6 bytes. */
+    TIMESTAMPS,
+    /** Negative values, always 10 bytes. */
+    NEGATIVE
+  }
+
+  private static final long BASE_TIMESTAMP_MILLIS = 1500000000000L;
+
+  @Param
+  public Values values;
+
+  @Override
+  protected Coder<Long> createCoder() {
+    return VarLongCoder.of();
+  }
+
+  @Override
+  protected Long createElement(Random random) {
+    switch (values) {
+      case COUNTS:
+        return (long) ElementSize.MEDIUM.sample(random);
+      case TIMESTAMPS:
+        return BASE_TIMESTAMP_MILLIS + random.nextInt(Integer.MAX_VALUE);
+      case NEGATIVE:
+        return -1L - (random.nextLong() & Long.MAX_VALUE);
+      default:
+        throw new IllegalArgumentException("Unknown values " + values);
+    }
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks.coders;
+
+import java.util.Collections;
+import java.util.Random;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.util.WindowedValue.FullWindowedValueCoder;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Benchmarks for {@link FullWindowedValueCoder}, which frames every element that runners shuffle
+ * or materialize. Elements are spread over a small number of tenants.
+ */
+public class WindowedValueCoderBenchmark extends CoderBenchmark<WindowedValue<String>> {
+  /** The windowing the elements are in. */
+  public enum Windowing {
+    GLOBAL,
+    FIXED
+  }
+
+  private static final long BASE_TIMESTAMP_MILLIS = 1500000000000L;
+  private static final int NUM_TENANTS = 16;
+  private static final Duration WINDOW_SIZE = Duration.standardMinutes(1);
+
+  @Param
+  public Windowing windowing;
+
+  /** Distribution of the length of the string value. */
+  @Param
+  public ElementSize size;
+
+  @Override
+  protected Coder<WindowedValue<String>> createCoder() {
+    Coder<? extends BoundedWindow> windowCoder =
+        windowing == Windowing.GLOBAL ? GlobalWindow.Coder.INSTANCE : IntervalWindow.getCoder();
+    return FullWindowedValueCoder.of(StringUtf8Coder.of(), windowCoder);
+  }
+
+  @Override
+  protected WindowedValue<String> createElement(Random random) {
+    String tenantId = "tenant-" + random.nextInt(NUM_TENANTS);
+    String value = RandomData.randomString(random, size.sample(random), 0.0);
+    Instant timestamp = new Instant(BASE_TIMESTAMP_MILLIS + random.nextInt(Integer.MAX_VALUE));
+    if (windowing == Windowing.GLOBAL) {
+      return WindowedValue.of(
+          tenantId, value, timestamp, GlobalWindow.INSTANCE, PaneInfo.NO_FIRING);
+    }
+    Instant windowStart =
+        new Instant(timestamp.getMillis() - timestamp.getMillis() % WINDOW_SIZE.getMillis());
+    return WindowedValue.of(
+        tenantId,
+        value,
+        timestamp,
+        Collections.singletonList(new IntervalWindow(windowStart, WINDOW_SIZE)),
+        PaneInfo.NO_FIRING);
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks.metrics;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.beam.runners.core.metrics.CounterCell;
+import org.apache.beam.runners.core.metrics.MetricsContainerImpl;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.MetricName;
+import org.apache.beam.sdk.metrics.Metrics;
+import org.apache.beam.sdk.metrics.MetricsEnvironment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the cost of incrementing {@link Counter Counters}, as a {@link
+ * org.apache.beam.sdk.transforms.DoFn} that reports several counters per element would.
+ *
+ * <p>{@link #incrementCounters()} uses counters created by {@link Metrics}, which cache the cell
+ * they resolved in the container current on the thread. {@link #lookUpCells()} resolves each
+ * counter in the current container on every increment, which is what those counters did before
+ * caching. {@link #incrementBoundCells()} increments cells resolved once up front, as a runner can
+ * through {@code MetricsContainerStepMap#getCounterCell}, and bounds what caching can achieve.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CounterBenchmark {
+  private static final int COUNTERS = 10;
+
+  private final MetricName[] names = new MetricName[COUNTERS];
+  private final Counter[] counters = new Counter[COUNTERS];
+  private final CounterCell[] cells = new CounterCell[COUNTERS];
+
+  @Setup
+  public void setUp() {
+    MetricsContainerImpl container = new MetricsContainerImpl("step");
+    for (int i = 0; i < COUNTERS; i++) {
+      names[i] = MetricName.named(CounterBenchmark.class, "counter" + i);
+      counters[i] = Metrics.counter(CounterBenchmark.class, "counter" + i);
+      cells[i] = container.getCounter(names[i]);
+    }
+    MetricsEnvironment.setCurrentContainer(container);
+  }
+
+  @TearDown
+  public void tearDown() {
+    MetricsEnvironment.setCurrentContainer(null);
+  }
+
+  @Benchmark
+  public void incrementCounters() {
+    for (Counter counter : counters) {
+      counter.inc();
+    }
+  }
+
+  @Benchmark
+  public void lookUpCells() {
+    for (MetricName name : names) {
+      MetricsEnvironment.getCurrentContainer().getCounter(name).inc();
+    }
+  }
+
+  @Benchmark
+  public void incrementBoundCells() {
+    for (CounterCell cell : cells) {
+      cell.inc();
+    }
+  }
+}
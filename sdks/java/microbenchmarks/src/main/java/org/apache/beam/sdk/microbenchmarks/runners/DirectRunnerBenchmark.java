@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks.runners;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.beam.runners.direct.DirectOptions;
+import org.apache.beam.runners.direct.DirectRunner;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.PipelineResult;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.transforms.SimpleFunction;
+import org.apache.beam.sdk.values.PCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the overhead of executing deep pipelines on the {@link DirectRunner}.
+ *
+ * <p>Each invocation runs a synthetic pipeline of {@link #steps} consecutive {@link MapElements}
+ * over a handful of elements, so the time is dominated by per-step bookkeeping such as scheduling
+ * and watermark propagation rather than by user code. Model enforcements are disabled, as they
+ * would otherwise dominate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DirectRunnerBenchmark {
+  private static final int ELEMENTS = 16;
+
+  @Param({"100", "500"})
+  public int steps;
+
+  @Benchmark
+  public PipelineResult.State runDeepPipeline() {
+    DirectOptions options = PipelineOptionsFactory.create().as(DirectOptions.class);
+    options.setRunner(DirectRunner.class);
+    options.setBlockOnRun(true);
+    options.setEnforceEncodability(false);
+    options.setEnforceImmutability(false);
+    Pipeline pipeline = Pipeline.create(options);
+
+    List<Integer> elements = new ArrayList<>(ELEMENTS);
+    for (int i = 0; i < ELEMENTS; i++) {
+      elements.add(i);
+    }
+    PCollection<Integer> values = pipeline.apply(Create.of(elements));
+    for (int i = 0; i < steps; i++) {
+      values = values.apply("Step" + i, MapElements.via(new Increment()));
+    }
+    return pipeline.run().waitUntilFinish();
+  }
+
+  private static class Increment extends SimpleFunction<Integer, Integer> {
+    @Override
+    public Integer apply(Integer input) {
+      return input + 1;
+    }
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks.triggers;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.beam.runners.core.InMemoryStateInternals;
+import org.apache.beam.runners.core.NonMergingActiveWindowSet;
+import org.apache.beam.runners.core.StateAccessor;
+import org.apache.beam.runners.core.StateNamespace;
+import org.apache.beam.runners.core.StateNamespaces;
+import org.apache.beam.runners.core.StateTag;
+import org.apache.beam.runners.core.triggers.AfterFirstStateMachine;
+import org.apache.beam.runners.core.triggers.AfterPaneStateMachine;
+import org.apache.beam.runners.core.triggers.AfterProcessingTimeStateMachine;
+import org.apache.beam.runners.core.triggers.ExecutableTriggerStateMachine;
+import org.apache.beam.runners.core.triggers.RepeatedlyStateMachine;
+import org.apache.beam.runners.core.triggers.TriggerStateMachineContextFactory;
+import org.apache.beam.runners.core.triggers.TriggerStateMachineRunner;
+import org.apache.beam.sdk.state.TimeDomain;
+import org.apache.beam.sdk.state.Timers;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for running a {@code Repeatedly.forever(AfterFirst.of(AfterPane,
+ * AfterProcessingTime))} trigger over a bundle of elements that all arrive in the same window.
+ *
+ * <p>{@link #perElement()} runs the trigger once per element, reading and persisting the finished
+ * bits each time. {@link #perWindow()} runs it once for all of the elements, as the {@code
+ * ReduceFnRunner} does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TriggerStateMachineBenchmark {
+  @Param({"10", "1000"})
+  private int elementsPerWindow;
+
+  private final FixedWindows windowFn = FixedWindows.of(Duration.standardMinutes(1L));
+  private final IntervalWindow window =
+      new IntervalWindow(new Instant(0L), Duration.standardMinutes(1L));
+  private final Instant timestamp = new Instant(1L);
+  private final Timers timers = new NoopTimers();
+
+  private TriggerStateMachineRunner<IntervalWindow> runner;
+  private StateAccessor<?> state;
+
+  @Setup
+  public void setUp() {
+    InMemoryStateInternals<String> stateInternals = InMemoryStateInternals.forKey("key");
+    ExecutableTriggerStateMachine trigger =
+        ExecutableTriggerStateMachine.create(
+            RepeatedlyStateMachine.forever(
+                AfterFirstStateMachine.of(
+                    AfterPaneStateMachine.elementCountAtLeast(Integer.MAX_VALUE),
+                    AfterProcessingTimeStateMachine.pastFirstElementInPane()
+                        .plusDelayOf(Duration.standardMinutes(1L)))));
+    runner =
+        new TriggerStateMachineRunner<>(
+            trigger,
+            new TriggerStateMachineContextFactory<>(
+                windowFn, stateInternals, new NonMergingActiveWindowSet<IntervalWindow>()));
+    final StateNamespace namespace = StateNamespaces.window(windowFn.windowCoder(), window);
+    state =
+        new StateAccessor<Object>() {
+          @Override
+          public <StateT extends org.apache.beam.sdk.state.State> StateT access(
+              StateTag<StateT> address) {
+            return stateInternals.state(namespace, address);
+          }
+        };
+  }
+
+  @Benchmark
+  public void perElement() throws Exception {
+    for (int i = 0; i < elementsPerWindow; i++) {
+      runner.processValue(window, timestamp, timers, state);
+    }
+  }
+
+  @Benchmark
+  public void perWindow() throws Exception {
+    runner.processValues(window, timestamp, elementsPerWindow, timers, state);
+  }
+
+  private static class NoopTimers implements Timers {
+    @Override
+    public void setTimer(Instant timestamp, TimeDomain timeDomain) {}
+
+    @Override
+    public void deleteTimer(Instant timestamp, TimeDomain timeDomain) {}
+
+    @Override
+    public Instant currentProcessingTime() {
+      return new Instant(0L);
+    }
+
+    @Override
+    public Instant currentSynchronizedProcessingTime() {
+      return new Instant(0L);
+    }
+
+    @Override
+    public Instant currentEventTime() {
+      return new Instant(0L);
+    }
+  }
+}